@@ -448,6 +448,8 @@ public class DriverKernel implements ApplicationContextAware {
         handler.disconnectFromDataSource();
         // send commfault tag
         handler.getEquipmentMessageSender().confirmEquipmentStateIncorrect("Equipment has been been stopped");
+        // stop the threads of the equipment pipeline, if any
+        ((EquipmentMessageSender) handler.getEquipmentMessageSender()).shutdown();
       } catch (Exception ex) {
         log.warn("stopEquipmentMessageHandler - Could not discconnect EquipmentUnit from its data source. EquipmentMessageHandler name :" + conf.getName()
             + " id :" + eqId);
@@ -172,5 +172,6 @@ public abstract class EquipmentMessageHandler {
   public void shutdown() throws EqIOException {
     disconnectFromDataSource();
     equipmentMessageSender.sendDelayedTimeDeadbandValues();
+    equipmentMessageSender.shutdown();
   }
 }
@@ -42,7 +42,9 @@ public interface IEquipmentMessageSender {
    * @param tagId The unique id of the tag which shall be updated
    * @param value The tag value update to send
    * @return True if the tag has been send successfully to the server. False if
-   *         the tag has been invalidated or filtered out.
+   *         the tag has been invalidated or filtered out. If the equipment
+   *         pipeline is enabled, the update is only queued and true is always
+   *         returned.
    */
   boolean update(Long tagId, ValueUpdate update);
 
@@ -52,7 +54,9 @@ public interface IEquipmentMessageSender {
    * @param tagName The unique name of the tag which shall be updated
    * @param value The tag value update to send
    * @return True if the tag has been send successfully to the server. False if
-   *         the tag has been invalidated or filtered out.
+   *         the tag has been invalidated or filtered out. If the equipment
+   *         pipeline is enabled, the update is only queued and true is always
+   *         returned.
    */
   boolean update(String tagName, ValueUpdate update);
 
@@ -121,7 +125,9 @@ public interface IEquipmentMessageSender {
    * @param sourceTimestamp The source timestamp of the tag in milliseconds.
    * @param tagValue The tag value to send.
    * @return True if the tag has been send successfully to the server. False if
-   *         the tag has been invalidated or filtered out.
+   *         the tag has been invalidated or filtered out. If the equipment
+   *         pipeline is enabled, the update is only queued and true is always
+   *         returned.
    * @deprecated Please use instead {@link #update(Long, Object, long)}
    */
   @Deprecated
@@ -135,7 +141,9 @@ public interface IEquipmentMessageSender {
    * @param tagValue The tag value to send.
    * @param pValueDescr A description belonging to the value.
    * @return True if the tag has been send successfully to the server. False if
-   *         the tag has been invalidated or filtered out.
+   *         the tag has been invalidated or filtered out. If the equipment
+   *         pipeline is enabled, the update is only queued and true is always
+   *         returned.
    * @deprecated Please use instead {@link #update(Long, Object, long, String)}
    */
   @Deprecated
@@ -150,7 +158,9 @@ public interface IEquipmentMessageSender {
    * @param pValueDescr A description belonging to the value.
    * @param sentByValueCheckMonitor
    * @return True if the tag has been send successfully to the server. False if
-   *         the tag has been invalidated or filtered out.
+   *         the tag has been invalidated or filtered out. If the equipment
+   *         pipeline is enabled, the update is only queued and true is always
+   *         returned.
    * @deprecated Not valid anymore. Please don't use it.
    */
   @Deprecated
@@ -33,6 +33,7 @@ import cern.c2mon.daq.common.IDynamicTimeDeadbandFilterer;
 import cern.c2mon.daq.common.IEquipmentMessageSender;
 import cern.c2mon.daq.common.conf.equipment.ICoreDataTagChanger;
 import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.daq.config.DaqProperties;
 import cern.c2mon.daq.filter.IFilterMessageSender;
 import cern.c2mon.daq.filter.dynamic.IDynamicTimeDeadbandFilterActivator;
 import cern.c2mon.shared.common.datatag.*;
@@ -42,6 +43,13 @@ import cern.c2mon.shared.daq.config.ChangeReport;
 
 /**
  * EquipmentMessageSender to control all filtering and sending.
+ * <p>
+ * If the equipment pipeline is enabled, the tag updates are processed on the
+ * threads of an {@link EquipmentSenderPipeline} instead of the calling
+ * thread. The updates of a tag are still processed in order, but the values
+ * and qualities passed to the update methods must then not be modified
+ * afterwards, and the value update methods return true as soon as the update
+ * is queued, whether or not the value is then invalidated or filtered out.
  *
  * @author vilches
  */
@@ -105,6 +113,17 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
 
   private FreshnessMonitor freshnessMonitor;
 
+  /**
+   * The pipeline settings, used when the sender is initialised.
+   */
+  private final DaqProperties.Pipeline pipelineProperties;
+
+  /**
+   * The threads processing the tag updates, or null if they are processed
+   * on the calling thread.
+   */
+  private EquipmentSenderPipeline pipeline;
+
   /**
    * Creates a new EquipmentMessageSender.
    *
@@ -117,18 +136,43 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
    * @param lowDynamicTimeDeadbandFilterActivator The dynamic time deadband
    *                                              activator for low priorities. checks around the data tag.
    */
+  public EquipmentMessageSender(final IFilterMessageSender filterMessageSender,
+                                final IProcessMessageSender processMessageSender,
+                                final IDynamicTimeDeadbandFilterActivator medDynamicTimeDeadbandFilterActivator,
+                                final IDynamicTimeDeadbandFilterActivator lowDynamicTimeDeadbandFilterActivator,
+                                FreshnessMonitor freshnessMonitor) {
+    this(filterMessageSender, processMessageSender, medDynamicTimeDeadbandFilterActivator, lowDynamicTimeDeadbandFilterActivator,
+        freshnessMonitor, new DaqProperties());
+  }
+
+  /**
+   * Creates a new EquipmentMessageSender.
+   *
+   * @param filterMessageSender                   The filter message sender to send filtered tag
+   *                                              values.
+   * @param processMessageSender                  The process message sender to send tags to the
+   *                                              server.
+   * @param medDynamicTimeDeadbandFilterActivator The dynamic time deadband
+   *                                              activator for medium priorities.
+   * @param lowDynamicTimeDeadbandFilterActivator The dynamic time deadband
+   *                                              activator for low priorities. checks around the data tag.
+   * @param properties                            The DAQ properties, with the
+   *                                              equipment pipeline settings.
+   */
   @Autowired
   public EquipmentMessageSender(final IFilterMessageSender filterMessageSender,
                                 final IProcessMessageSender processMessageSender,
                                 @Qualifier("medDynamicTimeDeadbandFilterActivator") final IDynamicTimeDeadbandFilterActivator medDynamicTimeDeadbandFilterActivator,
                                 @Qualifier("lowDynamicTimeDeadbandFilterActivator") final IDynamicTimeDeadbandFilterActivator lowDynamicTimeDeadbandFilterActivator,
-                                FreshnessMonitor freshnessMonitor) {
+                                FreshnessMonitor freshnessMonitor,
+                                DaqProperties properties) {
     super();
     this.filterMessageSender = filterMessageSender;
     this.processMessageSender = processMessageSender;
     this.medDynamicTimeDeadbandFilterActivator = medDynamicTimeDeadbandFilterActivator;
     this.lowDynamicTimeDeadbandFilterActivator = lowDynamicTimeDeadbandFilterActivator;
     this.freshnessMonitor = freshnessMonitor;
+    this.pipelineProperties = properties.getPipeline();
   }
 
   /**
@@ -156,6 +200,12 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
     this.equipmentAliveSender = new EquipmentAliveSender(this.processMessageSender, this.equipmentConfiguration.getAliveTagId());
     this.equipmentAliveSender.init(this.equipmentConfiguration.getAliveTagInterval(), this.equipmentConfiguration.getName());
     this.freshnessMonitor.setIEquipmentMessageSender(this);
+
+    // Pipeline
+    if (this.pipelineProperties.isEnabled() && this.pipeline == null) {
+      this.pipeline = new EquipmentSenderPipeline(this.equipmentConfiguration.getName(), this.pipelineProperties.getThreads(),
+          this.pipelineProperties.getQueueCapacity());
+    }
   }
 
   /**
@@ -246,9 +296,12 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
     freshnessMonitor.reset(sdt);
 
     if (isAliveTag(tagId)) {
-      return this.equipmentAliveSender.sendEquipmentAlive(getTag(tagId), update);
+      return this.equipmentAliveSender.sendEquipmentAlive(sdt, update);
+    } else if (this.pipeline != null) {
+      this.pipeline.execute(tagId, () -> this.equipmentSenderValid.update(sdt, update));
+      return true;
     } else {
-      return this.equipmentSenderValid.update(getTag(tagId), update);
+      return this.equipmentSenderValid.update(sdt, update);
     }
   }
 
@@ -275,15 +328,22 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
   @Override
   public void update(Long tagId, SourceDataTagQuality quality, long sourceTimestamp) {
     SourceDataTag sdt = getTag(tagId);
-    String valueDescription = sdt.getCurrentValue() == null ? "" : sdt.getCurrentValue().getValueDescription();
-    Object currentValue = sdt.getCurrentValue() == null ? null : sdt.getCurrentValue().getValue();
+    execute(tagId, () -> {
+      // the current value is read on the thread processing the updates of the tag
+      String valueDescription = sdt.getCurrentValue() == null ? "" : sdt.getCurrentValue().getValueDescription();
+      Object currentValue = sdt.getCurrentValue() == null ? null : sdt.getCurrentValue().getValue();
 
-    update(tagId, new ValueUpdate(currentValue, valueDescription, sourceTimestamp), quality);
+      update(sdt, new ValueUpdate(currentValue, valueDescription, sourceTimestamp), quality);
+    });
   }
 
   @Override
   public void update(Long tagId, ValueUpdate update, SourceDataTagQuality quality) {
     SourceDataTag sdt = getTag(tagId);
+    execute(tagId, () -> update(sdt, update, quality));
+  }
+
+  private void update(SourceDataTag sdt, ValueUpdate update, SourceDataTagQuality quality) {
     if (quality.getQualityCode() == null ||
         (quality.getQualityCode() != null && quality.getQualityCode() != SourceDataTagQualityCode.STALE)) {
       freshnessMonitor.reset(sdt);
@@ -434,14 +494,41 @@ public class EquipmentMessageSender implements ICoreDataTagChanger, IEquipmentMe
   }
 
   /**
-   * Sends all through timedeadband delayed values immediately
+   * Runs the processing of an update of the tag on the pipeline, if enabled,
+   * otherwise on the calling thread.
+   */
+  private void execute(final Long tagId, final Runnable update) {
+    if (this.pipeline != null) {
+      this.pipeline.execute(tagId, update);
+    } else {
+      update.run();
+    }
+  }
+
+  /**
+   * Sends all through timedeadband delayed values immediately, after the
+   * updates waiting in the pipeline (if enabled) are processed.
    */
   public void sendDelayedTimeDeadbandValues() {
     log.debug("sendDelayedTimeDeadbandValues - Sending all time deadband delayed values to the server");
 
+    if (this.pipeline != null) {
+      this.pipeline.flush();
+    }
     this.equipmentSenderValid.sendDelayedTimeDeadbandValues();
   }
 
+  /**
+   * Processes the updates waiting in the pipeline, if enabled, and stops its
+   * threads. Later updates are processed on the calling thread.
+   */
+  public void shutdown() {
+    if (this.pipeline != null) {
+      log.debug("shutdown - Stopping the pipeline of equipment {}", this.equipmentConfiguration.getName());
+      this.pipeline.shutdown();
+    }
+  }
+
   /**
    * Gets a source data tag with the provided id.
    *
@@ -0,0 +1,246 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Processes the tag updates of an equipment on a few threads of its own,
+ * instead of on the threads of the equipment handler.
+ * <p>
+ * Each tag is assigned to a lane by its id, and the updates of a lane are
+ * processed in order by the thread of the lane: the updates of a tag are thus
+ * processed in the order they were submitted, and the state of a tag (current
+ * value, filters, time deadband) is only accessed by one thread, while the
+ * tags of different lanes are processed in parallel. A lane then hands the
+ * values over to the buffers of the process message sender.
+ * <p>
+ * A lane is a bounded ring: submitting an update only claims a slot with a
+ * compare-and-set and writes the update in it. When the ring of the lane is
+ * full, the submitting thread waits for a slot, so that a driver producing
+ * faster than the lane can process is slowed down instead of filling the
+ * memory.
+ */
+@Slf4j
+class EquipmentSenderPipeline {
+
+  /**
+   * Time in nanoseconds a thread waits before checking again for a free
+   * slot, or a lane for a new update.
+   */
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final Lane[] lanes;
+
+  /**
+   * Creates and starts the lanes.
+   *
+   * @param name          the name of the equipment, for the thread names
+   * @param threads       the number of lanes
+   * @param queueCapacity the maximum number of updates waiting in each lane,
+   *                      rounded up to a power of two
+   */
+  EquipmentSenderPipeline(final String name, final int threads, final int queueCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(2, queueCapacity) - 1) << 1;
+    lanes = new Lane[Math.max(1, threads)];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new Lane(name + "-" + i, capacity);
+      lanes[i].thread.start();
+    }
+  }
+
+  /**
+   * Runs the update on the lane of the tag, after the updates of the tag
+   * submitted before. An update submitted by the thread of a lane, e.g. the
+   * invalidation of a value found invalid, is run immediately, as waiting for
+   * a slot could block the lane.
+   *
+   * @param tagId  the id of the updated tag
+   * @param update the processing of the update
+   */
+  void execute(final long tagId, final Runnable update) {
+    if (isLaneThread()) {
+      update.run();
+    } else {
+      lanes[(int) ((tagId ^ (tagId >>> 32)) & 0x7FFFFFFF) % lanes.length].submit(update);
+    }
+  }
+
+  /**
+   * Waits until the updates submitted so far are processed.
+   */
+  void flush() {
+    if (isLaneThread()) {
+      return;
+    }
+    for (Lane lane : lanes) {
+      lane.awaitProcessed(lane.tail.get());
+    }
+  }
+
+  /**
+   * Processes the waiting updates and stops the threads. The updates
+   * submitted afterwards are run by the submitting thread.
+   */
+  void shutdown() {
+    flush();
+    for (Lane lane : lanes) {
+      lane.running = false;
+      LockSupport.unpark(lane.thread);
+    }
+  }
+
+  /**
+   * @return the number of updates waiting in the lanes
+   */
+  int getSize() {
+    int size = 0;
+    for (Lane lane : lanes) {
+      size += (int) (lane.tail.get() - lane.processed);
+    }
+    return size;
+  }
+
+  private boolean isLaneThread() {
+    Thread current = Thread.currentThread();
+    for (Lane lane : lanes) {
+      if (lane.thread == current) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A ring of updates with a single consumer thread.
+   */
+  private static final class Lane implements Runnable {
+
+    private final AtomicReferenceArray<Runnable> ring;
+
+    private final int mask;
+
+    /**
+     * The number of slots claimed by the submitting threads.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of updates processed, only written by the lane thread.
+     */
+    private volatile long processed;
+
+    /**
+     * True while the lane thread waits for an update.
+     */
+    private volatile boolean idle;
+
+    private volatile boolean running = true;
+
+    private final Thread thread;
+
+    Lane(final String name, final int capacity) {
+      this.ring = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+      this.thread = new Thread(this, "EquipmentSender-" + name);
+      this.thread.setDaemon(true);
+    }
+
+    void submit(final Runnable update) {
+      if (!running) {
+        update.run();
+        return;
+      }
+
+      long slot;
+      while (true) {
+        slot = tail.get();
+        if (slot - processed >= ring.length()) {
+          if (!thread.isAlive()) {
+            // The lane will never make room
+            log.error("The thread {} is not running: processing the update on the calling thread", thread.getName());
+            update.run();
+            return;
+          }
+          // Full: wait for the lane to make room
+          LockSupport.parkNanos(PARK_NANOS);
+        } else if (tail.compareAndSet(slot, slot + 1)) {
+          break;
+        }
+      }
+
+      int index = (int) (slot & mask);
+      ring.set(index, update);
+      if (idle) {
+        LockSupport.unpark(thread);
+      }
+
+      if (!running) {
+        // Shut down meanwhile: the lane thread may have stopped before taking the update
+        awaitProcessed(slot + 1);
+        if (ring.compareAndSet(index, update, null)) {
+          update.run();
+        }
+      }
+    }
+
+    void awaitProcessed(final long count) {
+      while (processed < count && thread.isAlive()) {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+
+    @Override
+    public void run() {
+      long next = 0;
+      while (running || next < tail.get()) {
+        int index = (int) (next & mask);
+        Runnable update = ring.get(index);
+
+        if (update == null) {
+          if (next < tail.get()) {
+            // The slot is claimed but the update not written yet
+            Thread.yield();
+          } else {
+            idle = true;
+            if (ring.get(index) == null && running) {
+              LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            idle = false;
+          }
+          continue;
+        }
+
+        if (!ring.compareAndSet(index, update, null)) {
+          continue;
+        }
+        try {
+          update.run();
+        } catch (Throwable e) {
+          // Keep the lane running, otherwise its updates would never be processed
+          log.error("Error processing a tag update", e);
+        }
+        processed = ++next;
+      }
+    }
+  }
+}
@@ -53,6 +53,12 @@ class EquipmentSenderValid {
    */
   private final IProcessMessageSender processMessageSender;
 
+  /**
+   * The quality the valid updates are compared with by the filters, which
+   * only read it.
+   */
+  private static final SourceDataTagQuality VALID_QUALITY = new SourceDataTagQuality();
+
   /**
    * Filters for Data Tag outgoing Values
    */
@@ -211,13 +217,10 @@ class EquipmentSenderValid {
    * Helper method which evaluate if a filter for the new value is triggered.
    */
   private boolean checkFiltering(final SourceDataTag currentSourceDataTag, final ValueUpdate castedUpdate) {
-    // New quality needed for comparing
-    SourceDataTagQuality newSDQuality = new SourceDataTagQuality();
-
     // is Candidate for filtering?
-    FilterType filterType = this.dataTagValueFilter.isCandidateForFiltering(currentSourceDataTag, castedUpdate, newSDQuality);
+    FilterType filterType = this.dataTagValueFilter.isCandidateForFiltering(currentSourceDataTag, castedUpdate, VALID_QUALITY);
 
-    log.debug("checkFiltering - tag #" + currentSourceDataTag.getId() + " with Filter Type " + filterType);
+    log.debug("checkFiltering - tag #{} with Filter Type {}", currentSourceDataTag.getId(), filterType);
     // Check filters on (OLD_UPDATE, VALUE_DEADBAND, REPEATED_VALUE or none)
     if (!isFilterOk(filterType, currentSourceDataTag.getId())) {
 
@@ -26,7 +26,6 @@ import cern.c2mon.shared.common.filter.FilteredDataTagValue.FilterType;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Hashtable;
-import java.util.Timer;
 
 import static java.lang.String.format;
 
@@ -54,9 +53,13 @@ class EquipmentTimeDeadband {
   private IProcessMessageSender processMessageSender;
 
   /**
-   * This is the time deadband scheduler timer where all schedulers are scheduled on.
+   * This is the time deadband scheduler wheel where all schedulers are scheduled on.
    */
-  private static Timer timeDeadbandTimer = new Timer("Time deadband timer", true);
+  private static final TimeDeadbandWheel timeDeadbandWheel = new TimeDeadbandWheel();
+
+  static {
+    timeDeadbandWheel.registerMBean("cern.c2mon.daq:type=TimeDeadband");
+  }
 
   /**
    * The dynamic time dead band filterer for recording the current source data tag
@@ -95,7 +98,7 @@ class EquipmentTimeDeadband {
       if (currentTag.getAddress().getTimeDeadband() > 0) {
         log.debug("createSDTtimeDeadbandScheduler - creating time-deadband scheduler for tag " + currentTag.getId());
         this.sdtTimeDeadbandSchedulers.put(currentTag.getId(), new SDTTimeDeadbandScheduler(currentTag, this.processMessageSender,
-            this.equipmentSenderFilterModule, timeDeadbandTimer, this.dataTagValueFilter, this.dynamicTimeDeadbandFilterer));
+            this.equipmentSenderFilterModule, timeDeadbandWheel, this.dataTagValueFilter, this.dynamicTimeDeadbandFilterer));
       }
     }
   }
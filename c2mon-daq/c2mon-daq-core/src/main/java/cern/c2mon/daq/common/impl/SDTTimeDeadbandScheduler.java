@@ -27,15 +27,18 @@ import cern.c2mon.shared.common.filter.FilteredDataTagValue.FilterType;
 import cern.c2mon.shared.common.type.TypeConverter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The SourceDataTagTimeDeadbandScheduler class models threads responsible for
  * handling source time deadband filtering. It will work with the Static TimeDeadband
+ * <p>
+ * The scheduler is only placed on the {@link TimeDeadbandWheel} when a value
+ * is scheduled for sending. It is due at the next multiple of the time
+ * deadband since its start, as if it ran at a fixed rate.
  */
 @Slf4j
-public class SDTTimeDeadbandScheduler extends TimerTask {
+public class SDTTimeDeadbandScheduler implements Runnable {
 
   /**
    * The process message sender takes the messages actually send to the server.
@@ -68,9 +71,27 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
   private DataTagValueFilter dataTagValueFilter;
 
   /**
-   * The timer to schedule this task on
+   * The wheel to schedule this task on
    */
-  private Timer timeDeadbandTimer;
+  private TimeDeadbandWheel timeDeadbandWheel;
+
+  /**
+   * Time in milliseconds at which the scheduler was started, or -1 if it is
+   * not started.
+   */
+  private volatile long startTime = -1;
+
+  private volatile boolean cancelled = false;
+
+  /**
+   * True while the scheduler is on the wheel.
+   */
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  /**
+   * Time in milliseconds at which the scheduler is due on the wheel.
+   */
+  private volatile long dueTime;
 
   /**
    * The dynamic time dead band filterer for recording the current source data tag
@@ -93,14 +114,14 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
    * @param sourceDataTag               The source data tag controlled by this object.
    * @param processMessageSender        Takes the messages sent to the server
    * @param equipmentSenderValid        Used to send messages to the server.
-   * @param timeDeadbandTimer           The timer to schedule this task on.
+   * @param timeDeadbandWheel           The wheel to schedule this task on.
    * @param valueChecker                Value checker object to avoid repeated values.
    * @param dynamicTimeDeadbandFilterer The dynamic time dead band filterer for recording the current source data tag
    */
   public SDTTimeDeadbandScheduler(final SourceDataTag sourceDataTag,
                                   final IProcessMessageSender processMessageSender,
                                   final EquipmentSenderFilterModule equipmentSenderFilterModule,
-                                  final Timer timeDeadbandTimer,
+                                  final TimeDeadbandWheel timeDeadbandWheel,
                                   final DataTagValueFilter dataTagValueFilter,
                                   final IDynamicTimeDeadbandFilterer dynamicTimeDeadbandFilterer) {
     this.dataTagValueFilter = dataTagValueFilter;
@@ -108,7 +129,7 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
     this.equipmentSenderFilterModule = equipmentSenderFilterModule;
     this.dynamicTimeDeadbandFilterer = dynamicTimeDeadbandFilterer;
 
-    this.timeDeadbandTimer = timeDeadbandTimer;
+    this.timeDeadbandWheel = timeDeadbandWheel;
 
     log.debug("creating time-deadband scheduler for tag : " + sourceDataTag.getId());
 
@@ -126,12 +147,23 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
               + this.sourceDataTag.getAddress().getTimeDeadband() + " miliseconds");
       }
 
-      this.timeDeadbandTimer.scheduleAtFixedRate(this, 0, this.sourceDataTag.getAddress().getTimeDeadband());
+      this.startTime = System.currentTimeMillis();
+      if (this.sendValue) {
+        schedule();
+      }
 
       log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : setting scheduled");
     }
   }
 
+  /**
+   * Stops the scheduling of this task. A value already scheduled will not be
+   * sent by the wheel.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
   /**
    * flushes and resets the scheduler
    */
@@ -152,78 +184,154 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
    */
   public void scheduleValueForSending() {
     this.sendValue = true;
+    schedule();
+  }
+
+  /**
+   * Places this scheduler on the wheel, due at the next period of the time
+   * deadband.
+   */
+  private void schedule() {
+    long start = this.startTime;
+    if (start < 0 || this.cancelled) {
+      return;
+    }
+
+    long period = Math.max(1, this.sourceDataTag.getAddress().getTimeDeadband());
+    long elapsed = System.currentTimeMillis() - start;
+    long periods = elapsed <= 0 ? 0 : (elapsed + period - 1) / period;
+    this.timeDeadbandWheel.schedule(this, start + periods * period);
+  }
+
+  /**
+   * Called by the wheel when the scheduler is placed on it.
+   *
+   * @return false if the scheduler is already on the wheel
+   */
+  boolean markScheduled(final long dueTime) {
+    if (this.scheduled.compareAndSet(false, true)) {
+      this.dueTime = dueTime;
+      return true;
+    }
+    return false;
+  }
+
+  long getDueTime() {
+    return this.dueTime;
+  }
+
+  IProcessMessageSender getProcessMessageSender() {
+    return this.processMessageSender;
   }
 
   /**
-   * The run method called from the timer.
+   * Called by the wheel when the scheduler is due. Takes the scheduler off the
+   * wheel and returns the value to send, if any. The value is sent by the
+   * wheel together with the values of the other tags due at the same time.
+   *
+   * @return the value to send to the server, or null
+   */
+  SourceDataTagValue flush() {
+    this.scheduled.set(false);
+    if (this.cancelled) {
+      return null;
+    }
+
+    synchronized (this.sourceDataTag) {
+      return evaluate();
+    }
+  }
+
+  /**
+   * Sends the scheduled value right away, if any.
    */
   @Override
   public void run() {
+    synchronized (this.sourceDataTag) {
+      SourceDataTagValue value = evaluate();
+      if (value != null) {
+        try {
+          this.processMessageSender.addValue(value);
+        } catch (Exception exception) {
+          log.error("Critical error in scheduler for tag " + this.sourceDataTag.getId(), exception);
+        }
+      }
+    }
+  }
+
+  /**
+   * Filters the value scheduled for sending, if any. Must be called with the
+   * lock of the source data tag.
+   *
+   * @return the value to send to the server, or null if there is no value to
+   * send or if it is filtered out
+   */
+  private SourceDataTagValue evaluate() {
     log.debug("scheduler[" + this.sourceDataTag.getId() + "] : entering run()..");
+    SourceDataTagValue valueToSend = null;
 
     try {
-      synchronized (this.sourceDataTag) {
-        if (isScheduledForSending()) {
+      if (isScheduledForSending()) {
 
-          SourceDataTagValue currentSDValue = this.sourceDataTag.getCurrentValue();
+        SourceDataTagValue currentSDValue = this.sourceDataTag.getCurrentValue();
 
-          FilterType filterType;
-          // The first time the lastSentSDTagValue is empty
-          if (this.lastSourceDataTag == null) {
-            filterType = FilterType.NO_FILTERING;
-            log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : first time running scheduler");
-          } else {
-            // Check the current Source Data tag against the last one sent since
-            // they have never been compared
+        FilterType filterType;
+        // The first time the lastSentSDTagValue is empty
+        if (this.lastSourceDataTag == null) {
+          filterType = FilterType.NO_FILTERING;
+          log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : first time running scheduler");
+        } else {
+          // Check the current Source Data tag against the last one sent since
+          // they have never been compared
 
-            // Cast the value to the proper type before sending it
-            Object newValueCasted = TypeConverter.cast(currentSDValue.getValue(), this.lastSourceDataTag.getDataType());
+          // Cast the value to the proper type before sending it
+          Object newValueCasted = TypeConverter.cast(currentSDValue.getValue(), this.lastSourceDataTag.getDataType());
 
-            ValueUpdate update = new ValueUpdate(newValueCasted, currentSDValue.getValueDescription(), currentSDValue.getTimestamp().getTime());
-            filterType = this.dataTagValueFilter.isCandidateForFiltering(this.lastSourceDataTag, update, currentSDValue.getQuality());
+          ValueUpdate update = new ValueUpdate(newValueCasted, currentSDValue.getValueDescription(), currentSDValue.getTimestamp().getTime());
+          filterType = this.dataTagValueFilter.isCandidateForFiltering(this.lastSourceDataTag, update, currentSDValue.getQuality());
 
-            log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : Filter type: " + filterType);
-          }
+          log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : Filter type: " + filterType);
+        }
 
-          // The new value is not filtered out
-          if (filterType == FilterType.NO_FILTERING) {
-            // Clone the last value sent to the server
-            this.lastSourceDataTag = this.sourceDataTag.clone();
+        // The new value is not filtered out
+        if (filterType == FilterType.NO_FILTERING) {
+          // Clone the last value sent to the server
+          this.lastSourceDataTag = this.sourceDataTag.clone();
 
-            currentSDValue.setValueDescription("Time-deadband filtering enabled. " + currentSDValue.getValueDescription());
-            // Add the value sent
-            this.processMessageSender.addValue(currentSDValue);
+          currentSDValue.setValueDescription("Time-deadband filtering enabled. " + currentSDValue.getValueDescription());
+          // Add the value sent
+          valueToSend = currentSDValue;
 
-            log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : sending value: " + currentSDValue.getValue());
-          }
-          // The new value is filtered out
-          else {
-            ValueUpdate update = new ValueUpdate(currentSDValue.getValue(), currentSDValue.getValueDescription(), currentSDValue.getTimestamp().getTime());
-
-            // Send to filter module (Dynamic or Static information added)
-            if (this.dynamicTimeDeadbandFilterer.isDynamicTimeDeadband(this.sourceDataTag)) {
-              log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : value filtered with Dynamic TimeDeadband : "
-                    + currentSDValue.getValue());
-
-              this.equipmentSenderFilterModule.sendToFilterModuleByDynamicTimedeadbandFilterer(this.sourceDataTag, update, filterType.getNumber());
-            } else {
-              log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : value filtered with Static TimeDeadband: "
-                    + currentSDValue.getValue());
-
-              this.equipmentSenderFilterModule.sendToFilterModule(this.sourceDataTag, update, filterType.getNumber());
-            }
-          }
+          log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : sending value: " + currentSDValue.getValue());
+        }
+        // The new value is filtered out
+        else {
+          ValueUpdate update = new ValueUpdate(currentSDValue.getValue(), currentSDValue.getValueDescription(), currentSDValue.getTimestamp().getTime());
 
-          // Reset the sendValue variable
-          this.sendValue = false;
-        } else {
-          log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : no new value to be sent");
+          // Send to filter module (Dynamic or Static information added)
+          if (this.dynamicTimeDeadbandFilterer.isDynamicTimeDeadband(this.sourceDataTag)) {
+            log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : value filtered with Dynamic TimeDeadband : "
+                  + currentSDValue.getValue());
+
+            this.equipmentSenderFilterModule.sendToFilterModuleByDynamicTimedeadbandFilterer(this.sourceDataTag, update, filterType.getNumber());
+          } else {
+            log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : value filtered with Static TimeDeadband: "
+                  + currentSDValue.getValue());
+
+            this.equipmentSenderFilterModule.sendToFilterModule(this.sourceDataTag, update, filterType.getNumber());
+          }
         }
-      } // synchronized
+
+        // Reset the sendValue variable
+        this.sendValue = false;
+      } else {
+        log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : no new value to be sent");
+      }
     } catch (Exception exception) {
       log.error("Critical error in scheduler for tag " + this.sourceDataTag.getId(), exception);
     }
     log.debug("scheduler[" + this.sourceDataTag.getId() + "] : leaving run()");
+    return valueToSend;
   }
 
   /**
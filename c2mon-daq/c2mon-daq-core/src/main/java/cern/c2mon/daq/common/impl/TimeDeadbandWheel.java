@@ -0,0 +1,242 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Hashed timing wheel on which the {@link SDTTimeDeadbandScheduler}s wait for
+ * the end of the time deadband of their tag.
+ * <p>
+ * A scheduler is only on the wheel while its tag has a value to send: it is
+ * placed in the bucket of the tick at which it is due, and a single thread
+ * sweeps the buckets of the elapsed ticks. The values of all the schedulers
+ * due at a tick are sent as one batch to each process message sender.
+ */
+@Slf4j
+class TimeDeadbandWheel implements TimeDeadbandWheelMBean {
+
+  /**
+   * Duration of a tick in milliseconds, i.e. the precision of the time
+   * deadbands.
+   */
+  static final long TICK = 10;
+
+  /**
+   * Number of buckets of the wheel (a power of two). Schedulers due after
+   * more than one turn stay on the wheel for several turns.
+   */
+  private static final int WHEEL_SIZE = 1024;
+
+  /**
+   * The schedulers to place on the wheel at the next tick.
+   */
+  private final Queue<SDTTimeDeadbandScheduler> pendingSchedulers = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The buckets of the wheel, only accessed by the sweeper.
+   */
+  @SuppressWarnings("unchecked")
+  private final List<SDTTimeDeadbandScheduler>[] wheel = new List[WHEEL_SIZE];
+
+  /**
+   * The next tick to sweep, only accessed by the sweeper.
+   */
+  private long currentTick;
+
+  private final AtomicInteger scheduledCount = new AtomicInteger();
+
+  private volatile long tickLag;
+
+  private volatile long maxTickLag;
+
+  private volatile int lastBatchSize;
+
+  private volatile ScheduledExecutorService sweeper;
+
+  TimeDeadbandWheel() {
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ArrayList<>();
+    }
+  }
+
+  /**
+   * Register the JMX view of this wheel.
+   *
+   * @param name the object name of the MBean
+   */
+  void registerMBean(final String name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    } catch (JMException e) {
+      log.warn("Unable to register the JMX view of the time deadband timer", e);
+    }
+  }
+
+  /**
+   * Place the scheduler on the wheel, if it is not already on it.
+   *
+   * @param scheduler the scheduler of a tag with a new value
+   * @param dueTime the time in milliseconds at which the value may be sent
+   */
+  void schedule(final SDTTimeDeadbandScheduler scheduler, final long dueTime) {
+    if (scheduler.markScheduled(dueTime)) {
+      scheduledCount.incrementAndGet();
+      pendingSchedulers.add(scheduler);
+      startSweeper();
+    }
+  }
+
+  private void startSweeper() {
+    if (sweeper == null) {
+      synchronized (this) {
+        if (sweeper == null) {
+          currentTick = System.currentTimeMillis() / TICK;
+          ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Time deadband timer");
+            thread.setDaemon(true);
+            return thread;
+          });
+          executor.scheduleAtFixedRate(this::sweep, TICK, TICK, TimeUnit.MILLISECONDS);
+          sweeper = executor;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sweep the buckets of all the ticks elapsed since the last sweep and send
+   * the values which are due.
+   */
+  void sweep() {
+    try {
+      long now = System.currentTimeMillis();
+      List<SDTTimeDeadbandScheduler> dueSchedulers = new ArrayList<>();
+
+      SDTTimeDeadbandScheduler scheduler;
+      while ((scheduler = pendingSchedulers.poll()) != null) {
+        place(scheduler, currentTick, now, dueSchedulers);
+      }
+
+      long lastTick = now / TICK;
+      if (currentTick <= lastTick) {
+        // Time elapsed since the end of the oldest tick not swept yet
+        tickLag = Math.max(0, now - (currentTick + 1) * TICK);
+        if (tickLag > maxTickLag) {
+          maxTickLag = tickLag;
+        }
+      }
+
+      for (; currentTick <= lastTick; currentTick++) {
+        List<SDTTimeDeadbandScheduler> bucket = wheel[(int) (currentTick & (WHEEL_SIZE - 1))];
+        if (bucket.isEmpty()) {
+          continue;
+        }
+
+        SDTTimeDeadbandScheduler[] schedulers = bucket.toArray(new SDTTimeDeadbandScheduler[bucket.size()]);
+        bucket.clear();
+        for (SDTTimeDeadbandScheduler bucketScheduler : schedulers) {
+          place(bucketScheduler, currentTick + 1, now, dueSchedulers);
+        }
+      }
+
+      if (!dueSchedulers.isEmpty()) {
+        send(dueSchedulers);
+      }
+    } catch (Exception e) {
+      log.error("Error sending the time deadband filtered values", e);
+    }
+  }
+
+  /**
+   * Place the scheduler in the bucket of its due time, or add it to the due
+   * schedulers if the time has come.
+   */
+  private void place(final SDTTimeDeadbandScheduler scheduler, final long minTick, final long now,
+                     final List<SDTTimeDeadbandScheduler> dueSchedulers) {
+    long dueTime = scheduler.getDueTime();
+    if (dueTime <= now) {
+      dueSchedulers.add(scheduler);
+    } else {
+      long tick = Math.max(dueTime / TICK, minTick);
+      wheel[(int) (tick & (WHEEL_SIZE - 1))].add(scheduler);
+    }
+  }
+
+  private void send(final List<SDTTimeDeadbandScheduler> dueSchedulers) {
+    Map<IProcessMessageSender, List<SourceDataTagValue>> batches = new IdentityHashMap<>();
+    int batchSize = 0;
+
+    for (SDTTimeDeadbandScheduler scheduler : dueSchedulers) {
+      scheduledCount.decrementAndGet();
+      SourceDataTagValue value = scheduler.flush();
+      if (value != null) {
+        batches.computeIfAbsent(scheduler.getProcessMessageSender(), sender -> new ArrayList<>()).add(value);
+        batchSize++;
+      }
+    }
+
+    for (Map.Entry<IProcessMessageSender, List<SourceDataTagValue>> batch : batches.entrySet()) {
+      try {
+        batch.getKey().addValues(batch.getValue());
+      } catch (Exception e) {
+        log.error("Error sending " + batch.getValue().size() + " time deadband filtered values", e);
+      }
+    }
+
+    lastBatchSize = batchSize;
+    log.trace("Sent {} time deadband filtered values of {} due tags", batchSize, dueSchedulers.size());
+  }
+
+  @Override
+  public long getTickLag() {
+    return tickLag;
+  }
+
+  @Override
+  public long getMaxTickLag() {
+    return maxTickLag;
+  }
+
+  @Override
+  public int getPendingTags() {
+    return scheduledCount.get();
+  }
+
+  @Override
+  public int getLastBatchSize() {
+    return lastBatchSize;
+  }
+}
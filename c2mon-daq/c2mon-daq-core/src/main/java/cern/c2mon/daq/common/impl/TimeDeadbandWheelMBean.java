@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+/**
+ * JMX view of the {@link TimeDeadbandWheel}.
+ */
+public interface TimeDeadbandWheelMBean {
+
+  /**
+   * @return the delay in milliseconds between the end of the last swept tick
+   * and the time it was swept
+   */
+  long getTickLag();
+
+  /**
+   * @return the highest tick lag in milliseconds since the start
+   */
+  long getMaxTickLag();
+
+  /**
+   * @return the number of tags with a value waiting for the end of their
+   * time deadband
+   */
+  int getPendingTags();
+
+  /**
+   * @return the number of values sent at the last tick at which some were due
+   */
+  int getLastBatchSize();
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.daq.common.messaging;
 
+import java.util.Collection;
+
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 
 /**
@@ -39,6 +41,16 @@ public interface IProcessMessageSender {
      */
     void addValue(SourceDataTagValue dataTagValue);
 
+    /**
+     * Adds a batch of SourceDataTagValue objects, as {@link #addValue} does
+     * for each of them. The values which are not sent directly are put into
+     * the buffers in one operation.
+     *
+     * @param dataTagValues
+     *            the SourceDataTagValue objects
+     */
+    void addValues(Collection<SourceDataTagValue> dataTagValues);
+
     /**
      * Sends a communication fault tag message.
      * @param tagId The tag ID to use.
@@ -20,6 +20,7 @@ import cern.c2mon.daq.common.conf.core.ProcessConfigurationHolder;
 import cern.c2mon.daq.common.messaging.ProcessRequestSender;
 import cern.c2mon.daq.config.DaqProperties;
 import cern.c2mon.shared.common.process.ProcessConfiguration;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
 import cern.c2mon.shared.daq.process.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,11 +61,23 @@ public class ActiveRequestSender implements ProcessRequestSender {
 
   private DaqProperties properties;
 
+  /**
+   * The converter of the tag updates, of which the encoding is chosen when
+   * connecting to the server (null if the updates are always sent in JSON).
+   */
+  private DataTagValueUpdateConverter dataTagValueUpdateConverter;
+
   @Autowired
   public ActiveRequestSender(final DaqProperties properties, final JmsTemplate processRequestJmsTemplate) {
+    this(properties, processRequestJmsTemplate, null);
+  }
+
+  public ActiveRequestSender(final DaqProperties properties, final JmsTemplate processRequestJmsTemplate,
+                             final DataTagValueUpdateConverter dataTagValueUpdateConverter) {
     this.properties = properties;
     this.jmsTemplate = processRequestJmsTemplate;
     this.processMessageConverter = new ProcessMessageConverter();
+    this.dataTagValueUpdateConverter = dataTagValueUpdateConverter;
   }
 
 
@@ -148,6 +161,7 @@ public class ActiveRequestSender implements ProcessRequestSender {
             if (replyMessage == null) {
               return null;
             } else {
+              selectUpdateEncoding(replyMessage);
               // Convert the XML and return it as a ProcessConnectionRespond object
               return processMessageConverter.fromMessage(replyMessage);
             }
@@ -164,6 +178,22 @@ public class ActiveRequestSender implements ProcessRequestSender {
     return processConnectionResponse;
   }
 
+  /**
+   * Send the tag updates in the binary encoding if it is enabled and the
+   * server announced on its connection response that it accepts it.
+   *
+   * @param replyMessage the connection response of the server
+   * @throws JMSException if the message property cannot be read
+   */
+  private void selectUpdateEncoding(final Message replyMessage) throws JMSException {
+    if (dataTagValueUpdateConverter != null) {
+      boolean binaryEncoding = properties.getJms().isBinaryEncoding()
+          && DataTagValueUpdateConverter.BINARY_ENCODING.equals(replyMessage.getStringProperty(DataTagValueUpdateConverter.ENCODING_PROPERTY));
+      dataTagValueUpdateConverter.setBinaryEncoding(binaryEncoding);
+      LOGGER.info("Tag updates will be sent to the server in " + (binaryEncoding ? "binary" : "JSON") + " encoding");
+    }
+  }
+
   @Override
   public void sendProcessDisconnectionRequest(ProcessConfiguration processConfiguration, long startupTime) {
     LOGGER.debug("sendProcessDisconnectionRequest - Sending Process Disconnection notification to server.");
@@ -16,8 +16,10 @@
  *****************************************************************************/
 package cern.c2mon.daq.common.messaging.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.jms.JMSException;
 
@@ -27,14 +29,15 @@ import org.slf4j.LoggerFactory;
 import cern.c2mon.daq.common.conf.core.ProcessConfigurationHolder;
 import cern.c2mon.daq.common.messaging.IProcessMessageSender;
 import cern.c2mon.daq.common.messaging.JmsSender;
+import cern.c2mon.daq.config.DaqProperties;
 import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.common.process.ProcessConfiguration;
+import cern.c2mon.shared.util.buffer.CoalescingRingBuffer;
 import cern.c2mon.shared.util.buffer.PullEvent;
 import cern.c2mon.shared.util.buffer.PullException;
-import cern.c2mon.shared.util.buffer.SynchroBuffer;
 import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 
 /**
@@ -48,20 +51,21 @@ import cern.c2mon.shared.util.buffer.SynchroBufferListener;
  * up to the JMSSenders to release the threads, if for instance they are not
  * critical.
  *
- * For low priority messages, two synchrobuffer's are used (one for persistent,
- * the other for non-persistent messages).
+ * For low priority messages, two ring buffers are used (one for persistent,
+ * the other for non-persistent messages). No value is dropped: once a buffer
+ * is full, the callers wait until its values are sent.
  */
 public class ProcessMessageSender implements IProcessMessageSender {
 
   /**
    * The buffer for non-persistent SourceDataTags objects
    */
-  private SynchroBuffer dataTagsBuffer;
+  private CoalescingRingBuffer<SourceDataTagValue> dataTagsBuffer;
 
   /**
    * The buffer for persistent SourceDataTags objects
    */
-  private SynchroBuffer persistentTagsBuffer;
+  private CoalescingRingBuffer<SourceDataTagValue> persistentTagsBuffer;
 
   /**
    * The reference for the AliveTimer object
@@ -79,15 +83,24 @@ public class ProcessMessageSender implements IProcessMessageSender {
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(ProcessMessageSender.class);
 
+  private final DaqProperties properties;
+
+  public ProcessMessageSender(final DaqProperties properties) {
+    this.properties = properties;
+  }
+
   public void init() {
     aliveTimer = new AliveTimer(this);
 
     ProcessConfiguration processConfiguration = ProcessConfigurationHolder.getInstance();
     // TODO move the min window size to properties or database
-    // create and initialize dataTagsBuffer for non-persistent tags
-    dataTagsBuffer = new SynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, SynchroBuffer.DUPLICATE_OK);
+    int bufferCapacity = properties.getJms().getBufferCapacity();
+    // create and initialize dataTagsBuffer for non-persistent tags, which only keeps the latest value of each tag
+    dataTagsBuffer = new CoalescingRingBuffer<>("ProcessMessageSender-dataTags", 200, processConfiguration.getMaxMessageDelay(), 100,
+        bufferCapacity, properties.getJms().isCoalesceValues() ? SourceDataTagValue::getId : null, true, false);
     // create and initialize dataTagsBuffer for persistent tags
-    persistentTagsBuffer = new SynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, SynchroBuffer.DUPLICATE_OK);
+    persistentTagsBuffer = new CoalescingRingBuffer<>("ProcessMessageSender-persistentTags", 200, processConfiguration.getMaxMessageDelay(),
+        100, bufferCapacity, null, true, false);
 
     dataTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
     persistentTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
@@ -208,14 +221,14 @@ public class ProcessMessageSender implements IProcessMessageSender {
       if (dataTagValue.isGuaranteedDelivery()) {
         LOGGER.debug("\t guaranteedDelivery is TRUE");
 
-        // note : synchrobuffer's push method is thread-safety,
+        // note : the buffer's push method is thread-safe and lock-free,
         // so no external synchronization is needed
         this.persistentTagsBuffer.push(dataTagValue);
       }
       else {
         LOGGER.debug("\t guaranteedDelivery is FALSE");
 
-        // note : synchrobuffer's push method is thread-safety,
+        // note : the buffer's push method is thread-safe and lock-free,
         // so no external synchronization is needed
         this.dataTagsBuffer.push(dataTagValue);
       }
@@ -224,6 +237,33 @@ public class ProcessMessageSender implements IProcessMessageSender {
     LOGGER.debug("leaving addValue()");
   }
 
+  @Override
+  public final void addValues(final Collection<SourceDataTagValue> dataTagValues) {
+    LOGGER.debug("adding " + dataTagValues.size() + " data tags to the sending buffers");
+    List<SourceDataTagValue> persistentValues = new ArrayList<>();
+    List<SourceDataTagValue> values = new ArrayList<>(dataTagValues.size());
+
+    for (SourceDataTagValue dataTagValue : dataTagValues) {
+      if (dataTagValue.getPriority() == DataTagAddress.PRIORITY_HIGH) {
+        try {
+          this.distributeValue(dataTagValue);
+        }
+        catch (JMSException ex) {
+          LOGGER.error("addValues : JMSException caught :" + ex.getMessage());
+        }
+      }
+      else if (dataTagValue.isGuaranteedDelivery()) {
+        persistentValues.add(dataTagValue);
+      }
+      else {
+        values.add(dataTagValue);
+      }
+    }
+
+    this.persistentTagsBuffer.push(persistentValues);
+    this.dataTagsBuffer.push(values);
+  }
+
   /**
    * Connects to all the registered brokers (individual JMSSenders should
    * implement this on separate threads if the connection is unessential).
@@ -237,7 +277,7 @@ public class ProcessMessageSender implements IProcessMessageSender {
 
   /**
    * This methods gently closes and disables ProcessMessageSender's
-   * synchrobuffers.
+   * ring buffers.
    */
   public final void closeSourceDataTagsBuffers() {
     dataTagsBuffer.disable();
@@ -1,10 +1,16 @@
 package cern.c2mon.daq.common.timer;
 
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,20 +23,62 @@ import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
 
 /**
+ * Sends a STALE quality for the tags which are not updated within their
+ * freshness interval multiplied by the freshness tolerance.
+ * <p>
+ * A reset only writes the new deadline of the tag. The deadlines are checked
+ * by a single sweeper thread on a hashed timing wheel: each tag sits in the
+ * bucket of the tick of its deadline at the time it was placed, and when the
+ * sweeper reaches the bucket, the tag either gets STALE or is moved to the
+ * bucket of its current deadline. The cost of a reset does thus not depend
+ * on the number of monitored tags.
+ *
  * @author Franz Ritter
  */
 @Component
 @Slf4j
 public class FreshnessMonitor {
 
+  /**
+   * Duration of a tick of the wheel in milliseconds, i.e. the precision of
+   * the freshness checks.
+   */
+  static final long TICK = 100;
+
+  /**
+   * Number of buckets of the wheel (a power of two). Deadlines further than
+   * one turn of the wheel are reached in several turns.
+   */
+  private static final int WHEEL_SIZE = 512;
+
   private final DaqProperties properties;
-  private final Map<Long, Runnable> freshnessTasks = new HashMap<>();
+  private final ConcurrentMap<Long, FreshnessEntry> freshnessEntries = new ConcurrentHashMap<>();
   private IEquipmentMessageSender equipmentMessageSender;
-  private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(2);
+
+  /**
+   * The entries to place in the wheel at the next tick.
+   */
+  private final Queue<FreshnessEntry> pendingEntries = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The buckets of the wheel, only accessed by the sweeper.
+   */
+  @SuppressWarnings("unchecked")
+  private final List<FreshnessEntry>[] wheel = new List[WHEEL_SIZE];
+
+  /**
+   * The next tick to sweep, only accessed by the sweeper.
+   */
+  private long currentTick;
+
+  private volatile ScheduledExecutorService sweeper;
 
   @Autowired
   public FreshnessMonitor(DaqProperties properties) {
     this.properties = properties;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ArrayList<>();
+    }
   }
 
   public void setIEquipmentMessageSender(IEquipmentMessageSender equipmentMessageSender) {
@@ -38,57 +86,162 @@ public class FreshnessMonitor {
   }
 
   public void reset(SourceDataTag sourceDataTag) {
+    Long tagId = sourceDataTag.getId();
 
     if (sourceDataTag.getAddress() != null
         && sourceDataTag.getAddress().getFreshnessInterval() != null
         && sourceDataTag.getAddress().getFreshnessInterval() != 0L) {
 
       log.trace("Checking freshness for tag {}", sourceDataTag.getName());
-      Long tagId = sourceDataTag.getId();
-      Runnable task;
-
-      if (freshnessTasks.containsKey(tagId)) {
-        task = freshnessTasks.get(tagId);
-        timer.remove(task);
-        timer.purge();
+      long timeout = (long) (sourceDataTag.getAddress().getFreshnessInterval() * properties.getFreshnessTolerance() * 1000);
 
-      } else {
-        task = new FreshnessTask(tagId);
-        freshnessTasks.put(tagId, task);
+      FreshnessEntry entry = freshnessEntries.get(tagId);
+      if (entry == null) {
+        entry = freshnessEntries.computeIfAbsent(tagId, FreshnessEntry::new);
       }
+      entry.deadline = now() + timeout;
 
-      Double freshnessTolerance = properties.getFreshnessTolerance();
-      timer.schedule(task, (long) (sourceDataTag.getAddress().getFreshnessInterval() * freshnessTolerance), TimeUnit.SECONDS);
+      if (!entry.scheduled.get() && entry.scheduled.compareAndSet(false, true)) {
+        schedule(entry);
+      }
+    } else if (freshnessEntries.containsKey(tagId)) {
+      // The freshness interval was removed from the tag
+      remove(tagId);
     }
   }
 
   public void removeDataTag(SourceDataTag sourceDataTag) {
-    if (sourceDataTag.getAddress() != null
-        && sourceDataTag.getAddress().getFreshnessInterval() != null
-        && sourceDataTag.getAddress().getFreshnessInterval() != 0L) {
+    if (remove(sourceDataTag.getId())) {
+      log.trace("Removing freshness check for tag {}", sourceDataTag.getName());
+    }
+  }
+
+  private boolean remove(Long tagId) {
+    FreshnessEntry entry = freshnessEntries.remove(tagId);
+    if (entry != null) {
+      entry.removed = true;
+      return true;
+    }
+    return false;
+  }
 
-      Long tagId = sourceDataTag.getId();
-      if (freshnessTasks.containsKey(tagId)) {
-        log.trace("Removing freshness check for tag {}", sourceDataTag.getName());
-        timer.remove(freshnessTasks.get(tagId));
-        freshnessTasks.remove(tagId);
+  /**
+   * Hand the entry over to the sweeper, which is started with the first one.
+   */
+  private void schedule(FreshnessEntry entry) {
+    pendingEntries.add(entry);
+
+    if (sweeper == null) {
+      synchronized (this) {
+        if (sweeper == null) {
+          currentTick = now() / TICK;
+          ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FreshnessMonitor");
+            thread.setDaemon(true);
+            return thread;
+          });
+          executor.scheduleAtFixedRate(this::sweep, TICK, TICK, TimeUnit.MILLISECONDS);
+          sweeper = executor;
+        }
       }
     }
   }
 
-  class FreshnessTask implements Runnable {
+  /**
+   * Sweep the buckets of all the ticks elapsed since the last sweep.
+   */
+  void sweep() {
+    try {
+      long now = now();
 
-    private Long id;
+      FreshnessEntry entry;
+      while ((entry = pendingEntries.poll()) != null) {
+        place(entry, currentTick);
+      }
+
+      for (long lastTick = now / TICK; currentTick <= lastTick; currentTick++) {
+        sweepBucket(currentTick, now);
+      }
+    } catch (Exception e) {
+      log.error("Error checking the freshness of the tags", e);
+    }
+  }
 
-    public FreshnessTask(Long id) {
-      this.id = id;
+  private void sweepBucket(long tick, long now) {
+    List<FreshnessEntry> bucket = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+    if (bucket.isEmpty()) {
+      return;
     }
 
-    @Override
-    public void run() {
+    FreshnessEntry[] entries = bucket.toArray(new FreshnessEntry[bucket.size()]);
+    bucket.clear();
+
+    for (FreshnessEntry entry : entries) {
+      if (entry.removed) {
+        continue;
+      }
+
+      long deadline = entry.deadline;
+      if (deadline > now) {
+        place(entry, tick + 1);
+        continue;
+      }
+
+      entry.scheduled.set(false);
+      if (entry.deadline != deadline) {
+        // Reset while being checked: it is fresh, unless the reset already placed it again
+        if (entry.scheduled.compareAndSet(false, true)) {
+          place(entry, tick + 1);
+        }
+        continue;
+      }
+
+      notifyStale(entry.tagId);
+    }
+  }
+
+  private void place(FreshnessEntry entry, long minTick) {
+    long tick = Math.max(entry.deadline / TICK, minTick);
+    wheel[(int) (tick & (WHEEL_SIZE - 1))].add(entry);
+  }
+
+  private void notifyStale(Long tagId) {
+    try {
       SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.STALE);
-      equipmentMessageSender.update(id, tagQuality);
+      equipmentMessageSender.update(tagId, tagQuality);
+    } catch (Exception e) {
+      log.error("Error sending the STALE quality of tag {}", tagId, e);
     }
   }
 
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  /**
+   * The freshness state of a monitored tag.
+   */
+  private static final class FreshnessEntry {
+
+    private final Long tagId;
+
+    /**
+     * Time in milliseconds (on the {@link System#nanoTime()} clock) after
+     * which the tag is stale.
+     */
+    private volatile long deadline;
+
+    /**
+     * True while the entry is in the wheel or about to be placed in it. The
+     * sweeper takes out the entries it finds stale, and the next reset puts
+     * them back.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean removed;
+
+    FreshnessEntry(Long tagId) {
+      this.tagId = tagId;
+    }
+  }
 }
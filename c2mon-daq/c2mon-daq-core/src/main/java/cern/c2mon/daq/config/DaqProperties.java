@@ -63,6 +63,61 @@ public class DaqProperties {
      * running in double publication mode)
      */
     private String secondaryUrl = "tcp://0.0.0.0:61617";
+
+    /**
+     * Maximum number of tag values waiting to be published in each of the
+     * buffers of the low priority tags. Once this capacity is reached, the
+     * equipment handlers wait until the buffered values are published (no
+     * value is dropped)
+     */
+    private int bufferCapacity = 100000;
+
+    /**
+     * Only publish the latest value of a tag received within a buffering
+     * window. Does not apply to the tags with guaranteed delivery, of which
+     * all the values are published. Note that the latest value takes the
+     * place of the first value of the tag in the window, so the values of
+     * different tags are not published in the order they were received
+     */
+    private boolean coalesceValues = false;
+
+    /**
+     * Send the tag updates in the compact binary encoding if the server
+     * accepts it (as announced on its reply to the connection request).
+     * Otherwise the updates are sent in JSON
+     */
+    private boolean binaryEncoding = true;
+  }
+
+  /**
+   * Equipment send pipeline properties
+   */
+  private final Pipeline pipeline = new Pipeline();
+
+  @Data
+  public static class Pipeline {
+
+    /**
+     * Validate, filter and buffer the tag updates of each equipment on
+     * threads of the equipment instead of the threads of the equipment
+     * handler. The updates of a tag are still processed in order. The update
+     * methods of the equipment message sender then return as soon as the
+     * update is queued, and thus return true even if the value is
+     * invalidated or filtered out
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of threads processing the tag updates of each equipment
+     */
+    private int threads = 2;
+
+    /**
+     * Maximum number of tag updates waiting for each of the threads of an
+     * equipment. If exceeded, the equipment handler waits until an update is
+     * processed
+     */
+    private int queueCapacity = 10000;
   }
 
   /**
@@ -30,11 +30,20 @@ public class JmsConfig {
     return new SingleConnectionFactory(activeMQConnectionFactory());
   }
 
+  /**
+   * The converter of the updates sent to the primary server, of which the
+   * encoding is chosen on the connection to the server.
+   */
   @Bean
-  public JmsTemplate sourceUpdateJmsTemplate() {
+  public DataTagValueUpdateConverter dataTagValueUpdateConverter() {
+    return new DataTagValueUpdateConverter();
+  }
+
+  @Bean
+  public JmsTemplate sourceUpdateJmsTemplate(DataTagValueUpdateConverter dataTagValueUpdateConverter) {
     JmsTemplate template = new JmsTemplate(singleConnectionFactory());
     template.setDefaultDestination(new ActiveMQQueue(properties.getJms().getQueuePrefix() + ".update." + properties.getName()));
-    template.setMessageConverter(new DataTagValueUpdateConverter());
+    template.setMessageConverter(dataTagValueUpdateConverter);
     return template;
   }
 
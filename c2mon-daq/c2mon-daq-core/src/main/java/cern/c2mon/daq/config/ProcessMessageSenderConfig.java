@@ -71,7 +71,7 @@ public class ProcessMessageSenderConfig {
   @Bean
   @Profile("single")
   public ProcessMessageSender singleMessageSender() {
-    ProcessMessageSender processMessageSender = new ProcessMessageSender();
+    ProcessMessageSender processMessageSender = new ProcessMessageSender(properties);
     processMessageSender.setJmsSenders(Collections.singletonList(activeJmsSender()));
     return processMessageSender;
   }
@@ -79,7 +79,7 @@ public class ProcessMessageSenderConfig {
   @Bean
   @Profile("double")
   public ProcessMessageSender doubleMessageSender() {
-    ProcessMessageSender processMessageSender = new ProcessMessageSender();
+    ProcessMessageSender processMessageSender = new ProcessMessageSender(properties);
     processMessageSender.setJmsSenders(Arrays.asList(activeJmsSender(), proxyJmsSender()));
     return processMessageSender;
   }
@@ -87,7 +87,7 @@ public class ProcessMessageSenderConfig {
   @Bean
   @Profile("test")
   public ProcessMessageSender testMessageSender() {
-    ProcessMessageSender processMessageSender = new ProcessMessageSender();
+    ProcessMessageSender processMessageSender = new ProcessMessageSender(properties);
     processMessageSender.setJmsSenders(Collections.singletonList(dummyJmsSender()));
     return processMessageSender;
   }
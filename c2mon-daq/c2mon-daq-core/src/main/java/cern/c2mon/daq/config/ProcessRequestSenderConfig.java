@@ -32,6 +32,7 @@ import cern.c2mon.daq.common.messaging.impl.ActiveMessageReceiver;
 import cern.c2mon.daq.common.messaging.impl.ActiveRequestSender;
 import cern.c2mon.daq.common.messaging.impl.DummyMessageReceiver;
 import cern.c2mon.daq.common.messaging.impl.TestModeRequestSender;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
 
 /**
  * This configuration class is responsible for instantiating the various
@@ -65,6 +66,9 @@ public class ProcessRequestSenderConfig {
   @Qualifier("secondProcessRequestJmsTemplate")
   private JmsTemplate secondProcessRequestJmsTemplate;
 
+  @Autowired
+  private DataTagValueUpdateConverter dataTagValueUpdateConverter;
+
   @Autowired
   @Qualifier("serverRequestListenerContainer")
   private DefaultMessageListenerContainer serverRequestJmsContainer;
@@ -72,7 +76,7 @@ public class ProcessRequestSenderConfig {
   @Bean(name = "primaryRequestSender")
   @Profile({ "single", "double" })
   public ProcessRequestSender primaryRequestSender() {
-    return new ActiveRequestSender(properties, processRequestJmsTemplate);
+    return new ActiveRequestSender(properties, processRequestJmsTemplate, dataTagValueUpdateConverter);
   }
 
   @Bean(name = "primaryRequestSender")
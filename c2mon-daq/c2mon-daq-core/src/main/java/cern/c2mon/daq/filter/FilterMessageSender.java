@@ -28,9 +28,9 @@ import lombok.extern.slf4j.Slf4j;
 import cern.c2mon.shared.common.filter.FilteredDataTagValue;
 import cern.c2mon.shared.common.process.ProcessConfiguration;
 import cern.c2mon.shared.daq.filter.FilteredDataTagValueUpdate;
+import cern.c2mon.shared.util.buffer.CoalescingRingBuffer;
 import cern.c2mon.shared.util.buffer.PullEvent;
 import cern.c2mon.shared.util.buffer.PullException;
-import cern.c2mon.shared.util.buffer.SynchroBuffer;
 import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 
 
@@ -47,17 +47,17 @@ import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 public abstract class FilterMessageSender implements IFilterMessageSender {
 
   /**
-   * The SynchroBuffer minimum window size.
+   * The buffer minimum window size.
    */
   private static final long MIN_WINDOW_SIZE = 200;
 
   /**
-   * The SynchroBuffer window growth factor.
+   * The buffer window growth factor.
    */
   private static final int WINDOW_GROWTH_FACTOR = 100;
 
   /**
-   * The maximum message delay for the filter module SynchroBuffer.
+   * The maximum message delay for the filter module buffer.
    */
   private static final long MAX_MESSAGE_DELAY = 1000;
 
@@ -70,7 +70,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   /**
    * The buffer used for collecting the tag update values before sending.
    */
-  private SynchroBuffer tagBuffer;
+  private CoalescingRingBuffer<FilteredDataTagValue> tagBuffer;
 
   private DaqProperties properties;
 
@@ -93,11 +93,11 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   @PostConstruct
   public void init() {
     Integer bufferCapacity = properties.getFilter().getBufferCapacity();
-    // set up and enable the synchrobuffer for storing the tags
-    log.debug("initializing filtering synchrobuffer with max delay :" + MAX_MESSAGE_DELAY + " and capacity : " + bufferCapacity);
+    // set up and enable the buffer for storing the tags (every filtered value is kept for the statistics)
+    log.debug("initializing filtering buffer with max delay :" + MAX_MESSAGE_DELAY + " and capacity : " + bufferCapacity);
 
-    tagBuffer = new SynchroBuffer(MIN_WINDOW_SIZE, MAX_MESSAGE_DELAY, WINDOW_GROWTH_FACTOR, SynchroBuffer.DUPLICATE_OK, bufferCapacity,
-        true);
+    tagBuffer = new CoalescingRingBuffer<>("FilterMessageSender", MIN_WINDOW_SIZE, MAX_MESSAGE_DELAY, WINDOW_GROWTH_FACTOR,
+        bufferCapacity, null, true);
     tagBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
     tagBuffer.enable();
   }
@@ -105,7 +105,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   /**
    * This method is called from other classes to pass a datatag value for
    * sending to the Filter module. It currently simply adds them to the
-   * SynchroBuffer.
+   * buffer.
    *
    * @param dataTagValue a datatag value to be sent
    */
@@ -129,7 +129,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   }
 
   /**
-   * Closes the SynchroBuffer on disconnecting.
+   * Closes the buffer on disconnecting.
    */
   protected void closeTagBuffer() {
     tagBuffer.disable();
@@ -144,8 +144,8 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   }
 
   /**
-   * This class is hooked up with the tagBuffer SynchroBuffer. When a
-   * PullEvent is triggered by the SynchroBuffer, the pull method below is
+   * This class is hooked up with the tagBuffer. When a
+   * PullEvent is triggered by the buffer, the pull method below is
    * called, which then processes all tag values in the buffer.
    *
    * @author mbrightw
@@ -156,7 +156,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
      * DataTagValueUpdate objects and forwards them to the processValues
      * method (which then sends them to the JMS broker).
      *
-     * @param event the PullEvent triggered by the SynchroBuffer
+     * @param event the PullEvent triggered by the buffer
      * @throws PullException exception in SychroBuffer pull method
      */
     @SuppressWarnings("unchecked")
@@ -16,10 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.daq.tools;
 
-import static java.lang.String.format;
-
 import java.util.Arrays;
 
+import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.DataTagDeadband;
 import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
@@ -27,7 +26,6 @@ import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.common.datatag.ValueUpdate;
 import cern.c2mon.shared.common.filter.FilteredDataTagValue.FilterType;
-import cern.c2mon.shared.common.type.TypeConverter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -62,109 +60,77 @@ public class DataTagValueFilter {
      * @return True if the value is filtered else false.
      */
     public boolean isValueDeadbandFiltered(final SourceDataTag currentTag, final ValueUpdate update) {
-        return isValueDeadbandFiltered(currentTag, update, new SourceDataTagQuality());
+        return isValueDeadbandFiltered(currentTag, update, SourceDataTagQualityCode.OK);
     }
 
     /**
      * This method is responsible for checking if the new value of the
      * particular SourceDataTag should be sent to the application server or not.
      * The decision is taken based on the deadband specification of the
-     * considered tag
+     * considered tag.
+     * <p>
+     * The last sent value and the new value are compared as primitives, so
+     * that the decision does not allocate anything. The values are already
+     * converted to the data type of the tag, hence a numeric tag is recognised
+     * by its current value.
      *
      * @return True if the value is filtered else false.
      */
     private boolean isValueDeadbandFiltered(final SourceDataTag currentTag, final ValueUpdate update,
-            final SourceDataTagQuality newSDQuality) {
-        if (log.isTraceEnabled()) {
-            log.trace(format("entering valueDeadbandFilterOut(%d)..", currentTag.getId()));
+            final SourceDataTagQualityCode newQualityCode) {
+        DataTagAddress address = currentTag.getAddress();
+        if (!address.isProcessValueDeadbandEnabled()) {
+            return false;
         }
 
-        boolean filterTag = false;
-        float valueDeadband;
-        if (currentTag.getAddress().isProcessValueDeadbandEnabled()) {
-
-            if (isCurrentValueAvailable(currentTag)
-                    && (currentTag.getCurrentValue().getQuality().getQualityCode() == newSDQuality.getQualityCode())) {
-                valueDeadband = currentTag.getAddress().getValueDeadband();
-
-                if (TypeConverter.isNumber(currentTag.getDataType())) {
-                    if (isCurrentValueAvailable(currentTag)) {
-                        Number currentValue = (Number) currentTag.getCurrentValue().getValue();
-                        Number newValue = update.getValue() == null ? null : (Number) update.getValue();
-                        // Switch between absolute and relative value deadband
-                        switch (currentTag.getAddress().getValueDeadbandType()) {
-                        case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE:
-                            filterTag = isAbsoluteValueDeadband(currentValue, newValue, valueDeadband);
-                            break;
-                        case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE_VALUE_DESCR_CHANGE:
-
-                            String tagValueDesc = currentTag.getCurrentValue().getValueDescription();
-                            if (tagValueDesc == null) {
-                                tagValueDesc = "";
-                            }
-
-                            String newValueDesc = update.getValueDescription();
-                            if (newValueDesc == null) {
-                                newValueDesc = "";
-                            }
-                            String currentValueDesc = currentTag.getCurrentValue().getValueDescription();
-                            if (currentValueDesc == null) {
-                                currentValueDesc = "";
-                            }
-
-                            // check if the value description has changed, if
-                            // yes - then do
-                            // not apply deadband filtering
-                            if (tagValueDesc.equals(newValueDesc)) {
-                                filterTag = isAbsoluteValueDeadband(currentValue, newValue, valueDeadband);
-                            }
-                            break;
-
-                        case DataTagDeadband.DEADBAND_PROCESS_RELATIVE:
-                            filterTag = isRelativeValueDeadband(currentValue, newValue, valueDeadband);
-                            break;
-                        case DataTagDeadband.DEADBAND_PROCESS_RELATIVE_VALUE_DESCR_CHANGE:
-
-                            tagValueDesc = currentTag.getCurrentValue().getValueDescription();
-                            if (tagValueDesc == null) {
-                                tagValueDesc = "";
-                            }
-
-                            newValueDesc = update.getValueDescription();
-                            if (newValueDesc == null) {
-                                newValueDesc = "";
-                            }
-                            currentValueDesc = currentTag.getCurrentValue().getValueDescription();
-                            if (currentValueDesc == null) {
-                                currentValueDesc = "";
-                            }
-
-                            // check if the value description has changed, if
-                            // yes - then do
-                            // not apply deadband filtering
-                            if (tagValueDesc.equals(newValueDesc)) {
-                                filterTag = isRelativeValueDeadband(currentValue, newValue, valueDeadband);
-                            }
-                            break;
-
-                        default:
-                            // do nothing
-                            break;
-                        }
-                    }
-                }
-
-            } // if
+        SourceDataTagValue currentSDValue = currentTag.getCurrentValue();
+        if (currentSDValue == null || !(currentSDValue.getValue() instanceof Number)
+                || currentSDValue.getQuality().getQualityCode() != newQualityCode) {
+            return false;
+        }
 
-        } // if
+        Number currentValue = (Number) currentSDValue.getValue();
+        Number newValue = update.getValue() instanceof Number ? (Number) update.getValue() : null;
+        boolean filterTag;
 
-        if (log.isTraceEnabled()) {
-            log.trace(format("leaving valueDeadbandFilterOut(%d); filter out = %b", currentTag.getId(), filterTag));
+        // Switch between absolute and relative value deadband
+        switch (address.getValueDeadbandType()) {
+        case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE:
+            filterTag = isAbsoluteValueDeadband(currentValue, newValue, address.getValueDeadband());
+            break;
+        case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE_VALUE_DESCR_CHANGE:
+            // No filtering if the value description has changed
+            filterTag = isSameValueDescription(currentSDValue.getValueDescription(), update.getValueDescription())
+                    && isAbsoluteValueDeadband(currentValue, newValue, address.getValueDeadband());
+            break;
+        case DataTagDeadband.DEADBAND_PROCESS_RELATIVE:
+            filterTag = isRelativeValueDeadband(currentValue, newValue, address.getValueDeadband());
+            break;
+        case DataTagDeadband.DEADBAND_PROCESS_RELATIVE_VALUE_DESCR_CHANGE:
+            // No filtering if the value description has changed
+            filterTag = isSameValueDescription(currentSDValue.getValueDescription(), update.getValueDescription())
+                    && isRelativeValueDeadband(currentValue, newValue, address.getValueDeadband());
+            break;
+        default:
+            filterTag = false;
+            break;
         }
 
+        log.trace("isValueDeadbandFiltered - Tag {} : filter out = {}", currentTag.getId(), filterTag);
         return filterTag;
     }
 
+    /**
+     * Compares two value descriptions, a <code>null</code> description being
+     * equal to an empty one.
+     */
+    private static boolean isSameValueDescription(final String currentValueDesc, final String newValueDesc) {
+        if (currentValueDesc == null || currentValueDesc.isEmpty()) {
+            return newValueDesc == null || newValueDesc.isEmpty();
+        }
+        return currentValueDesc.equals(newValueDesc);
+    }
+
     /**
      * Compares the value, quality and time stamp information of the current
      * {@link SourceDataTagValue} against the newly received quality
@@ -179,7 +145,7 @@ public class DataTagValueFilter {
      */
     public FilterType isCandidateForFiltering(final SourceDataTag currentTag, final ValueUpdate castedUpdate,
             final SourceDataTagQuality newSDQuality) {
-        log.debug("isCandidateForFiltering - entering isCandidateForFiltering() for tag #" + currentTag.getId());
+        log.debug("isCandidateForFiltering - entering isCandidateForFiltering() for tag #{}", currentTag.getId());
 
         SourceDataTagValue currentSDValue = currentTag.getCurrentValue();
 
@@ -197,8 +163,8 @@ public class DataTagValueFilter {
                     return result;
                 } else {
                     // The value will be filtered out by OLD_UPDATE
-                    log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                            + " - New timestamp is older than the current timestamp. Candidate for filtering");
+                    log.trace("isCandidateForFiltering - Tag {} - New timestamp is older than the current timestamp. Candidate for filtering",
+                            currentSDValue.getId());
                     return FilterType.OLD_UPDATE;
                 }
             }
@@ -210,8 +176,8 @@ public class DataTagValueFilter {
         // want
         // to filter
         else {
-            log.trace("isCandidateForFiltering - Tag " + currentTag.getId()
-                    + " - Current Source Data Tag Value null but we have a New value. Not candidate for filtering");
+            log.trace("isCandidateForFiltering - Tag {} - Current Source Data Tag Value null but we have a New value. Not candidate for filtering",
+                    currentTag.getId());
         }
 
         // We got a new quality information that we want to send to the server.
@@ -284,17 +250,17 @@ public class DataTagValueFilter {
             // Got a new value which is initializing our SourceDataTag. Hence we
             // do
             // not want to filter it out!
-            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                    + " - Current Value null but we have a New value. Not candidate for filtering");
+            log.trace("isCandidateForFiltering - Tag {} - Current Value null but we have a New value. Not candidate for filtering",
+                    currentSDValue.getId());
 
             return FilterType.NO_FILTERING;
         } else if (currentSDValue.getValue() != null && !currentSDValue.getValue().equals(update.getValue())) {
             // The two value are different, hence we do not want to filter it
             // out ...
             // unless the Value dead band filter said the opposite
-            if (isValueDeadbandFiltered(currentTag, update, newSDQuality)) {
-                log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                        + " - New value update but within value deadband filter. Candidate for filtering");
+            if (isValueDeadbandFiltered(currentTag, update, newSDQuality.getQualityCode())) {
+                log.trace("isCandidateForFiltering - Tag {} - New value update but within value deadband filter. Candidate for filtering",
+                        currentSDValue.getId());
 
                 return FilterType.VALUE_DEADBAND;
             }
@@ -302,9 +268,10 @@ public class DataTagValueFilter {
             // The two values are different, so it is clear we do not want to
             // filter
             // it out!
-            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                    + " - Both Values are different (Current vs New) = (" + currentSDValue.getValue() + " vs "
-                    + update.getValue() + "). Not candidate for filtering");
+            if (log.isTraceEnabled()) {
+                log.trace("isCandidateForFiltering - Tag {} - Both Values are different (Current vs New) = ({} vs {}). Not candidate for filtering",
+                        currentSDValue.getId(), currentSDValue.getValue(), update.getValue());
+            }
 
             return FilterType.NO_FILTERING;
         }
@@ -332,8 +299,8 @@ public class DataTagValueFilter {
             // Got a new value which is initializing our SourceDataTag. Hence we
             // do
             // not want to filter it out!
-            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                    + " - Current Value null but we have a New value. Not candidate for filtering");
+            log.trace("isCandidateForFiltering - Tag {} - Current Value null but we have a New value. Not candidate for filtering",
+                    currentSDValue.getId());
 
             return FilterType.NO_FILTERING;
         }
@@ -343,9 +310,10 @@ public class DataTagValueFilter {
 
             if (!Arrays.equals((Object[]) currentSDValue.getValue(), (Object[]) newValue)) {
 
-                log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                        + " - Both Values are different (Current vs New) = (" + currentSDValue.getValue() + " vs "
-                        + newValue + "). Not candidate for filtering");
+                if (log.isTraceEnabled()) {
+                    log.trace("isCandidateForFiltering - Tag {} - Both Values are different (Current vs New) = ({} vs {}). Not candidate for filtering",
+                            currentSDValue.getId(), currentSDValue.getValue(), newValue);
+                }
 
                 return FilterType.NO_FILTERING;
             }
@@ -355,9 +323,10 @@ public class DataTagValueFilter {
 
             if (!currentSDValue.getValue().equals(newValue)) {
 
-                log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                        + " - Both Values are different (Current vs New) = (" + currentSDValue.getValue() + " vs "
-                        + newValue + "). Not candidate for filtering");
+                if (log.isTraceEnabled()) {
+                    log.trace("isCandidateForFiltering - Tag {} - Both Values are different (Current vs New) = ({} vs {}). Not candidate for filtering",
+                            currentSDValue.getId(), currentSDValue.getValue(), newValue);
+                }
 
                 return FilterType.NO_FILTERING;
             }
@@ -383,8 +352,8 @@ public class DataTagValueFilter {
              */
 
             // The two value Descriptions are different
-            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                    + " - Both Values are equal but Value Descriptions are different. Not candidate for filtering");
+            log.trace("isCandidateForFiltering - Tag {} - Both Values are equal but Value Descriptions are different. Not candidate for filtering",
+                    currentSDValue.getId());
 
             return FilterType.NO_FILTERING;
         }
@@ -401,8 +370,8 @@ public class DataTagValueFilter {
             if ((currentSDValue.getQuality().getQualityCode() == newSDQuality.getQualityCode())) {
                 // Only checks description is Quality is invalid
                 if (!newSDQuality.isValid()) {
-                    log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                            + " - Both Value, Value Description and Quality codes are equal. Check Quality Descriptions to take a decision");
+                    log.trace("isCandidateForFiltering - Tag {} - Both Value, Value Description and Quality codes are equal. Check Quality Descriptions to take a decision",
+                            currentSDValue.getId());
 
                     // Check if quality description did not change. If it is not
                     // null we
@@ -413,13 +382,13 @@ public class DataTagValueFilter {
                         // both are null or not
                         if (newSDQuality.getDescription() == null) {
                             // We filter out since both are the same and null
-                            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                                    + " - Both Quality Descriptions are null. Candidate for filtering");
+                            log.trace("isCandidateForFiltering - Tag {} - Both Quality Descriptions are null. Candidate for filtering",
+                                    currentSDValue.getId());
 
                             return FilterType.REPEATED_INVALID;
                         } else {
-                            log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                                    + " - Current Quality Description null but we have a New Quality Description. Not candidate for filtering");
+                            log.trace("isCandidateForFiltering - Tag {} - Current Quality Description null but we have a New Quality Description. Not candidate for filtering",
+                                    currentSDValue.getId());
 
                             // Goes directly to the final return
                         }
@@ -430,27 +399,27 @@ public class DataTagValueFilter {
                         // If we are here, it means we have received a redundant
                         // quality
                         // code and description ==> should be filtered out.
-                        log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                                + " - Both Value, Value Description, Quality and Quality Descriptions are equal. Candidate for filtering");
+                        log.trace("isCandidateForFiltering - Tag {} - Both Value, Value Description, Quality and Quality Descriptions are equal. Candidate for filtering",
+                                currentSDValue.getId());
 
                         return FilterType.REPEATED_INVALID;
                     } else {
-                        log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                                + " - Current Quality Description and New Quality Description are different. Not candidate for filtering");
+                        log.trace("isCandidateForFiltering - Tag {} - Current Quality Description and New Quality Description are different. Not candidate for filtering",
+                                currentSDValue.getId());
 
                         // Goes directly to the final return
                     }
                 } else {
-                    log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                            + " - Both Value, Value Description and Quality codes (OK) are equal");
+                    log.trace("isCandidateForFiltering - Tag {} - Both Value, Value Description and Quality codes (OK) are equal",
+                            currentSDValue.getId());
 
                     return FilterType.REPEATED_VALUE;
                 }
             }
             // Different Quality Codes
             else {
-                log.trace("isCandidateForFiltering - Tag " + currentSDValue.getId()
-                        + " - Both Value and Value Description are equal but Quality Codes are different. Not candidate for filtering");
+                log.trace("isCandidateForFiltering - Tag {} - Both Value and Value Description are equal but Quality Codes are different. Not candidate for filtering",
+                        currentSDValue.getId());
             }
         }
         return filtering;
@@ -470,62 +439,49 @@ public class DataTagValueFilter {
      */
     public boolean isAbsoluteValueDeadband(final Number currentValue, final Number newValue,
             final float valueDeadband) {
-        log.trace("entering isAbsoluteValueDeadband()..");
-        Double delta = null;
-        // No filtering if either value is null, as no comparison would be valid
-        if (currentValue != null && newValue != null) {
-            // Calculate a sensible delta (as long as incoming values wouldn't
-            // cause a loss of precision when subtracted).
-            delta = calculateDelta(currentValue, newValue);
-        }
-        boolean isAbsoluteValueDeadband = delta != null && delta < valueDeadband;
-        log.trace("leaving isAbsoluteValueDeadband().. Result: " + isAbsoluteValueDeadband);
+        // No filtering if either value is null, as no comparison would be valid.
+        // A NaN delta (no sensible delta) is never within the deadband.
+        boolean isAbsoluteValueDeadband = currentValue != null && newValue != null
+                && calculateDelta(currentValue, newValue) < valueDeadband;
+        log.trace("isAbsoluteValueDeadband - Result: {}", isAbsoluteValueDeadband);
         return isAbsoluteValueDeadband;
     }
 
     /**
      * We try to calculate the delta on a per-data type basis so as to reduce
-     * the risk of precision loss when converting to double.
-     * 
+     * the risk of precision loss when converting to double. The values are
+     * unboxed once and the delta is computed on primitives.
+     *
      * @param currentValue
      *            The current value.
      * @param newValue
      *            The new value.
-     * @return <code>null</code> if no sensible delta could be calculated (e.g.
-     *         loss of precision conversion), a Double with the delta otherwise.
+     * @return {@link Double#NaN} if no sensible delta could be calculated
+     *         (e.g. loss of precision conversion), the delta otherwise.
      */
-    private Double calculateDelta(final Number currentValue, final Number newValue) {
+    private static double calculateDelta(final Number currentValue, final Number newValue) {
         // Note that Integer to Float, and Long to Double require particular
         // attention, as they can incur a loss of precision
-        if (willCausePrecisionLoss(currentValue, newValue)) {
+        if (willCausePrecisionLoss(currentValue) || willCausePrecisionLoss(newValue)) {
             log.trace(
                     "Possible loss of precision detected on incoming values when evaluating against a float deadband");
-            return null;
-
+            return Double.NaN;
         }
-        Double result = null;
 
-        switch (currentValue.getClass().getName()) {
-        case "java.lang.Integer":
-            result = Math.abs((double) (currentValue.intValue() - newValue.intValue()));
-            break;
-        case "java.lang.Long":
-            result = Math.abs((double) (currentValue.longValue() - newValue.longValue()));
-            break;
-        case "java.lang.Byte":
-            result = Math.abs((double) ((byte) (currentValue.byteValue() - newValue.byteValue())));
-            break;
-        case "java.lang.Float":
-            result = Math.abs((double) (currentValue.floatValue() - newValue.floatValue()));
-            break;
-        case "java.lang.Double":
-            result = Math.abs(currentValue.doubleValue() - newValue.doubleValue());
-            break;
-        default:
-            log.trace("Incoming numeric value of unknown type " + currentValue.getClass().getName());
+        if (currentValue instanceof Integer) {
+            return Math.abs((double) (currentValue.intValue() - newValue.intValue()));
+        } else if (currentValue instanceof Long) {
+            return Math.abs((double) (currentValue.longValue() - newValue.longValue()));
+        } else if (currentValue instanceof Byte) {
+            return Math.abs((double) ((byte) (currentValue.byteValue() - newValue.byteValue())));
+        } else if (currentValue instanceof Float) {
+            return Math.abs((double) (currentValue.floatValue() - newValue.floatValue()));
+        } else if (currentValue instanceof Double) {
+            return Math.abs(currentValue.doubleValue() - newValue.doubleValue());
         }
 
-        return result;
+        log.trace("Incoming numeric value of unknown type {}", currentValue.getClass().getName());
+        return Double.NaN;
     }
 
     /**
@@ -539,28 +495,25 @@ public class DataTagValueFilter {
      */
     static boolean willCausePrecisionLoss(final Number... values) {
         for (int i = 0; i < values.length; i++) {
-            if (values[i] instanceof Integer) {
-                Integer eval = (Integer) values[i];
-                if (eval < 0) {
-                    eval *= -1;
-                }
-                if (Integer.numberOfLeadingZeros(eval) + Integer.numberOfTrailingZeros(eval) < 8) {
-                    return true;
-                }
-            }
-            if (values[i] instanceof Long) {
-                Long eval = (Long) values[i];
-                if (eval < 0) {
-                    eval *= -1;
-                }
-                if (Long.numberOfLeadingZeros(eval) + Long.numberOfTrailingZeros(eval) < 11) {
-                    return true;
-                }
+            if (willCausePrecisionLoss(values[i])) {
+                return true;
             }
         }
         return false;
     }
 
+    private static boolean willCausePrecisionLoss(final Number value) {
+        if (value instanceof Integer) {
+            int eval = Math.abs(value.intValue());
+            return Integer.numberOfLeadingZeros(eval) + Integer.numberOfTrailingZeros(eval) < 8;
+        }
+        if (value instanceof Long) {
+            long eval = Math.abs(value.longValue());
+            return Long.numberOfLeadingZeros(eval) + Long.numberOfTrailingZeros(eval) < 11;
+        }
+        return false;
+    }
+
     /**
      * Returns true if difference of the values is higher than the current value
      * multiplied with the time deadband (divided by 100).
@@ -575,7 +528,6 @@ public class DataTagValueFilter {
      */
     public boolean isRelativeValueDeadband(final Number currentValue, final Number newValue,
             final float valueDeadband) {
-        log.trace("entering isRelativeValueDeadband()..");
         boolean isRelativeValueDeadband = false;
         if (currentValue == null || newValue == null) {
             // do nothing
@@ -586,30 +538,13 @@ public class DataTagValueFilter {
             if (curDoubleValue != 0) {
                 // valueDeadband divided by 100 to go from % to a factor
                 double maxDiff = curDoubleValue * valueDeadband * PERCENTAGE_FACTOR;
-                Double realDiff = calculateDelta(currentValue, newValue);
-                isRelativeValueDeadband = realDiff != null && realDiff < maxDiff;
+                isRelativeValueDeadband = calculateDelta(currentValue, newValue) < maxDiff;
             }
         }
-        log.trace("leaving isRelativeValueDeadband().. Result: " + isRelativeValueDeadband);
+        log.trace("isRelativeValueDeadband - Result: {}", isRelativeValueDeadband);
         return isRelativeValueDeadband;
     }
 
-    /**
-     * Checks if there is a not null value for this tag.
-     *
-     * @param tag
-     *            The tag to check.
-     * @return Returns true if a not null value is available else false.
-     */
-    private boolean isCurrentValueAvailable(final SourceDataTag tag) {
-        boolean isAvailable = (tag.getCurrentValue() != null) && (tag.getCurrentValue().getValue() != null);
-
-        if (log.isTraceEnabled())
-            log.trace(format("isCurrentValueAvailable - Tag %d : %b", tag.getId(), isAvailable));
-
-        return isAvailable;
-    }
-
     /**
      * Checks if the new Timestamp is older than the current one and if so it
      * checks the Quality code to decide if the value has to be filtered out or
@@ -639,8 +574,8 @@ public class DataTagValueFilter {
 
         // if New TS is older to the current TS we may have a filtering use case
         if (newTimestamp < currentTimestamp) {
-            log.trace("isOlderUpdate - New timestamp is older or equal than current TS (" + newTimestamp + ", "
-                    + currentTimestamp + ")");
+            log.trace("isOlderUpdate - New timestamp is older or equal than current TS ({}, {})",
+                    newTimestamp, currentTimestamp);
             // New timestamp is older or equal than current TS. Check the
             // Quality
             if (currentSDQuality.getQualityCode() == SourceDataTagQualityCode.DATA_UNAVAILABLE) {
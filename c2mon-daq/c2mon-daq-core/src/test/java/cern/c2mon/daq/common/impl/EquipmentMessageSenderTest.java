@@ -18,6 +18,7 @@ package cern.c2mon.daq.common.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 
 import cern.c2mon.daq.common.timer.FreshnessMonitor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -263,7 +264,8 @@ public class EquipmentMessageSenderTest {
     lowDynamicTimeDeadbandFilterActivatorMock.newTagValueSent(sdt1.getId());
     expectLastCall().times(3);
 
-    processMessageSenderMock.addValue(isA(SourceDataTagValue.class));
+    // Sent by the time deadband wheel, one batch per value
+    processMessageSenderMock.addValues(anyObject(Collection.class));
     expectLastCall().times(3);
     filterMessageSenderMock.addValue(isA(FilteredDataTagValue.class));
     expectLastCall().times(1);
@@ -304,7 +306,8 @@ public class EquipmentMessageSenderTest {
   public void testSendValidInvalidTagTimeDeadbandEnabled() throws Exception {
     lowDynamicTimeDeadbandFilterActivatorMock.newTagValueSent(sdt1.getId());
     expectLastCall().times(3);
-    processMessageSenderMock.addValue(isA(SourceDataTagValue.class));
+    // Sent by the time deadband wheel, one batch per value
+    processMessageSenderMock.addValues(anyObject(Collection.class));
     expectLastCall().times(3);
 
     this.sdt1.getAddress().setTimeDeadband(1);
@@ -338,7 +341,8 @@ public class EquipmentMessageSenderTest {
   public void testSendValidInvalidValidTagTimeDeadbandEnabled() throws Exception {
     lowDynamicTimeDeadbandFilterActivatorMock.newTagValueSent(sdt1.getId());
     expectLastCall().times(4);
-    processMessageSenderMock.addValue(isA(SourceDataTagValue.class));
+    // Sent by the time deadband wheel, one batch per value
+    processMessageSenderMock.addValues(anyObject(Collection.class));
     expectLastCall().times(4);
 
     this.sdt1.getAddress().setTimeDeadband(1);
@@ -379,8 +383,9 @@ public class EquipmentMessageSenderTest {
   public void testSendInvalidTimeDeadbandEnabledDisable() throws Exception {
     lowDynamicTimeDeadbandFilterActivatorMock.newTagValueSent(sdt1.getId());
     expectLastCall().times(2);
+    // Sent by the time deadband wheel, one batch per value
+    processMessageSenderMock.addValues(anyObject(Collection.class));
     processMessageSenderMock.addValue(isA(SourceDataTagValue.class));
-    expectLastCall().times(2);
 
     this.sdt1.getAddress().setTimeDeadband(1);
     this.sdt1.update(new ValueUpdate(true));
@@ -411,8 +416,9 @@ public class EquipmentMessageSenderTest {
   public void testSendValidTimeDeadbandEnabledDisable() throws Exception {
     lowDynamicTimeDeadbandFilterActivatorMock.newTagValueSent(sdt1.getId());
     expectLastCall().times(2);
+    // Sent by the time deadband wheel, one batch per value
+    processMessageSenderMock.addValues(anyObject(Collection.class));
     processMessageSenderMock.addValue(isA(SourceDataTagValue.class));
-    expectLastCall().times(2);
 
     this.sdt1.getAddress().setTimeDeadband(1);
     this.sdt1.update(new ValueUpdate(true));
@@ -0,0 +1,244 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.daq.common.timer.FreshnessMonitor;
+import cern.c2mon.daq.config.DaqProperties;
+import cern.c2mon.daq.filter.IFilterMessageSender;
+import cern.c2mon.daq.filter.dynamic.IDynamicTimeDeadbandFilterActivator;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+import cern.c2mon.shared.common.datatag.DataTagDeadband;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.process.EquipmentConfiguration;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ordering and hand-off of the tag updates by the
+ * {@link EquipmentSenderPipeline}, alone and behind the
+ * {@link EquipmentMessageSender}.
+ */
+public class EquipmentSenderPipelineTest {
+
+  private EquipmentSenderPipeline pipeline;
+
+  @After
+  public void tearDown() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+    }
+  }
+
+  @Test
+  public void testUpdatesOfATagProcessedInOrder() throws InterruptedException {
+    pipeline = new EquipmentSenderPipeline("test", 3, 64);
+    Map<Long, List<Integer>> processed = new ConcurrentHashMap<>();
+
+    List<Thread> producers = new ArrayList<>();
+    for (long tagId = 0; tagId < 8; tagId++) {
+      long id = tagId;
+      processed.put(id, new ArrayList<>());
+      producers.add(new Thread(() -> {
+        for (int i = 0; i < 5000; i++) {
+          int sequence = i;
+          pipeline.execute(id, () -> processed.get(id).add(sequence));
+        }
+      }));
+    }
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    pipeline.flush();
+
+    assertEquals(0, pipeline.getSize());
+    for (List<Integer> sequences : processed.values()) {
+      assertEquals(5000, sequences.size());
+      for (int i = 0; i < sequences.size(); i++) {
+        assertEquals(i, sequences.get(i).intValue());
+      }
+    }
+  }
+
+  @Test
+  public void testUpdateFromLaneRunImmediately() throws InterruptedException {
+    pipeline = new EquipmentSenderPipeline("test", 1, 2);
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    pipeline.execute(1L, () -> {
+      events.add("valid");
+      // e.g. the invalidation of a value found out of range
+      pipeline.execute(1L, () -> events.add("invalid"));
+      events.add("end");
+    });
+    pipeline.flush();
+
+    assertEquals(3, events.size());
+    assertEquals("invalid", events.get(1));
+  }
+
+  @Test
+  public void testFullLaneBlocksSubmitter() throws InterruptedException {
+    pipeline = new EquipmentSenderPipeline("test", 1, 2);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+
+    pipeline.execute(1L, () -> {
+      blocked.countDown();
+      await(release);
+    });
+    assertTrue(blocked.await(1, TimeUnit.SECONDS));
+
+    AtomicBoolean submitted = new AtomicBoolean();
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < 5; i++) {
+        int sequence = i;
+        pipeline.execute(1L, () -> processed.add(sequence));
+      }
+      submitted.set(true);
+    });
+    producer.start();
+
+    Thread.sleep(200);
+    assertFalse(submitted.get());
+    assertTrue(processed.isEmpty());
+
+    release.countDown();
+    producer.join(1000);
+    assertTrue(submitted.get());
+    pipeline.flush();
+    assertEquals(5, processed.size());
+  }
+
+  @Test
+  public void testErrorDoesNotStopLane() {
+    pipeline = new EquipmentSenderPipeline("test", 1, 2);
+    List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+
+    pipeline.execute(1L, () -> {
+      throw new Error("test");
+    });
+    for (int i = 0; i < 5; i++) {
+      int sequence = i;
+      pipeline.execute(1L, () -> processed.add(sequence));
+    }
+    pipeline.flush();
+
+    assertEquals(5, processed.size());
+    assertEquals(0, pipeline.getSize());
+  }
+
+  @Test
+  public void testShutdownProcessesWaitingUpdates() throws InterruptedException {
+    pipeline = new EquipmentSenderPipeline("test", 2, 1024);
+    List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 1000; i++) {
+      int sequence = i;
+      pipeline.execute(i, () -> processed.add(sequence));
+    }
+    pipeline.shutdown();
+    assertEquals(1000, processed.size());
+
+    // later updates are run by the caller
+    List<String> threads = new ArrayList<>();
+    pipeline.execute(1L, () -> threads.add(Thread.currentThread().getName()));
+    assertEquals(Collections.singletonList(Thread.currentThread().getName()), threads);
+  }
+
+  @Test
+  public void testEquipmentMessageSenderUpdatesThroughPipeline() {
+    List<SourceDataTagValue> sent = Collections.synchronizedList(new ArrayList<>());
+    List<String> senderThreads = Collections.synchronizedList(new ArrayList<>());
+    IProcessMessageSender processMessageSenderMock = createNiceMock(IProcessMessageSender.class);
+    processMessageSenderMock.addValue(anyObject(SourceDataTagValue.class));
+    expectLastCall().andAnswer(() -> {
+      sent.add((SourceDataTagValue) getCurrentArguments()[0]);
+      senderThreads.add(Thread.currentThread().getName());
+      return null;
+    }).anyTimes();
+    replay(processMessageSenderMock);
+
+    IDynamicTimeDeadbandFilterActivator activatorMock = createNiceMock(IDynamicTimeDeadbandFilterActivator.class);
+    FreshnessMonitor freshnessMonitorMock = createNiceMock(FreshnessMonitor.class);
+    replay(activatorMock, freshnessMonitorMock);
+
+    DaqProperties properties = new DaqProperties();
+    properties.getPipeline().setEnabled(true);
+    EquipmentMessageSender equipmentMessageSender = new EquipmentMessageSender(createNiceMock(IFilterMessageSender.class),
+        processMessageSenderMock, activatorMock, activatorMock, freshnessMonitorMock, properties);
+
+    EquipmentConfiguration equipmentConfiguration = new EquipmentConfiguration();
+    equipmentConfiguration.setId(1L);
+    equipmentConfiguration.setName("EQ");
+    equipmentConfiguration.setAliveTagId(100L);
+    DataTagAddress address = new DataTagAddress(null, 100, DataTagDeadband.DEADBAND_NONE, 0, 0, DataTagConstants.PRIORITY_LOW, false);
+    SourceDataTag tag = new SourceDataTag(1L, "tag", false, DataTagConstants.MODE_OPERATIONAL, "Integer", address);
+    equipmentConfiguration.getDataTags().put(1L, tag);
+    equipmentMessageSender.init(equipmentConfiguration);
+
+    long timestamp = System.currentTimeMillis() - 1000;
+    for (int i = 0; i < 100; i++) {
+      assertTrue(equipmentMessageSender.update(1L, new ValueUpdate(i, timestamp + i)));
+    }
+    equipmentMessageSender.update(1L, new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE), timestamp + 100);
+    equipmentMessageSender.shutdown();
+
+    assertEquals(101, sent.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, sent.get(i).getValue());
+    }
+    assertEquals(SourceDataTagQualityCode.DATA_UNAVAILABLE, sent.get(100).getQuality().getQualityCode());
+    assertEquals(99, sent.get(100).getValue());
+    assertTrue(senderThreads.get(0).startsWith("EquipmentSender-EQ"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.IDynamicTimeDeadbandFilterer;
+import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.daq.filter.IFilterMessageSender;
+import cern.c2mon.daq.tools.DataTagValueFilter;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+import cern.c2mon.shared.common.datatag.DataTagDeadband;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sending of the time deadband filtered values by the
+ * {@link TimeDeadbandWheel}, with a time deadband of 200 ms.
+ */
+public class TimeDeadbandWheelTest {
+
+  private static final int TIME_DEADBAND = 200;
+
+  private TimeDeadbandWheel wheel;
+
+  private IProcessMessageSender processMessageSenderMock;
+
+  private EquipmentSenderFilterModule equipmentSenderFilterModule;
+
+  private IDynamicTimeDeadbandFilterer dynamicTimeDeadbandFiltererMock;
+
+  private final Map<Long, SourceDataTag> tags = new HashMap<>();
+
+  private final List<Collection<SourceDataTagValue>> batches = Collections.synchronizedList(new ArrayList<>());
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    wheel = new TimeDeadbandWheel();
+
+    processMessageSenderMock = createNiceMock(IProcessMessageSender.class);
+    processMessageSenderMock.addValues(anyObject(Collection.class));
+    expectLastCall().andAnswer(() -> {
+      batches.add(new ArrayList<>((Collection<SourceDataTagValue>) getCurrentArguments()[0]));
+      return null;
+    }).anyTimes();
+
+    dynamicTimeDeadbandFiltererMock = createNiceMock(IDynamicTimeDeadbandFilterer.class);
+    replay(processMessageSenderMock, dynamicTimeDeadbandFiltererMock);
+
+    equipmentSenderFilterModule = new EquipmentSenderFilterModule(createNiceMock(IFilterMessageSender.class));
+  }
+
+  @Test
+  public void testValueSentAtEndOfDeadband() throws InterruptedException {
+    SDTTimeDeadbandScheduler scheduler = createScheduler(1L);
+    scheduler.start();
+    Thread.sleep(20);
+
+    update(1L, scheduler, 1);
+    assertEquals(1, wheel.getPendingTags());
+    Thread.sleep(100);
+    assertEquals(0, countValues());
+
+    Thread.sleep(200);
+    assertEquals(1, countValues());
+    assertEquals(0, wheel.getPendingTags());
+  }
+
+  @Test
+  public void testLastValueOfDeadbandSent() throws InterruptedException {
+    SDTTimeDeadbandScheduler scheduler = createScheduler(1L);
+    scheduler.start();
+    Thread.sleep(20);
+
+    update(1L, scheduler, 1);
+    update(1L, scheduler, 2);
+    update(1L, scheduler, 3);
+    assertEquals(1, wheel.getPendingTags());
+
+    Thread.sleep(300);
+    assertEquals(1, countValues());
+    assertEquals(3, batches.get(0).iterator().next().getValue());
+  }
+
+  @Test
+  public void testCancelledSchedulerNotSent() throws InterruptedException {
+    SDTTimeDeadbandScheduler scheduler = createScheduler(1L);
+    scheduler.start();
+    Thread.sleep(20);
+
+    update(1L, scheduler, 1);
+    scheduler.cancel();
+    Thread.sleep(300);
+    assertEquals(0, countValues());
+  }
+
+  @Test
+  public void testValuesOfSeveralTagsSentTogether() throws InterruptedException {
+    List<SDTTimeDeadbandScheduler> schedulers = new ArrayList<>();
+    for (long id = 1; id <= 10; id++) {
+      SDTTimeDeadbandScheduler scheduler = createScheduler(id);
+      scheduler.start();
+      schedulers.add(scheduler);
+    }
+    Thread.sleep(20);
+
+    for (int i = 0; i < schedulers.size(); i++) {
+      update(i + 1, schedulers.get(i), 1);
+    }
+    assertEquals(10, wheel.getPendingTags());
+    Thread.sleep(300);
+
+    assertEquals(10, countValues());
+    // The tags started within a few milliseconds are due at the same tick
+    assertTrue(batches.size() <= 2);
+  }
+
+  private SDTTimeDeadbandScheduler createScheduler(long id) {
+    DataTagAddress address = new DataTagAddress(null, 100, DataTagDeadband.DEADBAND_NONE, 0, TIME_DEADBAND,
+        DataTagConstants.PRIORITY_LOW, false);
+    SourceDataTag tag = new SourceDataTag(id, "tag" + id, false, DataTagConstants.MODE_OPERATIONAL, "Integer", address);
+    tags.put(id, tag);
+    return new SDTTimeDeadbandScheduler(tag, processMessageSenderMock, equipmentSenderFilterModule, wheel,
+        new DataTagValueFilter(), dynamicTimeDeadbandFiltererMock);
+  }
+
+  private void update(long id, SDTTimeDeadbandScheduler scheduler, int value) {
+    tags.get(id).update(new ValueUpdate(value, "", System.currentTimeMillis()));
+    scheduler.scheduleValueForSending();
+  }
+
+  private int countValues() {
+    synchronized (batches) {
+      return batches.stream().mapToInt(Collection::size).sum();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package cern.c2mon.daq.common.timer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.config.DaqProperties;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the STALE updates sent by the {@link FreshnessMonitor}, with a
+ * freshness interval of 1 second and a tolerance of 0.3, i.e. a timeout of
+ * 300 ms.
+ */
+public class FreshnessMonitorTest {
+
+  private FreshnessMonitor freshnessMonitor;
+
+  private SourceDataTag tag;
+
+  private final AtomicInteger staleUpdates = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    DaqProperties properties = new DaqProperties();
+    properties.setFreshnessTolerance(0.3);
+    freshnessMonitor = new FreshnessMonitor(properties);
+
+    IEquipmentMessageSender sender = createNiceMock(IEquipmentMessageSender.class);
+    sender.update(eq(1L), anyObject(SourceDataTagQuality.class));
+    expectLastCall().andAnswer(() -> {
+      staleUpdates.incrementAndGet();
+      return null;
+    }).anyTimes();
+    replay(sender);
+    freshnessMonitor.setIEquipmentMessageSender(sender);
+
+    DataTagAddress address = new DataTagAddress();
+    address.setFreshnessInterval(1);
+    tag = new SourceDataTag(1L, "tag", false);
+    tag.setAddress(address);
+  }
+
+  @Test
+  public void testStaleOnceWithoutUpdate() throws InterruptedException {
+    freshnessMonitor.reset(tag);
+    Thread.sleep(1000);
+    assertEquals(1, staleUpdates.get());
+  }
+
+  @Test
+  public void testNotStaleWhileUpdated() throws InterruptedException {
+    for (int i = 0; i < 20; i++) {
+      freshnessMonitor.reset(tag);
+      Thread.sleep(50);
+    }
+    assertEquals(0, staleUpdates.get());
+  }
+
+  @Test
+  public void testStaleAgainAfterUpdate() throws InterruptedException {
+    freshnessMonitor.reset(tag);
+    Thread.sleep(600);
+    assertEquals(1, staleUpdates.get());
+
+    freshnessMonitor.reset(tag);
+    Thread.sleep(100);
+    assertEquals(1, staleUpdates.get());
+    Thread.sleep(500);
+    assertEquals(2, staleUpdates.get());
+  }
+
+  @Test
+  public void testRemovedTag() throws InterruptedException {
+    freshnessMonitor.reset(tag);
+    freshnessMonitor.removeDataTag(tag);
+    Thread.sleep(600);
+    assertEquals(0, staleUpdates.get());
+  }
+
+  @Test
+  public void testFreshnessIntervalRemoved() throws InterruptedException {
+    freshnessMonitor.reset(tag);
+    tag.getAddress().setFreshnessInterval(null);
+    freshnessMonitor.reset(tag);
+    Thread.sleep(600);
+    assertEquals(0, staleUpdates.get());
+  }
+}
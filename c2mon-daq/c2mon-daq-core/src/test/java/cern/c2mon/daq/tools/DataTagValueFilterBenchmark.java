@@ -0,0 +1,127 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.filter.FilteredDataTagValue.FilterType;
+
+/**
+ * Cost per value of the value deadband filtering of the
+ * {@link DataTagValueFilter}, for the numeric data types and the deadband
+ * types. Half of the updates are within the deadband.
+ * <p>
+ * The updates are created in the setup, so that only the filtering is
+ * measured. The benchmarks are run from the module directory with:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) org.openjdk.jmh.Main DataTagValueFilterBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTagValueFilterBenchmark {
+
+  private static final int UPDATES = 1024;
+
+  @Param({"Integer", "Long", "Float", "Double"})
+  private String dataType;
+
+  /**
+   * The deadband type: 1 (absolute), 2 (relative), 5 (absolute with value
+   * description change) or 6 (relative with value description change).
+   */
+  @Param({"1", "2", "5", "6"})
+  private short deadbandType;
+
+  private final DataTagValueFilter filter = new DataTagValueFilter();
+
+  private final SourceDataTagQuality quality = new SourceDataTagQuality();
+
+  private SourceDataTag tag;
+
+  private final ValueUpdate[] updates = new ValueUpdate[UPDATES];
+
+  private int next;
+
+  @Setup
+  public void setUp() {
+    DataTagAddress address = new DataTagAddress();
+    address.setValueDeadbandType(deadbandType);
+    address.setValueDeadband(deadbandType == 1 || deadbandType == 5 ? 10f : 1f);
+
+    tag = new SourceDataTag(1L, "tag", false);
+    tag.setDataType(dataType);
+    tag.setAddress(address);
+    tag.update(new ValueUpdate(toDataType(1000), "description", System.currentTimeMillis()));
+
+    long timestamp = System.currentTimeMillis() + 1000;
+    for (int i = 0; i < UPDATES; i++) {
+      // Within the deadband for the even updates, outside for the odd ones
+      int value = i % 2 == 0 ? 1001 + (i % 4) : 1100 + i;
+      updates[i] = new ValueUpdate(toDataType(value), "description", timestamp);
+    }
+  }
+
+  private Number toDataType(final int value) {
+    switch (dataType) {
+      case "Long":
+        return (long) value;
+      case "Float":
+        return (float) value;
+      case "Double":
+        return (double) value;
+      default:
+        return value;
+    }
+  }
+
+  private ValueUpdate nextUpdate() {
+    return updates[next++ & (UPDATES - 1)];
+  }
+
+  @Benchmark
+  public boolean isValueDeadbandFiltered() {
+    return filter.isValueDeadbandFiltered(tag, nextUpdate());
+  }
+
+  @Benchmark
+  public FilterType isCandidateForFiltering() {
+    return filter.isCandidateForFiltering(tag, nextUpdate(), quality);
+  }
+}
@@ -5,6 +5,13 @@ import static org.junit.Assert.*;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagDeadband;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
 public class DataTagValueFilterTest {
 	DataTagValueFilter dvf = new DataTagValueFilter();
 	
@@ -58,6 +65,35 @@ public class DataTagValueFilterTest {
 		
 	}
 	
+	@Test
+	public void testIsValueDeadbandFiltered() {
+		SourceDataTag tag = createTag("Double", DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE_VALUE_DESCR_CHANGE, 1f);
+		tag.update(new ValueUpdate(10.0, null, 1L));
+
+		assertTrue("Value within the deadband should be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(10.5, "", 2L)));
+		assertFalse("Value outside the deadband should not be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(11.5, "", 2L)));
+		assertFalse("Changed value description should not be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(10.5, "changed", 2L)));
+		assertFalse("Null value should not be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(null, "", 2L)));
+
+		tag.update(new SourceDataTagQuality(SourceDataTagQualityCode.OUT_OF_BOUNDS), 3L);
+		assertFalse("Value after an invalid quality should not be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(10.5, "", 4L)));
+
+		tag = createTag("Integer", DataTagDeadband.DEADBAND_PROCESS_RELATIVE, 10f);
+		tag.update(new ValueUpdate(100, null, 1L));
+		assertTrue("Value within the relative deadband should be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(105, null, 2L)));
+		assertFalse("Value outside the relative deadband should not be filtered", dvf.isValueDeadbandFiltered(tag, new ValueUpdate(111, null, 2L)));
+	}
+
+	private static SourceDataTag createTag(String dataType, short deadbandType, float deadband) {
+		DataTagAddress address = new DataTagAddress();
+		address.setValueDeadbandType(deadbandType);
+		address.setValueDeadband(deadband);
+		SourceDataTag tag = new SourceDataTag(1L, "tag", false);
+		tag.setDataType(dataType);
+		tag.setAddress(address);
+		return tag;
+	}
+
 	@Test
 	@Ignore("Reactivate me once issue 196 is fixed")
 	public void testDeadbandAsAFloatIssue() {
@@ -16,50 +16,59 @@
  *****************************************************************************/
 package cern.c2mon.server.benchmark;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.PostConstruct;
 
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.HdrHistogram.Histogram;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import cern.c2mon.server.alarm.AlarmAggregator;
+import cern.c2mon.server.alarm.AlarmAggregatorListener;
 import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.config.ServerConstants;
 import cern.c2mon.server.common.datatag.DataTag;
-import cern.c2mon.server.common.datatag.DataTagCacheObject;
 import cern.c2mon.server.common.tag.Tag;
-import cern.c2mon.shared.common.datatag.DataTagAddress;
-
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+
+/**
+ * Measures the latency of the DataTag updates through the server, in
+ * {@link LatencyHistogram}s split by tag priority and by process:
+ * <ul>
+ * <li>daqToServer: from the DAQ timestamp to the cache timestamp;
+ * <li>serverToListener: from the cache timestamp to the notification of
+ * the cache listeners;
+ * <li>serverToPublication: from the cache timestamp to the notification of
+ * the client publishers by the {@link AlarmAggregator}.
+ * </ul>
+ * The percentiles are available through JMX.
+ */
 @Slf4j
 @Service
-public class BenchmarkListener implements C2monCacheListener<Tag>, SmartLifecycle {
-
-  private Logger dataTagLogger = LoggerFactory.getLogger("BenchmarkDataTag");
+@ManagedResource(objectName = "cern.c2mon:name=benchmarkListener", description = "Latency histograms of the tag updates")
+public class BenchmarkListener implements C2monCacheListener<Tag>, AlarmAggregatorListener, SmartLifecycle {
 
-  private Logger priorityLogger = LoggerFactory.getLogger("BenchmarkPriority");
+  private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
 
   private CacheRegistrationService cacheRegistrationService;
 
-  private static final long BENCHMARK_TIME = 1000; //1s
-  private static final long MIDDLE_BENCHMARK_TIME = 2000; //1s
-  private static final long HIGH_BENCHMARK_TIME = 5000; //1s
+  private AlarmAggregator alarmAggregator;
 
-  private long maxTagToServer = 0;
-  private long maxTagToListener = 0;
-  private long maxPriorityToServer = 0;
-  private long maxPriorityToListener = 0;
+  private final StageLatencies daqToServer = new StageLatencies("daqToServer");
 
-  private long nbAboveBenchmark;
-  private long nbAboveMiddleBenchmark;
-  private long nbAboveHighBenchmark;
+  private final StageLatencies serverToListener = new StageLatencies("serverToListener");
 
-  private long nbAboveBenchmarkPriority;
-  private long nbAboveMiddleBenchmarkPriority;
-  private long nbAboveHighBenchmarkPriority;
+  private final StageLatencies serverToPublication = new StageLatencies("serverToPublication");
 
   /**
    * Listener container lifecycle hook.
@@ -72,9 +81,10 @@ public class BenchmarkListener implements C2monCacheListener<Tag>, SmartLifecycl
   private volatile boolean running = false;
 
   @Autowired
-  public BenchmarkListener(CacheRegistrationService cacheRegistrationService) {
+  public BenchmarkListener(CacheRegistrationService cacheRegistrationService, AlarmAggregator alarmAggregator) {
     super();
     this.cacheRegistrationService = cacheRegistrationService;
+    this.alarmAggregator = alarmAggregator;
   }
 
   @Override
@@ -83,60 +93,80 @@ public class BenchmarkListener implements C2monCacheListener<Tag>, SmartLifecycl
       log.warn("Received notification while component not running - will process anyway");
     }
     if (tag instanceof DataTag) {
-      DataTagCacheObject dataTag = (DataTagCacheObject) tag;
+      DataTag dataTag = (DataTag) tag;
       //TODO can remove this once all DAQ updates have DAQ t.s. set
       long daqTime = dataTag.getDaqTimestamp() == null ? dataTag.getTimestamp().getTime() : dataTag.getDaqTimestamp().getTime();
       long serverTime = dataTag.getCacheTimestamp().getTime();
       long currentTime = System.currentTimeMillis();
-      long toServer = (serverTime - daqTime);
-      long toListener = (currentTime - daqTime);
-      if (dataTag.getAddress() != null && dataTag.getAddress().getPriority() == DataTagAddress.PRIORITY_HIGH) {
-        priorityLogger.debug("DAQ to server(ms): " + toServer + "; DAQ to listener: " +  toListener + " (Id: " + tag.getId() + ")");
-        if (toServer > maxPriorityToServer) {
-          maxPriorityToServer = toServer;
-          priorityLogger.warn("max DAQ to server: " + maxPriorityToServer);
-        }
-        if (toListener > maxPriorityToListener) {
-          maxPriorityToListener = toListener;
-          priorityLogger.warn("max DAQ to listener: " + maxPriorityToListener);
-        }
-        if (toListener > HIGH_BENCHMARK_TIME) {
-          nbAboveHighBenchmarkPriority++;
-          priorityLogger.info("Number of update above " + HIGH_BENCHMARK_TIME + ": " + nbAboveHighBenchmarkPriority);
-        } else if (toListener > MIDDLE_BENCHMARK_TIME) {
-          nbAboveMiddleBenchmarkPriority++;
-          priorityLogger.info("Number of update above " + MIDDLE_BENCHMARK_TIME + ": " + nbAboveMiddleBenchmarkPriority);
-        } else if (toListener > BENCHMARK_TIME) {
-          nbAboveBenchmarkPriority++;
-          priorityLogger.info("Number of update above " + BENCHMARK_TIME + ": " + nbAboveBenchmarkPriority);
-        }
-      } else {
-        dataTagLogger.debug("DAQ to server(ms): " + toServer + "; DAQ to listener: " +  toListener + " (Id: " + tag.getId() + ")");
-        if (toServer > maxTagToServer) {
-          maxTagToServer = toServer;
-          dataTagLogger.warn("max DAQ to server: " + maxTagToServer);
-        }
-        if (toListener > maxTagToListener) {
-          maxTagToListener = toListener;
-          dataTagLogger.warn("max DAQ to listener: " + maxTagToListener);
-        }
-        if (toListener > HIGH_BENCHMARK_TIME) {
-          nbAboveHighBenchmark++;
-          dataTagLogger.info("Number of update above " + HIGH_BENCHMARK_TIME + ": " + nbAboveHighBenchmark);
-        } else if (toListener > MIDDLE_BENCHMARK_TIME) {
-          nbAboveMiddleBenchmark++;
-          dataTagLogger.info("Number of update above " + MIDDLE_BENCHMARK_TIME + ": " + nbAboveMiddleBenchmark);
-        } else if (toListener > BENCHMARK_TIME) {
-          nbAboveBenchmark++;
-          dataTagLogger.info("Number of update above " + BENCHMARK_TIME + ": " + nbAboveBenchmark);
-        }
+      int priority = getPriority(dataTag);
+      daqToServer.record(priority, dataTag.getProcessId(), serverTime - daqTime);
+      serverToListener.record(priority, dataTag.getProcessId(), currentTime - serverTime);
+    }
+  }
+
+  @Override
+  public void notifyOnUpdate(Tag tag, List<Alarm> alarms) {
+    if (tag instanceof DataTag) {
+      DataTag dataTag = (DataTag) tag;
+      long serverTime = dataTag.getCacheTimestamp().getTime();
+      serverToPublication.record(getPriority(dataTag), dataTag.getProcessId(), System.currentTimeMillis() - serverTime);
+    }
+  }
+
+  private static int getPriority(final DataTag dataTag) {
+    return dataTag.getAddress() == null ? DataTagConstants.PRIORITY_LOW : dataTag.getAddress().getPriority();
+  }
+
+  /**
+   * @return one line per histogram, with the number of updates and the
+   *         percentiles of the latency in milliseconds
+   */
+  @ManagedOperation(description = "Get the latency percentiles (ms) of each histogram.")
+  public List<String> getLatencies() {
+    List<String> latencies = new ArrayList<>();
+    for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+      Histogram histogram = entry.getValue().getSnapshot();
+      StringBuilder line = new StringBuilder(entry.getKey()).append(": count=").append(histogram.getTotalCount());
+      for (double percentile : REPORTED_PERCENTILES) {
+        line.append(", p").append(percentile).append('=').append(histogram.getValueAtPercentile(percentile));
       }
+      line.append(", max=").append(histogram.getMaxValue());
+      latencies.add(line.toString());
+    }
+    return latencies;
+  }
+
+  /**
+   * @param histogramName name of a histogram, as in {@link #getLatencies()}
+   * @param percentile a percentile between 0 and 100
+   * @return the latency in milliseconds at the given percentile, or -1 if
+   *         there is no such histogram
+   */
+  @ManagedOperation(description = "Get the latency (ms) at the given percentile for one histogram.")
+  public long getLatencyAtPercentile(String histogramName, double percentile) {
+    LatencyHistogram histogram = getHistograms().get(histogramName);
+    return histogram == null ? -1 : histogram.getSnapshot().getValueAtPercentile(percentile);
+  }
+
+  @ManagedOperation(description = "Reset all the latency histograms.")
+  public void resetLatencies() {
+    for (LatencyHistogram histogram : getHistograms().values()) {
+      histogram.reset();
     }
   }
 
+  private Map<String, LatencyHistogram> getHistograms() {
+    Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    daqToServer.addHistograms(histograms);
+    serverToListener.addHistograms(histograms);
+    serverToPublication.addHistograms(histograms);
+    return histograms;
+  }
+
   @PostConstruct
   void init() {
     listenerContainer = cacheRegistrationService.registerToAllTags(this,1);
+    alarmAggregator.registerForTagUpdates(this);
   }
 
   @Override
@@ -0,0 +1,80 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Histogram of latencies in milliseconds, from 0 to one hour with a
+ * precision of 3 significant digits.
+ *
+ * <p>The latencies are recorded in a {@link Recorder}, without allocation
+ * or lock, by any number of threads. The recorded values are moved to the
+ * total histogram when it is read.
+ */
+final class LatencyHistogram {
+
+  /**
+   * Higher latencies are recorded as one hour.
+   */
+  private static final long HIGHEST_LATENCY = 3600000L;
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Recorder recorder = new Recorder(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+
+  /**
+   * All the values recorded since the start or the last reset.
+   */
+  private final Histogram total = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+
+  /**
+   * Histogram given back to the recorder at each read, so that it
+   * does not allocate a new one.
+   */
+  private Histogram interval;
+
+  /**
+   * @param latency latency in milliseconds; negative values (clock
+   *        differences between the hosts) are recorded as 0
+   */
+  void record(final long latency) {
+    recorder.recordValue(Math.min(Math.max(latency, 0L), HIGHEST_LATENCY));
+  }
+
+  /**
+   * @return a copy of the histogram of the latencies recorded so far
+   */
+  synchronized Histogram getSnapshot() {
+    update();
+    return total.copy();
+  }
+
+  /**
+   * Forgets the latencies recorded so far.
+   */
+  synchronized void reset() {
+    update();
+    total.reset();
+  }
+
+  private void update() {
+    interval = recorder.getIntervalHistogram(interval);
+    total.add(interval);
+  }
+}
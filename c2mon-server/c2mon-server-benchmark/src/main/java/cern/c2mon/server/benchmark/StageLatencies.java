@@ -0,0 +1,89 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+
+/**
+ * The latency histograms of one stage of the tag updates, split by
+ * tag priority and by process.
+ */
+final class StageLatencies {
+
+  private final String name;
+
+  private final LatencyHistogram lowPriority = new LatencyHistogram();
+
+  private final LatencyHistogram mediumPriority = new LatencyHistogram();
+
+  private final LatencyHistogram highPriority = new LatencyHistogram();
+
+  private final ConcurrentMap<Long, LatencyHistogram> processes = new ConcurrentHashMap<>();
+
+  /**
+   * @param name name of the stage, prefix of the histogram names
+   */
+  StageLatencies(final String name) {
+    this.name = name;
+  }
+
+  /**
+   * Does not allocate once the histogram of the process is created.
+   *
+   * @param priority priority of the tag, as in {@link DataTagConstants}
+   * @param processId process of the tag, or null if unknown
+   * @param latency latency in milliseconds
+   */
+  void record(final int priority, final Long processId, final long latency) {
+    getPriorityHistogram(priority).record(latency);
+    if (processId != null) {
+      LatencyHistogram processHistogram = processes.get(processId);
+      if (processHistogram == null) {
+        processHistogram = processes.computeIfAbsent(processId, id -> new LatencyHistogram());
+      }
+      processHistogram.record(latency);
+    }
+  }
+
+  /**
+   * Adds the histograms of this stage to the given map, by name: {@code
+   * <stage>.priority.<LOW|MEDIUM|HIGH>} and {@code <stage>.process.<id>}.
+   */
+  void addHistograms(final Map<String, LatencyHistogram> histograms) {
+    histograms.put(name + ".priority.LOW", lowPriority);
+    histograms.put(name + ".priority.MEDIUM", mediumPriority);
+    histograms.put(name + ".priority.HIGH", highPriority);
+    for (Map.Entry<Long, LatencyHistogram> process : new TreeMap<>(processes).entrySet()) {
+      histograms.put(name + ".process." + process.getKey(), process.getValue());
+    }
+  }
+
+  private LatencyHistogram getPriorityHistogram(final int priority) {
+    if (priority >= DataTagConstants.PRIORITY_HIGH) {
+      return highPriority;
+    } else if (priority >= DataTagConstants.PRIORITY_MEDIUM) {
+      return mediumPriority;
+    } else {
+      return lowPriority;
+    }
+  }
+}
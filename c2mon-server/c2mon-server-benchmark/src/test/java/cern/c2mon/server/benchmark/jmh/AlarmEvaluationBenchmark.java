@@ -0,0 +1,102 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.c2mon.server.cache.AlarmFacade;
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+
+/**
+ * Cost of the alarm evaluation done by the {@link AlarmFacade} on tag
+ * updates: evaluation of the alarm condition, update of the alarm in the
+ * cache and notification of the alarm cache listeners. The tag value
+ * alternates between the alarm value and another value, so each update
+ * changes the alarm state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmEvaluationBenchmark {
+
+  /**
+   * Alarm of tag 200000 in the test data, active for value 33.
+   */
+  private static final Long ALARM_ID = 350002L;
+
+  private static final Long TAG_ID = 200000L;
+
+  private AnnotationConfigApplicationContext context;
+
+  private AlarmFacade alarmFacade;
+
+  private DataTagCacheObject activeTag;
+
+  private DataTagCacheObject terminatedTag;
+
+  private boolean active;
+
+  @Setup
+  public void setUp() {
+    context = ServerContext.start();
+    alarmFacade = context.getBean(AlarmFacade.class);
+
+    DataTagCache dataTagCache = context.getBean(DataTagCache.class);
+    activeTag = (DataTagCacheObject) dataTagCache.getCopy(TAG_ID);
+    activeTag.setValue(33);
+    terminatedTag = (DataTagCacheObject) dataTagCache.getCopy(TAG_ID);
+    terminatedTag.setValue(0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Alarm update() {
+    active = !active;
+    return alarmFacade.update(ALARM_ID, active ? activeTag : terminatedTag);
+  }
+
+  /**
+   * Evaluation with a copy of the tag taken from the cache, as done on
+   * alarm configuration. The alarm state does not change.
+   */
+  @Benchmark
+  public void evaluateAlarm() {
+    alarmFacade.evaluateAlarm(ALARM_ID);
+  }
+}
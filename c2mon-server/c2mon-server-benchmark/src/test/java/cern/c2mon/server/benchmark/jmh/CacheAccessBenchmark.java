@@ -0,0 +1,97 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.c2mon.server.cache.AlarmCache;
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cache.RuleTagCache;
+
+/**
+ * Cost of {@code AbstractCache.get} and {@code AbstractCache.getCopy} on the
+ * caches loaded from the test data, including the locking and the Ehcache
+ * lookup. {@link CacheObjectCopyBenchmark} gives the cost of the copy alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheAccessBenchmark {
+
+  private static final Long DATA_TAG_ID = 200001L;
+
+  private static final Long RULE_TAG_ID = 60007L;
+
+  private static final Long ALARM_ID = 350002L;
+
+  private AnnotationConfigApplicationContext context;
+
+  private DataTagCache dataTagCache;
+
+  private RuleTagCache ruleTagCache;
+
+  private AlarmCache alarmCache;
+
+  @Setup
+  public void setUp() {
+    context = ServerContext.start();
+    dataTagCache = context.getBean(DataTagCache.class);
+    ruleTagCache = context.getBean(RuleTagCache.class);
+    alarmCache = context.getBean(AlarmCache.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Object dataTagGet() {
+    return dataTagCache.get(DATA_TAG_ID);
+  }
+
+  @Benchmark
+  public Object dataTagGetCopy() {
+    return dataTagCache.getCopy(DATA_TAG_ID);
+  }
+
+  @Benchmark
+  public Object ruleTagGetCopy() {
+    return ruleTagCache.getCopy(RULE_TAG_ID);
+  }
+
+  @Benchmark
+  public Object alarmGetCopy() {
+    return alarmCache.getCopy(ALARM_ID);
+  }
+}
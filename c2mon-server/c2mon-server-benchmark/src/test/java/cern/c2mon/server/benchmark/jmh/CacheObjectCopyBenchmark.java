@@ -0,0 +1,125 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.common.Cacheable;
+
+/**
+ * Compares the two ways of copying cache objects in
+ * {@code AbstractCache.getCopy}: through serialization (the default)
+ * and through the deep clone of the tag and alarm cache objects, as well
+ * as the snapshot of the tags passed to the cache listeners on update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheObjectCopyBenchmark {
+
+  private DataTagCacheObject dataTag;
+
+  private RuleTagCacheObject ruleTag;
+
+  private AlarmCacheObject alarm;
+
+  @Setup
+  public void setUp() {
+    dataTag = CacheObjectCreation.createTestDataTag();
+    dataTag.getMetadata().addMetadata("building", "864");
+    dataTag.getMetadata().addMetadata("responsible", 12345);
+    dataTag.getAlarmIds().add(1L);
+    dataTag.getAlarmIds().add(2L);
+    ruleTag = CacheObjectCreation.createTestRuleTag();
+    alarm = CacheObjectCreation.createTestAlarm1();
+  }
+
+  @Benchmark
+  public Object dataTagSerializationCopy() throws Exception {
+    return serializationCopy(dataTag);
+  }
+
+  @Benchmark
+  public Object dataTagCloneCopy() throws Exception {
+    return dataTag.clone();
+  }
+
+  @Benchmark
+  public Object dataTagSnapshot() throws Exception {
+    return dataTag.snapshot();
+  }
+
+  @Benchmark
+  public Object ruleTagSerializationCopy() throws Exception {
+    return serializationCopy(ruleTag);
+  }
+
+  @Benchmark
+  public Object ruleTagCloneCopy() throws Exception {
+    return ruleTag.clone();
+  }
+
+  @Benchmark
+  public Object ruleTagSnapshot() throws Exception {
+    return ruleTag.snapshot();
+  }
+
+  @Benchmark
+  public Object alarmSerializationCopy() throws Exception {
+    return serializationCopy(alarm);
+  }
+
+  @Benchmark
+  public Object alarmCloneCopy() throws Exception {
+    return alarm.clone();
+  }
+
+  /**
+   * Same copy as {@code AbstractCache.createCopyBySerialization}.
+   */
+  private static Object serializationCopy(final Cacheable reference) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeObject(reference);
+
+    ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+    ObjectInputStream ois = new ObjectInputStream(bais);
+    return ois.readObject();
+  }
+}
@@ -0,0 +1,73 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
+
+/**
+ * Cost of the persistence of the DataTag cache to the in-memory database
+ * by {@code BatchPersistenceManagerImpl.persistList}, as done periodically
+ * for the tags updated since the last persistence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachePersistenceBenchmark {
+
+  private AnnotationConfigApplicationContext context;
+
+  private BatchPersistenceManager dataTagPersistenceManager;
+
+  private Collection<Long> dataTagIds;
+
+  @Setup
+  public void setUp() {
+    context = ServerContext.start();
+    dataTagPersistenceManager = context.getBean("dataTagPersistenceManager", BatchPersistenceManager.class);
+    dataTagIds = context.getBean(DataTagCache.class).getKeys();
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public void persistDataTags() {
+    dataTagPersistenceManager.persistList(dataTagIds);
+  }
+}
@@ -0,0 +1,117 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.c2mon.server.common.process.Process;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+
+/**
+ * Throughput of the PIK check made by {@code SourceUpdateManagerImpl} for
+ * every incoming DAQ message, with several JMS consumer threads receiving
+ * the updates of the same process. Compares the check within the write lock
+ * on the process (as done before) with the check through the shared read
+ * lock of the cache get (as done now in the usual case). The unlocked check
+ * gives the cost of the Ehcache lookup alone.
+ *
+ * <p>Only meaningful on a multi-core machine: the gain comes from the
+ * consumer threads no longer excluding each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ProcessPikCheckBenchmark {
+
+  private static final Long PROCESS_ID = 50L;
+
+  private static final Long PIK = 12345L;
+
+  private CacheManager cacheManager;
+
+  private Cache processCache;
+
+  @Setup
+  public void setUp() {
+    cacheManager = new CacheManager(new Configuration().name("pikBenchmark"));
+    processCache = new Cache(new CacheConfiguration("processCache", 1000).eternal(true));
+    cacheManager.addCache(processCache);
+
+    ProcessCacheObject process = new ProcessCacheObject(PROCESS_ID, "P_BENCHMARK", 1L, 100, 100);
+    process.setProcessPIK(PIK);
+    processCache.put(new Element(PROCESS_ID, process));
+  }
+
+  @TearDown
+  public void tearDown() {
+    cacheManager.shutdown();
+  }
+
+  @Benchmark
+  public boolean writeLockedCheck() {
+    processCache.acquireWriteLockOnKey(PROCESS_ID);
+    try {
+      return PIK.equals(getProcess().getProcessPIK());
+    } finally {
+      processCache.releaseWriteLockOnKey(PROCESS_ID);
+    }
+  }
+
+  @Benchmark
+  public boolean readLockedCheck() {
+    processCache.acquireReadLockOnKey(PROCESS_ID);
+    try {
+      return PIK.equals(getProcess().getProcessPIK());
+    } finally {
+      processCache.releaseReadLockOnKey(PROCESS_ID);
+    }
+  }
+
+  @Benchmark
+  public boolean unlockedCheck() {
+    return PIK.equals(getProcess().getProcessPIK());
+  }
+
+  /**
+   * Same as {@code BasicCache.get}, without the lock.
+   */
+  private Process getProcess() {
+    return (Process) processCache.get(PROCESS_ID).getObjectValue();
+  }
+}
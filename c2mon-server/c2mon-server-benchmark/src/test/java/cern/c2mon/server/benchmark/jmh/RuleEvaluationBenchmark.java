@@ -0,0 +1,101 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.rule.evaluation.RuleEvaluatorImpl;
+
+/**
+ * Cost of the evaluation by {@code RuleEvaluatorImpl} of all the rules
+ * depending on an updated tag, through the rule cache and the input tag
+ * caches. The tag is the input of 13 rules of the test data, directly
+ * or through other rules.
+ *
+ * <p>Since {@code RuleEvaluatorImpl.evaluateRules} only dispatches the
+ * rules to the evaluation threads, the rules are evaluated one after the
+ * other with the synchronous {@code evaluateRule}, in the order of their
+ * dependencies. The result is the evaluation time of all the rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEvaluationBenchmark {
+
+  private static final Long TAG_ID = 200001L;
+
+  private AnnotationConfigApplicationContext context;
+
+  private RuleEvaluatorImpl ruleEvaluator;
+
+  private List<Long> ruleIds;
+
+  @Setup
+  public void setUp() {
+    context = ServerContext.start();
+    ruleEvaluator = context.getBean(RuleEvaluatorImpl.class);
+    RuleTagCache ruleTagCache = context.getBean(RuleTagCache.class);
+    Tag tag = context.getBean(DataTagCache.class).getCopy(TAG_ID);
+
+    // breadth first, so that each rule comes after the rules it depends on in the test data
+    Set<Long> dependentRuleIds = new LinkedHashSet<>(tag.getRuleIds());
+    List<Long> queue = new ArrayList<>(dependentRuleIds);
+    for (int i = 0; i < queue.size(); i++) {
+      for (Long ruleId : ruleTagCache.getCopy(queue.get(i)).getRuleIds()) {
+        if (dependentRuleIds.add(ruleId)) {
+          queue.add(ruleId);
+        }
+      }
+    }
+    ruleIds = queue;
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public void evaluateRules() {
+    for (Long ruleId : ruleIds) {
+      ruleEvaluator.evaluateRule(ruleId);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.shared.rule.RuleExpression;
+import cern.c2mon.shared.rule.SimpleRuleExpression;
+
+/**
+ * Cost of the evaluation of rule expressions alone, with the input tags
+ * already retrieved: a {@link SimpleRuleExpression} and a conditioned
+ * expression taken from the rules of the test data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleExpressionBenchmark {
+
+  private SimpleRuleExpression simpleExpression;
+
+  private RuleExpression conditionedExpression;
+
+  private Map<Long, Object> inputTags;
+
+  @Setup
+  public void setUp() throws Exception {
+    simpleExpression = new SimpleRuleExpression("(#200001 > 0) | (((#200002 + #200003) / 2) < 400)");
+    conditionedExpression = RuleExpression.createExpression(
+        "(#200001 > 0)|(#200002 < 200)|(#200003 > 450)[2],(#200002 < 500)|(#200003 > 400)[1],true[0]");
+
+    inputTags = new HashMap<>();
+    inputTags.put(200001L, createTag(200001L, 0));
+    inputTags.put(200002L, createTag(200002L, 300));
+    inputTags.put(200003L, createTag(200003L, 420));
+  }
+
+  @Benchmark
+  public Object simpleExpression() throws Exception {
+    return simpleExpression.evaluate(inputTags, Boolean.class);
+  }
+
+  @Benchmark
+  public Object conditionedExpression() throws Exception {
+    return conditionedExpression.evaluate(inputTags, Integer.class);
+  }
+
+  private static DataTagCacheObject createTag(final Long id, final Integer value) {
+    DataTagCacheObject tag = new DataTagCacheObject(id, "tag_" + id, "Integer", (short) 0);
+    tag.setValue(value);
+    tag.getDataTagQuality().validate();
+    return tag;
+  }
+}
@@ -0,0 +1,202 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.c2mon.server.client.util.TransferObjectFactory;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TransferTagImpl;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
+
+/**
+ * Cost of the serialization formats used on the server paths:
+ * <ul>
+ * <li>the JSON and binary DAQ messages read by the
+ * {@link DataTagValueUpdateConverter}, for messages of different sizes;
+ * <li>the JSON tag updates published to the clients with the
+ * {@link TransferTagSerializer};
+ * <li>the XML tag addresses read from the database when loading the
+ * DataTag cache, and written when configuring the DAQs.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+  /**
+   * Address of tag 200000 in the test data.
+   */
+  private static final String TAG_ADDRESS_XML = "<DataTagAddress><HardwareAddress class=\"cern.c2mon.shared.common.datatag.address.impl.JAPCHardwareAddressImpl\">"
+      + "<protocol>yami</protocol><service>yami</service><device-name>TEST.CLIC.DIAMON.1</device-name><property-name>Acquisition</property-name>"
+      + "<data-field-name>sys.proc.serverinit</data-field-name><column-index>-1</column-index><row-index>-1</row-index></HardwareAddress>"
+      + "<time-to-live>3600000</time-to-live><priority>2</priority><guaranteed-delivery>false</guaranteed-delivery></DataTagAddress>";
+
+  private TransferTagImpl transferTag;
+
+  private String transferTagJson;
+
+  private DataTagAddress tagAddress;
+
+  @Setup
+  public void setUp() {
+    DataTagCacheObject dataTag = CacheObjectCreation.createTestDataTag();
+    dataTag.getMetadata().addMetadata("building", "864");
+    transferTag = TransferObjectFactory.createTransferTag(new TagWithAlarmsImpl(dataTag,
+        Arrays.<Alarm>asList(CacheObjectCreation.createTestAlarm1())), false, "c2mon.client.tag.default");
+    transferTagJson = TransferTagSerializer.toJson(transferTag);
+
+    tagAddress = DataTagAddress.fromConfigXML(TAG_ADDRESS_XML);
+  }
+
+  @Benchmark
+  public Object daqUpdateFromJson(final DaqMessage message) throws Exception {
+    return message.converter.fromMessage(message.jsonMessage);
+  }
+
+  @Benchmark
+  public String daqUpdateToJson(final DaqMessage message) throws Exception {
+    return message.mapper.writeValueAsString(message.update);
+  }
+
+  @Benchmark
+  public Object daqUpdateFromBinary(final DaqMessage message) throws Exception {
+    message.binaryMessage.reset();
+    return message.converter.fromMessage(message.binaryMessage);
+  }
+
+  @Benchmark
+  public Object daqUpdateToBinary(final DaqMessage message) throws Exception {
+    return message.binaryConverter.toMessage(message.update, message.session);
+  }
+
+  @Benchmark
+  public String clientTagToJson() {
+    return TransferTagSerializer.toJson(transferTag);
+  }
+
+  @Benchmark
+  public Object clientTagFromJson() {
+    return TransferTagSerializer.fromJson(transferTagJson, TransferTagImpl.class);
+  }
+
+  @Benchmark
+  public Object tagAddressFromXml() {
+    return DataTagAddress.fromConfigXML(TAG_ADDRESS_XML);
+  }
+
+  @Benchmark
+  public String tagAddressToXml() {
+    return tagAddress.toConfigXML();
+  }
+
+  /**
+   * A DAQ message with the given number of tag updates.
+   */
+  @State(Scope.Benchmark)
+  public static class DaqMessage {
+
+    @Param({"1", "100"})
+    private int updatesPerMessage;
+
+    private DataTagValueUpdateConverter converter;
+
+    /**
+     * Writes the messages as the DAQs do, the options of the converter only
+     * apply to the reading.
+     */
+    private ObjectMapper mapper;
+
+    private DataTagValueUpdate update;
+
+    private ActiveMQTextMessage jsonMessage;
+
+    /**
+     * Writes the messages in the binary encoding.
+     */
+    private DataTagValueUpdateConverter binaryConverter;
+
+    private ActiveMQBytesMessage binaryMessage;
+
+    /**
+     * Creates the messages written by the binary converter, without a broker.
+     */
+    private Session session;
+
+    @Setup
+    public void setUp() throws Exception {
+      converter = new DataTagValueUpdateConverter();
+      mapper = new ObjectMapper();
+      binaryConverter = new DataTagValueUpdateConverter();
+      binaryConverter.setBinaryEncoding(true);
+      session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] {Session.class},
+          (proxy, method, args) -> {
+            if ("createBytesMessage".equals(method.getName())) {
+              return new ActiveMQBytesMessage();
+            }
+            throw new UnsupportedOperationException(method.getName());
+          });
+
+      Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+      ArrayList<SourceDataTagValue> values = new ArrayList<>(updatesPerMessage);
+      for (int i = 0; i < updatesPerMessage; i++) {
+        SourceDataTagValue value = new SourceDataTagValue(200000L + i, "tag_" + i, false, i * 1.5f,
+            new SourceDataTagQuality(), timestamp, DataTagAddress.PRIORITY_LOW, false, "value description",
+            DataTagAddress.TTL_FOREVER);
+        value.setDaqTimestamp(timestamp);
+        values.add(value);
+      }
+      update = new DataTagValueUpdate(50L, values);
+      jsonMessage = new ActiveMQTextMessage();
+      jsonMessage.setText(mapper.writeValueAsString(update));
+      binaryMessage = (ActiveMQBytesMessage) binaryConverter.toMessage(update, session);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+
+import net.sf.ehcache.CacheManager;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import cern.c2mon.server.cache.alarm.AlarmCacheImpl;
+import cern.c2mon.server.cache.alive.AliveTimerCacheImpl;
+import cern.c2mon.server.cache.command.CommandTagCacheImpl;
+import cern.c2mon.server.cache.commfault.CommFaultTagCacheImpl;
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.control.ControlTagCacheImpl;
+import cern.c2mon.server.cache.datatag.DataTagCacheImpl;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.device.DeviceCacheImpl;
+import cern.c2mon.server.cache.device.DeviceClassCacheImpl;
+import cern.c2mon.server.cache.equipment.EquipmentCacheImpl;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.cache.process.ProcessCacheImpl;
+import cern.c2mon.server.cache.rule.RuleTagCacheImpl;
+import cern.c2mon.server.cache.subequipment.SubEquipmentCacheImpl;
+import cern.c2mon.server.cachepersistence.config.CachePersistenceModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.common.jms.EmbeddedBrokerAutoConfiguration;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.rule.config.RuleModule;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+/**
+ * Starts the server modules used by the benchmarks in the same setup as the
+ * integration tests: in-memory HSQL database filled with the test data of
+ * {@code c2mon-server-test}, embedded broker and local caches.
+ *
+ * <p>The benchmarks are test classes, so that neither JMH nor the test
+ * data end up in the module artifact. They are run from the module
+ * directory with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) org.openjdk.jmh.Main [benchmark regexp]
+ * </pre>
+ */
+final class ServerContext {
+
+  private ServerContext() {
+  }
+
+  /**
+   * Starts the server modules and loads the caches with the test data.
+   *
+   * @param properties server properties overriding the default ones
+   * @return the started context, to be closed by the caller
+   */
+  static AnnotationConfigApplicationContext start(final Map<String, Object> properties) {
+    AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+    Map<String, Object> benchmarkProperties = new HashMap<>(properties);
+    // the same evaluation thread for every run, whatever the number of cores
+    if (!benchmarkProperties.containsKey("c2mon.server.rule.numEvaluationThreads")) {
+      benchmarkProperties.put("c2mon.server.rule.numEvaluationThreads", 1);
+    }
+    context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", benchmarkProperties));
+    context.register(
+        CommonModule.class,
+        CacheModule.class,
+        CacheDbAccessModule.class,
+        CacheLoadingModule.class,
+        CachePersistenceModule.class,
+        SupervisionModule.class,
+        DaqModule.class,
+        RuleModule.class,
+        EmbeddedBrokerAutoConfiguration.class);
+    context.refresh();
+    loadTestData(context);
+    return context;
+  }
+
+  /**
+   * @return a context started with the default server properties
+   */
+  static AnnotationConfigApplicationContext start() {
+    return start(new HashMap<String, Object>());
+  }
+
+  /**
+   * Same as {@code DatabasePopulationRule} followed by the reload of the
+   * caches done by the cache population rules of the tests.
+   */
+  private static void loadTestData(final AnnotationConfigApplicationContext context) {
+    DataSource cacheDataSource = context.getBean("cacheDataSource", DataSource.class);
+    ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("sql/cache-data-remove.sql"));
+    populator.addScript(new ClassPathResource("sql/cache-data-alter-sequence.sql"));
+    populator.addScript(new ClassPathResource("sql/cache-data-insert.sql"));
+    DatabasePopulatorUtils.execute(populator, cacheDataSource);
+
+    CacheManager.getInstance().clearAll();
+    context.getBean(ControlTagCacheImpl.class).init();
+    context.getBean(ProcessCacheImpl.class).init();
+    context.getBean(DataTagCacheImpl.class).init();
+    context.getBean(EquipmentCacheImpl.class).init();
+    context.getBean(AliveTimerCacheImpl.class).init();
+    context.getBean(CommFaultTagCacheImpl.class).init();
+    context.getBean(SubEquipmentCacheImpl.class).init();
+    context.getBean(AlarmCacheImpl.class).init();
+    context.getBean(RuleTagCacheImpl.class).init();
+    context.getBean(CommandTagCacheImpl.class).init();
+    context.getBean(DeviceClassCacheImpl.class).init();
+    context.getBean(DeviceCacheImpl.class).init();
+  }
+}
@@ -0,0 +1,96 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.benchmark.jmh;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.c2mon.server.daq.update.SourceUpdateManager;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Cost of {@code SourceUpdateManagerImpl.processUpdates} for a DAQ message
+ * of the given size, as received from the JMS consumer threads: update of
+ * the DataTag cache and notification of the cache listeners. The listeners
+ * themselves (rule evaluation, persistence...) run on their own threads.
+ *
+ * <p>The updated tags are those of process P_TESTHANDLER03 in the test data,
+ * several of which are inputs of rules. Each update has a new value, so
+ * that it is not filtered out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceUpdateBenchmark {
+
+  private static final Long PROCESS_ID = 50L;
+
+  private static final long[] TAG_IDS = {200000L, 200001L, 200002L, 200003L};
+
+  @Param({"1", "10", "100"})
+  private int updatesPerMessage;
+
+  private AnnotationConfigApplicationContext context;
+
+  private SourceUpdateManager sourceUpdateManager;
+
+  private int counter;
+
+  @Setup
+  public void setUp() {
+    context = ServerContext.start();
+    sourceUpdateManager = context.getBean(SourceUpdateManager.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public void processUpdates() {
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    ArrayList<SourceDataTagValue> values = new ArrayList<>(updatesPerMessage);
+    for (int i = 0; i < updatesPerMessage; i++) {
+      Long tagId = TAG_IDS[i % TAG_IDS.length];
+      values.add(new SourceDataTagValue(tagId, "tag_" + tagId, false, counter++ % 1000, new SourceDataTagQuality(),
+          timestamp, DataTagAddress.PRIORITY_LOW, false, null, DataTagAddress.TTL_FOREVER));
+    }
+    sourceUpdateManager.processUpdates(new DataTagValueUpdate(PROCESS_ID, values));
+  }
+}
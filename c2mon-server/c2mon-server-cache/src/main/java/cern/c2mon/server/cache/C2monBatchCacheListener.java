@@ -0,0 +1,43 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ * 
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * 
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache;
+
+import java.util.Collection;
+
+import cern.c2mon.shared.common.Cacheable;
+
+/**
+ * Cache listener processing a batch of updates as a whole, for instance
+ * to evaluate the rules depending on the updated tags only once.
+ *
+ * <p>The threaded listener wrappers pass a batch to such a listener in a
+ * single call on one of their threads. The updates of a batch notified to
+ * other listeners are spread across the threads, one by one.
+ *
+ * @param <T> the type the listener expects
+ */
+public interface C2monBatchCacheListener<T extends Cacheable> extends C2monCacheListener<T> {
+
+  /**
+   * Callback when a batch of cache objects has been modified, for
+   * instance all the tags of a single DAQ message.
+   *
+   * @param cacheables the objects in the cache that have been updated
+   */
+  @Override
+  void notifyElementsUpdated(Collection<? extends T> cacheables);
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.Collection;
+
 import cern.c2mon.shared.common.Cacheable;
 
 
@@ -37,6 +39,20 @@ public interface C2monCacheListener<T extends Cacheable> {
    * 
    */
   void notifyElementUpdated(T cacheable);
+
+  /**
+   * Callback when a batch of cache objects has been modified, for
+   * instance all the tags of a single DAQ message. By default,
+   * {@link #notifyElementUpdated(Cacheable)} is called for each object,
+   * in the order of the collection.
+   *
+   * @param cacheables the objects in the cache that have been updated
+   */
+  default void notifyElementsUpdated(Collection<? extends T> cacheables) {
+    for (T cacheable : cacheables) {
+      notifyElementUpdated(cacheable);
+    }
+  }
   
   /**
    * Callback used for confirming the value of the cache object. This is
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.Collection;
+
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.shared.common.Cacheable;
@@ -92,7 +94,7 @@ public interface C2monCacheWithListeners<K, T extends Cacheable> extends C2monCa
 
   /**
    * Identical to the {@link #notifyListenersOfUpdate(Cacheable)} method but fetches first for you
-   * the Cacheable object and makes a copy.
+   * the Cacheable object (within a read lock).
    * @param id the id of the object in cache that was updated
    * @see #notifyListenersOfUpdate(Cacheable)
    */
@@ -112,9 +114,33 @@ public interface C2monCacheWithListeners<K, T extends Cacheable> extends C2monCa
    * for making updates to the cache.
    * 
    * @param cacheable the cache object that has been updated 
-   * (a copy is passed; should not be modified as shared across listeners)
+   * (a snapshot is passed; should not be modified as shared across listeners
+   * and, for tags, sharing its configuration with the cache object)
    */
   void notifyListenersOfUpdate(T cacheable);
+
+  /**
+   * Puts the updated object in the cache as {@link #put(Object, Cacheable)},
+   * but without notifying the listeners. Instead, the snapshot that must be
+   * passed to the listeners is returned, so that a batch of updates can be
+   * notified at once with {@link #notifyListenersOfUpdates(Collection)}.
+   *
+   * <p>Must be called within a write lock on the cache object.
+   *
+   * @param key the key of the object
+   * @param value the updated cache object
+   * @return the snapshot of the object to pass to the listeners
+   */
+  T putAndSnapshot(K key, T value);
+
+  /**
+   * Notifies the listeners of a batch of updates: each listener is passed
+   * the whole batch in a single call.
+   *
+   * @param snapshots the snapshots returned by {@link #putAndSnapshot(Object, Cacheable)}
+   * (should not be modified as shared across listeners)
+   */
+  void notifyListenersOfUpdates(Collection<T> snapshots);
   
   /**
    * Loads the cache element from the DB into the cache. Any existing cache element will
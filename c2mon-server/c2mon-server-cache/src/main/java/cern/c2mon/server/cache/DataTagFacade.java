@@ -17,6 +17,7 @@
 package cern.c2mon.server.cache;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.Properties;
 
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
@@ -27,6 +28,7 @@ import cern.c2mon.shared.common.ConfigurationException;
 import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.daq.config.DataTagUpdate;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateHandler;
 
 
 /**
@@ -69,6 +71,32 @@ public interface DataTagFacade extends CommonTagFacade<DataTag> {
    * @throws CacheElementNotFoundException if the Tag cannot be found in the cache
    */
   Event<Boolean> updateFromSource(Long dataTagId, SourceDataTagValue sourceDataTagValue);
+
+  /**
+   * Updates the DataTags in the cache from the passed SourceDataTagValues, typically
+   * all the values of a single DAQ message. Each tag is updated as in
+   * {@link #updateFromSource(Long, SourceDataTagValue)}, but the cache listeners are
+   * notified only once for the whole batch, after all tags have been updated.
+   *
+   * <p>Values of tags that cannot be found in the cache are logged and ignored.
+   *
+   * @param sourceDataTagValues the values received from the data acquisition layer
+   * @return the number of tags that were updated (i.e. not filtered out)
+   */
+  int updateFromSource(Collection<SourceDataTagValue> sourceDataTagValues);
+
+  /**
+   * Checks, before a source value is decoded, whether it would be filtered out by
+   * {@link #updateFromSource(Long, SourceDataTagValue)} because its timestamp is older
+   * than the one of the current value of the tag.
+   *
+   * @param dataTagId id of the DataTag
+   * @param timestamp the source timestamp of the value, or {@link DataTagValueUpdateHandler#NO_TIMESTAMP}
+   * @param daqTimestamp the DAQ timestamp of the value, or {@link DataTagValueUpdateHandler#NO_TIMESTAMP}
+   * @return true if the value would be rejected, false otherwise (including if the tag
+   * cannot be found in the cache)
+   */
+  boolean isOutdated(Long dataTagId, long timestamp, long daqTimestamp);
   
   /**
    * Same as other updateAndValidate method but takes a tag id as parameter and does the cache lookup
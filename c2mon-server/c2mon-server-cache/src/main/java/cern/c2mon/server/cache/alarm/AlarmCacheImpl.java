@@ -84,6 +84,15 @@ public class AlarmCacheImpl extends AbstractCache<Long, Alarm> implements AlarmC
     //do nothing
   }
 
+  /**
+   * Alarm cache objects are deep cloned, so no serialization is needed
+   * to copy them.
+   */
+  @Override
+  protected Alarm createCopy(final Alarm reference) throws CloneNotSupportedException {
+    return createCopyByCloning(reference);
+  }
+
   @Override
   protected C2monCacheName getCacheName() {
     return C2monCacheName.ALARM;
@@ -21,6 +21,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -184,35 +186,27 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
 
   /**
    * Find an object in the cache given the object id and create a deep copy.
-   * The copy is relealized through serialization and NOT by cloning.
+   * The copy is created by {@link #createCopy(Cacheable)}, within a read lock
+   * on the object.
    *
    * @param id the unique id of the cache object (should not be NULL)
    * @return Copy to the {@link Cacheable} object
    * @throws CacheElementNotFoundException if the element if not found in the cache
    * @throws IllegalArgumentException if the cache is accessed with a null key
-   * @throws UnsupportedOperationException If something goes wrong whilst creating a deep clone
-   *         through serialization
+   * @throws UnsupportedOperationException If something goes wrong whilst creating a deep copy
    */
-  @SuppressWarnings("unchecked")
   public final T getCopy(final K id) {
     if (id != null) {
       cache.acquireReadLockOnKey(id);
 
       try {
-        T reference = get(id);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(reference);
-
-        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        return (T) ois.readObject();
+        return createCopy(get(id));
       } catch (CacheElementNotFoundException cenfe) {
         throw cenfe;
       }
       catch (Exception ex) {
-        log.error("Unable to get a serialized copy of the cache element as serialization is not supported for this object.", ex);
-        throw new UnsupportedOperationException("The getCopy() method is not supported for this cache element since the cache object is not entirely serializable. Please revisit your object.", ex);
+        log.error("Unable to get a copy of the cache element as copying is not supported for this object.", ex);
+        throw new UnsupportedOperationException("The getCopy() method is not supported for this cache element since the cache object cannot be copied. Please revisit your object.", ex);
       } finally {
         cache.releaseReadLockOnKey(id);
       }
@@ -224,6 +218,55 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
     }
   }
 
+  /**
+   * Creates a deep copy of the given cache object, which is not modified by
+   * later changes to the object residing in the cache. Is called within a
+   * read lock on the object.
+   *
+   * <p>The default implementation realizes the copy through serialization.
+   * Caches whose objects provide a deep {@link Cacheable#clone()} should
+   * override this method with {@link #createCopyByCloning(Cacheable)}, which
+   * is much cheaper.
+   *
+   * @param reference the object residing in the cache
+   * @return a deep copy of the object
+   * @throws Exception if the copy could not be created
+   */
+  protected T createCopy(final T reference) throws Exception {
+    return createCopyBySerialization(reference);
+  }
+
+  /**
+   * Creates a deep copy of the given cache object through serialization.
+   *
+   * @param reference the object to copy
+   * @return a deep copy of the object
+   * @throws Exception if the object is not entirely serializable
+   */
+  @SuppressWarnings("unchecked")
+  protected final T createCopyBySerialization(final T reference) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeObject(reference);
+
+    ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+    ObjectInputStream ois = new ObjectInputStream(bais);
+    return (T) ois.readObject();
+  }
+
+  /**
+   * Creates a copy of the given cache object by cloning it. Should only be
+   * used for cache objects whose {@link Cacheable#clone()} is a deep clone.
+   *
+   * @param reference the object to copy
+   * @return the clone of the object
+   * @throws CloneNotSupportedException if the object does not support cloning
+   */
+  @SuppressWarnings("unchecked")
+  protected final T createCopyByCloning(final T reference) throws CloneNotSupportedException {
+    return (T) reference.clone();
+  }
+
   /**
    * Puts an object in the cache, without notifying the cache listeners.
    * Wraps the call to the underlying Ehcache.
@@ -244,8 +287,27 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
     notifyListenersOfUpdate(value);
   }
 
+  /**
+   * Notifies the listeners of an update of the object with the given id.
+   * The snapshot passed to the listeners is created within a read lock
+   * on the object.
+   *
+   * @param id the id of the cache object that has been updated
+   * @throws CacheElementNotFoundException if the element if not found in the cache
+   * @throws IllegalArgumentException if the cache is accessed with a null key
+   */
   public void notifyListenersOfUpdate(final K id) {
-    notifyListenersOfUpdate(this.getCopy(id));
+    if (id == null) {
+      throw new IllegalArgumentException("Accessing cache with null key!");
+    }
+    T snapshot;
+    cache.acquireReadLockOnKey(id);
+    try {
+      snapshot = createSnapshot(get(id));
+    } finally {
+      cache.releaseReadLockOnKey(id);
+    }
+    notifyListenersOfUpdateWithSnapshot(snapshot);
   }
 
   /**
@@ -254,31 +316,67 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
    *
    * Notifies the listeners that an update occurred for this DataTag. Should
    * be called *within a lock on the cache object* so the object is not modified
-   * before being passed to the listeners (using a clone).
+   * before being passed to the listeners (using a snapshot, see
+   * {@link #createUpdateSnapshot(Cacheable)}).
    *
    * @param cacheable the cache object that has been updated
    */
   public void notifyListenersOfUpdate(final T cacheable) {
-    registeredEventListeners.notifyElementUpdated(new Element(cacheable.getId(), null), false); //only for monitoring via Ehcache: not using Ehcache listeners o.w.
-    try {
-      @SuppressWarnings("unchecked")
-      T cloned = (T) cacheable.clone();
-      for (C2monCacheListener< ? super T> listener : cacheListeners) {
-        listener.notifyElementUpdated(cloned);
-      }
-    } catch (CloneNotSupportedException e) {
-      log.error("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
-      throw new RuntimeException("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
+    notifyListenersOfUpdateWithSnapshot(createSnapshot(cacheable));
+  }
+
+  private void notifyListenersOfUpdateWithSnapshot(final T snapshot) {
+    registeredEventListeners.notifyElementUpdated(new Element(snapshot.getId(), null), false); //only for monitoring via Ehcache: not using Ehcache listeners o.w.
+    for (C2monCacheListener< ? super T> listener : cacheListeners) {
+      listener.notifyElementUpdated(snapshot);
+    }
+  }
+
+  public T putAndSnapshot(final K key, final T value) {
+    super.put(key, value);
+    return createSnapshot(value);
+  }
+
+  public void notifyListenersOfUpdates(final Collection<T> snapshots) {
+    if (snapshots.isEmpty()) {
+      return;
+    }
+    for (T snapshot : snapshots) {
+      registeredEventListeners.notifyElementUpdated(new Element(snapshot.getId(), null), false); //only for monitoring via Ehcache
+    }
+    for (C2monCacheListener< ? super T> listener : cacheListeners) {
+      listener.notifyElementsUpdated(snapshots);
     }
   }
 
   public void notifyListenerStatusConfirmation(final T cacheable, final long timestamp) {
+    T snapshot = createSnapshot(cacheable);
+    for (C2monCacheListener< ? super T> listener : cacheListeners) {
+      listener.confirmStatus(snapshot);
+    }
+  }
+
+  /**
+   * Creates the copy of an updated cache object which is passed to all the
+   * listeners. Is called within a lock on the object.
+   *
+   * <p>The default implementation clones the object. Caches whose objects
+   * are mostly configuration that is not modified in place can override this
+   * method to return a cheaper copy sharing that configuration with the
+   * cache object.
+   *
+   * @param cacheable the object residing in the cache
+   * @return a copy of the object which is not modified by later updates
+   * @throws CloneNotSupportedException if the object does not support cloning
+   */
+  @SuppressWarnings("unchecked")
+  protected T createUpdateSnapshot(final T cacheable) throws CloneNotSupportedException {
+    return (T) cacheable.clone();
+  }
+
+  private T createSnapshot(final T cacheable) {
     try {
-      @SuppressWarnings("unchecked")
-      T cloned = (T) cacheable.clone();
-      for (C2monCacheListener< ? super T> listener : cacheListeners) {
-        listener.confirmStatus(cloned);
-      }
+      return createUpdateSnapshot(cacheable);
     } catch (CloneNotSupportedException e) {
       log.error("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
       throw new RuntimeException("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
@@ -296,7 +394,8 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
   }
 
   public Lifecycle registerThreadedListener(C2monCacheListener<? super T> cacheListener, int queueCapacity, int threadPoolSize) {
-    MultiThreadedCacheListener<? super T> threadedCacheListener = new MultiThreadedCacheListener<>(cacheListener, queueCapacity, threadPoolSize);
+    MultiThreadedCacheListener<? super T> threadedCacheListener = new MultiThreadedCacheListener<>(cacheListener, queueCapacity, threadPoolSize,
+        properties.isKeyOrderedListeners());
     cacheListeners.add(threadedCacheListener);
     return threadedCacheListener;
   }
@@ -403,16 +502,17 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
 
   /**
    * For management purposes.
-   * @return the queue sizes of all the listeners to this cache.
+   * @return the queue sizes of all the listeners to this cache, with one
+   *         entry per thread (shard) for key-ordered multi-threaded listeners.
    */
-  @ManagedOperation(description="Get listener queue sizes.")
-  public List<Integer> getListenerTaskQueueSizes() {
-    ArrayList<Integer> queueSizes = new ArrayList<Integer>();
+  @ManagedOperation(description="Get listener queue sizes (per shard for key-ordered listeners).")
+  public List<List<Integer>> getListenerShardQueueSizes() {
+    ArrayList<List<Integer>> queueSizes = new ArrayList<>();
     for (C2monCacheListener listener : cacheListeners) {
       if (listener instanceof MultiThreadedCacheListener) {
-        queueSizes.add(((MultiThreadedCacheListener) listener).getTaskQueueSize());
+        queueSizes.add(((MultiThreadedCacheListener) listener).getShardQueueSizes());
       } else if (listener instanceof CacheListener) {
-        queueSizes.add(((CacheListener) listener).getTaskQueueSize());
+        queueSizes.add(Collections.singletonList(((CacheListener) listener).getTaskQueueSize()));
       }
     }
     return queueSizes;
@@ -276,7 +276,7 @@ public abstract class AbstractTagFacade<T extends Tag> extends AbstractFacade<T>
   @Override
   public void addDependentRuleToTag(final T tag, final Long ruleTagId) {
     AbstractTagCacheObject cacheObject = (AbstractTagCacheObject) tag;
-    cacheObject.getRuleIds().add(ruleTagId);
+    cacheObject.addRuleId(ruleTagId);
     StringBuilder bld = new StringBuilder();
     for (Long id : cacheObject.getRuleIds()) {
       bld.append(id).append(", ");
@@ -298,7 +298,7 @@ public abstract class AbstractTagFacade<T extends Tag> extends AbstractFacade<T>
     tagCache.acquireWriteLockOnKey(tag.getId());
     try {
       AbstractTagCacheObject cacheObject = (AbstractTagCacheObject) tag;
-      cacheObject.getRuleIds().remove(ruleTagId);
+      cacheObject.removeRuleId(ruleTagId);
       StringBuilder bld = new StringBuilder();
       for (Long id : cacheObject.getRuleIds()) {
         bld.append(id).append(",");
@@ -39,4 +39,11 @@ public class CacheProperties {
    * How long (in ms) the buffered cache listener should sleep between pulls
    */
   private int bufferedListenerPullFrequency = 5000;
+
+  /**
+   * If true, multi-threaded cache listeners dispatch the updates to their
+   * threads by cache key, so that the updates of a given cache object are
+   * always passed to the listener in order
+   */
+  private boolean keyOrderedListeners = false;
 }
@@ -17,6 +17,11 @@
 package cern.c2mon.server.cache.datatag;
 
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
 import java.util.Properties;
 
 import lombok.extern.slf4j.Slf4j;
@@ -40,6 +45,7 @@ import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.DataTagQuality;
 import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateHandler;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
 import cern.c2mon.shared.common.type.TypeConverter;
 import cern.c2mon.shared.daq.config.DataTagUpdate;
@@ -389,16 +395,7 @@ public abstract class AbstractDataTagFacade<T extends DataTag> extends AbstractT
     tagCache.acquireWriteLockOnKey(dataTagId);
     try {
       T dataTag = tagCache.get(dataTagId);
-
-      // Before updating the new value to the cache convert the value to the proper type.
-      // In the process of the deserialization the dataType can still divert from the defined dataType.
-      // If the dataType is an arbitrary object do nothing because the server don't work with this kind of values at all.
-      if(sourceDataTagValue != null
-          && sourceDataTagValue.getValue() != null
-          && isKnownClass(dataTag.getDataType())){
-        Object convertedValue = TypeConverter.cast(sourceDataTagValue.getValue(), dataTag.getDataType());
-        sourceDataTagValue.setValue(convertedValue);
-      }
+      convertSourceValue(dataTag, sourceDataTagValue);
 
       Event<Boolean> returnEvent = updateFromSource(dataTag, sourceDataTagValue);
       if (returnEvent.getReturnValue()) {
@@ -410,6 +407,126 @@ public abstract class AbstractDataTagFacade<T extends DataTag> extends AbstractT
     }
   }
 
+  /**
+   * Updates the DataTags in the cache from the passed SourceDataTagValues, typically all
+   * the values of a single DAQ message. Each tag is updated as in
+   * {@link #updateFromSource(Long, SourceDataTagValue)}, but the cache listeners are
+   * notified once for a whole batch of updated tags.
+   *
+   * <p>As for a single update, the listeners are notified while the write locks of the
+   * updated tags are held, so that they receive the updates of a tag in the order they
+   * were written to the cache. The locks are taken without waiting: if a tag is locked
+   * by another thread, the tags updated so far are notified and released before waiting
+   * for it, so that no thread ever waits for a lock while holding others.
+   *
+   * <p>Values of tags that cannot be found in the cache are ignored. Any other exception
+   * stops the batch, after notifying the listeners of the tags updated so far.
+   *
+   * @param sourceDataTagValues the values received from the data acquisition layer
+   * @return the number of tags that were updated (i.e. not filtered out)
+   */
+  public final int updateFromSource(final Collection<SourceDataTagValue> sourceDataTagValues) {
+    List<T> snapshots = new ArrayList<>(sourceDataTagValues.size());
+    Deque<Long> lockedIds = new ArrayDeque<>();
+    int updated = 0;
+    try {
+      for (SourceDataTagValue sourceDataTagValue : sourceDataTagValues) {
+        Long dataTagId = sourceDataTagValue.getId();
+        if (!tagCache.tryWriteLockOnKey(dataTagId, 0L)) {
+          notifyAndRelease(snapshots, lockedIds);
+          snapshots = new ArrayList<>();
+          tagCache.acquireWriteLockOnKey(dataTagId);
+        }
+        lockedIds.push(dataTagId);
+
+        try {
+          T dataTag = tagCache.get(dataTagId);
+          convertSourceValue(dataTag, sourceDataTagValue);
+
+          if (updateFromSource(dataTag, sourceDataTagValue).getReturnValue()) {
+            snapshots.add(tagCache.putAndSnapshot(dataTagId, dataTag));
+            updated++;
+          }
+        } catch (CacheElementNotFoundException cacheEx) {
+          log.warn("Received unrecognized data tag #" + dataTagId + ": ignoring the update");
+          tagCache.releaseWriteLockOnKey(lockedIds.pop());
+        }
+      }
+    } finally {
+      //the listeners must also be notified of the updates made before a failure
+      notifyAndRelease(snapshots, lockedIds);
+    }
+    return updated;
+  }
+
+  /**
+   * Notifies the listeners of the updated tags, then releases the write locks
+   * taken on them.
+   */
+  private void notifyAndRelease(final List<T> snapshots, final Deque<Long> lockedIds) {
+    try {
+      tagCache.notifyListenersOfUpdates(snapshots);
+    } finally {
+      while (!lockedIds.isEmpty()) {
+        tagCache.releaseWriteLockOnKey(lockedIds.pop());
+      }
+    }
+  }
+
+  /**
+   * Checks, before the value is decoded, whether a source value with the given timestamps
+   * would be filtered out by {@link #updateFromSource(Long, SourceDataTagValue)} because it
+   * is older than the current value of the tag. The same timestamps are compared as in the
+   * update, but the tag is only read.
+   *
+   * @param dataTagId id of the DataTag
+   * @param timestamp the source timestamp of the value, or {@link DataTagValueUpdateHandler#NO_TIMESTAMP}
+   * @param daqTimestamp the DAQ timestamp of the value, or {@link DataTagValueUpdateHandler#NO_TIMESTAMP}
+   * @return true if the value would be rejected; false if it may be accepted or if the tag
+   * cannot be found in the cache (the update then reports it)
+   */
+  public final boolean isOutdated(final Long dataTagId, final long timestamp, final long daqTimestamp) {
+    try {
+      tagCache.acquireReadLockOnKey(dataTagId);
+      try {
+        T dataTag = tagCache.get(dataTagId);
+
+        long dataTagTimestamp;
+        long sourceTagTimestamp;
+        if (dataTag.getDaqTimestamp() != null && daqTimestamp != DataTagValueUpdateHandler.NO_TIMESTAMP) {
+          dataTagTimestamp = dataTag.getDaqTimestamp().getTime();
+          sourceTagTimestamp = daqTimestamp;
+        } else if (dataTag.getSourceTimestamp() != null && timestamp != DataTagValueUpdateHandler.NO_TIMESTAMP) {
+          dataTagTimestamp = dataTag.getSourceTimestamp().getTime();
+          sourceTagTimestamp = timestamp;
+        } else {
+          return false;
+        }
+
+        return sourceTagTimestamp < dataTagTimestamp
+            && (dataTag.getDataTagQuality() == null || dataTag.getDataTagQuality().isAccessible());
+      } finally {
+        tagCache.releaseReadLockOnKey(dataTagId);
+      }
+    } catch (CacheElementNotFoundException cacheEx) {
+      return false;
+    }
+  }
+
+  /**
+   * Before updating the new value to the cache convert the value to the proper type.
+   * In the process of the deserialization the dataType can still divert from the defined dataType.
+   * If the dataType is an arbitrary object do nothing because the server don't work with this kind of values at all.
+   */
+  private void convertSourceValue(final T dataTag, final SourceDataTagValue sourceDataTagValue) {
+    if (sourceDataTagValue != null
+        && sourceDataTagValue.getValue() != null
+        && isKnownClass(dataTag.getDataType())) {
+      Object convertedValue = TypeConverter.cast(sourceDataTagValue.getValue(), dataTag.getDataType());
+      sourceDataTagValue.setValue(convertedValue);
+    }
+  }
+
   /**
    * To be called internally only within a dataTag synchronized block. Should not be made public.
    */
@@ -16,6 +16,10 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.listener;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.ApplicationObjectSupport;
 
@@ -32,7 +36,8 @@ import cern.c2mon.shared.util.threadhandler.ThreadHandler;
  * the C2monCacheListener implemented by the module listener class.
  *
  * <p>It instantiates threads for each cache notification method, and passes each
- * received object to the appropriate thread.
+ * received object to the appropriate thread. Single and batch updates are passed
+ * on the same thread, so they stay in order, and batches reach the listener as a whole.
  *
  * <p><b>This class is deprecated and the {@link MultiThreadedCacheListener} should
  * preferably be used instead (with #threads = 1 for a single-threaded listener)</b>
@@ -64,7 +69,7 @@ public final class CacheListener<T extends Cacheable> extends ApplicationObjectS
     super();
 
     try {
-      this.notifyUpdateThreadHandler = new ThreadHandler(cacheListener, C2monCacheListener.class.getMethod("notifyElementUpdated", new Class< ? >[] {Cacheable.class}));
+      this.notifyUpdateThreadHandler = new ThreadHandler(new UpdateDispatcher<T>(cacheListener), C2monCacheListener.class.getMethod("notifyElementsUpdated", new Class< ? >[] {Collection.class}));
       this.statusConfirmationHandler = new ThreadHandler(cacheListener, C2monCacheListener.class.getMethod("confirmStatus", new Class< ? >[] {Cacheable.class}));
 
       this.notifyUpdateThreadHandler.setName("NotifyUpdater");
@@ -86,7 +91,14 @@ public final class CacheListener<T extends Cacheable> extends ApplicationObjectS
 
   @Override
   public void notifyElementUpdated(final T cacheable) {
-    notifyUpdateThreadHandler.put(new Object[] {cacheable});
+    notifyUpdateThreadHandler.put(new Object[] {Collections.singletonList(cacheable)});
+  }
+
+  @Override
+  public void notifyElementsUpdated(final Collection<? extends T> cacheables) {
+    if (!cacheables.isEmpty()) {
+      notifyUpdateThreadHandler.put(new Object[] {new ArrayList<T>(cacheables)});
+    }
   }
 
 
@@ -140,6 +152,35 @@ public final class CacheListener<T extends Cacheable> extends ApplicationObjectS
     }
   }
 
+  /**
+   * Called on the update thread with all updates as batches, and
+   * passes single updates to <code>notifyElementUpdated</code>.
+   */
+  private static final class UpdateDispatcher<T extends Cacheable> implements C2monCacheListener<T> {
+
+    private final C2monCacheListener<T> cacheListener;
 
+    private UpdateDispatcher(final C2monCacheListener<T> cacheListener) {
+      this.cacheListener = cacheListener;
+    }
+
+    @Override
+    public void notifyElementUpdated(final T cacheable) {
+      cacheListener.notifyElementUpdated(cacheable);
+    }
+
+    @Override
+    public void notifyElementsUpdated(final Collection<? extends T> cacheables) {
+      if (cacheables.size() == 1) {
+        cacheListener.notifyElementUpdated(cacheables.iterator().next());
+      } else {
+        cacheListener.notifyElementsUpdated(cacheables);
+      }
+    }
 
+    @Override
+    public void confirmStatus(final T cacheable) {
+      cacheListener.confirmStatus(cacheable);
+    }
+  }
 }
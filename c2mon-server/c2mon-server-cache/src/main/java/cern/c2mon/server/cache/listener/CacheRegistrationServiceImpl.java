@@ -110,7 +110,8 @@ public class CacheRegistrationServiceImpl implements CacheRegistrationService {
     if (threads == 1) {
       return registerToAllTags(tagCacheListener);
     } else {
-      MultiThreadedCacheListener<Tag> threadedCacheListener = new MultiThreadedCacheListener<Tag>(tagCacheListener, QUEUE_SIZE_DEFAULT, threads);
+      MultiThreadedCacheListener<Tag> threadedCacheListener = new MultiThreadedCacheListener<Tag>(tagCacheListener, QUEUE_SIZE_DEFAULT, threads,
+          properties.isKeyOrderedListeners());
       registerListenerToTags(threadedCacheListener);
       return threadedCacheListener;
     }
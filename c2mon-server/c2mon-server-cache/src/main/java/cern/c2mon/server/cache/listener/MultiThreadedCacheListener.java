@@ -16,6 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.listener;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -24,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 
 import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.cache.C2monBatchCacheListener;
 import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.shared.common.Cacheable;
@@ -40,6 +44,19 @@ import cern.c2mon.shared.common.Cacheable;
  * <p>The number of threads used should be chosen according to the cache
  * the listener will be subscribed to and the expected operational load
  * of the system for that cache.
+ *
+ * <p>In the default mode, all updates are put in a single queue that is
+ * drained by all threads, so two updates of the same cache object may
+ * reach the listener in a different order. In key-ordered mode, each
+ * thread drains its own bounded queue (shard) and updates are routed
+ * to the shards by cache key, so updates of the same cache object are
+ * always passed to the listener in the order of notification.
+ *
+ * <p>Batches notified with <code>notifyElementsUpdated</code> are passed
+ * on as a single batch (split by shard in key-ordered mode) only to a
+ * {@link C2monBatchCacheListener}, which processes the batch as a whole.
+ * For other listeners, the updates of a batch are queued one by one, so
+ * they are spread across the threads.
  * 
  * @author Mark Brightwell
  * @param <T> type of cache object expected by listener
@@ -52,21 +69,32 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
    * The number of milliseconds a thread waits between checking for shutdown requests.
    */
   private static final int THREAD_SHUTDOWN_CHECK_INTERVAL = 2000;
+
   
   /**
    * The wrapped listener.
    */
   private C2monCacheListener<T> c2monCacheListener;
+
+  /**
+   * True if the wrapped listener processes the batches as a whole.
+   */
+  private final boolean batchListener;
   
   /**
-   * Queue keeping the cache objects.
+   * Queue keeping the cache objects (null in key-ordered mode).
    */
-  private LinkedBlockingQueue<ObjectAndMethod> taskQueue;  
+  private LinkedBlockingQueue<ObjectAndMethod> taskQueue;
+
+  /**
+   * One queue per thread, in key-ordered mode (null otherwise).
+   */
+  private List<Shard> shards;
   
   /**
    * Used for remembering which method to call (instead of reflection), in the map below.
    */
-  private enum SupportedMethods { ON_UPDATE, STATUS_CONFIRMATION }
+  private enum SupportedMethods { ON_UPDATE, ON_BATCH_UPDATE, STATUS_CONFIRMATION }
   
   /**
    * The pool of threads calling the C2monCacheListener (the threads are submitted
@@ -94,41 +122,151 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
    *        should be called on
    */
   public MultiThreadedCacheListener(final C2monCacheListener<T> timCacheListener, final int queueCapacity, final int threadPoolSize) {
+    this(timCacheListener, queueCapacity, threadPoolSize, false);
+  }
+
+  /**
+   * Constructor.
+   * @param timCacheListener the listener wrapped by this class
+   *        (the module listener)
+   * @param queueCapacity the capacity of the blocking queue
+   *        containing the cache objects to pass to the listeners
+   *        (per thread in key-ordered mode)
+   * @param threadPoolSize the number of threads that the module
+   *        should be called on
+   * @param keyOrdered if true, updates are dispatched to the threads
+   *        by cache key, so that updates of a given cache object
+   *        are always processed in order
+   */
+  public MultiThreadedCacheListener(final C2monCacheListener<T> timCacheListener, final int queueCapacity, final int threadPoolSize,
+                                    final boolean keyOrdered) {
     super();
-    this.c2monCacheListener = timCacheListener;  
-    taskQueue = new LinkedBlockingQueue<ObjectAndMethod>(queueCapacity);    
+    this.c2monCacheListener = timCacheListener;
+    this.batchListener = timCacheListener instanceof C2monBatchCacheListener;
     executor = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, Long.MAX_VALUE, TimeUnit.NANOSECONDS, new SynchronousQueue<Runnable>());
-    for (int i = 0; i < threadPoolSize; i++) {
-      executor.submit(new NotifyTask());     
-    }    
+    if (keyOrdered) {
+      shards = new ArrayList<>(threadPoolSize);
+      for (int i = 0; i < threadPoolSize; i++) {
+        Shard shard = new Shard(queueCapacity);
+        shards.add(shard);
+        executor.submit(shard);
+      }
+    } else {
+      taskQueue = new LinkedBlockingQueue<ObjectAndMethod>(queueCapacity);
+      for (int i = 0; i < threadPoolSize; i++) {
+        executor.submit(new NotifyTask());
+      }
+    }
   }
-  
- 
-  @Override
-  public void confirmStatus(T cacheable) {   
+
+  /**
+   * Passes the update to the threads, or logs a warning if the listener
+   * is shutting down.
+   * @param objectAndMethod cacheable with method info
+   */
+  private void enqueue(final ObjectAndMethod objectAndMethod) {
     try {
-      if (!shutdownRequestMade) {              
-        taskQueue.put(new ObjectAndMethod(cacheable, SupportedMethods.STATUS_CONFIRMATION));        
+      if (!shutdownRequestMade) {
+        if (shards != null) {
+          getShard(objectAndMethod.cacheable).put(objectAndMethod);
+        } else {
+          taskQueue.put(objectAndMethod);
+        }
       } else {
         log.warn("Attempt at notifying of element update after shutdown started "
-            + "- should not happen and indicates incorrect shutdown sequence!");       
-      }            
+            + "- should not happen and indicates incorrect shutdown sequence!");
+      }
     } catch (InterruptedException interEx) {
       log.error("InterruptedExcetion caught while waiting for MultiThreadedListener queue to free space: ", interEx);
     }
   }
 
+  /**
+   * @param cacheable the updated cache object
+   * @return the shard in charge of the cache object key
+   */
+  private Shard getShard(final T cacheable) {
+    return shards.get(getShardIndex(cacheable));
+  }
 
+  /**
+   * @param cacheable the updated cache object
+   * @return the index of the shard in charge of the cache object key
+   */
+  private int getShardIndex(final T cacheable) {
+    Long id = cacheable.getId();
+    if (id == null) {
+      return 0;
+    }
+    int hash = id.hashCode();
+    hash ^= (hash >>> 16);
+    return (hash & Integer.MAX_VALUE) % shards.size();
+  }
+
+  /**
+   * @return true if no updates are waiting to be passed to the listener
+   */
+  private boolean isQueueEmpty() {
+    if (shards != null) {
+      for (Shard shard : shards) {
+        if (!shard.queue.isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return taskQueue.isEmpty();
+  }
+
+  @Override
+  public void confirmStatus(T cacheable) {
+    enqueue(new ObjectAndMethod(cacheable, SupportedMethods.STATUS_CONFIRMATION));
+  }
 
   @Override
   public void notifyElementUpdated(T cacheable) {
+    enqueue(new ObjectAndMethod(cacheable, SupportedMethods.ON_UPDATE));
+  }
+
+  @Override
+  public void notifyElementsUpdated(Collection<? extends T> cacheables) {
+    if (cacheables.isEmpty()) {
+      return;
+    }
+    if (!batchListener) {
+      for (T cacheable : cacheables) {
+        enqueue(new ObjectAndMethod(cacheable, SupportedMethods.ON_UPDATE));
+      }
+      return;
+    }
+    if (shutdownRequestMade) {
+      log.warn("Attempt at notifying of element update after shutdown started "
+          + "- should not happen and indicates incorrect shutdown sequence!");
+      return;
+    }
     try {
-      if (!shutdownRequestMade) {        
-        taskQueue.put(new ObjectAndMethod(cacheable, SupportedMethods.ON_UPDATE));        
+      if (shards != null) {
+        List<List<T>> shardBatches = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+          shardBatches.add(null);
+        }
+        for (T cacheable : cacheables) {
+          int index = getShardIndex(cacheable);
+          List<T> shardBatch = shardBatches.get(index);
+          if (shardBatch == null) {
+            shardBatch = new ArrayList<>();
+            shardBatches.set(index, shardBatch);
+          }
+          shardBatch.add(cacheable);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+          if (shardBatches.get(i) != null) {
+            shards.get(i).put(new ObjectAndMethod(shardBatches.get(i)));
+          }
+        }
       } else {
-        log.warn("Attempt at notifying of element update after shutdown started "
-            + "- should not happen and indicates incorrect shutdown sequence!");
-      }            
+        taskQueue.put(new ObjectAndMethod(new ArrayList<T>(cacheables)));
+      }
     } catch (InterruptedException interEx) {
       log.error("InterruptedExcetion caught while waiting for MultiThreadedListener queue to free space: ", interEx);
     }
@@ -162,7 +300,7 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
       running = false;      
       shutdownRequestMade = true;        
       //wait for the queue to empty
-      while (!taskQueue.isEmpty()) {
+      while (!isQueueEmpty()) {
         try {
           Thread.sleep(100);
         } catch (InterruptedException ex) {
@@ -189,11 +327,36 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
   /**
    * For management purposes.
    * @return the size of the task queue for this listener
-   */  
+   *         (the sum of all shards in key-ordered mode)
+   */
   public int getTaskQueueSize() {
+    if (shards != null) {
+      int size = 0;
+      for (Shard shard : shards) {
+        size += shard.queue.size();
+      }
+      return size;
+    }
     return taskQueue.size();
   }
 
+  /**
+   * For management purposes.
+   * @return the number of waiting updates per thread in key-ordered
+   *         mode, or the size of the single task queue otherwise
+   */
+  public List<Integer> getShardQueueSizes() {
+    List<Integer> sizes = new ArrayList<>();
+    if (shards != null) {
+      for (Shard shard : shards) {
+        sizes.add(shard.queue.size());
+      }
+    } else {
+      sizes.add(taskQueue.size());
+    }
+    return sizes;
+  }
+
   /**
    * For passing an object and the method that needs calling.
    * @author Mark Brightwell
@@ -211,6 +374,11 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
      */
     private SupportedMethods method;
 
+    /**
+     * Objects in a batch notification (null otherwise).
+     */
+    private Collection<T> cacheables;
+
     /**
      * Constructor.
      * @param cacheable the object
@@ -221,6 +389,16 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
       this.cacheable = cacheable;
       this.method = method;
     }
+
+    /**
+     * Constructor for a batch update.
+     * @param cacheables the objects
+     */
+    private ObjectAndMethod(final Collection<T> cacheables) {
+      super();
+      this.cacheables = cacheables;
+      this.method = SupportedMethods.ON_BATCH_UPDATE;
+    }
         
   }
   
@@ -259,22 +437,73 @@ public class MultiThreadedCacheListener<T extends Cacheable> implements C2monCac
         callCorrectMethod(objectAndMethod);
       }
     }
-    
+  }
+
+  /**
+   * Calls the correct method as recorded in the local map.
+   * @param objectAndMethod cacheable with method info
+   */
+  private void callCorrectMethod(final ObjectAndMethod objectAndMethod) {
+    try {
+      SupportedMethods method = objectAndMethod.method;
+      if (method.equals(SupportedMethods.ON_UPDATE)) {
+        c2monCacheListener.notifyElementUpdated(objectAndMethod.cacheable);
+      } else if (method.equals(SupportedMethods.ON_BATCH_UPDATE)) {
+        c2monCacheListener.notifyElementsUpdated(objectAndMethod.cacheables);
+      } else {
+        c2monCacheListener.confirmStatus(objectAndMethod.cacheable);
+      }
+    } catch (Exception e) {
+      log.error("Exception caught when notifying listener: the update could not be processed.", e);
+    }           
+  }
+
+  /**
+   * A bounded queue of updates drained by a single thread, used in
+   * key-ordered mode.
+   */
+  private final class Shard implements Runnable {
+
     /**
-     * Calls the correct method as recorded in the local map.
+     * The updates waiting to be passed to the listener.
+     */
+    private final LinkedBlockingQueue<ObjectAndMethod> queue;
+
+    private Shard(final int capacity) {
+      this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds an update to the queue, waiting if the queue is full.
      * @param objectAndMethod cacheable with method info
+     * @throws InterruptedException if interrupted while waiting for space
      */
-    private void callCorrectMethod(final ObjectAndMethod objectAndMethod) {
-      try {
-        SupportedMethods method = objectAndMethod.method;
-        if (method.equals(SupportedMethods.ON_UPDATE)) {
-          c2monCacheListener.notifyElementUpdated(objectAndMethod.cacheable);
-        } else {
-          c2monCacheListener.confirmStatus(objectAndMethod.cacheable);
+    private void put(final ObjectAndMethod objectAndMethod) throws InterruptedException {
+      queue.put(objectAndMethod);
+    }
+
+    /**
+     * Runs from start up to shutdown and passes the updates of this shard
+     * to the listener in order.
+     */
+    @Override
+    public void run() {
+      while (!shutdownRequestMade) {
+        try {
+          ObjectAndMethod objectAndMethod = queue.poll(THREAD_SHUTDOWN_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+          if (objectAndMethod != null) {
+            callCorrectMethod(objectAndMethod);
+          }
+        } catch (InterruptedException e) {
+          log.warn("Cache Listener thread interrupted in MultiThreadedListener.", e);
         }
-      } catch (Exception e) {
-        log.error("Exception caught when notifying listener: the update could not be processed.", e);
-      }           
+      }
+
+      //empty the queue before shutting down
+      ObjectAndMethod objectAndMethod;
+      while ((objectAndMethod = queue.poll()) != null) {
+        callCorrectMethod(objectAndMethod);
+      }
     }
   }
 }
@@ -80,6 +80,25 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
   }
 
 
+  /**
+   * Tag cache objects are deep cloned, so no serialization is needed
+   * to copy them.
+   */
+  @Override
+  protected T createCopy(final T reference) throws CloneNotSupportedException {
+    return createCopyByCloning(reference);
+  }
+
+  /**
+   * The listeners receive a snapshot of the tag, which shares its
+   * configuration with the cache object (see {@link AbstractTagCacheObject#snapshot()}).
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected T createUpdateSnapshot(final T cacheable) throws CloneNotSupportedException {
+    return (T) ((AbstractTagCacheObject) cacheable).snapshot();
+  }
+
   @Override
   public void notifyListenersOfSupervisionChange(final T tag) {
     //only notify if the current value in the cache is not more recent (a new update could have overraken the supervision notification)
@@ -17,6 +17,7 @@
 package cern.c2mon.server.cache.datatag;
 
 import cern.c2mon.server.cache.AbstractCacheIntegrationTest;
+import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.server.cache.DataTagCache;
 import cern.c2mon.server.cache.dbaccess.DataTagMapper;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
@@ -24,11 +25,13 @@ import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.test.CacheObjectComparison;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -174,4 +177,43 @@ public class DataTagCacheTest extends AbstractCacheIntegrationTest {
       Assert.assertTrue(dataTag.getName().toLowerCase().contains("PROPERTY_test".toLowerCase()));
     }
   }
+
+  /**
+   * The listeners receive a snapshot sharing the configuration with the
+   * cache object, which is not affected by later updates of the cache object.
+   */
+  @Test
+  public void testNotificationSnapshot() {
+    final List<DataTag> notified = new ArrayList<>();
+    dataTagCache.registerSynchronousListener(new C2monCacheListener<DataTag>() {
+      @Override
+      public void notifyElementUpdated(DataTag cacheable) {
+        notified.add(cacheable);
+      }
+
+      @Override
+      public void confirmStatus(DataTag cacheable) {
+      }
+    });
+
+    DataTagCacheObject cacheObject = (DataTagCacheObject) dataTagCache.get(200002L);
+    dataTagCache.notifyListenersOfUpdate(200002L);
+    assertEquals(1, notified.size());
+    DataTagCacheObject snapshot = (DataTagCacheObject) notified.get(0);
+    assertNotSame(cacheObject, snapshot);
+    assertSame(cacheObject.getAddress(), snapshot.getAddress());
+    assertSame(cacheObject.getMetadata(), snapshot.getMetadata());
+    assertSame(cacheObject.getRuleIds(), snapshot.getRuleIds());
+    assertSame(cacheObject.getAlarmIds(), snapshot.getAlarmIds());
+    assertNotSame(cacheObject.getDataTagQuality(), snapshot.getDataTagQuality());
+    assertNotSame(cacheObject.getCacheTimestamp(), snapshot.getCacheTimestamp());
+
+    boolean valid = snapshot.isValid();
+    cacheObject.getDataTagQuality().addInvalidStatus(TagQualityStatus.UNKNOWN_REASON);
+    cacheObject.addRuleId(123456789L);
+    cacheObject.addAlarmId(123456789L);
+    assertEquals(valid, snapshot.isValid());
+    assertFalse(snapshot.getRuleIds().contains(123456789L));
+    assertFalse(snapshot.getAlarmIds().contains(123456789L));
+  }
 }
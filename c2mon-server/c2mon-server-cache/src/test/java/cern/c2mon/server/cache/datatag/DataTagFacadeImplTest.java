@@ -17,6 +17,7 @@
 package cern.c2mon.server.cache.datatag;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.easymock.EasyMock;
@@ -25,14 +26,17 @@ import org.junit.Before;
 import org.junit.Test;
 
 import cern.c2mon.server.cache.*;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
 import cern.c2mon.server.test.CacheObjectCreation;
 import cern.c2mon.shared.common.ConfigurationException;
 import cern.c2mon.shared.common.datatag.*;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateHandler;
 import org.springframework.mock.env.MockEnvironment;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -358,6 +362,36 @@ public class DataTagFacadeImplTest {
     control.verify();
   }
 
+  /**
+   * The outdated check compares the same timestamps as the update, without modifying the tag.
+   */
+  @Test
+  public void testIsOutdated() {
+    long currentMillis = System.currentTimeMillis();
+    DataTagCacheObject dataTag = new DataTagCacheObject(Long.valueOf(2), "test name", "Float", DataTagConstants.MODE_OPERATIONAL);
+    dataTag.setSourceTimestamp(new Timestamp(currentMillis - 100));
+    dataTag.setDaqTimestamp(new Timestamp(currentMillis));
+
+    dataTagCache.acquireReadLockOnKey(dataTag.getId());
+    EasyMock.expectLastCall().anyTimes();
+    dataTagCache.releaseReadLockOnKey(dataTag.getId());
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.expect(dataTagCache.get(dataTag.getId())).andReturn(dataTag).anyTimes();
+    control.replay();
+
+    //DAQ timestamps compared if both set
+    assertTrue(dataTagFacade.isOutdated(dataTag.getId(), currentMillis, currentMillis - 1));
+    assertFalse(dataTagFacade.isOutdated(dataTag.getId(), currentMillis - 200, currentMillis));
+    //else the source timestamps
+    assertTrue(dataTagFacade.isOutdated(dataTag.getId(), currentMillis - 200, DataTagValueUpdateHandler.NO_TIMESTAMP));
+    assertFalse(dataTagFacade.isOutdated(dataTag.getId(), DataTagValueUpdateHandler.NO_TIMESTAMP, DataTagValueUpdateHandler.NO_TIMESTAMP));
+
+    //older values accepted if the tag is inaccessible
+    dataTag.getDataTagQuality().addInvalidStatus(TagQualityStatus.INACCESSIBLE);
+    assertFalse(dataTagFacade.isOutdated(dataTag.getId(), currentMillis, currentMillis - 1));
+    control.verify();
+  }
+
   @Test
   public void testCreateCacheObject() throws IllegalAccessException {
     Properties properties = new Properties();
@@ -447,5 +481,87 @@ public class DataTagFacadeImplTest {
     dataTagFacade.createCacheObject(10L, properties);
   }
 
+  /**
+   * All tags of a batch are updated, unknown tags are skipped and the
+   * listeners are notified once with the snapshots of the updated tags,
+   * before their locks are released.
+   */
+  @Test
+  public void testBatchUpdateFromSource() {
+    DataTagCacheObject dataTag1 = new DataTagCacheObject(1L, "tag 1", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject dataTag2 = new DataTagCacheObject(2L, "tag 2", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject snapshot1 = new DataTagCacheObject(1L);
+    DataTagCacheObject snapshot2 = new DataTagCacheObject(2L);
+
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    SourceDataTagValue value1 = createSourceValue(1L, 1.0f, timestamp);
+    SourceDataTagValue unknownValue = createSourceValue(3L, 3.0f, timestamp);
+    SourceDataTagValue value2 = createSourceValue(2L, 2.0f, timestamp);
+
+    control.checkOrder(true);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(1L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(1L)).andReturn(dataTag1);
+    EasyMock.expect(dataTagCache.putAndSnapshot(1L, dataTag1)).andReturn(snapshot1);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(3L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(3L)).andThrow(new CacheElementNotFoundException("not found"));
+    dataTagCache.releaseWriteLockOnKey(3L);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(2L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(2L)).andReturn(dataTag2);
+    EasyMock.expect(dataTagCache.putAndSnapshot(2L, dataTag2)).andReturn(snapshot2);
+    dataTagCache.notifyListenersOfUpdates(Arrays.<DataTag>asList(snapshot1, snapshot2));
+    dataTagCache.releaseWriteLockOnKey(2L);
+    dataTagCache.releaseWriteLockOnKey(1L);
+
+    control.replay();
 
+    int updated = dataTagFacade.updateFromSource(Arrays.asList(value1, unknownValue, value2));
+
+    assertEquals(2, updated);
+    assertEquals(1.0f, dataTag1.getValue());
+    assertEquals(2.0f, dataTag2.getValue());
+    assertTrue(dataTag1.isValid());
+    control.verify();
+  }
+
+  /**
+   * When a tag of the batch is locked by another thread, the tags updated
+   * so far are notified and released before waiting for its lock.
+   */
+  @Test
+  public void testBatchUpdateFromSourceWithLockedTag() {
+    DataTagCacheObject dataTag1 = new DataTagCacheObject(1L, "tag 1", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject dataTag2 = new DataTagCacheObject(2L, "tag 2", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject snapshot1 = new DataTagCacheObject(1L);
+    DataTagCacheObject snapshot2 = new DataTagCacheObject(2L);
+
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+
+    control.checkOrder(true);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(1L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(1L)).andReturn(dataTag1);
+    EasyMock.expect(dataTagCache.putAndSnapshot(1L, dataTag1)).andReturn(snapshot1);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(2L, 0L)).andReturn(false);
+    dataTagCache.notifyListenersOfUpdates(Arrays.<DataTag>asList(snapshot1));
+    dataTagCache.releaseWriteLockOnKey(1L);
+    dataTagCache.acquireWriteLockOnKey(2L);
+    EasyMock.expect(dataTagCache.get(2L)).andReturn(dataTag2);
+    EasyMock.expect(dataTagCache.putAndSnapshot(2L, dataTag2)).andReturn(snapshot2);
+    dataTagCache.notifyListenersOfUpdates(Arrays.<DataTag>asList(snapshot2));
+    dataTagCache.releaseWriteLockOnKey(2L);
+
+    control.replay();
+
+    int updated = dataTagFacade.updateFromSource(Arrays.asList(createSourceValue(1L, 1.0f, timestamp),
+        createSourceValue(2L, 2.0f, timestamp)));
+
+    assertEquals(2, updated);
+    control.verify();
+  }
+
+  private static SourceDataTagValue createSourceValue(Long id, Float value, Timestamp timestamp) {
+    SourceDataTagValue sourceValue = new SourceDataTagValue(id, "tag " + id, false);
+    sourceValue.setValue(value);
+    sourceValue.setTimestamp(timestamp);
+    return sourceValue;
+  }
 }
@@ -20,12 +20,24 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import cern.c2mon.server.cache.C2monBatchCacheListener;
 import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.shared.common.Cacheable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit test of the MultiThreadedCacheListener class
@@ -103,6 +115,107 @@ public class MultiThreadedListenerTest {
     verify(mockCacheable2);   
   }
   
+  /**
+   * In key-ordered mode, the updates of a given cache object must reach
+   * the listener in the order of notification.
+   */
+  @Test
+  public void testKeyOrderedNotifications() throws InterruptedException {
+    final int updatesPerKey = 1000;
+    final long[] keys = {1L, 2L, 3L, 4L, 5L};
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch latch = new CountDownLatch(updatesPerKey * keys.length);
+
+    MultiThreadedCacheListener<Update> orderedListener = new MultiThreadedCacheListener<>(new C2monCacheListener<Update>() {
+      @Override
+      public void notifyElementUpdated(Update cacheable) {
+        received.computeIfAbsent(cacheable.getId(), k -> Collections.synchronizedList(new ArrayList<>())).add(cacheable.sequence);
+        latch.countDown();
+      }
+
+      @Override
+      public void confirmStatus(Update cacheable) {
+      }
+    }, 10, 3, true);
+
+    for (int i = 0; i < updatesPerKey; i++) {
+      for (long key : keys) {
+        orderedListener.notifyElementUpdated(new Update(key, i));
+      }
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    for (long key : keys) {
+      List<Integer> sequences = received.get(key);
+      assertEquals(updatesPerKey, sequences.size());
+      for (int i = 0; i < updatesPerKey; i++) {
+        assertEquals(i, sequences.get(i).intValue());
+      }
+    }
+    assertEquals(3, orderedListener.getShardQueueSizes().size());
+    orderedListener.stop();
+  }
+
+  /**
+   * The updates of a batch are spread across the threads, unless the
+   * listener processes the batches as a whole.
+   */
+  @Test
+  public void testBatchSpreadAcrossThreads() throws InterruptedException {
+    final CountDownLatch bothThreadsBusy = new CountDownLatch(2);
+    final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    MultiThreadedCacheListener<Update> listener = new MultiThreadedCacheListener<>(new C2monCacheListener<Update>() {
+      @Override
+      public void notifyElementUpdated(Update cacheable) {
+        threads.add(Thread.currentThread().getName());
+        bothThreadsBusy.countDown();
+        try {
+          // only returns once the other thread has an update as well
+          bothThreadsBusy.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void confirmStatus(Update cacheable) {
+      }
+    }, 10, 2);
+
+    listener.notifyElementsUpdated(Arrays.asList(new Update(1L, 0), new Update(2L, 0)));
+    assertTrue(bothThreadsBusy.await(5, TimeUnit.SECONDS));
+    assertEquals(2, threads.size());
+    listener.stop();
+  }
+
+  @Test
+  public void testBatchPassedToBatchListener() throws InterruptedException {
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    MultiThreadedCacheListener<Update> listener = new MultiThreadedCacheListener<>(new C2monBatchCacheListener<Update>() {
+      @Override
+      public void notifyElementsUpdated(Collection<? extends Update> cacheables) {
+        batchSizes.add(cacheables.size());
+        latch.countDown();
+      }
+
+      @Override
+      public void notifyElementUpdated(Update cacheable) {
+        batchSizes.add(1);
+      }
+
+      @Override
+      public void confirmStatus(Update cacheable) {
+      }
+    }, 10, 2);
+
+    listener.notifyElementsUpdated(Arrays.asList(new Update(1L, 0), new Update(2L, 0), new Update(3L, 0)));
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList(3), batchSizes);
+    listener.stop();
+  }
+
   /**
    * Is now allowed but logs a warning
    * @throws InterruptedException
@@ -119,4 +232,29 @@ public class MultiThreadedListenerTest {
     multiThreadedListener.stop();
   }
 
+  /**
+   * Cache object carrying the sequence number of the update.
+   */
+  private static final class Update implements Cacheable {
+
+    private final Long id;
+
+    private final int sequence;
+
+    private Update(final Long id, final int sequence) {
+      this.id = id;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Update clone() {
+      return this;
+    }
+  }
+
 }
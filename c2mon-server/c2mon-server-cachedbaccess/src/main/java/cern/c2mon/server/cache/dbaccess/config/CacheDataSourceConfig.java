@@ -3,7 +3,10 @@ package cern.c2mon.server.cache.dbaccess.config;
 import cern.c2mon.server.common.util.HsqlDatabaseBuilder;
 import com.google.common.collect.ImmutableMap;
 import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.annotation.MapperScan;
 import org.mybatis.spring.mapper.MapperScannerConfigurer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -66,6 +69,16 @@ public class CacheDataSourceConfig {
     return sessionFactory;
   }
 
+  /**
+   * Session executing the statements as JDBC batches, sent when the Spring
+   * transaction commits. Used by the cache persistence to write back the
+   * updated cache objects.
+   */
+  @Bean
+  public SqlSessionTemplate cacheBatchSqlSessionTemplate(SqlSessionFactory cacheSqlSessionFactory) {
+    return new SqlSessionTemplate(cacheSqlSessionFactory, ExecutorType.BATCH);
+  }
+
   @Bean
   public static VendorDatabaseIdProvider databaseIdProvider() {
     VendorDatabaseIdProvider databaseIdProvider = new VendorDatabaseIdProvider();
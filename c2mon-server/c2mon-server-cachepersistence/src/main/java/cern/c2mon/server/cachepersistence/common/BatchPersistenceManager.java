@@ -36,7 +36,8 @@ public interface BatchPersistenceManager {
   /**
    * Persist this list of updates to the cache. A collection
    * of ids are passed, with the intention that the current
-   * cache values should be used.
+   * cache values should be used. The updates may be persisted
+   * after the method returns.
    * 
    * @param cacheableIds a list of cache object ids
    */
@@ -16,14 +16,22 @@
  *****************************************************************************/
 package cern.c2mon.server.cachepersistence.common;
 
-import java.util.*;
-import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.ibatis.exceptions.PersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -40,9 +48,21 @@ import cern.c2mon.shared.common.Cacheable;
  * <p>This implementation saves the values of the indicated tags
  * in batches using a {@link CachePersistenceDAO}.
  *
+ * <p>The ids passed to {@link #persistList(Collection)} are added to
+ * the set of cache objects to persist, and a persistence task is
+ * submitted to the executor if none is already queued or running for
+ * this cache. The task then persists batches until the set is empty,
+ * so the caller never waits for the database. The batches of a cache
+ * are persisted one at a time, in order for an older value never to
+ * overwrite a newer one. The size of the batches is adapted to their
+ * duration: halved when a batch takes longer than the target latency
+ * or fails, increased when full batches take less than half of it.
+ *
  * <p>If an exception occurs during the DB persistence, the class
- * will attempt to save them next time around. If the server is
- * shutdown/crashes with the DB available, this list is lost.
+ * will attempt to save them next time around: with the next call to
+ * {@link #persistList(Collection)}, or after the retry delay if none
+ * comes in the meantime. If the server is shutdown/crashes with the
+ * DB available, this list is lost.
  *
  * @author Mark Brightwell
  *
@@ -57,16 +77,32 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   private static final Logger LOGGER = LoggerFactory.getLogger(BatchPersistenceManagerImpl.class);
 
   /**
-   * Size of the batches between database commits. Also corresponds
-   * to the size of the tasks executed by the ExecutorService.
+   * Initial size of the batches between database commits.
    */
   private static final int RECORDS_PER_BATCH = 500;
 
   /**
-   * Timeout in milliseconds for a single batch to persist.
+   * Bounds of the adapted size of the batches.
+   */
+  private static final int MIN_RECORDS_PER_BATCH = 50;
+  private static final int MAX_RECORDS_PER_BATCH = 5000;
+
+  /**
+   * Duration in milliseconds above which a batch is logged as slow.
    */
   private int timeoutPerBatch = 8000;
 
+  /**
+   * Duration in milliseconds a batch should take, used to adapt the
+   * size of the batches.
+   */
+  private int targetLatencyPerBatch = 1000;
+
+  /**
+   * Delay in milliseconds after which a failed batch is retried.
+   */
+  private int retryDelay = 5000;
+
   /**
    * Reference to DAO.
    */
@@ -80,10 +116,11 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   private C2monCache<Long, T> cache;
 
   /**
-   * Set of tags that the server failed to persist successfully and
-   * need persisting when the connection is back. This set should
-   * not grow indefinitely since it only keeps the ids of the
-   * elements to persist (so max size is size of cache).
+   * Set of the cache objects that need persisting, including the ones
+   * the server failed to persist and that will be retried with the
+   * next batch. This set should not grow indefinitely since it only
+   * keeps the ids of the elements to persist (so max size is size of
+   * cache).
    *
    * <p>In the case of a server crash or forced shutdown, or if
    * shutting down the server while the DB is unavailable, these
@@ -96,15 +133,40 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
    * be done at later stage to avoid inconsistencies, with server updating
    * DB once it is back).
    */
-  private Set<Long> toBePersisted = new HashSet<>();
+  private final Set<Long> toBePersisted = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Set while a persistence task of this cache is queued or running.
+   */
+  private final AtomicBoolean taskSubmitted = new AtomicBoolean(false);
+
+  /**
+   * Held while persisting a batch, so that the batches of this cache
+   * are persisted one at a time.
+   */
+  private final Object batchLock = new Object();
+
+  /**
+   * Current size of the batches, only modified under the batchLock.
+   */
+  private volatile int batchSize = RECORDS_PER_BATCH;
 
   /**
-   * Lock for accessing toBePersisted collection, used only
-   * within this class. The lock is to make the bean thread-safe,
-   * in case it gets called on multiple threads (which is not
-   * currently the case).
+   * Number of cache objects in the batch being persisted.
    */
-  private ReentrantReadWriteLock toBePersistedLock = new ReentrantReadWriteLock();
+  private volatile int inFlightCount = 0;
+
+  private volatile long lastBatchLatency = 0;
+
+  private final AtomicLong batchCount = new AtomicLong();
+
+  private final AtomicLong totalBatchLatency = new AtomicLong();
+
+  private final AtomicLong persistedCount = new AtomicLong();
+
+  private final AtomicLong failedBatchCount = new AtomicLong();
+
+  private final AtomicLong retriedCount = new AtomicLong();
 
   /**
    * Executor running the persistence tasks.
@@ -113,6 +175,16 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
 
   private ClusterCache clusterCache;
 
+  /**
+   * Timer retrying the failed batches, only set while running.
+   */
+  private volatile Timer retryTimer;
+
+  /**
+   * Set while a retry is scheduled on the retry timer.
+   */
+  private final AtomicBoolean retryScheduled = new AtomicBoolean(false);
+
   private boolean started = false;
 
   public BatchPersistenceManagerImpl(final CachePersistenceDAO<T> cachePersistenceDAO, final C2monCache<Long, T> cache,
@@ -124,109 +196,73 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
     this.cachePersistenceThreadPoolTaskExecutor = threadPoolTaskExecutor;
   }
 
+  /**
+   * Returns immediately, the cache objects are persisted by the
+   * persistence task of this cache.
+   */
   @Override
   public void persistList(final Collection<Long> keyCollection) {
-    clusterCache.acquireWriteLockOnKey(cachePersistenceLock);
-    try {
-      LOGGER.debug("Submitting new persistence task (currently " + cachePersistenceThreadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size() + " tasks in queue)");
-
-      //local set, no synch needed; removes duplicates from collection (though unnecessary with current SynchroBuffer)
-      Set<Long> localToBePersisted = new HashSet<>(keyCollection);
-
-      toBePersistedLock.writeLock().lock();
-      try {
-        localToBePersisted.addAll(toBePersisted);  //gets rid of all duplicates
-        toBePersisted.clear();
-      } finally {
-        toBePersistedLock.writeLock().unlock();
-      }
-
-      int size = localToBePersisted.size();
-
-      LOGGER.debug("Persisting " + size + " cache object(s) to the database (" + cache.getClass() + ")");
-
-      LinkedList<Future< ? >> taskResults = new LinkedList<>();
-      Map<Future< ? >, Collection<Long>> submittedSets = new HashMap<>();
-
-      Iterator<Long> it = localToBePersisted.iterator();
-      while (it.hasNext()) {
-        PersistenceTask task = new PersistenceTask();
-        LinkedList<Long> persistedIds = new LinkedList<>();
-        int counter = 0;
-        while (it.hasNext() && counter < RECORDS_PER_BATCH) {
-          Long currentId = it.next();
-          task.put(currentId);
-          counter++;
-          persistedIds.push(currentId);
-        }
-        Future< ? > result = cachePersistenceThreadPoolTaskExecutor.submit(task);
-        taskResults.offerLast(result);
-        submittedSets.put(result, persistedIds);
-      }
-
-      //wait for all to complete; if wait longer than 5s for a single
-      //then all tasks will be rerun
-
-
-      int count = 0;
-      int exceptionCount = 0;
-      for (Future< ? > result : taskResults) {
-        boolean exceptionCaught = false;
-        count++;
-        try {
-          result.get(timeoutPerBatch, TimeUnit.MILLISECONDS);
-          LOGGER.debug("Persistence batch number " + count + " completed.");
-        } catch (InterruptedException e) {
-          LOGGER.error("Interrupted exception caught when waiting for persistence task " + count + " to complete", e);
-          exceptionCaught = true;
-        } catch (ExecutionException e) {
-          LOGGER.error("ExecutionException thrown when executing cache persistence task " + count + "; original cause is ", e.getCause());
-          exceptionCaught = true;
-        } catch (TimeoutException e) {
-          LOGGER.warn("Timeout while waiting for persistence task " + count + " to "
-              + "complete (timeout per batch of " + RECORDS_PER_BATCH + " is set at " + timeoutPerBatch + " milliseconds; cancelling batch)"
-              + "Cache elements will be persisted during next persistence task.", e);
-          result.cancel(true);
-          exceptionCaught = true;
-        } finally {
-          if (exceptionCaught) {
-            exceptionCount++;
-            toBePersistedLock.writeLock().lock();
-            try {
-              toBePersisted.addAll(submittedSets.get(result));
-            } finally {
-              toBePersistedLock.writeLock().unlock();
-            }
-          }
-        }
-      }
-      if (exceptionCount == 0) {
-        LOGGER.debug("Completed persistence of all " + count + " batches");
-      } else {
-        LOGGER.debug(exceptionCount + " out of " + count + " persistence batches failed and will be resubmitted.");
-      }
-    } finally {
-      clusterCache.releaseWriteLockOnKey(cachePersistenceLock);
-    }
+    toBePersisted.addAll(keyCollection);
+    submitTask();
   }
 
   @Override
   public void addElementToPersist(Long key) {
-    toBePersistedLock.writeLock().lock();
-    try {
-      toBePersisted.add(key);
-    } finally {
-      toBePersistedLock.writeLock().unlock();
-    }
+    toBePersisted.add(key);
   }
 
+  /**
+   * Persists the whole cache on the calling thread.
+   */
   @ManagedOperation(description = "Persists the current cache contents to the DB (cache persistence). Ensures cache object runtime values & DB are synchronized.")
   public void persistAllCacheToDatabase() {
-    persistList(cache.getKeys());
+    toBePersisted.addAll(cache.getKeys());
+    persistAll();
+  }
+
+  @ManagedAttribute(description = "Number of cache objects waiting to be persisted.")
+  public int getPendingCount() {
+    return toBePersisted.size();
+  }
+
+  @ManagedAttribute(description = "Number of cache objects in the batch being persisted.")
+  public int getInFlightCount() {
+    return inFlightCount;
+  }
+
+  @ManagedAttribute(description = "Current maximum number of cache objects per batch, adapted to the batch latency.")
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @ManagedAttribute(description = "Duration in milliseconds of the last successful batch.")
+  public long getLastBatchLatency() {
+    return lastBatchLatency;
+  }
+
+  @ManagedAttribute(description = "Average duration in milliseconds of the successful batches.")
+  public long getAverageBatchLatency() {
+    long count = batchCount.get();
+    return count == 0 ? 0 : totalBatchLatency.get() / count;
+  }
+
+  @ManagedAttribute(description = "Number of cache objects persisted.")
+  public long getPersistedCount() {
+    return persistedCount.get();
+  }
+
+  @ManagedAttribute(description = "Number of batches that failed and were put back to be retried.")
+  public long getFailedBatchCount() {
+    return failedBatchCount.get();
+  }
+
+  @ManagedAttribute(description = "Number of cache objects put back to be retried after a failed batch.")
+  public long getRetriedCount() {
+    return retriedCount.get();
   }
 
   /**
-   * Sets the timeout in milliseconds for a single batch to persist.
+   * Sets the duration in milliseconds above which a batch is logged as slow.
    * Default is 8s.
    *
    * @param timeoutPerBatch in milliseconds
@@ -236,40 +272,174 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   }
 
   /**
-   * Task persisting a collection of RECORDS_PER_BATCH cache
-   * objects to the database, by calling a CachePersistenceDAO.
+   * Sets the duration in milliseconds a batch should take, used to adapt
+   * the size of the batches. Default is 1s.
    *
-   * <p>Exceptions are caught by the ExecutorService, and wrapped and thrown
-   * when calling get on the Future.
+   * @param targetLatencyPerBatch in milliseconds
+   */
+  public void setTargetLatencyPerBatch(final int targetLatencyPerBatch) {
+    this.targetLatencyPerBatch = targetLatencyPerBatch;
+  }
+
+  /**
+   * Sets the delay in milliseconds after which a failed batch is retried,
+   * if no other batch is persisted in the meantime. Default is 5s.
    *
-   * @author Mark Brightwell
+   * @param retryDelay in milliseconds
+   */
+  public void setRetryDelay(final int retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * Submits a persistence task if there is something to persist and no
+   * task is already queued or running for this cache.
+   */
+  private void submitTask() {
+    if (!toBePersisted.isEmpty() && taskSubmitted.compareAndSet(false, true)) {
+      try {
+        cachePersistenceThreadPoolTaskExecutor.execute(new PersistenceTask());
+      } catch (TaskRejectedException e) {
+        taskSubmitted.set(false);
+        LOGGER.warn("Persistence task rejected by the executor; the {} cache object(s) waiting will be persisted with the next batch ({})",
+            toBePersisted.size(), cache.getClass().getSimpleName());
+        scheduleRetry();
+      }
+    }
+  }
+
+  /**
+   * Schedules the submission of a persistence task after the retry delay,
+   * unless one is already scheduled or the manager is stopped.
+   */
+  private void scheduleRetry() {
+    Timer timer = retryTimer;
+    if (timer != null && retryScheduled.compareAndSet(false, true)) {
+      try {
+        timer.schedule(new RetryTask(), retryDelay);
+      } catch (IllegalStateException e) {
+        // timer cancelled by stop(), which persists the remaining cache objects
+        retryScheduled.set(false);
+      }
+    }
+  }
+
+  /**
+   * Persists batches until there is nothing left to persist or a batch fails.
    *
+   * @return false if a batch failed
    */
-  class PersistenceTask implements Callable<Object> {
-
-    /**
-     * Keys of cache elements to persist.
-     */
-    private ArrayList<Long> keyList = new ArrayList<>(RECORDS_PER_BATCH);
-
-    /**
-     * Add the key to the task, prior to execution.
-     * @param key the cache element key
-     */
-    public void put(final Long key) {
-      keyList.add(key);
+  private boolean persistAll() {
+    while (!toBePersisted.isEmpty()) {
+      if (!persistNextBatch()) {
+        return false;
+      }
     }
+    return true;
+  }
+
+  /**
+   * Persists the next batch of cache objects. If it fails, the cache
+   * objects are put back to be persisted with the next batch.
+   *
+   * @return false if the batch failed
+   */
+  private boolean persistNextBatch() {
+    synchronized (batchLock) {
+      List<Long> batch = takeBatch();
+      if (batch.isEmpty()) {
+        return true;
+      }
+      LOGGER.debug("Persisting {} cache object(s) to the database ({})", batch.size(), cache.getClass().getSimpleName());
+
+      inFlightCount = batch.size();
+      // avoids persisting while a configuration is applied
+      clusterCache.acquireWriteLockOnKey(cachePersistenceLock);
+      long start = System.currentTimeMillis();
+      try {
+        cachePersistenceDAO.persistBatch(batch);
+      } catch (RuntimeException e) {
+        LOGGER.error("Exception caught while persisting a batch of {} cache object(s) ({}); they will be persisted with the next batch",
+            batch.size(), cache.getClass().getSimpleName(), e);
+        toBePersisted.addAll(batch);
+        failedBatchCount.incrementAndGet();
+        retriedCount.addAndGet(batch.size());
+        batchSize = Math.max(MIN_RECORDS_PER_BATCH, batchSize / 2);
+        scheduleRetry();
+        return false;
+      } finally {
+        clusterCache.releaseWriteLockOnKey(cachePersistenceLock);
+        inFlightCount = 0;
+      }
+
+      long latency = System.currentTimeMillis() - start;
+      if (latency > timeoutPerBatch) {
+        LOGGER.warn("Persistence of a batch of {} cache object(s) took {} milliseconds ({})", batch.size(), latency,
+            cache.getClass().getSimpleName());
+      }
+      lastBatchLatency = latency;
+      batchCount.incrementAndGet();
+      totalBatchLatency.addAndGet(latency);
+      persistedCount.addAndGet(batch.size());
+      adaptBatchSize(batch.size(), latency);
+      return true;
+    }
+  }
+
+  /**
+   * Removes the cache objects of the next batch from the set to persist.
+   */
+  private List<Long> takeBatch() {
+    int size = batchSize;
+    List<Long> batch = new ArrayList<>(Math.min(size, toBePersisted.size()));
+    Iterator<Long> it = toBePersisted.iterator();
+    while (batch.size() < size && it.hasNext()) {
+      batch.add(it.next());
+      it.remove();
+    }
+    return batch;
+  }
+
+  private void adaptBatchSize(final int lastBatchSize, final long latency) {
+    if (latency > targetLatencyPerBatch) {
+      batchSize = Math.max(MIN_RECORDS_PER_BATCH, batchSize / 2);
+    } else if (lastBatchSize == batchSize && latency < targetLatencyPerBatch / 2) {
+      batchSize = Math.min(MAX_RECORDS_PER_BATCH, batchSize + batchSize / 2);
+    }
+  }
+
+  /**
+   * Task persisting batches of cache objects until there is nothing left
+   * to persist. After a failed batch, the remaining cache objects are
+   * persisted when {@link #persistList(Collection)} is next called, or
+   * by the {@link RetryTask}.
+   */
+  private class PersistenceTask implements Runnable {
 
-    /**
-     * Retrieves the cache elements and persists them.
-     * Requires a new transaction.
-     */
     @Override
-    public Object call() {
-      cachePersistenceDAO.persistBatch(keyList);
-      return null;
+    public void run() {
+      boolean success;
+      try {
+        success = persistNextBatch();
+      } finally {
+        taskSubmitted.set(false);
+      }
+      if (success) {
+        submitTask();
+      }
     }
+  }
 
+  /**
+   * Submits a new persistence task after a failed batch.
+   */
+  private class RetryTask extends TimerTask {
+
+    @Override
+    public void run() {
+      retryScheduled.set(false);
+      submitTask();
+    }
   }
 
   /**
@@ -293,33 +463,31 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
 
   @Override
   public synchronized void start() {
+    retryTimer = new Timer("BatchPersistRetry-" + cache.getClass().getSimpleName(), true);
     started = true;
   }
 
   /**
    * Will not shutdown correctly until all elements can be persisted.
+   * The executor is shared by the persistence managers and shut down
+   * by Spring.
    */
   @Override
   public synchronized void stop() {
     LOGGER.info("Shutting down cache persistence manager (" + cache.getClass().getSimpleName() + ")");
     started = false;
-    cachePersistenceThreadPoolTaskExecutor.shutdown();
+    Timer timer = retryTimer;
+    retryTimer = null;
+    if (timer != null) {
+      timer.cancel();
+    }
     //may be none-empty if added using addElementToPersist
-    while (!toBePersisted.isEmpty()) {
-      LOGGER.debug("Detected cache objects that need persisting... trying to persist them.");
-      toBePersistedLock.writeLock().lock();
+    while (!persistAll()) {
+      LOGGER.error("Failed to persist final batch of cache objects - will try again in 1s");
       try {
-        cachePersistenceDAO.persistBatch(new ArrayList<>(toBePersisted));
-        toBePersisted.clear();
-      } catch (PersistenceException e) {
-        LOGGER.error("Exception caught while persisting final batch of cache objects - will try again in 1s", e);
-        try {
-          Thread.sleep(1000);
-        } catch (InterruptedException e1) {
-          LOGGER.error("Interrupted during sleep", e1);
-        }
-      } finally {
-        toBePersistedLock.writeLock().unlock();
+        Thread.sleep(1000);
+      } catch (InterruptedException e1) {
+        LOGGER.error("Interrupted during sleep", e1);
       }
     }
   }
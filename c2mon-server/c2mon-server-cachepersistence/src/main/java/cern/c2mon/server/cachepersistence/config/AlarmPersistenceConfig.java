@@ -29,7 +29,8 @@ public class AlarmPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<Alarm> alarmPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(alarmMapper, alarmCache);
+    return new CachePersistenceDAOImpl<>(alarmMapper, cacheBatchSqlSessionTemplate.getMapper(AlarmMapper.class),
+        alarmCache);
   }
 
   @Bean
@@ -37,6 +38,8 @@ public class AlarmPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(alarmPersistenceDAO(), alarmCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setTargetLatencyPerBatch(properties.getTargetLatencyPerBatch());
+    manager.setRetryDelay(properties.getRetryDelay());
     return manager;
   }
 
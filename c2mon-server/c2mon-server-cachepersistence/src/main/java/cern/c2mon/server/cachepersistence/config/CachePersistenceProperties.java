@@ -12,9 +12,15 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "c2mon.server.cachepersistence")
 public class CachePersistenceProperties {
 
-  /** Timeout (in milliseconds) for a single batch to persist */
+  /** Duration (in milliseconds) above which the persistence of a batch is logged as slow */
   private int timeoutPerBatch = 30000;
 
+  /** Duration (in milliseconds) a batch should take to persist, the size of the batches is adapted to it */
+  private int targetLatencyPerBatch = 1000;
+
+  /** Delay (in milliseconds) after which a batch which failed to persist is retried */
+  private int retryDelay = 5000;
+
   /** Set the ThreadPoolExecutor's core pool size */
   private int numExecutorThreads = 1;
 
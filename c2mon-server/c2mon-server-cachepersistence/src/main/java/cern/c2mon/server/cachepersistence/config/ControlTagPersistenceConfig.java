@@ -26,7 +26,8 @@ public class ControlTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<ControlTag> controlTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(controlTagMapper, controlTagCache);
+    return new CachePersistenceDAOImpl<>(controlTagMapper, cacheBatchSqlSessionTemplate.getMapper(ControlTagMapper.class),
+        controlTagCache);
   }
 
   @Bean
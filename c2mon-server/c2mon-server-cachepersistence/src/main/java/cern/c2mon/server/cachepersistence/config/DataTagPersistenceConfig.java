@@ -26,7 +26,8 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<DataTag> dataTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(dataTagMapper, dataTagCache);
+    return new CachePersistenceDAOImpl<>(dataTagMapper, cacheBatchSqlSessionTemplate.getMapper(DataTagMapper.class),
+        dataTagCache);
   }
 
   @Bean
@@ -34,6 +35,8 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(dataTagPersistenceDAO(), dataTagCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setTargetLatencyPerBatch(properties.getTargetLatencyPerBatch());
+    manager.setRetryDelay(properties.getRetryDelay());
     return manager;
   }
 
@@ -26,7 +26,8 @@ public class EquipmentPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<Equipment> equipmentPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(equipmentMapper, equipmentCache);
+    return new CachePersistenceDAOImpl<>(equipmentMapper, cacheBatchSqlSessionTemplate.getMapper(EquipmentMapper.class),
+        equipmentCache);
   }
 
   @Bean
@@ -34,6 +35,8 @@ public class EquipmentPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(equipmentPersistenceDAO(), equipmentCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setTargetLatencyPerBatch(properties.getTargetLatencyPerBatch());
+    manager.setRetryDelay(properties.getRetryDelay());
     return manager;
   }
 
@@ -26,7 +26,8 @@ public class ProcessPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<Process> processPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(processMapper, processCache);
+    return new CachePersistenceDAOImpl<>(processMapper, cacheBatchSqlSessionTemplate.getMapper(ProcessMapper.class),
+        processCache);
   }
 
   @Bean
@@ -34,6 +35,8 @@ public class ProcessPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(processPersistenceDAO(), processCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setTargetLatencyPerBatch(properties.getTargetLatencyPerBatch());
+    manager.setRetryDelay(properties.getRetryDelay());
     return manager;
   }
 
@@ -26,7 +26,8 @@ public class RuleTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<RuleTag> ruleTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(ruleTagMapper, ruleTagCache);
+    return new CachePersistenceDAOImpl<>(ruleTagMapper, cacheBatchSqlSessionTemplate.getMapper(RuleTagMapper.class),
+        ruleTagCache);
   }
 
   @Bean
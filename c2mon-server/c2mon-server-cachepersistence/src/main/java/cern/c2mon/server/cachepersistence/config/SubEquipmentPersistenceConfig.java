@@ -26,7 +26,8 @@ public class SubEquipmentPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<SubEquipment> subEquipmentPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(subEquipmentMapper, subEquipmentCache);
+    return new CachePersistenceDAOImpl<>(subEquipmentMapper, cacheBatchSqlSessionTemplate.getMapper(SubEquipmentMapper.class),
+        subEquipmentCache);
   }
 
   @Bean
@@ -34,6 +35,8 @@ public class SubEquipmentPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(subEquipmentPersistenceDAO(), subEquipmentCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setTargetLatencyPerBatch(properties.getTargetLatencyPerBatch());
+    manager.setRetryDelay(properties.getRetryDelay());
     return manager;
   }
 
@@ -55,6 +55,12 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
    */
   private C2monCache<Long, T> cache;
 
+  /**
+   * Mapper on a batch session, used to persist the batches of cache objects
+   * as JDBC batches sent at the end of the transaction.
+   */
+  private PersistenceMapper<T> batchPersistenceMapper;
+
   /**
    * Constructor required cache and the persistence bean for this cache.
    *
@@ -62,8 +68,22 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
    * @param cache the cache that is being persisted
    */
   public CachePersistenceDAOImpl(final PersistenceMapper<T> persistenceMapper, final C2monCache<Long, T> cache) {
+    this(persistenceMapper, persistenceMapper, cache);
+  }
+
+  /**
+   * Constructor with a separate mapper for persisting the batches.
+   *
+   * @param persistenceMapper the mapper bean for this cache
+   * @param batchPersistenceMapper the same mapper, obtained from a session
+   *          with a batch executor
+   * @param cache the cache that is being persisted
+   */
+  public CachePersistenceDAOImpl(final PersistenceMapper<T> persistenceMapper, final PersistenceMapper<T> batchPersistenceMapper,
+                                 final C2monCache<Long, T> cache) {
     super();
     this.persistenceMapper = persistenceMapper;
+    this.batchPersistenceMapper = batchPersistenceMapper;
     this.cache = cache;
   }
 
@@ -80,6 +100,11 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
   /**
    * Used to persist a batch of cache objects in a single transaction.
    * An object that is not found in the cache will not be persisted and skipped.
+   *
+   * <p>The statement parameters are read from the cache object itself, under
+   * its read lock, rather than from a copy. With the batch mapper, the
+   * statements are only sent to the database when the transaction commits.
+   *
    * @param keyList keys of the elements that need persisting
    */
   @Transactional(value = "cacheTransactionManager")
@@ -87,18 +112,19 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
   public void persistBatch(final List<Long> keyList) {
     T cacheObject;
     for (Long key : keyList) {
+      cache.acquireReadLockOnKey(key);
       try {
-        cacheObject = cache.getCopy(key);
+        cacheObject = cache.get(key);
         //do not persist unconfigured tags TODO could remove as unconfigured not used
         if (cacheObject != null && (!(cacheObject instanceof Tag) || !((Tag) cacheObject).isInUnconfigured())) {
-          persistenceMapper.updateCacheable(cacheObject);
+          batchPersistenceMapper.updateCacheable(cacheObject);
         }
       } catch (CacheElementNotFoundException ex) {
         log.warn("Cache element with id {} could not be persisted as not found in cache " +
             "(may have been removed in the meantime by a re-configuration). Cache is {}", key, cache.getClass().getSimpleName(), ex);
+      } finally {
+        cache.releaseReadLockOnKey(key);
       }
     }
   }
-
-
 }
@@ -0,0 +1,175 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import cern.c2mon.server.cache.C2monCache;
+import cern.c2mon.server.cache.ClusterCache;
+import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
+import cern.c2mon.server.common.datatag.DataTag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the persistence pipeline of the {@link BatchPersistenceManagerImpl}.
+ */
+public class BatchPersistenceManagerImplTest {
+
+  private StubPersistenceDAO persistenceDAO;
+
+  private C2monCache<Long, DataTag> cache;
+
+  private ThreadPoolTaskExecutor executor;
+
+  private BatchPersistenceManagerImpl<DataTag> persistenceManager;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    persistenceDAO = new StubPersistenceDAO();
+    cache = EasyMock.createNiceMock(C2monCache.class);
+    ClusterCache clusterCache = EasyMock.createNiceMock(ClusterCache.class);
+    EasyMock.replay(clusterCache);
+
+    executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setMaxPoolSize(1);
+    executor.initialize();
+
+    persistenceManager = new BatchPersistenceManagerImpl<>(persistenceDAO, cache, clusterCache, executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testPersistListDoesNotWait() throws InterruptedException {
+    persistenceManager.persistList(keys(0, 1200));
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (persistenceManager.getPersistedCount() < 1200 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1200, persistenceManager.getPersistedCount());
+    assertEquals(0, persistenceManager.getPendingCount());
+    assertEquals(1200, persistenceDAO.persistedKeys.size());
+  }
+
+  @Test
+  public void testFailedBatchIsRetried() {
+    EasyMock.expect(cache.getKeys()).andReturn(keys(0, 500)).anyTimes();
+    EasyMock.replay(cache);
+
+    persistenceDAO.fail = true;
+    persistenceManager.persistAllCacheToDatabase();
+    assertEquals(1, persistenceManager.getFailedBatchCount());
+    assertEquals(500, persistenceManager.getRetriedCount());
+    assertEquals(500, persistenceManager.getPendingCount());
+    assertEquals(250, persistenceManager.getBatchSize());
+
+    persistenceDAO.fail = false;
+    persistenceManager.persistAllCacheToDatabase();
+    assertEquals(0, persistenceManager.getPendingCount());
+    assertEquals(500, persistenceManager.getPersistedCount());
+    assertEquals(2, persistenceDAO.batchSizes.size());
+    assertTrue(persistenceDAO.persistedKeys.containsAll(keys(0, 500)));
+  }
+
+  @Test
+  public void testFailedBatchIsRetriedAfterDelay() throws InterruptedException {
+    persistenceManager.setRetryDelay(200);
+    persistenceManager.start();
+
+    persistenceDAO.fail = true;
+    persistenceManager.persistList(keys(0, 100));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (persistenceManager.getFailedBatchCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, persistenceManager.getFailedBatchCount());
+
+    // no further call to persistList
+    persistenceDAO.fail = false;
+    while (persistenceManager.getPersistedCount() < 100 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(100, persistenceManager.getPersistedCount());
+    assertEquals(0, persistenceManager.getPendingCount());
+
+    persistenceManager.stop();
+    assertFalse(executor.getThreadPoolExecutor().isShutdown());
+  }
+
+  @Test
+  public void testBatchSizeIncreasesWithFastBatches() {
+    EasyMock.expect(cache.getKeys()).andReturn(keys(0, 2000)).anyTimes();
+    EasyMock.replay(cache);
+
+    persistenceManager.persistAllCacheToDatabase();
+    assertEquals(Integer.valueOf(500), persistenceDAO.batchSizes.get(0));
+    assertEquals(Integer.valueOf(750), persistenceDAO.batchSizes.get(1));
+    assertEquals(2000, persistenceManager.getPersistedCount());
+  }
+
+  private static List<Long> keys(final long from, final long to) {
+    List<Long> keys = new ArrayList<>();
+    for (long key = from; key < to; key++) {
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  /**
+   * Records the persisted keys instead of writing them to the database.
+   */
+  private static class StubPersistenceDAO implements CachePersistenceDAO<DataTag> {
+
+    private final List<Long> persistedKeys = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    private volatile boolean fail = false;
+
+    @Override
+    public void updateCacheable(final DataTag cacheable) {
+    }
+
+    @Override
+    public void persistBatch(final List<Long> keyList) {
+      if (fail) {
+        throw new PersistenceException("Database unavailable");
+      }
+      batchSizes.add(keyList.size());
+      persistedKeys.addAll(keyList);
+    }
+  }
+}
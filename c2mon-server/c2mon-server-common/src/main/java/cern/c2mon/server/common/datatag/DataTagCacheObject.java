@@ -132,14 +132,26 @@ public class DataTagCacheObject extends AbstractTagCacheObject implements DataTa
    */
   @Override
   public DataTagCacheObject clone() throws CloneNotSupportedException {
-    DataTagCacheObject dataTagCacheObject = (DataTagCacheObject) super.clone();
-    if (address != null) {
-      dataTagCacheObject.address = (DataTagAddress) this.address.clone();
-    }
+    return (DataTagCacheObject) super.clone();
+  }
+
+  @Override
+  protected void copyValueFields() throws CloneNotSupportedException {
+    super.copyValueFields();
     if (sourceTimestamp != null) {
-      dataTagCacheObject.sourceTimestamp = (Timestamp) this.sourceTimestamp.clone();
+      sourceTimestamp = (Timestamp) sourceTimestamp.clone();
+    }
+    if (daqTimestamp != null) {
+      daqTimestamp = (Timestamp) daqTimestamp.clone();
+    }
+  }
+
+  @Override
+  protected void copyConfigurationFields() {
+    super.copyConfigurationFields();
+    if (address != null) {
+      address = address.clone();
     }
-    return dataTagCacheObject;
   }
 
   /**
@@ -59,4 +59,19 @@ public class Metadata implements Serializable, Cloneable {
   public void removeMetadata(String key) {
     metadata.remove(key);
   }
+
+  /**
+   * The metadata values are of type String, Number and Boolean, so
+   * copying the map is sufficient for a deep clone.
+   */
+  @Override
+  public Metadata clone() {
+    try {
+      Metadata clone = (Metadata) super.clone();
+      clone.metadata = new HashMap<>(this.metadata);
+      return clone;
+    } catch (CloneNotSupportedException e) {
+      throw new RuntimeException("CloneNotSupportedException caught while cloning Metadata - this should never happen!", e);
+    }
+  }
 }
@@ -94,9 +94,10 @@ public class ProcessCacheObject extends AbstractSupervisedCacheObject implements
   private Boolean requiresReboot = Boolean.FALSE;
 
   /**
-   * Process Identifier Key (PIK) per DAQ instance
+   * Process Identifier Key (PIK) per DAQ instance. Volatile, as incoming
+   * DAQ updates check it without locking the process.
    */
-  private Long processPIK;
+  private volatile Long processPIK;
 
   /**
    * Enum for describing configuration type
@@ -110,33 +110,32 @@ public class RuleTagCacheObject extends AbstractTagCacheObject implements RuleTa
      */
     @Override
     public RuleTagCacheObject clone() throws CloneNotSupportedException {
-        RuleTagCacheObject ruleTagCacheObject = (RuleTagCacheObject) super.clone();
+        return (RuleTagCacheObject) super.clone();
+    }
+
+    /**
+     * The parent ids and the rule expression are configuration fields: they
+     * are shared with the snapshots, but copied in a clone.
+     */
+    @Override
+    protected void copyConfigurationFields() {
+        super.copyConfigurationFields();
         if (this.parentEquipments != null) {
-            ruleTagCacheObject.parentEquipments = new HashSet<Long>();
-            for (Long eqId : this.parentEquipments) {
-                ruleTagCacheObject.parentEquipments.add(eqId);
-            }
+            this.parentEquipments = new HashSet<>(this.parentEquipments);
         }
         if (this.parentSubEquipments != null) {
-          ruleTagCacheObject.parentSubEquipments = new HashSet<Long>();
-          for (Long subEqId : this.parentSubEquipments) {
-              ruleTagCacheObject.parentSubEquipments.add(subEqId);
-          }
-      }
+            this.parentSubEquipments = new HashSet<>(this.parentSubEquipments);
+        }
         if (this.parentProcesses != null) {
-            ruleTagCacheObject.parentProcesses = new HashSet<Long>();
-            for (Long procId : this.parentProcesses) {
-                ruleTagCacheObject.parentProcesses.add(procId);
-            }
+            this.parentProcesses = new HashSet<>(this.parentProcesses);
         }
-        ruleTagCacheObject.ruleExpression = null;
-        if (this.ruleExpression != null && ruleText != null) {
+        RuleExpression expression = this.ruleExpression;
+        this.ruleExpression = null;
+        if (expression != null && ruleText != null) {
           // TODO: Test correct clone support to all rule objects and replace then again the statement
-//         ruleTagCacheObject.ruleExpression = (RuleExpression) this.ruleExpression.clone();
-          ruleTagCacheObject.setRuleText(ruleText);
+//         this.ruleExpression = (RuleExpression) expression.clone();
+          setRuleText(ruleText);
         }
-
-        return ruleTagCacheObject;
     }
 
     @Override
@@ -100,6 +100,7 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
   /**
    * The meta data of the Tag. The meta data can be arbitrary and of of the type String, Number and Boolean.
    * Not every Tag needs to have a meta data. Also the meta data don't have to be every time the same.
+   * Is replaced on reconfiguration, never modified in place (shared with the snapshots).
    */
   private Metadata metadata;
 
@@ -148,13 +149,15 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
 
   /**
    * Identifiers of all alarms attached to the datatag
+   * (replaced on change, never modified in place, as shared with the snapshots).
    */
   private Collection<Long> alarmIds;
 
   /**
    * Identifiers of all rules attached to the datatag
    * (tests will fail if not initialized as this field
-   * is set during cache loading from DB).
+   * is set during cache loading from DB). Replaced on change, never
+   * modified in place, as shared with the snapshots.
    */
   private Collection<Long> ruleIds;
 
@@ -224,18 +227,61 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
   @Override
   public Object clone() throws CloneNotSupportedException {
     AbstractTagCacheObject cacheObject = (AbstractTagCacheObject) super.clone();
+    cacheObject.copyValueFields();
+    cacheObject.copyConfigurationFields();
+    return cacheObject;
+  }
+
+  /**
+   * Creates a copy of the current state of this tag, as passed to the
+   * cache listeners on every update.
+   *
+   * <p>Unlike {@link #clone()}, only the fields that are modified in place
+   * by value updates (quality, timestamps) are copied. The configuration
+   * fields (address, metadata, alarm and rule ids, ...) are shared with
+   * this object: they are only ever replaced, never modified in place,
+   * so the snapshot is not affected by later changes to the cache object.
+   * The snapshot is provided with <b>new</b> locks, as the clone.
+   *
+   * @return the snapshot of this tag
+   * @throws CloneNotSupportedException should never be thrown
+   */
+  public AbstractTagCacheObject snapshot() throws CloneNotSupportedException {
+    AbstractTagCacheObject cacheObject = (AbstractTagCacheObject) super.clone();
+    cacheObject.copyValueFields();
+    return cacheObject;
+  }
+
+  /**
+   * Replaces, on a fresh shallow copy, the fields that are modified in place
+   * by value updates with own copies. Subclasses with such fields must
+   * override this method and call the super method.
+   *
+   * @throws CloneNotSupportedException should never be thrown
+   */
+  protected void copyValueFields() throws CloneNotSupportedException {
     ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    cacheObject.readLock = lock.readLock();
-    cacheObject.writeLock = lock.writeLock();
+    readLock = lock.readLock();
+    writeLock = lock.writeLock();
     if (dataTagQuality != null) {
-      cacheObject.dataTagQuality = (DataTagQuality) dataTagQuality.clone();
+      dataTagQuality = dataTagQuality.clone();
     }
-    cacheObject.alarmIds = (ArrayList<Long>) ((ArrayList<Long>) alarmIds).clone();
-    cacheObject.ruleIds = (ArrayList<Long>) ((ArrayList<Long>) ruleIds).clone();
     if (cacheTimestamp != null) {
-      cacheObject.cacheTimestamp = (Timestamp) cacheTimestamp.clone();
+      cacheTimestamp = (Timestamp) cacheTimestamp.clone();
+    }
+  }
+
+  /**
+   * Replaces, on a fresh shallow copy, the configuration fields with own
+   * copies. Subclasses with additional configuration fields must override
+   * this method and call the super method.
+   */
+  protected void copyConfigurationFields() {
+    alarmIds = new ArrayList<>(alarmIds);
+    ruleIds = new ArrayList<>(ruleIds);
+    if (metadata != null) {
+      metadata = metadata.clone();
     }
-    return cacheObject;
   }
 
   /**
@@ -275,11 +321,15 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
 
   /**
    * Add a new rule to the collection of rules that need to be evaluated when
-   * THIS tags changes.
+   * THIS tags changes. The collection is replaced, not modified, as it may
+   * be shared with snapshots of this tag.
    */
   public final boolean addRuleId(final Long pId) {
     if (!this.ruleIds.contains(pId)) {
-      this.ruleIds.add(pId);
+      Collection<Long> newRuleIds = new ArrayList<>(this.ruleIds.size() + 1);
+      newRuleIds.addAll(this.ruleIds);
+      newRuleIds.add(pId);
+      this.ruleIds = newRuleIds;
       this.tagChange = CHANGE_CONFIGURATION;
       return true;
     } else {
@@ -289,11 +339,14 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
 
   /**
    * Remove a rule from the collection of rules that need to be evaluated when
-   * THIS tags changes.
+   * THIS tags changes. The collection is replaced, not modified, as it may
+   * be shared with snapshots of this tag.
    */
   public final boolean removeRuleId(final Long pId) {
     if (this.ruleIds.contains(pId)) {
-      this.ruleIds.remove(pId);
+      Collection<Long> newRuleIds = new ArrayList<>(this.ruleIds);
+      newRuleIds.remove(pId);
+      this.ruleIds = newRuleIds;
       this.tagChange = CHANGE_CONFIGURATION;
       return true;
     } else {
@@ -301,6 +354,31 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
     }
   }
 
+  /**
+   * Add an alarm to the collection of alarms attached to this tag.
+   * The collection is replaced, not modified, as it may be shared with
+   * snapshots of this tag.
+   */
+  public final void addAlarmId(final Long pId) {
+    Collection<Long> newAlarmIds = new ArrayList<>(this.alarmIds.size() + 1);
+    newAlarmIds.addAll(this.alarmIds);
+    newAlarmIds.add(pId);
+    this.alarmIds = newAlarmIds;
+  }
+
+  /**
+   * Remove an alarm from the collection of alarms attached to this tag.
+   * The collection is replaced, not modified, as it may be shared with
+   * snapshots of this tag.
+   */
+  public final void removeAlarmId(final Long pId) {
+    if (this.alarmIds.contains(pId)) {
+      Collection<Long> newAlarmIds = new ArrayList<>(this.alarmIds);
+      newAlarmIds.remove(pId);
+      this.alarmIds = newAlarmIds;
+    }
+  }
+
   public final boolean isValid() {
     return dataTagQuality.isValid();
   }
@@ -391,12 +469,19 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
     try {
       if (ruleIdsString != null && !ruleIdsString.isEmpty()) {
         String[] ruleIdArray = ruleIdsString.split(",");
-        setRuleIds(new ArrayList<Long>(ruleIdArray.length));
+        Collection<Long> newRuleIds = new ArrayList<>(ruleIdArray.length);
         for (int i = 0; i != ruleIdArray.length; i++) {
           if (!ruleIdArray[i].equals("")) {
-            addRuleId(Long.valueOf(ruleIdArray[i].trim()));
+            Long ruleId = Long.valueOf(ruleIdArray[i].trim());
+            if (!newRuleIds.contains(ruleId)) {
+              newRuleIds.add(ruleId);
+            }
           }
         }
+        setRuleIds(newRuleIds);
+        if (!newRuleIds.isEmpty()) {
+          this.tagChange = CHANGE_CONFIGURATION;
+        }
       } else {
         setRuleIds(new ArrayList<>(0));
         this.ruleIdsString = null;
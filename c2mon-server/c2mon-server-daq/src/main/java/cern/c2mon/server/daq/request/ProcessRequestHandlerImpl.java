@@ -30,6 +30,7 @@ import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.supervision.SupervisionManager;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
 import cern.c2mon.shared.daq.process.ProcessConfigurationRequest;
 import cern.c2mon.shared.daq.process.ProcessConnectionRequest;
 import cern.c2mon.shared.daq.process.ProcessDisconnectionRequest;
@@ -116,6 +117,8 @@ public class ProcessRequestHandlerImpl implements SessionAwareMessageListener<Me
         try {
           TextMessage replyMessage = session.createTextMessage();
           replyMessage.setText(processConnectionResponse);
+          // Tell the DAQ that its tag updates may be sent in binary
+          replyMessage.setStringProperty(DataTagValueUpdateConverter.ENCODING_PROPERTY, DataTagValueUpdateConverter.BINARY_ENCODING);
           messageProducer.send(replyMessage);
         } finally {
           messageProducer.close();
@@ -16,7 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.server.daq.update;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jms.JMSException;
@@ -46,6 +48,7 @@ import cern.c2mon.server.supervision.SupervisionManager;
 import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateHandler;
 
 /**
  * Implementation of the bean processing incoming updates from the
@@ -163,53 +166,33 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
       activeUpdateThreads.getAndIncrement();
       Collection<SourceDataTagValue> values = dataTagValueUpdate.getValues();
       if (values != null ) {
-
-        for(SourceDataTagValue sourceDataTagValue : values){
-
-          //if the incoming value is a control tag (i.e. alive or commFault)
-          if (sourceDataTagValue.isControlTag()) {
-            processControl(sourceDataTagValue);
-          } else {
-            //else is a normal DataTag update
-            processDataTag(sourceDataTagValue);
-          }
-          //log in file
-          sourceDataTagValue.log();
+        UpdateHandler handler = new UpdateHandler(false);
+        for (SourceDataTagValue sourceDataTagValue : values) {
+          handler.onValue(sourceDataTagValue);
         }
+        handler.endUpdate();
       }
     } finally {
-      activeUpdateThreads.getAndDecrement();
-      if (activeUpdateThreads.get() > 100) {
-
-        alarmActive = true;
-        switchOffCountDown = new AtomicInteger(SWITCH_OFF_COUNTDOWN);
-        if (warningCount.getAndIncrement() % WARNING_FREQUENCY == 0) {
-          SMSLOGGER.warn("Over 100 source update threads active.");
-        }
-
-      } else if (alarmActive && switchOffCountDown.getAndDecrement() == 0) {
-
-        alarmActive = false;
-        SMSLOGGER.warn("Number of active update threads back to normal.");
-        warningCount = new AtomicInteger(0);
-
-      }
+      checkActiveUpdateThreads();
     }
   }
 
+  /**
+   * Decodes the incoming message value by value: each value is applied to the cache as it is
+   * decoded (the data tags in batches, see {@link UpdateHandler}), without building the
+   * {@link DataTagValueUpdate}. The data tag values older than the cached ones are rejected
+   * before being decoded.
+   *
+   * <p>If the message turns out to be invalid part-way, the values decoded before the error
+   * are still applied (including the pending batch of data tags) and logged: as with separate
+   * messages, each value is valid on its own, and the DAQ does not resend them.
+   */
   @Override
   public void onMessage(final Message message, final Session session) throws JMSException {
+    UpdateHandler handler = new UpdateHandler(true);
     try {
-      DataTagValueUpdate update = (DataTagValueUpdate) converter.fromMessage(message);
-
-      // We do the process PIK checking in order to accept or not the update
-      if(this.checkProcessPIK(update)) {
-        processUpdates(update);
-      }
-      else {
-        log.warn("Received update(s) for Process #" + update.getProcessId()
-            + " with wrong PIK: Ignoring " + update.getValues().size() + " updates");
-      }
+      activeUpdateThreads.getAndIncrement();
+      converter.fromMessage(message, handler);
     } catch (MessageConversionException ex) {
       String errorMessage = "Error processing incoming update from DAQ: message is being discarded!";
       log.error(errorMessage, ex);
@@ -217,6 +200,34 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
         EMAILLOGGER.error(errorMessage, ex);
         lastEmailLog = System.currentTimeMillis();
       }
+    } finally {
+      try {
+        handler.endUpdate();
+      } finally {
+        checkActiveUpdateThreads();
+      }
+    }
+  }
+
+  /**
+   * Called once an update is processed: warns if too many JMS threads are active.
+   */
+  private void checkActiveUpdateThreads() {
+    activeUpdateThreads.getAndDecrement();
+    if (activeUpdateThreads.get() > 100) {
+
+      alarmActive = true;
+      switchOffCountDown = new AtomicInteger(SWITCH_OFF_COUNTDOWN);
+      if (warningCount.getAndIncrement() % WARNING_FREQUENCY == 0) {
+        SMSLOGGER.warn("Over 100 source update threads active.");
+      }
+
+    } else if (alarmActive && switchOffCountDown.getAndDecrement() == 0) {
+
+      alarmActive = false;
+      SMSLOGGER.warn("Number of active update threads back to normal.");
+      warningCount = new AtomicInteger(0);
+
     }
   }
 
@@ -245,17 +256,13 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
   }
 
   /**
-   * Performs the necessary operations on reception of a data tag.
-   * @param sourceDataTagValue the incoming data tag value
-   * @throw NullPointerException if passed null SourceDataTagValue
+   * Performs the necessary operations on reception of a batch of data tags.
+   * @param sourceDataTagValues the incoming data tag values (not control tags)
    */
-  private void processDataTag(final SourceDataTagValue sourceDataTagValue) {
-    try {
-      log.trace("Processing incoming update for datatag #" + sourceDataTagValue.getId());
-      dataTagFacade.updateFromSource(sourceDataTagValue.getId(), sourceDataTagValue);
-
-    } catch (CacheElementNotFoundException cacheEx) {
-      log.warn("Received unrecognized data tag #" + sourceDataTagValue.getId() + ": ignoring the update");
+  private void processDataTags(final List<SourceDataTagValue> sourceDataTagValues) {
+    if (!sourceDataTagValues.isEmpty()) {
+      log.trace("Processing incoming update for " + sourceDataTagValues.size() + " datatags");
+      dataTagFacade.updateFromSource(sourceDataTagValues);
     }
   }
 
@@ -271,30 +278,43 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
   /**
    * Function to check all possible process PIK scenarios
    *
-   * @param dataTagValueUpdate Update with all information
+   * @param processId the id of the process sending the update
+   * @param processPIK the PIK sent with the update
    * @return {@link #IGNORE_UPDATE} if PIK registered in server but no PIK or wrong PIK sent
    *         {@link #ACCEPT_UPDATE} in any other case
    */
-  private Boolean checkProcessPIK(final DataTagValueUpdate dataTagValueUpdate) {
+  private Boolean checkProcessPIK(final Long processId, final Long processPIK) {
     Process process;
 
-    processCache.acquireWriteLockOnKey(dataTagValueUpdate.getProcessId());
+    // Usual case, checked without lock: the PIK registered in the server is the one sent by the DAQ.
+    // The write lock below is only needed when no PIK is registered yet (so it can be saved)
+    // and for logging the rejected updates.
+    try {
+      Long registeredPIK = this.processCache.get(processId).getProcessPIK();
+      if (registeredPIK != null && registeredPIK.equals(processPIK)) {
+        return ACCEPT_UPDATE;
+      }
+    } catch (CacheElementNotFoundException cacheEx) {
+      // handled below
+    }
+
+    processCache.acquireWriteLockOnKey(processId);
     try {
-      process = this.processCache.get(dataTagValueUpdate.getProcessId());
+      process = this.processCache.get(processId);
 
       // if PIK is registered in Server
       if (process.getProcessPIK() != null) {
         // If no PIK sent by the DAQ update or wrong PIK is sent by DAQ update ignore message
-        if (dataTagValueUpdate.getProcessPIK() == null) {
+        if (processPIK == null) {
           log.warn(" Processing incoming update for Process " + process.getName() +
               ": PIK registered (" + process.getProcessPIK() + ") but no PIK received from update: Ignoring the update");
 
           // TODO: Send disconnection
           return IGNORE_UPDATE;
-        } else if (!process.getProcessPIK().equals(dataTagValueUpdate.getProcessPIK())) {
+        } else if (!process.getProcessPIK().equals(processPIK)) {
           log.warn("Processing incoming updates for Process " + process.getName() +
               ": Received wrong PIK - cache vs update (" + process.getProcessPIK() + " vs " +
-              dataTagValueUpdate.getProcessPIK() + "): Ignoring the update");
+              processPIK + "): Ignoring the update");
 
           // TODO: Send disconnection
           return IGNORE_UPDATE;
@@ -303,7 +323,7 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
       // If no PIK register in server cache (ie. corrupted) save the PIK and Accept
       else {
         // If no PIK sent by the DAQ update ignore message
-        if (dataTagValueUpdate.getProcessPIK() == null) {
+        if (processPIK == null) {
           log.warn("Processing incoming update for Process " + process.getName() + " with no PIK: Ignoring the update");
 
           return IGNORE_UPDATE;
@@ -313,18 +333,121 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
         if (properties.isTestMode()) {
           log.trace("[TEST] Processing incoming update for Process " + process.getName());
         } else {
-          log.trace("Processing incoming update for Process " + process.getName() + " and saving PIK " + dataTagValueUpdate.getProcessPIK());
+          log.trace("Processing incoming update for Process " + process.getName() + " and saving PIK " + processPIK);
 
-          this.processFacade.setProcessPIK(process.getId(), dataTagValueUpdate.getProcessPIK());
+          this.processFacade.setProcessPIK(process.getId(), processPIK);
         }
       }
     } catch (CacheElementNotFoundException cacheEx) {
-      log.warn("Receive updates from unrecognized Process #" + dataTagValueUpdate.getProcessId() +  ": Ignoring the updates", cacheEx);
+      log.warn("Receive updates from unrecognized Process #" + processId +  ": Ignoring the updates", cacheEx);
     } finally {
-      processCache.releaseWriteLockOnKey(dataTagValueUpdate.getProcessId());
+      processCache.releaseWriteLockOnKey(processId);
     }
 
     // If no problems we accept the update
     return ACCEPT_UPDATE;
   }
+
+  /**
+   * Applies the values of an update to the cache as they are decoded. The consecutive data
+   * tag values are applied as one batch, which is flushed before each control tag and at the
+   * end of the update. The values are only kept until the end of the update if the tag log is
+   * enabled.
+   */
+  private final class UpdateHandler implements DataTagValueUpdateHandler {
+
+    /**
+     * Whether the process PIK is checked and the outdated values rejected, i.e. whether
+     * the values come from a DAQ message.
+     */
+    private final boolean fromMessage;
+
+    /**
+     * All the decoded values, for the tag log, or null if the tag log is disabled. The outdated
+     * values rejected before being decoded are not logged.
+     */
+    private final List<SourceDataTagValue> loggedValues = SourceDataTagValue.isLogEnabled() ? new ArrayList<>() : null;
+
+    /**
+     * The data tag values not applied yet.
+     */
+    private List<SourceDataTagValue> batch = new ArrayList<>();
+
+    private boolean ended;
+
+    private Long processId;
+
+    UpdateHandler(final boolean fromMessage) {
+      this.fromMessage = fromMessage;
+    }
+
+    @Override
+    public boolean startUpdate(final Long processId, final Long processPIK) {
+      this.processId = processId;
+      // We do the process PIK checking in order to accept or not the update
+      if (checkProcessPIK(processId, processPIK)) {
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public void onIgnoredValues(final int valueCount) {
+      log.warn("Received update(s) for Process #" + processId + " with wrong PIK: Ignoring " + valueCount + " updates");
+    }
+
+    @Override
+    public boolean acceptValue(final long tagId, final boolean controlTag, final long timestamp, final long daqTimestamp) {
+      // an outdated value would be filtered out by the cache, so it is neither decoded nor written to the tag log
+      if (!fromMessage || controlTag) {
+        return true;
+      }
+      if (dataTagFacade.isOutdated(tagId, timestamp, daqTimestamp)) {
+        log.trace("Filtering out outdated update for tag #" + tagId + " of Process #" + processId);
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public void onValue(final SourceDataTagValue sourceDataTagValue) {
+      if (loggedValues != null) {
+        loggedValues.add(sourceDataTagValue);
+      }
+
+      //if the incoming value is a control tag (i.e. alive or commFault)
+      if (sourceDataTagValue.isControlTag()) {
+        flushDataTags();
+        processControl(sourceDataTagValue);
+      } else {
+        //else is a normal DataTag update, applied with the next batch
+        batch.add(sourceDataTagValue);
+      }
+    }
+
+    /**
+     * Applies the pending data tag values and logs the update. Only the first call has an
+     * effect, so that it can also be called if the decoding of the update failed.
+     */
+    @Override
+    public void endUpdate() {
+      if (ended) {
+        return;
+      }
+      ended = true;
+      flushDataTags();
+      //log in file
+      if (loggedValues != null) {
+        SourceDataTagValue.log(loggedValues);
+      }
+    }
+
+    private void flushDataTags() {
+      if (!batch.isEmpty()) {
+        List<SourceDataTagValue> dataTagValues = batch;
+        batch = new ArrayList<>();
+        processDataTags(dataTagValues);
+      }
+    }
+  }
 }
@@ -0,0 +1,119 @@
+package cern.c2mon.server.elasticsearch;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import lombok.Getter;
+
+/**
+ * The time period covered by one index of a time series, with the name of
+ * the index.
+ * <p>
+ * The index of a timestamp in the period is found by comparing epoch
+ * milliseconds, without formatting any date. The name is only formatted
+ * when a period is created, i.e. once per period and entity when the
+ * documents arrive in order.
+ * <p>
+ * The periods are days for the daily and weekly indices (the week of a date
+ * does not always belong to the year of the date, so a week can span two
+ * indices) and months for the monthly indices, in the default time zone.
+ */
+final class IndexPeriod {
+
+  /**
+   * The prefix of all C2MON indices, e.g. "c2mon".
+   */
+  private final String indexPrefix;
+
+  /**
+   * The indexing strategy the period was created for.
+   */
+  private final String indexType;
+
+  /**
+   * The first millisecond of the period.
+   */
+  private final long start;
+
+  /**
+   * The first millisecond after the period.
+   */
+  private final long end;
+
+  /**
+   * The name of the index of the period.
+   */
+  @Getter
+  private final String name;
+
+  private IndexPeriod(String indexPrefix, String indexType, long start, long end, String name) {
+    this.indexPrefix = indexPrefix;
+    this.indexType = indexType;
+    this.start = start;
+    this.end = end;
+    this.name = name;
+  }
+
+  /**
+   * Create the period containing the given timestamp.
+   *
+   * @param indexPrefix the prefix of all C2MON indices
+   * @param entity      the entity of the index, e.g. "tag"
+   * @param indexType   the time series indexing strategy: D, W or M
+   * @param timestamp   the timestamp which will be used to generate the index
+   *
+   * @return the period of the timestamp
+   */
+  static IndexPeriod of(String indexPrefix, String entity, String indexType, long timestamp) {
+    String dateFormat;
+    int periodField;
+
+    switch (indexType.toLowerCase()) {
+      case "d":
+        dateFormat = "yyyy-MM-dd";
+        periodField = Calendar.DAY_OF_MONTH;
+        break;
+      case "w":
+        dateFormat = "yyyy-'W'ww";
+        periodField = Calendar.DAY_OF_MONTH;
+        break;
+      case "m":
+      default:
+        dateFormat = "yyyy-MM";
+        periodField = Calendar.MONTH;
+        break;
+    }
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(timestamp);
+    if (periodField == Calendar.MONTH) {
+      calendar.set(Calendar.DAY_OF_MONTH, 1);
+    }
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    long start = calendar.getTimeInMillis();
+    calendar.add(periodField, 1);
+    long end = calendar.getTimeInMillis();
+
+    String name = indexPrefix + "-" + entity + "_" + new SimpleDateFormat(dateFormat).format(new Date(timestamp));
+    return new IndexPeriod(indexPrefix, indexType, start, end, name);
+  }
+
+  /**
+   * Check if the index of this period is the one of the given timestamp.
+   *
+   * @param indexPrefix the prefix of all C2MON indices
+   * @param indexType   the time series indexing strategy
+   * @param timestamp   the timestamp of a document
+   *
+   * @return true if the timestamp belongs to this period and the prefix and
+   * strategy did not change, false otherwise
+   */
+  boolean contains(String indexPrefix, String indexType, long timestamp) {
+    return timestamp >= start && timestamp < end && this.indexType.equals(indexType)
+        && this.indexPrefix.equals(indexPrefix);
+  }
+}
@@ -20,14 +20,22 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Static utility singleton for working with Elasticsearch indices.
+ * <p>
+ * The indexing threads do not share any lock: the names of the time series
+ * indices are cached per period and entity, the known indices are kept in a
+ * concurrent set and each missing index is created by a single background
+ * task, whose result is awaited by all the threads needing the index.
  *
  * @author Justin Lewis Salmon
  */
@@ -41,7 +49,23 @@ public class Indices {
   @Getter
   private ElasticsearchProperties properties;
 
-  private final List<String> indexCache = new CopyOnWriteArrayList<>();
+  private final Set<String> indexCache = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Pending index creations, by index name.
+   */
+  private final ConcurrentMap<String, CompletableFuture<Boolean>> creations = new ConcurrentHashMap<>();
+
+  /**
+   * Last index period of each time series entity.
+   */
+  private final ConcurrentMap<String, IndexPeriod> periods = new ConcurrentHashMap<>();
+
+  private final ExecutorService indexCreator = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "IndexCreator");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   private static Indices self;
 
@@ -65,6 +89,9 @@ public class Indices {
 
   /**
    * Create a new index with an initial mapping.
+   * <p>
+   * Waits for the creation of the index, which is shared with the concurrent
+   * calls for the same index.
    *
    * @param indexName the name of the index to create
    * @param type      the mapping type
@@ -73,39 +100,72 @@ public class Indices {
    * @return true if the index was successfully created, false otherwise
    */
   public static boolean create(String indexName, String type, String mapping) {
-    synchronized (Indices.class) {
-      if (exists(indexName)) {
-        return true;
+    try {
+      return createAsync(indexName, type, mapping).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
+      throw e;
+    }
+  }
+
+  /**
+   * Create a new index with an initial mapping in the background.
+   * <p>
+   * Only one creation is running per index: concurrent calls for the same
+   * index get the same pending result.
+   *
+   * @param indexName the name of the index to create
+   * @param type      the mapping type
+   * @param mapping   the mapping source
+   *
+   * @return the pending result: true if the index was successfully created
+   * or already exists, false otherwise
+   */
+  public static CompletableFuture<Boolean> createAsync(String indexName, String type, String mapping) {
+    if (self.indexCache.contains(indexName)) {
+      return CompletableFuture.completedFuture(true);
+    }
 
-      CreateIndexRequestBuilder builder = self.client.getClient().admin().indices().prepareCreate(indexName);
-      builder.setSettings(Settings.builder()
-          .put("number_of_shards", self.properties.getShardsPerIndex())
-          .put("number_of_replicas", self.properties.getReplicasPerShard())
-          .build());
+    CompletableFuture<Boolean> creation = self.creations.computeIfAbsent(indexName,
+        name -> CompletableFuture.supplyAsync(() -> doCreate(name, type, mapping), self.indexCreator));
+    creation.whenComplete((created, e) -> self.creations.remove(indexName, creation));
+    return creation;
+  }
 
-      if (mapping != null) {
-        builder.addMapping(type, mapping, XContentType.JSON);
-      }
+  private static boolean doCreate(String indexName, String type, String mapping) {
+    if (exists(indexName)) {
+      return true;
+    }
 
-      log.debug("Creating new index with name {}", indexName);
-      boolean created;
+    CreateIndexRequestBuilder builder = self.client.getClient().admin().indices().prepareCreate(indexName);
+    builder.setSettings(Settings.builder()
+        .put("number_of_shards", self.properties.getShardsPerIndex())
+        .put("number_of_replicas", self.properties.getReplicasPerShard())
+        .build());
 
-      try {
-        CreateIndexResponse response = builder.get();
-        created = response.isAcknowledged();
-      } catch (ResourceAlreadyExistsException ex) {
-        created = true;
-      }
+    if (mapping != null) {
+      builder.addMapping(type, mapping, XContentType.JSON);
+    }
 
-      self.client.waitForYellowStatus();
+    log.debug("Creating new index with name {}", indexName);
+    boolean created;
 
-      if (created) {
-        self.indexCache.add(indexName);
-      }
+    try {
+      CreateIndexResponse response = builder.get();
+      created = response.isAcknowledged();
+    } catch (ResourceAlreadyExistsException ex) {
+      created = true;
+    }
+
+    self.client.waitForYellowStatus();
 
-      return created;
+    if (created) {
+      self.indexCache.add(indexName);
     }
+
+    return created;
   }
 
   /**
@@ -119,24 +179,23 @@ public class Indices {
    * @return true if the index exists, false otherwise
    */
   public static boolean exists(String indexName) {
-    synchronized (Indices.class) {
-      boolean exists = self.indexCache.contains(indexName);
-      if (!exists) {
-        self.client.waitForYellowStatus();
-        IndexMetaData indexMetaData = self.client.getClient().admin().cluster()
-            .state(Requests.clusterStateRequest())
-            .actionGet()
-            .getState()
-            .getMetaData()
-            .index(indexName);
-
-        if (indexMetaData != null) {
-          self.indexCache.add(indexName);
-          exists = true;
-        }
-      }
-      return exists;
+    if (self.indexCache.contains(indexName)) {
+      return true;
+    }
+
+    self.client.waitForYellowStatus();
+    IndexMetaData indexMetaData = self.client.getClient().admin().cluster()
+        .state(Requests.clusterStateRequest())
+        .actionGet()
+        .getState()
+        .getMetaData()
+        .index(indexName);
+
+    if (indexMetaData != null) {
+      self.indexCache.add(indexName);
+      return true;
     }
+    return false;
   }
 
   /**
@@ -147,19 +206,17 @@ public class Indices {
    * @return true if the request was acknowledged.
    */
   public static boolean delete(String indexName) {
-    synchronized (Indices.class) {
-      try {
-        DeleteIndexResponse response = self.client.getClient().admin().indices().delete(new DeleteIndexRequest(indexName)).get();
-        if (response.isAcknowledged()) {
-          self.indexCache.remove(indexName);
-          return true;
-        } else {
-          return false;
-        }
-      } catch (InterruptedException|ExecutionException e) {
-        log.error("Error while deleting index", e);
+    try {
+      DeleteIndexResponse response = self.client.getClient().admin().indices().delete(new DeleteIndexRequest(indexName)).get();
+      if (response.isAcknowledged()) {
+        self.indexCache.remove(indexName);
+        return true;
+      } else {
         return false;
       }
+    } catch (InterruptedException|ExecutionException e) {
+      log.error("Error while deleting index", e);
+      return false;
     }
   }
   /**
@@ -171,8 +228,7 @@ public class Indices {
    * @return the generated index name
    */
   public static String indexFor(TagDocument tag) {
-    String prefix = self.properties.getIndexPrefix() + "-tag_";
-    return getIndexName(prefix, (Long) tag.get("timestamp"));
+    return getIndexName("tag", tag.getTimestamp());
   }
 
   /**
@@ -195,8 +251,7 @@ public class Indices {
    * @return the generated index name
    */
   public static String indexFor(AlarmDocument alarm) {
-    String prefix = self.properties.getIndexPrefix() + "-alarm_";
-    return getIndexName(prefix, (Long) alarm.get("timestamp"));
+    return getIndexName("alarm", (Long) alarm.get("timestamp"));
   }
 
   /**
@@ -208,37 +263,31 @@ public class Indices {
    * @return the generated index name
    */
   public static String indexFor(SupervisionEventDocument supervisionEvent) {
-    String prefix = self.properties.getIndexPrefix() + "-supervision_";
-    return getIndexName(prefix, (Long) supervisionEvent.get("timestamp"));
+    return getIndexName("supervision", (Long) supervisionEvent.get("timestamp"));
   }
 
   /**
-   * Generate an index for the given prefix and timestamp, based on the current
-   * time series indexing strategy.
+   * Generate an index for the given entity and timestamp, based on the
+   * current time series indexing strategy.
+   * <p>
+   * The name of the last index of the entity is reused as long as the
+   * timestamps fall in its period.
    *
-   * @param prefix    the index prefix
+   * @param entity    the entity of the index, e.g. "tag"
    * @param timestamp the timestamp which will be used to generate the index
    *
    * @return the generated index name
    */
-  private static String getIndexName(String prefix, long timestamp) {
+  private static String getIndexName(String entity, long timestamp) {
+    String indexPrefix = self.properties.getIndexPrefix();
     String indexType = self.properties.getIndexType();
-    String dateFormat;
-
-    switch (indexType.toLowerCase()) {
-      case "d":
-        dateFormat = "yyyy-MM-dd";
-        break;
-      case "w":
-        dateFormat = "yyyy-'W'ww";
-        break;
-      case "m":
-      default:
-        dateFormat = "yyyy-MM";
-        break;
-    }
 
-    return prefix + new SimpleDateFormat(dateFormat).format(new Date(timestamp));
+    IndexPeriod period = self.periods.get(entity);
+    if (period == null || !period.contains(indexPrefix, indexType, timestamp)) {
+      period = IndexPeriod.of(indexPrefix, entity, indexType, timestamp);
+      self.periods.put(entity, period);
+    }
+    return period.getName();
   }
 
   static ElasticsearchProperties getProperties() {
@@ -1,9 +1,18 @@
 package cern.c2mon.server.elasticsearch.bulk;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.index.IndexRequest;
 
 public interface BulkProcessorProxy {
   void add(IndexRequest request);
 
+  /**
+   * Add a request without waiting for it to be executed. The listener is
+   * notified on completion of the bulk operation containing the request, with
+   * the response of the request or the cause of its failure.
+   */
+  void add(IndexRequest request, ActionListener<BulkItemResponse> listener);
+
   void flush();
 }
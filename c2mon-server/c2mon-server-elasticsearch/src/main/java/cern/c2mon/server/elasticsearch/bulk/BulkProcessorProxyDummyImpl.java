@@ -1,5 +1,7 @@
 package cern.c2mon.server.elasticsearch.bulk;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.index.IndexRequest;
 
 public class BulkProcessorProxyDummyImpl implements BulkProcessorProxy {
@@ -8,6 +10,11 @@ public class BulkProcessorProxyDummyImpl implements BulkProcessorProxy {
 
   }
 
+  @Override
+  public void add(IndexRequest request, ActionListener<BulkItemResponse> listener) {
+
+  }
+
   @Override
   public void flush() {
 
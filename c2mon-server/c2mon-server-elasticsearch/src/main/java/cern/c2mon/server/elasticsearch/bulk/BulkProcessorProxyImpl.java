@@ -1,6 +1,13 @@
 package cern.c2mon.server.elasticsearch.bulk;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -18,8 +25,13 @@ import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
 import javax.annotation.PostConstruct;
 
 /**
- * Wrapper around {@link BulkProcessor}. If a bulk operation fails, this class
- * will throw a {@link RuntimeException}.
+ * Wrapper around {@link BulkProcessor}. If a bulk operation fails, the
+ * listeners of its requests are notified of the failure. If some requests
+ * were added without listener, this class will also throw a
+ * {@link RuntimeException}.
+ * <p>
+ * The size of the requests added and not yet executed is limited: adding a
+ * request blocks until enough running bulk operations complete.
  *
  * @author Justin Lewis Salmon
  */
@@ -28,6 +40,21 @@ public class BulkProcessorProxyImpl implements BulkProcessor.Listener, BulkProce
 
   private final BulkProcessor bulkProcessor;
 
+  /**
+   * The listeners of the requests not yet executed, by request.
+   */
+  private final ConcurrentMap<DocWriteRequest, ActionListener<BulkItemResponse>> listeners = new ConcurrentHashMap<>();
+
+  /**
+   * Maximum size in bytes of the requests in flight.
+   */
+  private final int maxInFlightBytes;
+
+  /**
+   * One permit per byte of the requests which may still be added.
+   */
+  private final Semaphore inFlightBytes;
+
   @Autowired
   public BulkProcessorProxyImpl(final ElasticsearchClient client, final ElasticsearchProperties properties) {
     this.bulkProcessor = BulkProcessor.builder(client.getClient(), this)
@@ -36,11 +63,27 @@ public class BulkProcessorProxyImpl implements BulkProcessor.Listener, BulkProce
           .setFlushInterval(TimeValue.timeValueSeconds(properties.getBulkFlushInterval()))
           .setConcurrentRequests(properties.getConcurrentRequests())
           .build();
+
+    // The bulk being filled and the concurrent ones must fit, or adding would block until the flush interval
+    long maxInFlightSize = Math.max(properties.getBulkMaxInFlightSize(),
+        (long) properties.getBulkSize() * (properties.getConcurrentRequests() + 1));
+    this.maxInFlightBytes = (int) Math.min(ByteSizeUnit.MB.toBytes(maxInFlightSize), Integer.MAX_VALUE);
+    this.inFlightBytes = new Semaphore(maxInFlightBytes);
   }
 
   @Override
   public void add(IndexRequest request) {
     Assert.notNull(request, "IndexRequest must not be null!");
+    acquire(request);
+    bulkProcessor.add(request);
+  }
+
+  @Override
+  public void add(IndexRequest request, ActionListener<BulkItemResponse> listener) {
+    Assert.notNull(request, "IndexRequest must not be null!");
+    Assert.notNull(listener, "ActionListener must not be null!");
+    acquire(request);
+    listeners.put(request, listener);
     bulkProcessor.add(request);
   }
 
@@ -49,6 +92,21 @@ public class BulkProcessorProxyImpl implements BulkProcessor.Listener, BulkProce
     bulkProcessor.flush();
   }
 
+  private void acquire(DocWriteRequest request) {
+    int size = sizeOf(request);
+    if (!inFlightBytes.tryAcquire(size)) {
+      log.debug("Waiting for running bulk operations to complete before adding {} bytes", size);
+      inFlightBytes.acquireUninterruptibly(size);
+    }
+  }
+
+  private int sizeOf(DocWriteRequest request) {
+    if (request instanceof IndexRequest && ((IndexRequest) request).source() != null) {
+      return Math.min(((IndexRequest) request).source().length(), maxInFlightBytes);
+    }
+    return 0;
+  }
+
   @Override
   public void beforeBulk(long executionId, BulkRequest request) {
     log.debug("Going to execute new bulk operation composed of {} actions", request.numberOfActions());
@@ -57,11 +115,55 @@ public class BulkProcessorProxyImpl implements BulkProcessor.Listener, BulkProce
   @Override
   public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
     log.debug("Executed bulk operation composed of {} actions", request.numberOfActions());
+
+    if (response.hasFailures()) {
+      log.warn("Bulk operation executed with failures: {}", response.buildFailureMessage());
+    }
+
+    for (BulkItemResponse item : response) {
+      DocWriteRequest itemRequest = request.requests().get(item.getItemId());
+      inFlightBytes.release(sizeOf(itemRequest));
+
+      ActionListener<BulkItemResponse> listener = listeners.remove(itemRequest);
+      if (listener == null) {
+        continue;
+      }
+      try {
+        if (item.isFailed()) {
+          listener.onFailure(item.getFailure().getCause());
+        } else {
+          listener.onResponse(item);
+        }
+      } catch (Exception e) {
+        log.error("Error notifying the completion of a bulk request", e);
+      }
+    }
   }
 
   @Override
   public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
     log.warn("Error executing bulk operation", failure);
-    throw new RuntimeException(failure);
+
+    Exception cause = failure instanceof Exception ? (Exception) failure : new RuntimeException(failure);
+    boolean unnotified = false;
+
+    for (DocWriteRequest itemRequest : request.requests()) {
+      inFlightBytes.release(sizeOf(itemRequest));
+
+      ActionListener<BulkItemResponse> listener = listeners.remove(itemRequest);
+      if (listener == null) {
+        unnotified = true;
+        continue;
+      }
+      try {
+        listener.onFailure(cause);
+      } catch (Exception e) {
+        log.error("Error notifying the failure of a bulk request", e);
+      }
+    }
+
+    if (unnotified) {
+      throw new RuntimeException(failure);
+    }
   }
 }
@@ -109,6 +109,20 @@ public class ElasticsearchProperties {
    */
   private int concurrentRequests = 1;
 
+  /**
+   * Index the tags asynchronously: the batches of tags are not flushed, and
+   * the tags which fail to be indexed are written to the fallback file when
+   * their bulk operation completes
+   */
+  private boolean bulkAsync = false;
+
+  /**
+   * Maximum size in MB of the tags added to the bulk processor and not yet
+   * indexed. Adding more tags blocks until running bulk operations complete.
+   * It is never less than the size of a batch
+   */
+  private int bulkMaxInFlightSize = 50;
+
   /**
    * Absolute path the file to which tag updates will be written in the
    * event of Elasticsearch communication failure
@@ -72,34 +72,69 @@ public class BaseTagDocumentConverter<T extends Map<String, Object>> implements
 
         map.put("dataType", tag.getDataType());
 
+        String process = getProcessName(tag);
+        if (process != null) {
+            map.put("process", process);
+        }
+
+        String equipment = getEquipmentName(tag);
+        if (equipment != null) {
+            map.put("equipment", equipment);
+        }
+
+        String subEquipment = getSubEquipmentName(tag);
+        if (subEquipment != null) {
+            map.put("subEquipment", subEquipment);
+        }
+
+        return map;
+    }
 
+    /**
+     * @return the name of the process of the tag, or null if the tag has no
+     * process or if the process is not in the cache
+     */
+    protected String getProcessName(final Tag tag) {
         if (!(tag instanceof CommFaultTag) || !tag.getProcessIds().isEmpty()) {
             try {
                 Process process = processCache.get(tag.getProcessIds().iterator().next());
-                map.put("process", process.getName());
+                return process.getName();
             } catch (Exception e) {
                 log.warn("Could not get Process name for tag #{} ({}) from cache. Reason: {}", tag.getId(), tag.getName(), e.getMessage());
             }
         }
+        return null;
+    }
 
+    /**
+     * @return the name of the equipment of the tag, or null if the tag has no
+     * equipment or if the equipment is not in the cache
+     */
+    protected String getEquipmentName(final Tag tag) {
         if (!tag.getEquipmentIds().isEmpty()) {
             try {
                 Equipment equipment = equipmentCache.get(tag.getEquipmentIds().iterator().next());
-                map.put("equipment", equipment.getName());
+                return equipment.getName();
             } catch (Exception e) {
                 log.warn("Could not get Equipment name for tag #{} ({}) from cache. Reason: {}", tag.getId(), tag.getName(), e.getMessage());
             }
         }
+        return null;
+    }
 
+    /**
+     * @return the name of the sub equipment of the tag, or null if the tag has
+     * no sub equipment or if the sub equipment is not in the cache
+     */
+    protected String getSubEquipmentName(final Tag tag) {
         if (!tag.getSubEquipmentIds().isEmpty()) {
             try {
                 SubEquipment subEquipment = subEquipmentCache.get(tag.getSubEquipmentIds().iterator().next());
-                map.put("subEquipment", subEquipment.getName());
+                return subEquipment.getName();
             } catch (Exception e) {
                 log.warn("Could not get SubEquipment name for tag #{} ({}) from cache. Reason: {}", tag.getId(), tag.getName(), e.getMessage());
             }
         }
-
-        return map;
+        return null;
     }
 }
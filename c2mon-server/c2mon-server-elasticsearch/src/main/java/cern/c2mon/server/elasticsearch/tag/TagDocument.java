@@ -17,9 +17,18 @@
 package cern.c2mon.server.elasticsearch.tag;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cern.c2mon.pmanager.IFallback;
@@ -29,20 +38,140 @@ import cern.c2mon.server.common.tag.Tag;
  * Intermediate object (created from {@link Tag} instances) used for direct
  * serialization to JSON objects suitable for indexing as Elasticsearch
  * documents.
+ * <p>
+ * The documents created by the {@link TagDocumentConverter} and read from the
+ * fallback file hold their JSON source, which is used as it is for the index
+ * request and for the fallback line. Only the id and the timestamp are kept
+ * apart, for the routing and the index of the document. The fields of the map
+ * are parsed from the source the first time they are accessed.
  *
  * @author Alban Marguet
  * @author Justin Lewis Salmon
  */
-public class TagDocument extends HashMap<String, Object> implements IFallback {
+public class TagDocument extends AbstractMap<String, Object> implements IFallback {
 
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+  /**
+   * The fields of the document, once parsed from the source.
+   */
+  private final Map<String, Object> fields = new HashMap<>();
+
+  private final Set<Map.Entry<String, Object>> entrySet = new EntrySet();
+
+  /**
+   * The JSON of the document, or null if the document was built as a map
+   * and was not serialized since it was last modified.
+   */
+  private byte[] source;
+
+  /**
+   * True if the fields of the map must still be parsed from the source.
+   */
+  private boolean unparsed;
+
+  private String id;
+
+  private Long timestamp;
+
+  public TagDocument() {
+  }
+
+  /**
+   * Create a document from its JSON source.
+   *
+   * @param id        the id of the tag
+   * @param timestamp the timestamp of the tag
+   * @param source    the JSON of the document, which must not be modified
+   *                  afterwards
+   */
+  TagDocument(String id, long timestamp, byte[] source) {
+    this.id = id;
+    this.timestamp = timestamp;
+    this.source = source;
+    this.unparsed = true;
+  }
+
   @Override
   public Object put(String key, Object value) {
+    modified();
+    return putField(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    modified();
+    return fields.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    unparsed = false;
+    modified();
+    fields.clear();
+  }
+
+  private Object putField(String key, Object value) {
     if (key.equals("timestamp")) {
       value = Long.valueOf(value.toString());
     }
-    return super.put(key, value);
+    return fields.put(key, value);
+  }
+
+  @Override
+  public Object get(Object key) {
+    parse();
+    return fields.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    parse();
+    return fields.containsKey(key);
+  }
+
+  @Override
+  public int size() {
+    parse();
+    return fields.size();
+  }
+
+  /**
+   * The fields of the document. The other readers and mutators of
+   * {@link AbstractMap} go through this view or the methods above, so they
+   * all parse the source first, and the mutators all discard it.
+   */
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return entrySet;
+  }
+
+  /**
+   * Discard the source and the fields kept apart, which may no longer match
+   * the fields of the map.
+   */
+  private void modified() {
+    parse();
+    source = null;
+    id = null;
+    timestamp = null;
+  }
+
+  /**
+   * Fill the map with the fields of the source, if not done yet.
+   */
+  private void parse() {
+    if (unparsed) {
+      unparsed = false;
+      try {
+        Map<String, Object> fields = mapper.readValue(source, MAP_TYPE);
+        fields.forEach(this::putField);
+      } catch (IOException e) {
+        throw new RuntimeException("Error parsing document", e);
+      }
+    }
   }
 
   public <T> T getProperty(String key, Class<T> klass) {
@@ -51,24 +180,126 @@ public class TagDocument extends HashMap<String, Object> implements IFallback {
 
   @Override
   public String getId() {
-    return String.valueOf(this.get("id"));
+    return id != null ? id : String.valueOf(this.get("id"));
+  }
+
+  /**
+   * @return the timestamp of the tag, which determines the index of the
+   * document
+   */
+  public Long getTimestamp() {
+    return timestamp != null ? timestamp : (Long) this.get("timestamp");
   }
 
+  /**
+   * @return the JSON of the document, to be indexed as it is
+   */
+  public byte[] getSource() {
+    if (source == null) {
+      try {
+        source = mapper.writeValueAsBytes(this);
+      } catch (JsonProcessingException e) {
+        throw new RuntimeException("Error serializing document", e);
+      }
+    }
+    return source;
+  }
+
+  /**
+   * Read a document from a fallback line. Only the id and the timestamp are
+   * parsed, the line itself becomes the source of the document.
+   */
   @Override
   public IFallback getObject(String line) {
-    try {
-      return mapper.readValue(line, TagDocument.class);
-    } catch (IOException e) {
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    String id = null;
+    Long timestamp = null;
+
+    try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Document is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (field.equals("id")) {
+          id = parser.getText();
+        } else if (field.equals("timestamp")) {
+          timestamp = Long.valueOf(parser.getText());
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
       throw new RuntimeException("Error reading line from fallback", e);
     }
+
+    if (timestamp == null) {
+      throw new RuntimeException("Error reading line from fallback: no timestamp in " + line);
+    }
+    return new TagDocument(id, timestamp, bytes);
   }
 
   @Override
   public String toString() {
-    try {
-      return mapper.writeValueAsString(this);
-    } catch (JsonProcessingException e) {
-      throw new RuntimeException("Error serializing document", e);
+    return new String(getSource(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * View of the fields of the document, parsing the source before any access
+   * and discarding it on any modification.
+   */
+  private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator() {
+      parse();
+      Iterator<Map.Entry<String, Object>> iterator = fields.entrySet().iterator();
+      return new Iterator<Map.Entry<String, Object>>() {
+
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+          return new Field(iterator.next());
+        }
+
+        @Override
+        public void remove() {
+          modified();
+          iterator.remove();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return TagDocument.this.size();
+    }
+
+    @Override
+    public void clear() {
+      TagDocument.this.clear();
+    }
+  }
+
+  /**
+   * A field of the document, modified through the document.
+   */
+  private final class Field extends SimpleEntry<String, Object> {
+
+    Field(Map.Entry<String, Object> entry) {
+      super(entry);
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      Object previous = put(getKey(), value);
+      super.setValue(fields.get(getKey()));
+      return previous;
     }
   }
 }
@@ -20,19 +20,28 @@ import cern.c2mon.server.cache.EquipmentCache;
 import cern.c2mon.server.cache.ProcessCache;
 import cern.c2mon.server.cache.SubEquipmentCache;
 import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.metadata.Metadata;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.shared.common.datatag.DataTagQuality;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
 import cern.c2mon.shared.common.type.TypeConverter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * Converts {@link Tag} instances to {@link TagDocument} instances.
+ * <p>
+ * The fields of the tag are written straight to the JSON source of the
+ * document, in a buffer reused by each thread, without building the maps of
+ * the document.
  *
  * @author Alban Marguet
  * @author Justin Lewis Salmon
@@ -41,6 +50,10 @@ import java.util.stream.Collectors;
 @Component
 public class TagDocumentConverter extends BaseTagDocumentConverter<TagDocument> {
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(ByteArrayBuilder::new);
+
     @Autowired
     public TagDocumentConverter(final ProcessCache processCache, final EquipmentCache equipmentCache, final SubEquipmentCache subEquipmentCache) {
         super(processCache, equipmentCache, subEquipmentCache, TagDocument::new);
@@ -49,72 +62,125 @@ public class TagDocumentConverter extends BaseTagDocumentConverter<TagDocument>
     @Override
     public Optional<TagDocument> convert(final Tag tag) {
         try {
-            return super.convert(tag)
-                    .map(tagDocument -> fillAdditionalData(tagDocument, tag));
+            return Optional.of(new TagDocument(String.valueOf(tag.getId()), tag.getTimestamp().getTime(), write(tag)));
         } catch (Exception e) {
             log.error("Error occurred during conversion of Tag #{} ({}) to Elasticsearch document. Unable to store update to Elasticsearch!", tag.getId(), tag.getName(), e);
         }
         return Optional.empty();
     }
 
-    private TagDocument fillAdditionalData(TagDocument tagDocument, Tag tag) {
-        tagDocument.put("timestamp", tag.getTimestamp().getTime());
-        tagDocument.put("quality", getQuality(tag));
-        tagDocument.put("valueDescription", tag.getValueDescription());
-        Class<?> clazz = TypeConverter.getType(tag.getDataType());
-        if (clazz == null) {
-            tagDocument.put("valueObject", tag.getValue());
+    /**
+     * @return the JSON source of the document of the tag
+     */
+    private byte[] write(final Tag tag) throws IOException {
+        ByteArrayBuilder buffer = buffers.get();
+        buffer.reset();
+
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", tag.getId());
+            generator.writeStringField("name", tag.getName());
+            generator.writeStringField("description", tag.getDescription());
+            generator.writeStringField("unit", tag.getUnit());
+            generator.writeNumberField("mode", tag.getMode());
+            writeMetadata(generator, tag);
+            writeC2monMetadata(generator, tag);
+            generator.writeNumberField("timestamp", tag.getTimestamp().getTime());
+            writeQuality(generator, tag);
+            generator.writeStringField("valueDescription", tag.getValueDescription());
+            writeValue(generator, tag);
+            generator.writeEndObject();
+        }
 
-        } else if (Number.class.isAssignableFrom(clazz)) {
-            tagDocument.put("value", tag.getValue());
+        return buffer.toByteArray();
+    }
 
-            if (Long.class.isAssignableFrom(clazz)) {
-                tagDocument.put("valueLong", tag.getValue());
+    private void writeMetadata(final JsonGenerator generator, final Tag tag) throws IOException {
+        generator.writeObjectFieldStart("metadata");
+        Metadata metadata = tag.getMetadata();
+        if (metadata != null) {
+            for (Map.Entry<String, Object> entry : metadata.getMetadata().entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    generator.writeObjectField(entry.getKey(), entry.getValue());
+                }
             }
-        } else if (Boolean.class.isAssignableFrom(clazz)) {
-            tagDocument.put("valueBoolean", tag.getValue());
+        }
+        generator.writeEndObject();
+    }
 
-            if (tag.getValue() != null) {
-                tagDocument.put("value", tag.getValue() != null ? 1 : 0);
-            }
-        } else if (String.class.isAssignableFrom(clazz)) {
-            tagDocument.put("valueString", tag.getValue());
+    private void writeC2monMetadata(final JsonGenerator generator, final Tag tag) throws IOException {
+        generator.writeObjectFieldStart("c2mon");
+        generator.writeStringField("dataType", tag.getDataType());
 
-        } else {
-            tagDocument.put("valueObject", tag.getValue());
+        String process = getProcessName(tag);
+        if (process != null) {
+            generator.writeStringField("process", process);
         }
-        return tagDocument;
-    }
 
-    @Override
-    protected Map<String, Object> getC2monMetadata(Tag tag) {
-        Map<String, Object> map = super.getC2monMetadata(tag);
-        map.put("serverTimestamp", tag.getCacheTimestamp().getTime());
+        String equipment = getEquipmentName(tag);
+        if (equipment != null) {
+            generator.writeStringField("equipment", equipment);
+        }
+
+        String subEquipment = getSubEquipmentName(tag);
+        if (subEquipment != null) {
+            generator.writeStringField("subEquipment", subEquipment);
+        }
+
+        generator.writeNumberField("serverTimestamp", tag.getCacheTimestamp().getTime());
 
         if (tag instanceof DataTag) {
             DataTag dataTag = (DataTag) tag;
 
             if (dataTag.getDaqTimestamp() != null) {
-                map.put("daqTimestamp", dataTag.getDaqTimestamp().getTime());
+                generator.writeNumberField("daqTimestamp", dataTag.getDaqTimestamp().getTime());
             }
 
             if (dataTag.getSourceTimestamp() != null) {
-                map.put("sourceTimestamp", dataTag.getSourceTimestamp().getTime());
+                generator.writeNumberField("sourceTimestamp", dataTag.getSourceTimestamp().getTime());
             }
         }
 
-        return map;
+        generator.writeEndObject();
     }
 
-    private Map<String, Object> getQuality(Tag tag) {
-        Map<String, Object> map = new HashMap<>();
+    private void writeQuality(final JsonGenerator generator, final Tag tag) throws IOException {
         DataTagQuality quality = tag.getDataTagQuality();
 
-        map.put("valid", quality.isValid());
-        map.put("status", calculateStatus(tag));
-        map.put("statusInfo", collectStatusInfo(quality));
+        generator.writeObjectFieldStart("quality");
+        generator.writeBooleanField("valid", quality.isValid());
+        generator.writeNumberField("status", calculateStatus(tag));
+        generator.writeArrayFieldStart("statusInfo");
+        for (String statusInfo : collectStatusInfo(quality)) {
+            generator.writeString(statusInfo);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeValue(final JsonGenerator generator, final Tag tag) throws IOException {
+        Class<?> clazz = TypeConverter.getType(tag.getDataType());
+        if (clazz == null) {
+            generator.writeObjectField("valueObject", tag.getValue());
+
+        } else if (Number.class.isAssignableFrom(clazz)) {
+            generator.writeObjectField("value", tag.getValue());
+
+            if (Long.class.isAssignableFrom(clazz)) {
+                generator.writeObjectField("valueLong", tag.getValue());
+            }
+        } else if (Boolean.class.isAssignableFrom(clazz)) {
+            generator.writeObjectField("valueBoolean", tag.getValue());
+
+            if (tag.getValue() != null) {
+                generator.writeNumberField("value", tag.getValue() != null ? 1 : 0);
+            }
+        } else if (String.class.isAssignableFrom(clazz)) {
+            generator.writeObjectField("valueString", tag.getValue());
 
-        return map;
+        } else {
+            generator.writeObjectField("valueObject", tag.getValue());
+        }
     }
 
     /**
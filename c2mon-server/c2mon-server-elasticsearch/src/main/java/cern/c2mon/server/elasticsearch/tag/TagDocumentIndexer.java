@@ -17,21 +17,39 @@
 package cern.c2mon.server.elasticsearch.tag;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
+import cern.c2mon.pmanager.persistence.IPersistenceManager;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import cern.c2mon.server.elasticsearch.Indices;
 import cern.c2mon.server.elasticsearch.MappingFactory;
 import cern.c2mon.server.elasticsearch.bulk.BulkProcessorProxy;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class manages the fallback-aware indexing of {@link TagDocument}
  * instances to the Elasticsearch cluster.
+ * <p>
+ * In asynchronous mode ({@link ElasticsearchProperties#isBulkAsync()}) the
+ * tags are handed over to the bulk processor without flushing it, and the
+ * tags which fail to be indexed are written one by one to the fallback file
+ * of the persistence manager when their bulk operation completes. After a
+ * failure, the tags are sent to the fallback file straight away during one
+ * flush interval, so that they are not read back from it in a loop while
+ * the cluster is unavailable.
  *
  * @author Alban Marguet
  * @author Justin Lewis Salmon
@@ -42,9 +60,29 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
 
   private final BulkProcessorProxy bulkProcessor;
 
+  private final boolean async;
+
+  private final long retryInterval;
+
+  /**
+   * The persistence manager using this indexer, to which the tags that failed
+   * asynchronously are given back.
+   */
+  @Lazy
+  @Autowired
+  @Qualifier("tagDocumentPersistenceManager")
+  private IPersistenceManager<TagDocument> persistenceManager;
+
+  /**
+   * Time of the last asynchronous failure, in milliseconds.
+   */
+  private volatile long lastFailure;
+
   @Autowired
-  public TagDocumentIndexer(BulkProcessorProxy bulkProcessor) {
+  public TagDocumentIndexer(BulkProcessorProxy bulkProcessor, ElasticsearchProperties properties) {
     this.bulkProcessor = bulkProcessor;
+    this.async = properties.isBulkAsync();
+    this.retryInterval = TimeUnit.SECONDS.toMillis(properties.getBulkFlushInterval());
   }
 
   @Override
@@ -54,11 +92,17 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
 
   @Override
   public void storeData(List<TagDocument> tags) throws IDBPersistenceException {
+    if (async && System.currentTimeMillis() - lastFailure < retryInterval) {
+      throw new IDBPersistenceException("Last bulk operation failed less than " + retryInterval + " ms ago");
+    }
+
     try {
       log.debug("Trying to send a batch of size {}", tags.size());
       tags.forEach(this::indexTag);
 
-      bulkProcessor.flush();
+      if (!async) {
+        bulkProcessor.flush();
+      }
     } catch (Exception e) {
       log.warn("Error indexing batch", e);
       throw new IDBPersistenceException(e);
@@ -71,10 +115,14 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
     log.trace("Indexing tag (#{}, index={}, type={})", tag.getId(), index, "tag");
 
     IndexRequest indexNewTag = new IndexRequest(index, "tag")
-        .source(tag.toString())
+        .source(tag.getSource(), XContentType.JSON)
         .routing(tag.getId());
 
-    bulkProcessor.add(indexNewTag);
+    if (async) {
+      bulkProcessor.add(indexNewTag, new FallbackListener(tag));
+    } else {
+      bulkProcessor.add(indexNewTag);
+    }
   }
 
   private String getOrCreateIndex(TagDocument tag) {
@@ -91,4 +139,35 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
   public String getDBInfo() {
     return "elasticsearch/tag";
   }
+
+  /**
+   * Writes the tag to the fallback file if it could not be indexed because
+   * of the cluster. The tags rejected by the cluster (e.g. because they do
+   * not match the mapping) would be rejected again, so they are dropped.
+   */
+  private class FallbackListener implements ActionListener<BulkItemResponse> {
+
+    private final TagDocument tag;
+
+    FallbackListener(TagDocument tag) {
+      this.tag = tag;
+    }
+
+    @Override
+    public void onResponse(BulkItemResponse response) {
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+      RestStatus status = ExceptionsHelper.status(e);
+      if (status.getStatus() < 500 && status != RestStatus.TOO_MANY_REQUESTS) {
+        log.error("Tag #{} was rejected by Elasticsearch ({}), dropping it: {}", tag.getId(), status, e.getMessage());
+        return;
+      }
+
+      log.warn("Error indexing tag #{}, writing it to the fallback file: {}", tag.getId(), e.getMessage());
+      lastFailure = System.currentTimeMillis();
+      persistenceManager.fallback(Collections.singletonList(tag));
+    }
+  }
 }
@@ -0,0 +1,70 @@
+package cern.c2mon.server.elasticsearch;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link IndexPeriod}.
+ */
+public class IndexPeriodTest {
+
+  private static final long TIMESTAMP = 1448928000000L;
+
+  @Test
+  public void monthlyPeriod() {
+    IndexPeriod period = IndexPeriod.of("c2mon", "tag", "M", TIMESTAMP);
+    assertEquals("c2mon-tag_" + format("yyyy-MM", TIMESTAMP), period.getName());
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(TIMESTAMP);
+    calendar.set(Calendar.DAY_OF_MONTH, 1);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    long start = calendar.getTimeInMillis();
+    calendar.add(Calendar.MONTH, 1);
+    long end = calendar.getTimeInMillis();
+
+    assertTrue(period.contains("c2mon", "M", start));
+    assertTrue(period.contains("c2mon", "M", end - 1));
+    assertFalse(period.contains("c2mon", "M", start - 1));
+    assertFalse(period.contains("c2mon", "M", end));
+  }
+
+  @Test
+  public void dailyPeriod() {
+    IndexPeriod period = IndexPeriod.of("c2mon", "alarm", "D", TIMESTAMP);
+    assertEquals("c2mon-alarm_" + format("yyyy-MM-dd", TIMESTAMP), period.getName());
+
+    long nextDay = TIMESTAMP + 24 * 3600 * 1000L;
+    assertFalse(period.contains("c2mon", "D", nextDay));
+    assertEquals("c2mon-alarm_" + format("yyyy-MM-dd", nextDay), IndexPeriod.of("c2mon", "alarm", "D", nextDay).getName());
+  }
+
+  @Test
+  public void weeklyPeriodIsOneDay() {
+    IndexPeriod period = IndexPeriod.of("c2mon", "supervision", "W", TIMESTAMP);
+    assertEquals("c2mon-supervision_" + format("yyyy-'W'ww", TIMESTAMP), period.getName());
+    assertFalse(period.contains("c2mon", "W", TIMESTAMP + 24 * 3600 * 1000L));
+  }
+
+  @Test
+  public void changedStrategyOrPrefix() {
+    IndexPeriod period = IndexPeriod.of("c2mon", "tag", "M", TIMESTAMP);
+    assertTrue(period.contains("c2mon", "M", TIMESTAMP));
+    assertFalse(period.contains("c2mon", "D", TIMESTAMP));
+    assertFalse(period.contains("other", "M", TIMESTAMP));
+  }
+
+  private static String format(String dateFormat, long timestamp) {
+    return new SimpleDateFormat(dateFormat).format(new Date(timestamp));
+  }
+}
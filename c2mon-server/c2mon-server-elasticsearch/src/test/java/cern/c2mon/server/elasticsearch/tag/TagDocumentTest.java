@@ -0,0 +1,162 @@
+package cern.c2mon.server.elasticsearch.tag;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.equipment.EquipmentCacheObject;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+import cern.c2mon.server.elasticsearch.util.EntityUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of the JSON source of {@link TagDocument}, as written by the
+ * {@link TagDocumentConverter} and read from the fallback file.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TagDocumentTest extends BaseTagDocumentConverterTest {
+
+  @InjectMocks
+  private TagDocumentConverter converter;
+
+  @Before
+  public void setup() {
+    ProcessCacheObject process = new ProcessCacheObject(1L);
+    process.setName("P_TEST");
+
+    EquipmentCacheObject equipment = new EquipmentCacheObject(1L);
+    equipment.setName("E_TEST");
+
+    when(processCache.get(any())).thenReturn(process);
+    when(equipmentCache.get(any())).thenReturn(equipment);
+  }
+
+  @Test
+  public void sourceIsReusedForFallback() {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+
+    assertSame(document.getSource(), document.getSource());
+    assertEquals(new String(document.getSource(), StandardCharsets.UTF_8), document.toString());
+    assertEquals(String.valueOf(tag.getId()), document.getId());
+    assertEquals(tag.getTimestamp().getTime(), document.getTimestamp().longValue());
+
+    TagDocument fallback = (TagDocument) document.getObject(document.toString());
+    assertArrayEquals(document.getSource(), fallback.getSource());
+    assertEquals(document.getId(), fallback.getId());
+    assertEquals(document.getTimestamp(), fallback.getTimestamp());
+  }
+
+  @Test
+  public void fieldsAreParsedFromSource() throws Exception {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+
+    assertFalse(document.isEmpty());
+    super.assertBaseFieldsMatch(tag, document);
+    assertEquals(tag.getTimestamp().getTime(), document.get("timestamp"));
+    assertEquals(tag.getValue(), document.get("value"));
+
+    Map<String, Object> quality = (Map<String, Object>) document.get("quality");
+    assertEquals(tag.getDataTagQuality().isValid(), quality.get("valid"));
+
+    Map<String, Object> c2monMetadata = (Map<String, Object>) document.get("c2mon");
+    assertEquals("P_TEST", c2monMetadata.get("process"));
+    assertEquals("E_TEST", c2monMetadata.get("equipment"));
+    assertEquals(tag.getDaqTimestamp().getTime(), c2monMetadata.get("daqTimestamp"));
+
+    assertEquals(new ObjectMapper().readValue(document.getSource(), Map.class), new ObjectMapper().readValue(document.toString(), Map.class));
+  }
+
+  @Test
+  public void putAllOnUnparsedDocument() {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+    TagDocument unparsed = (TagDocument) document.getObject(document.toString());
+
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("timestamp", 1448928000000L);
+    fields.put("extra", "value");
+    unparsed.putAll(fields);
+
+    assertEquals(tag.getName(), unparsed.get("name"));
+    assertEquals(1448928000000L, unparsed.getTimestamp().longValue());
+    TagDocument copy = (TagDocument) unparsed.getObject(unparsed.toString());
+    assertEquals(tag.getName(), copy.get("name"));
+    assertEquals("value", copy.get("extra"));
+    assertEquals(1448928000000L, copy.getTimestamp().longValue());
+  }
+
+  @Test
+  public void readersOfUnparsedDocument() {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+    TagDocument unparsed = (TagDocument) document.getObject(document.toString());
+
+    assertEquals(tag.getName(), unparsed.getOrDefault("name", "default"));
+    assertEquals("default", unparsed.getOrDefault("missing", "default"));
+    assertTrue(((TagDocument) document.getObject(document.toString())).containsValue(tag.getName()));
+    assertEquals(document, document.getObject(document.toString()));
+
+    Map<String, Object> copy = new HashMap<>();
+    ((TagDocument) document.getObject(document.toString())).forEach(copy::put);
+    assertEquals(document, copy);
+  }
+
+  @Test
+  public void writersOfUnparsedDocumentDiscardTheSource() {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+
+    TagDocument unparsed = (TagDocument) document.getObject(document.toString());
+    unparsed.putIfAbsent("extra", "value");
+    assertEquals("value", ((TagDocument) unparsed.getObject(unparsed.toString())).get("extra"));
+    assertEquals(tag.getName(), unparsed.get("name"));
+
+    unparsed = (TagDocument) document.getObject(document.toString());
+    unparsed.replace("name", "renamed");
+    assertEquals("renamed", ((TagDocument) unparsed.getObject(unparsed.toString())).get("name"));
+
+    unparsed = (TagDocument) document.getObject(document.toString());
+    for (Map.Entry<String, Object> field : unparsed.entrySet()) {
+      if (field.getKey().equals("name")) {
+        field.setValue("renamed");
+      }
+    }
+    assertEquals("renamed", ((TagDocument) unparsed.getObject(unparsed.toString())).get("name"));
+
+    unparsed = (TagDocument) document.getObject(document.toString());
+    unparsed.clear();
+    assertTrue(unparsed.isEmpty());
+    assertEquals("{}", unparsed.toString());
+  }
+
+  @Test
+  public void modifiedDocumentIsSerializedAgain() {
+    DataTag tag = EntityUtils.createDataTag();
+    TagDocument document = converter.convert(tag).get();
+
+    document.put("timestamp", 1448928000000L);
+
+    assertEquals(1448928000000L, document.getTimestamp().longValue());
+    assertEquals(String.valueOf(tag.getId()), document.getId());
+    TagDocument copy = (TagDocument) document.getObject(document.toString());
+    assertEquals(1448928000000L, copy.getTimestamp().longValue());
+    assertEquals(tag.getName(), copy.get("name"));
+  }
+}
@@ -134,11 +134,8 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
           commited = i;
         }
 
-        if (data.get(i) != null) {
-          tag = (T) data.get(i);
-          if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Logging object with ID: " + tag.getId());
-          }
+        tag = (T) data.get(i);
+        if (tag != null) {
           persistenceMapper.insertLog(tag);
         }
       }
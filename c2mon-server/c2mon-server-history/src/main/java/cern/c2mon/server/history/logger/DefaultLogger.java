@@ -18,6 +18,7 @@ package cern.c2mon.server.history.logger;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import cern.c2mon.pmanager.persistence.IPersistenceManager;
 import cern.c2mon.server.history.structure.Loggable;
@@ -34,6 +35,13 @@ import cern.c2mon.shared.common.Cacheable;
  * it into the object used for logging (which must implement
  * the IFallback interface for the fallback mechanism).
  *
+ * <p>The log objects are pooled per thread and given back to
+ * the converter at the next call, so that converters able to
+ * reuse them do not create any object per logged update. This
+ * relies on the persistence manager not keeping them once
+ * {@link IPersistenceManager#storeData(List)} has returned: they
+ * are either written to the DB or to the fallback file.
+ *
  * @author Mark Brightwell
  *
  * @param <T> the cache object that needs logging
@@ -50,6 +58,11 @@ public class DefaultLogger<T extends Cacheable> implements BatchLogger<T> {
    */
   private IPersistenceManager persistenceManager;
 
+  /**
+   * The log objects of the last call of each thread.
+   */
+  private final ThreadLocal<List<Loggable>> pool = ThreadLocal.withInitial(ArrayList::new);
+
   /**
    * Unique constructor.
    *
@@ -64,15 +77,23 @@ public class DefaultLogger<T extends Cacheable> implements BatchLogger<T> {
 
   @Override
   public void log(final Collection<T> tags) {
-    ArrayList<Loggable> loggables = new ArrayList<Loggable>();
+    List<Loggable> loggables = pool.get();
+    int size = 0;
 
     // Convert the list of DataTagCacheObjects to TagRecord objects (IFallback objects)
     for (T tag : tags) {
         if (tag != null && tag.getId() != null) {
-          loggables.add(converter.convertToLogged(tag));
+          if (size < loggables.size()) {
+            loggables.set(size, converter.convertToLogged(tag, loggables.get(size)));
+          } else {
+            loggables.add(converter.convertToLogged(tag, null));
+          }
+          size++;
         }
     }
-    persistenceManager.storeData(loggables);
+    if (size > 0) {
+      persistenceManager.storeData(loggables.subList(0, size));
+    }
   }
 
 }
@@ -34,4 +34,18 @@ public interface LoggerConverter<T extends Cacheable> {
    */
   Loggable convertToLogged(T cacheable);
 
+  /**
+   * Convert a cache object into the logging object, reusing the given one
+   * when possible so that no object is created per logged update.
+   * By default a new object is created.
+   *
+   * @param cacheable the cache object
+   * @param reusable a logging object previously returned by this converter,
+   *          no longer used, or null
+   * @return the object to be logged: the reusable object or a new one
+   */
+  default Loggable convertToLogged(T cacheable, Loggable reusable) {
+    return convertToLogged(cacheable);
+  }
+
 }
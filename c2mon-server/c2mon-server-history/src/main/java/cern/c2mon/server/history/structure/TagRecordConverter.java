@@ -17,6 +17,8 @@
 
 package cern.c2mon.server.history.structure;
 
+import java.util.Map;
+
 import cern.c2mon.server.common.control.ControlTag;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.tag.Tag;
@@ -41,6 +43,9 @@ public final class TagRecordConverter implements LoggerConverter<Tag> {
     /** The index to which the text will be significative */
     private static final int SPLIT_INDEX = 99;
 
+    /** The JSON form of the invalid states of a valid tag */
+    private static final String EMPTY_JSON_OBJECT = "{}";
+
     /**
      * Jackson object used for converting DataTagQuality to String.
      */
@@ -67,31 +72,26 @@ public final class TagRecordConverter implements LoggerConverter<Tag> {
 
     @Override
     public Loggable convertToLogged(Tag tag) {
-      // create an empty TagRecord object
-      TagRecord tagRecord = new TagRecord();
-      // Populate its fields with data from the object received as a parameter
+      return convertToLogged(tag, null);
+    }
+
+    @Override
+    public Loggable convertToLogged(Tag tag, Loggable reusable) {
+      // reuse the given TagRecord object or create an empty one
+      TagRecord tagRecord = reusable instanceof TagRecord ? (TagRecord) reusable : new TagRecord();
+      // Populate all its fields with data from the object received as a parameter
       tagRecord.setTagId(tag.getId().longValue());
       tagRecord.setTagName(tag.getName());
-
-      if (tag.getValue() != null) {
-        try {
-
-          tagRecord.setTagValue(mapper.writeValueAsString(tag.getValue()));
-
-        } catch (JsonProcessingException e) {
-          log.error("Could nor parse the invalid states of the tag "+tag.getId()+" into a String.", e);
-        }
-      } else {
-
-          tagRecord.setTagValue(null);
-      }
-
+      tagRecord.setTagValue(toJson(tag.getValue(), tag.getId()));
       tagRecord.setTagValueDesc(tag.getValueDescription());
       tagRecord.setTagDataType(tag.getDataType());
 
       if (tag instanceof DataTag || tag instanceof ControlTag) {
         tagRecord.setSourceTimestamp(((DataTag) tag).getSourceTimestamp());
         tagRecord.setDaqTimestamp(((DataTag) tag).getDaqTimestamp());
+      } else {
+        tagRecord.setSourceTimestamp(null);
+        tagRecord.setDaqTimestamp(null);
       }
 
       tagRecord.setServerTimestamp(tag.getCacheTimestamp());
@@ -105,8 +105,10 @@ public final class TagRecordConverter implements LoggerConverter<Tag> {
 
       tagRecord.setTagQualityCode(code); //for longterm log and statistics purpose
 
+      tagRecord.setTagQualityDesc(null);
       try {
-        tagRecord.setTagQualityDesc(mapper.writeValueAsString(tag.getDataTagQuality().getInvalidQualityStates()));
+        Map<TagQualityStatus, String> invalidStates = tag.getDataTagQuality().getInvalidQualityStates();
+        tagRecord.setTagQualityDesc(invalidStates.isEmpty() ? EMPTY_JSON_OBJECT : mapper.writeValueAsString(invalidStates));
       } catch (JsonProcessingException e) {
         log.error("Could not parse the invalid states of the tag "+tag.getId()+" into a String.", e);
       }
@@ -117,7 +119,34 @@ public final class TagRecordConverter implements LoggerConverter<Tag> {
 
       tagRecord.setTagDir("I");
       tagRecord.setTagMode(tag.getMode());
+      tagRecord.setLogDate(null);
+      tagRecord.setTimezone(null);
       return tagRecord;
     }
 
+    /**
+     * Writes a tag value in JSON. The integer and boolean values, whose JSON
+     * form is their string form, are written without the Jackson mapper.
+     *
+     * @param value the tag value
+     * @param tagId the id of the tag, for logging
+     * @return the value in JSON, or null if the value is null or could not
+     *         be written
+     */
+    private String toJson(final Object value, final Long tagId) {
+      if (value == null) {
+        return null;
+      }
+      if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+          || value instanceof Boolean) {
+        return value.toString();
+      }
+      try {
+        return mapper.writeValueAsString(value);
+      } catch (JsonProcessingException e) {
+        log.error("Could not parse the value of the tag "+tagId+" into a String.", e);
+        return null;
+      }
+    }
+
 }
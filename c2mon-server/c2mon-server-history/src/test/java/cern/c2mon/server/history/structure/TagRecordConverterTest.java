@@ -18,6 +18,8 @@ package cern.c2mon.server.history.structure;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import cern.c2mon.shared.common.datatag.DataTagAddress;
@@ -26,6 +28,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
 
 import java.sql.Timestamp;
@@ -133,6 +136,32 @@ public class TagRecordConverterTest {
     tagLogEquals((TagRecord) expectedObject,(TagRecord)testObject);
   }
 
+  /**
+   * Tests that a reused record is completely overwritten.
+   */
+  @Test
+  public void testConversionIntoReusedRecord() throws JsonProcessingException {
+    TagRecord tagRecord = (TagRecord) converter.convertToLogged(createTestCacheTag(1337L, Long.class));
+    tagRecord.setLogDate(new Timestamp(1234567890));
+
+    RuleTagCacheObject ruleTag = new RuleTagCacheObject(20L);
+    ruleTag.setName("ruleName");
+    ruleTag.setDataType(Boolean.class.getName());
+    ruleTag.setValue(Boolean.FALSE);
+    ruleTag.setCacheTimestamp(new Timestamp(1234567890));
+    ruleTag.getDataTagQuality().validate();
+
+    assertSame(tagRecord, converter.convertToLogged(ruleTag, tagRecord));
+    assertEquals(20L, tagRecord.getTagId());
+    assertEquals("ruleName", tagRecord.getTagName());
+    assertEquals(mapper.writeValueAsString(Boolean.FALSE), tagRecord.getTagValue());
+    assertNull(tagRecord.getSourceTimestamp());
+    assertNull(tagRecord.getDaqTimestamp());
+    assertNull(tagRecord.getLogDate());
+    assertEquals(0, tagRecord.getTagQualityCode());
+    assertEquals(mapper.writeValueAsString(ruleTag.getDataTagQuality().getInvalidQualityStates()), tagRecord.getTagQualityDesc());
+  }
+
   private void tagLogEquals(TagRecord arg1, TagRecord arg2){
     assertEquals(arg1.getDaqTimestamp(), arg2.getDaqTimestamp());
     assertEquals(arg1.getLogDate(), arg2.getLogDate());
@@ -11,7 +11,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class RuleProperties {
 
   /**
-   * Number of threads that the rule evaluation engine will use
+   * Number of threads that the rule evaluation engine will use. The rules
+   * are partitioned by id across the threads.
    */
   private int numEvaluationThreads = 1;
 }
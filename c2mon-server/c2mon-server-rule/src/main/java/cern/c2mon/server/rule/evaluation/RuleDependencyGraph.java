@@ -0,0 +1,184 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.*;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.tag.Tag;
+
+/**
+ * Dependency graph of the rules to evaluate after a batch of tag updates.
+ *
+ * <p>The graph contains the rules depending on the updated tags, and
+ * recursively the rules depending on these rules (as given by the rule ids
+ * of the tags). For each rule, the input tags are taken from
+ * {@link cern.c2mon.shared.rule.RuleExpression#getInputTagIds()}, which
+ * gives the edges between the rules of the graph.
+ *
+ * <p>Each rule appears only once in the graph, however many of its inputs
+ * were updated, and {@link #getEvaluationLevels()} returns the rules in
+ * topological order: a rule comes in a later level than all the rules of
+ * the graph it depends on, and the rules of a level can be evaluated in
+ * parallel.
+ *
+ * <p>Not thread-safe: a graph is built by a single thread for one batch
+ * of updates, and only read once built.
+ */
+@Slf4j
+final class RuleDependencyGraph {
+
+  private final RuleTagCache ruleTagCache;
+
+  /**
+   * Rules of the graph with their input tag ids, in order of insertion.
+   */
+  private final Map<Long, Set<Long>> ruleInputs = new LinkedHashMap<>();
+
+  /**
+   * Rules of the graph on which other rules depend.
+   */
+  private final Set<Long> rulesWithDependents = new HashSet<>();
+
+  RuleDependencyGraph(final RuleTagCache ruleTagCache) {
+    this.ruleTagCache = ruleTagCache;
+  }
+
+  /**
+   * Adds to the graph the rules depending on the given tag, directly
+   * or through other rules.
+   *
+   * @param tag the updated tag
+   */
+  void addDependentRules(final Tag tag) {
+    Deque<Long> toVisit = new ArrayDeque<>(tag.getRuleIds());
+    while (!toVisit.isEmpty()) {
+      Long ruleId = toVisit.poll();
+      if (ruleInputs.containsKey(ruleId)) {
+        continue;
+      }
+      try {
+        RuleTag rule = ruleTagCache.get(ruleId);
+        if (rule.getRuleExpression() != null) {
+          ruleInputs.put(ruleId, rule.getRuleExpression().getInputTagIds());
+        } else {
+          ruleInputs.put(ruleId, Collections.<Long>emptySet());
+        }
+        if (!rule.getRuleIds().isEmpty()) {
+          rulesWithDependents.add(ruleId);
+          toVisit.addAll(rule.getRuleIds());
+        }
+      } catch (CacheElementNotFoundException e) {
+        // the error is reported when evaluating the rule
+        ruleInputs.put(ruleId, Collections.<Long>emptySet());
+      }
+    }
+  }
+
+  /**
+   * @param ruleId id of a rule of the graph
+   * @return true if other rules depend on the given rule, in which case
+   *         they are also part of the graph
+   */
+  boolean hasDependentRules(final Long ruleId) {
+    return rulesWithDependents.contains(ruleId);
+  }
+
+  /**
+   * @param ruleId id of a rule of the graph
+   * @return the ids of the input tags of the rule
+   */
+  Set<Long> getInputTagIds(final Long ruleId) {
+    return ruleInputs.get(ruleId);
+  }
+
+  /**
+   * @return true if no rule depends on the tags added so far
+   */
+  boolean isEmpty() {
+    return ruleInputs.isEmpty();
+  }
+
+  /**
+   * @return the ids of the rules of the graph in topological order, grouped
+   *         in levels: each rule comes in a later level than the rules of
+   *         the graph it depends on
+   */
+  List<List<Long>> getEvaluationLevels() {
+    Map<Long, Integer> pendingInputs = new HashMap<>(ruleInputs.size() * 2);
+    Map<Long, List<Long>> dependents = new HashMap<>();
+    for (Map.Entry<Long, Set<Long>> rule : ruleInputs.entrySet()) {
+      int count = 0;
+      for (Long inputTagId : rule.getValue()) {
+        if (ruleInputs.containsKey(inputTagId) && !inputTagId.equals(rule.getKey())) {
+          count++;
+          List<Long> inputDependents = dependents.get(inputTagId);
+          if (inputDependents == null) {
+            inputDependents = new ArrayList<>();
+            dependents.put(inputTagId, inputDependents);
+          }
+          inputDependents.add(rule.getKey());
+        }
+      }
+      pendingInputs.put(rule.getKey(), count);
+    }
+
+    List<List<Long>> levels = new ArrayList<>();
+    int ordered = 0;
+    List<Long> level = new ArrayList<>();
+    for (Long ruleId : ruleInputs.keySet()) {
+      if (pendingInputs.get(ruleId) == 0) {
+        level.add(ruleId);
+      }
+    }
+    while (!level.isEmpty()) {
+      levels.add(level);
+      ordered += level.size();
+      List<Long> nextLevel = new ArrayList<>();
+      for (Long ruleId : level) {
+        List<Long> ruleDependents = dependents.get(ruleId);
+        if (ruleDependents != null) {
+          for (Long dependentId : ruleDependents) {
+            int count = pendingInputs.get(dependentId) - 1;
+            pendingInputs.put(dependentId, count);
+            if (count == 0) {
+              nextLevel.add(dependentId);
+            }
+          }
+        }
+      }
+      level = nextLevel;
+    }
+
+    if (ordered < ruleInputs.size()) {
+      // circular rule dependencies: evaluate the remaining rules in a last level
+      List<Long> cyclicRules = new ArrayList<>();
+      for (Long ruleId : ruleInputs.keySet()) {
+        if (pendingInputs.get(ruleId) > 0) {
+          cyclicRules.add(ruleId);
+        }
+      }
+      log.warn("Circular dependency detected between rules {}", cyclicRules);
+      levels.add(cyclicRules);
+    }
+    return levels;
+  }
+}
@@ -17,9 +17,19 @@
 package cern.c2mon.server.rule.evaluation;
 
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 
@@ -28,8 +38,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Service;
 
-import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.server.cache.C2monBatchCacheListener;
+import cern.c2mon.server.cache.C2monCache;
 import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.cache.ControlTagCache;
+import cern.c2mon.server.cache.DataTagCache;
 import cern.c2mon.server.cache.RuleTagCache;
 import cern.c2mon.server.cache.TagLocationService;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
@@ -40,6 +53,7 @@ import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.rule.RuleEvaluator;
 import cern.c2mon.server.rule.config.RuleProperties;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
+import cern.c2mon.shared.common.rule.RuleInputValue;
 import cern.c2mon.shared.rule.RuleEvaluationException;
 
 import static cern.c2mon.shared.common.type.TypeConverter.getType;
@@ -51,15 +65,36 @@ import static cern.c2mon.shared.common.type.TypeConverter.getType;
  * to the RuleUpdateBuffer where rapid successive updates are
  * clustered into a single update.
  *
+ * <p>The rules depending on a batch of tag updates are evaluated once
+ * each, in the order given by their {@link RuleDependencyGraph}. A rule
+ * depending on other rules of the batch is evaluated with the results
+ * just computed for them, so the later cache update of these rules does
+ * not need to trigger a new evaluation of their dependent rules.
+ *
+ * <p>The rules are partitioned by id across the evaluation threads: each
+ * rule of a batch is evaluated by the {@link RulePartition} owning it, under
+ * the write lock of the rule, which excludes the configuration changes and
+ * the other cluster nodes. The rules of a dependency level are evaluated in
+ * parallel, and the next level is dispatched by the evaluation thread which
+ * completes the level. The batches are dispatched one after the other, so
+ * that the listener thread never waits for the evaluations.
+ *
+ * <p>A rule whose result did not change is not propagated: the rules of the
+ * batch depending on it are only evaluated if another of their inputs changed.
+ *
  * @author mbrightw
  *
  */
 @Slf4j
 @Service
-public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycle, RuleEvaluator {
+public class RuleEvaluatorImpl implements C2monBatchCacheListener<Tag>, SmartLifecycle, RuleEvaluator {
 
   private final RuleTagCache ruleTagCache;
 
+  private final DataTagCache dataTagCache;
+
+  private final ControlTagCache controlTagCache;
+
   /** This temporary buffer is used to filter out intermediate rule evaluation results. */
   private final RuleUpdateBuffer ruleUpdateBuffer;
 
@@ -79,14 +114,57 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    */
   private volatile boolean running = false;
 
+  /**
+   * Time in milliseconds after which a propagated result is forgotten, if the
+   * cache update of the rule was not received (e.g. it was filtered out).
+   * Much longer than the delay of the {@link RuleUpdateBuffer}.
+   */
+  private static final long PROPAGATED_RESULT_TIMEOUT = 10000;
+
+  /**
+   * Timeout of the propagated results, only changed by the tests.
+   */
+  private volatile long propagatedResultTimeout = PROPAGATED_RESULT_TIMEOUT;
+
+  /**
+   * Results of the rules whose dependent rules were evaluated with them,
+   * until the cache update of the rule is received.
+   */
+  private final Map<Long, RuleResult> propagatedResults = new ConcurrentHashMap<>();
+
+  /**
+   * Time of the last removal of the expired propagated results.
+   */
+  private volatile long lastPropagatedResultsPurge = System.currentTimeMillis();
+
+  /**
+   * The batches waiting for the previous batch to be dispatched.
+   */
+  private final Queue<BatchEvaluation> pendingBatches = new ArrayDeque<>();
+
+  /**
+   * True while the levels of a batch are being dispatched. Guarded by
+   * {@link #pendingBatches}.
+   */
+  private boolean batchInProgress = false;
+
+  /**
+   * The evaluation threads, each one owning the rules of one partition.
+   */
+  private List<RulePartition> partitions;
+
   @Autowired
   public RuleEvaluatorImpl(RuleTagCache ruleTagCache,
+                           DataTagCache dataTagCache,
+                           ControlTagCache controlTagCache,
                            RuleUpdateBuffer ruleUpdateBuffer,
                            TagLocationService tagLocationService,
                            CacheRegistrationService cacheRegistrationService,
                            RuleProperties properties) {
     super();
     this.ruleTagCache = ruleTagCache;
+    this.dataTagCache = dataTagCache;
+    this.controlTagCache = controlTagCache;
     this.ruleUpdateBuffer = ruleUpdateBuffer;
     this.tagLocationService = tagLocationService;
     this.cacheRegistrationService = cacheRegistrationService;
@@ -94,19 +172,39 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
   }
 
   /**
-   * Registers to tag caches.
+   * Creates the evaluation threads and registers to tag caches. The
+   * listener thread only dispatches the rules to the evaluation threads.
    */
   @PostConstruct
   public void init() {
-    listenerContainer = cacheRegistrationService.registerToAllTags(this, properties.getNumEvaluationThreads());
+    List<C2monCache<Long, ? extends Tag>> tagCaches = Arrays.<C2monCache<Long, ? extends Tag>>asList(dataTagCache, ruleTagCache, controlTagCache);
+    int numPartitions = Math.max(1, properties.getNumEvaluationThreads());
+    partitions = new ArrayList<>(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      partitions.add(new RulePartition("RuleEvaluator-" + i, tagCaches, tagLocationService));
+    }
+    listenerContainer = cacheRegistrationService.registerToAllTags(this);
+  }
+
+  /**
+   * Sets the time after which a propagated result is forgotten.
+   * @param propagatedResultTimeout the timeout in milliseconds
+   */
+  void setPropagatedResultTimeout(final long propagatedResultTimeout) {
+    this.propagatedResultTimeout = propagatedResultTimeout;
   }
 
   @Override
   public void notifyElementUpdated(Tag tag) {
+    notifyElementsUpdated(Collections.singletonList(tag));
+  }
+
+  @Override
+  public void notifyElementsUpdated(Collection<? extends Tag> tags) {
     try {
-      evaluateRules(tag);
+      evaluateRules(tags, true);
     } catch (Exception e) {
-      log.error("Error caught when evaluating dependend rules ({}) of #{}", tag.getRuleIds(), tag.getId(), e);
+      log.error("Error caught when evaluating the rules depending on {} updated tags", tags.size(), e);
     }
   }
 
@@ -121,33 +219,145 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    * to be ensured by the DataTagCacheObject
    * </UL>
    *
-   * evaluates rules that depend on tag
+   * evaluates rules that depend on tag, directly or through other rules
    */
   public void evaluateRules(final Tag tag) {
-    // For each rule id related to the tag
-    if (!tag.getRuleIds().isEmpty()) {
-      log.trace("For rule #{} triggering re-evaluation of {} rules : {}", tag.getId(), tag.getRuleIds().size(), tag.getRuleIds());
-      for (Long ruleId : tag.getRuleIds()) {
-         evaluateRule(ruleId);
+    evaluateRules(Collections.singletonList(tag), false);
+  }
+
+  /**
+   * Evaluates once each rule depending on the given tags, directly or
+   * through other rules, in topological order. The evaluation is
+   * asynchronous: the method only builds the dependency graph and
+   * dispatches the rules to the partitions.
+   *
+   * @param tags the updated tags
+   * @param skipPropagated if true, the rules depending on a rule tag are
+   *        not evaluated again if they were already evaluated with the
+   *        current value of the rule tag
+   */
+  private void evaluateRules(final Collection<? extends Tag> tags, final boolean skipPropagated) {
+    purgePropagatedResults();
+
+    RuleDependencyGraph graph = new RuleDependencyGraph(ruleTagCache);
+    Set<Long> changedIds = ConcurrentHashMap.newKeySet();
+    for (Tag tag : tags) {
+      if (!tag.getRuleIds().isEmpty() && !(skipPropagated && isPropagated(tag))) {
+        graph.addDependentRules(tag);
+        changedIds.add(tag.getId());
+      }
+    }
+    if (graph.isEmpty()) {
+      return;
+    }
+
+    List<List<Long>> evaluationLevels = graph.getEvaluationLevels();
+    log.trace("For {} updated tags triggering evaluation of rules : {}", tags.size(), evaluationLevels);
+    BatchEvaluation batch = new BatchEvaluation(graph, evaluationLevels, changedIds);
+    synchronized (pendingBatches) {
+      if (batchInProgress) {
+        pendingBatches.add(batch);
+        return;
+      }
+      batchInProgress = true;
+    }
+    dispatch(batch);
+  }
+
+  /**
+   * Dispatches the given batch, then the batches queued in the meantime,
+   * as long as their levels are evaluated by the time they are dispatched.
+   * The dispatch then goes on from the evaluation thread completing the
+   * pending level.
+   *
+   * @param batch the batch to dispatch from its first level
+   */
+  private void dispatch(final BatchEvaluation batch) {
+    BatchEvaluation next = batch;
+    while (next == null || next.dispatchFrom(0)) {
+      synchronized (pendingBatches) {
+        next = pendingBatches.poll();
+        if (next == null) {
+          batchInProgress = false;
+          return;
+        }
       }
     }
   }
 
+  /**
+   * Removes the propagated results whose cache update was never received,
+   * at most once per timeout.
+   */
+  private void purgePropagatedResults() {
+    long now = System.currentTimeMillis();
+    if (now - lastPropagatedResultsPurge > propagatedResultTimeout) {
+      lastPropagatedResultsPurge = now;
+      propagatedResults.values().removeIf(result -> result.isExpired(now));
+    }
+  }
+
+  /**
+   * @param ruleId id of a rule
+   * @return the index of the partition owning the rule
+   */
+  private int getPartitionIndex(final Long ruleId) {
+    int hash = ruleId.hashCode();
+    hash ^= (hash >>> 16);
+    return (hash & Integer.MAX_VALUE) % partitions.size();
+  }
+
+  /**
+   * @param tag an updated tag
+   * @return true if the tag is a rule whose dependent rules were already
+   *         evaluated with the value and validity of the update
+   */
+  private boolean isPropagated(final Tag tag) {
+    if (!(tag instanceof RuleTag)) {
+      return false;
+    }
+    RuleResult result = propagatedResults.remove(tag.getId());
+    return result != null
+        && !result.isExpired(System.currentTimeMillis())
+        && result.isValid() == tag.isValid()
+        && Objects.equals(result.getValue(), tag.getValue());
+  }
+
   /**
    * Performs the rule evaluation for a given tag id. In case that
    * the id does not belong to a rule a warning message is logged to
    * log4j. Please note, that the rule will always use the time stamp
    * of the latest incoming data tag update.
+   * The rule is evaluated on the calling thread, under the write lock
+   * of the rule.
    * @param pRuleId The id of a rule.
    */
   @Override
   public final void evaluateRule(final Long pRuleId) {
+    evaluateRule(pRuleId, null, Collections.<Long, RuleInputValue>emptyMap(), false);
+  }
+
+  /**
+   * Performs the rule evaluation for a given tag id, taking the input
+   * tags from the given results if present, else from the cache.
+   * @param pRuleId The id of a rule.
+   * @param partition the partition owning the rule, if called on its thread
+   *        (null otherwise)
+   * @param batchResults results of the rules evaluated before in the same batch
+   * @param propagate true if the rules depending on this rule are evaluated
+   *        with the returned result
+   * @return the result of the evaluation, or null if the rule could not be
+   *         evaluated
+   */
+  private RuleResult evaluateRule(final Long pRuleId, final RulePartition partition,
+                                  final Map<Long, RuleInputValue> batchResults, final boolean propagate) {
     log.trace("evaluateRule() called for #{}", pRuleId);
+    RuleResult result = null;
 
     final Timestamp ruleResultTimestamp = new Timestamp(System.currentTimeMillis());
 
-    // We synchronize on the rule reference object from the cache
-    // in order to avoid simultaneous evaluations for the same rule
+    // We lock the rule in order to exclude the configuration changes and
+    // the evaluations of the rule on other cluster nodes
 
     if (ruleTagCache.isWriteLockedByCurrentThread(pRuleId)) {
         log.warn("Attention: I already have a write lock on rule {}", pRuleId);
@@ -159,33 +369,23 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
       RuleTag rule = ruleTagCache.get(pRuleId);
 
       if (rule.getRuleExpression() != null) {
-        final Collection<Long> ruleInputTagIds = rule.getRuleExpression().getInputTagIds();
-
-        // Retrieve all input tags for the rule
-        final Map<Long, Object> tags = new HashMap<>(ruleInputTagIds.size());
-
-        Tag tag = null;
-        Long actualTag = null;
         try {
-          for (Long inputTagId : ruleInputTagIds) {
-            actualTag = inputTagId;
-            // We don't use a read lock here, because a tag change would anyway
-            // result in another rule evaluation
-            // look for tag in datatag, rule and control caches
-            tag = tagLocationService.get(inputTagId);
-
-            // put reference to cache object in map
-            tags.put(inputTagId, tag);
-          }
+          // Retrieve all input tags for the rule, from the batch results or the caches.
+          // We don't use a read lock here, because a tag change would anyway
+          // result in another rule evaluation
+          final Map<Long, Object> tags = partition != null
+              ? partition.getInputTags(rule, batchResults) : getInputTags(rule);
 
           // Retrieve class type of resulting value, in order to cast correctly
           // the evaluation result
           Class<?> ruleResultClass = getType(rule.getDataType());
 
           Object value = rule.getRuleExpression().evaluate(tags, ruleResultClass);
+          result = recordResult(rule, value, true, propagate);
           ruleUpdateBuffer.update(pRuleId, value, "Rule result", ruleResultTimestamp);
         } catch (CacheElementNotFoundException cacheEx) {
-          log.warn("evaluateRule #{} - Failed to locate tag with id {} in any tag cache (during rule evaluation) - unable to evaluate rule.", pRuleId, actualTag, cacheEx);
+          log.warn("evaluateRule #{} - Failed to locate an input tag in any tag cache (during rule evaluation) - unable to evaluate rule.", pRuleId, cacheEx);
+          result = recordResult(rule, rule.getValue(), false, propagate);
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON,
               "Unable to evaluate rule as cannot find required Tag in cache: " + cacheEx.getMessage(), ruleResultTimestamp);
         } catch (RuleEvaluationException re) {
@@ -193,10 +393,12 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
           // exception since it is normal behavior switched to trace
           log.trace("Problem evaluating expresion for rule #{} - invalidating rule with quality UNKNOWN_REASON ({})", pRuleId, re.getMessage());
           // switched from INACCESSIBLE in old code
+          result = recordResult(rule, rule.getValue(), false, propagate);
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON, re.getMessage(), ruleResultTimestamp);
         } catch (Exception e) {
           log.error("Unexpected Error evaluating expresion of rule #{} - invalidating rule with quality UNKNOWN_REASON", pRuleId, e);
           // switched from INACCESSIBLE in old code
+          result = recordResult(rule, rule.getValue(), false, propagate);
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON, e.getMessage(), ruleResultTimestamp);
         }
       } else {
@@ -204,6 +406,9 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
       }
     } catch (CacheElementNotFoundException cacheEx) {
       log.error("Rule #{} not found in cache - unable to evaluate it.", pRuleId, cacheEx);
+      if (partition != null) {
+        partition.removeRule(pRuleId);
+      }
     } catch (Exception e) {
       log.error("Unexpected Error caught while retrieving #{} from rule cache.", pRuleId, e);
       // switched from INACCESSIBLE in old code
@@ -211,6 +416,54 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
     } finally {
       ruleTagCache.releaseWriteLockOnKey(pRuleId);
     }
+    return result;
+  }
+
+  /**
+   * Retrieves the input tags of a rule from the tag caches, when not
+   * evaluated by the partition owning the rule.
+   * @param rule the rule
+   * @return the input tags of the rule by id
+   * @throws CacheElementNotFoundException if an input tag cannot be found
+   */
+  private Map<Long, Object> getInputTags(final RuleTag rule) {
+    Collection<Long> ruleInputTagIds = rule.getRuleExpression().getInputTagIds();
+    Map<Long, Object> tags = new HashMap<>(ruleInputTagIds.size() * 2);
+    for (Long inputTagId : ruleInputTagIds) {
+      // look for tag in datatag, rule and control caches
+      tags.put(inputTagId, tagLocationService.get(inputTagId));
+    }
+    return tags;
+  }
+
+  /**
+   * Creates the result of an evaluation and records it as propagated if
+   * it changed and the dependent rules are evaluated with it. A result
+   * is compared with the last propagated result of the rule if its cache
+   * update is still pending, else with the cache value.
+   *
+   * @param rule the evaluated rule, as read from the cache
+   * @param value the result of the rule, or the current value if the rule is invalidated
+   * @param valid false if the rule is invalidated
+   * @param propagate true if the dependent rules are evaluated with this result
+   * @return the result, as input of the dependent rules
+   */
+  private RuleResult recordResult(final RuleTag rule, final Object value, final boolean valid, final boolean propagate) {
+    long now = System.currentTimeMillis();
+    RuleResult previous = propagatedResults.get(rule.getId());
+    boolean changed;
+    if (previous != null && !previous.isExpired(now)) {
+      changed = previous.isValid() != valid || !Objects.equals(previous.getValue(), value);
+    } else {
+      changed = rule.isValid() != valid || !Objects.equals(rule.getValue(), value);
+    }
+
+    RuleResult result = new RuleResult(rule.getId(), value, valid, changed, now + propagatedResultTimeout);
+    if (propagate && changed) {
+      // recorded before the result is passed to the buffer, so before the cache update
+      propagatedResults.put(rule.getId(), result);
+    }
+    return result;
   }
 
   /**
@@ -218,7 +471,11 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    */
   @Override
   public void confirmStatus(Tag tag) {
-    notifyElementUpdated(tag);
+    try {
+      evaluateRules(tag);
+    } catch (Exception e) {
+      log.error("Error caught when evaluating dependend rules ({}) of #{}", tag.getRuleIds(), tag.getId(), e);
+    }
   }
 
   @Override
@@ -248,6 +505,9 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
   public void stop() {
     log.debug("Stopping rule evaluator");
     listenerContainer.stop();
+    for (RulePartition partition : partitions) {
+      partition.shutdown();
+    }
     running = false;
   }
 
@@ -255,4 +515,185 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
   public int getPhase() {
     return ServerConstants.PHASE_INTERMEDIATE;
   }
+
+  /**
+   * The evaluation of the rules depending on a batch of tag updates, one
+   * dependency level after the other.
+   */
+  private final class BatchEvaluation {
+
+    private final RuleDependencyGraph graph;
+
+    private final List<List<Long>> levels;
+
+    /**
+     * Results of the rules evaluated so far, used as inputs of the next levels.
+     */
+    private final Map<Long, RuleInputValue> results = new ConcurrentHashMap<>();
+
+    /**
+     * The updated tags and the rules of the batch whose result changed.
+     */
+    private final Set<Long> changedIds;
+
+    private BatchEvaluation(final RuleDependencyGraph graph, final List<List<Long>> levels, final Set<Long> changedIds) {
+      this.graph = graph;
+      this.levels = levels;
+      this.changedIds = changedIds;
+    }
+
+    /**
+     * Dispatches the levels from the given one, as long as they are
+     * evaluated by the time they are dispatched. The last level is not
+     * waited for: the partitions evaluate it before the rules of any
+     * later batch.
+     *
+     * @param level the first level to dispatch
+     * @return true if all the levels are dispatched, false if the dispatch
+     *         goes on from the evaluation thread completing a level
+     */
+    private boolean dispatchFrom(final int level) {
+      for (int i = level; i < levels.size() - 1; i++) {
+        if (!dispatchLevel(i)) {
+          return false;
+        }
+      }
+      dispatchLevel(levels.size() - 1);
+      return true;
+    }
+
+    /**
+     * Passes the rules of a dependency level to the partitions owning them.
+     *
+     * @param level the index of the level
+     * @return true if the level is evaluated, or is the last one; false if
+     *         the evaluation thread completing the level dispatches the next
+     *         levels
+     */
+    private boolean dispatchLevel(final int level) {
+      final boolean lastLevel = level == levels.size() - 1;
+      List<List<Long>> partitionRuleIds = new ArrayList<>(partitions.size());
+      for (int i = 0; i < partitions.size(); i++) {
+        partitionRuleIds.add(new ArrayList<Long>());
+      }
+      for (Long ruleId : levels.get(level)) {
+        partitionRuleIds.get(getPartitionIndex(ruleId)).add(ruleId);
+      }
+
+      // one count per task, plus one released once all tasks are submitted
+      final AtomicInteger pendingTasks = new AtomicInteger(1);
+      for (int i = 0; i < partitions.size(); i++) {
+        final List<Long> partitionRules = partitionRuleIds.get(i);
+        if (partitionRules.isEmpty()) {
+          continue;
+        }
+        final RulePartition partition = partitions.get(i);
+        pendingTasks.incrementAndGet();
+        boolean accepted = partition.execute(() -> {
+          try {
+            for (Long ruleId : partitionRules) {
+              evaluate(ruleId, partition, level);
+            }
+          } finally {
+            if (!lastLevel && pendingTasks.decrementAndGet() == 0) {
+              levelEvaluated(level);
+            }
+          }
+        });
+        if (!accepted) {
+          pendingTasks.decrementAndGet();
+        }
+      }
+      return lastLevel || pendingTasks.decrementAndGet() == 0;
+    }
+
+    /**
+     * Evaluates a rule of the batch on the thread of its partition, unless
+     * none of its inputs changed.
+     */
+    private void evaluate(final Long ruleId, final RulePartition partition, final int level) {
+      // the rules of the first level depend on updated tags only
+      if (level > 0 && Collections.disjoint(graph.getInputTagIds(ruleId), changedIds)) {
+        log.trace("Rule #{} not evaluated as none of its inputs changed", ruleId);
+        return;
+      }
+      RuleResult result = evaluateRule(ruleId, partition, results, graph.hasDependentRules(ruleId));
+      if (result != null) {
+        results.put(ruleId, result);
+        if (result.changed) {
+          changedIds.add(ruleId);
+        }
+      }
+    }
+
+    /**
+     * Called by the evaluation thread completing a level which is not the
+     * last one, to dispatch the next levels and then the pending batches.
+     */
+    private void levelEvaluated(final int level) {
+      try {
+        if (!dispatchFrom(level + 1)) {
+          return;
+        }
+      } catch (Exception e) {
+        log.error("Error caught when dispatching the rules {}", levels.subList(level + 1, levels.size()), e);
+      }
+      dispatch(null);
+    }
+  }
+
+  /**
+   * Result of a rule evaluation, used as input of the dependent rules
+   * evaluated in the same batch.
+   */
+  private static final class RuleResult implements RuleInputValue {
+
+    private final Long id;
+
+    private final Object value;
+
+    private final boolean valid;
+
+    /**
+     * True if the result differs from the previous one.
+     */
+    private final boolean changed;
+
+    /**
+     * Time in milliseconds by which the cache update of the result should
+     * have been received.
+     */
+    private final long expiryTime;
+
+    private RuleResult(final Long id, final Object value, final boolean valid, final boolean changed, final long expiryTime) {
+      this.id = id;
+      this.value = value;
+      this.valid = valid;
+      this.changed = changed;
+      this.expiryTime = expiryTime;
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return true if the cache update of the result should have been received
+     */
+    private boolean isExpired(final long now) {
+      return now > expiryTime;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean isValid() {
+      return valid;
+    }
+  }
 }
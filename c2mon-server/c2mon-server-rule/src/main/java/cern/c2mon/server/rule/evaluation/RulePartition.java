@@ -0,0 +1,209 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.server.cache.C2monCache;
+import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.common.rule.RuleInputValue;
+import cern.c2mon.shared.rule.RuleExpression;
+
+/**
+ * A single thread evaluating the rules of one partition of the rule ids.
+ * Since the rules of a batch are only ever evaluated by the thread of their
+ * partition, two batch evaluations of the same rule never compete for it.
+ * The write lock of the rule in the cache is still taken by each evaluation,
+ * to exclude the configuration changes, the direct evaluations through
+ * {@link cern.c2mon.server.rule.RuleEvaluator#evaluateRule(Long)} and the
+ * other cluster nodes.
+ *
+ * <p>For each of its rules, the partition also keeps the cache in which each
+ * input tag is located, so the input tags are read directly from their cache
+ * instead of being searched in the DataTag, RuleTag and ControlTag caches
+ * through the {@link TagLocationService}. The cache objects themselves are
+ * still read from the cache at each evaluation, since they can be replaced
+ * (in particular in the distributed cache). The located caches are only
+ * accessed by the partition thread.
+ */
+@Slf4j
+final class RulePartition {
+
+  /**
+   * The caches in which the rule input tags are searched, in order.
+   */
+  private final List<C2monCache<Long, ? extends Tag>> tagCaches;
+
+  private final TagLocationService tagLocationService;
+
+  private final ExecutorService executor;
+
+  /**
+   * The located input tags of the rules of this partition, by rule id.
+   */
+  private final Map<Long, RuleInputs> ruleInputs = new HashMap<>();
+
+  /**
+   * @param name name of the partition thread
+   * @param tagCaches the caches in which the input tags are searched, in order
+   * @param tagLocationService used for tags which are not found in the located cache
+   */
+  RulePartition(final String name, final List<C2monCache<Long, ? extends Tag>> tagCaches,
+                final TagLocationService tagLocationService) {
+    this.tagCaches = tagCaches;
+    this.tagLocationService = tagLocationService;
+    this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        runnable -> new Thread(runnable, name));
+  }
+
+  /**
+   * Runs the given evaluation on the partition thread, after the
+   * evaluations submitted before.
+   *
+   * @param task the evaluation of rules of this partition
+   * @return false if the partition is shut down, in which case the task is not run
+   */
+  boolean execute(final Runnable task) {
+    try {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } catch (Exception e) {
+          log.error("Exception caught during rule evaluation", e);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      log.warn("Attempt at evaluating rules after shutdown started - the evaluation is ignored");
+      return false;
+    }
+  }
+
+  /**
+   * Must be called on the partition thread.
+   *
+   * @param rule a rule of this partition
+   * @param batchResults results of rules evaluated before in the same batch,
+   *        used instead of the cache value for these rules
+   * @return the input tags of the rule by id
+   * @throws CacheElementNotFoundException if an input tag cannot be found
+   */
+  Map<Long, Object> getInputTags(final RuleTag rule, final Map<Long, RuleInputValue> batchResults) {
+    RuleInputs inputs = ruleInputs.get(rule.getId());
+    if (inputs == null || inputs.expression != rule.getRuleExpression()) {
+      inputs = new RuleInputs(rule.getRuleExpression());
+      ruleInputs.put(rule.getId(), inputs);
+    }
+
+    Map<Long, Object> tags = new HashMap<>(inputs.ids.length * 2);
+    for (int i = 0; i < inputs.ids.length; i++) {
+      Long inputTagId = inputs.ids[i];
+      RuleInputValue batchResult = batchResults.get(inputTagId);
+      if (batchResult != null) {
+        tags.put(inputTagId, batchResult);
+        continue;
+      }
+      C2monCache<Long, ? extends Tag> cache = inputs.caches[i];
+      if (cache == null) {
+        cache = locate(inputTagId);
+        inputs.caches[i] = cache;
+      }
+      Tag tag = null;
+      if (cache != null) {
+        try {
+          tag = cache.get(inputTagId);
+        } catch (CacheElementNotFoundException e) {
+          // the tag was removed or moved: locate it again at next evaluation
+          inputs.caches[i] = null;
+        }
+      }
+      if (tag == null) {
+        // reports the tag as not found if it is in none of the caches
+        tag = tagLocationService.get(inputTagId);
+      }
+      tags.put(inputTagId, tag);
+    }
+    return tags;
+  }
+
+  /**
+   * Forgets the input tags of a rule that was removed. Must be called on
+   * the partition thread.
+   *
+   * @param ruleId id of a rule of this partition
+   */
+  void removeRule(final Long ruleId) {
+    ruleInputs.remove(ruleId);
+  }
+
+  /**
+   * Waits for the submitted evaluations to finish and stops the thread.
+   */
+  void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        log.warn("Rule evaluation not finished after 10 seconds - stopping anyway");
+      }
+    } catch (InterruptedException e) {
+      log.warn("Interrupted while waiting for the rule evaluations to finish", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the cache containing the tag, or null if it is not found
+   */
+  private C2monCache<Long, ? extends Tag> locate(final Long tagId) {
+    for (C2monCache<Long, ? extends Tag> cache : tagCaches) {
+      if (cache.hasKey(tagId)) {
+        return cache;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The input tags of a rule expression, with the cache each
+   * one was located in (null if not yet located).
+   */
+  private static final class RuleInputs {
+
+    private final RuleExpression expression;
+
+    private final Long[] ids;
+
+    private final C2monCache<Long, ? extends Tag>[] caches;
+
+    @SuppressWarnings("unchecked")
+    private RuleInputs(final RuleExpression expression) {
+      this.expression = expression;
+      this.ids = expression.getInputTagIds().toArray(new Long[0]);
+      this.caches = new C2monCache[ids.length];
+    }
+  }
+}
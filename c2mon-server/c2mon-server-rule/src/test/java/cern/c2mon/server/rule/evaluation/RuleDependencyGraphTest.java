@@ -0,0 +1,114 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.Arrays;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link RuleDependencyGraph}, with a mock rule cache.
+ */
+public class RuleDependencyGraphTest {
+
+  private RuleTagCache ruleTagCache;
+
+  @Before
+  public void setUp() {
+    ruleTagCache = EasyMock.createNiceMock(RuleTagCache.class);
+  }
+
+  /**
+   * Rules 100 and 101 depend on the data tags, 102 on 101 and 100,
+   * 103 on 102 and 100.
+   */
+  @Test
+  public void testTopologicalOrder() {
+    RuleTagCacheObject rule100 = createRule(100L, "(#1 = true) & (#2 = true)", 102L, 103L);
+    RuleTagCacheObject rule101 = createRule(101L, "#2 + #3", 102L);
+    RuleTagCacheObject rule102 = createRule(102L, "#101 + #100", 103L);
+    RuleTagCacheObject rule103 = createRule(103L, "#102 + #100");
+    replay(rule100, rule101, rule102, rule103);
+
+    RuleDependencyGraph graph = new RuleDependencyGraph(ruleTagCache);
+    graph.addDependentRules(createDataTag(1L, 100L));
+    graph.addDependentRules(createDataTag(2L, 102L, 101L, 100L));
+    graph.addDependentRules(createDataTag(3L, 101L));
+
+    assertEquals(Arrays.asList(Arrays.asList(100L, 101L), Arrays.asList(102L), Arrays.asList(103L)),
+        graph.getEvaluationLevels());
+    assertTrue(graph.hasDependentRules(100L));
+    assertTrue(graph.hasDependentRules(102L));
+    assertFalse(graph.hasDependentRules(103L));
+  }
+
+  @Test
+  public void testCircularDependency() {
+    RuleTagCacheObject rule100 = createRule(100L, "#1 + #101", 101L);
+    RuleTagCacheObject rule101 = createRule(101L, "#100 + 1", 100L, 102L);
+    RuleTagCacheObject rule102 = createRule(102L, "#101 + 2");
+    replay(rule100, rule101, rule102);
+
+    RuleDependencyGraph graph = new RuleDependencyGraph(ruleTagCache);
+    graph.addDependentRules(createDataTag(1L, 100L));
+
+    assertEquals(Arrays.asList(Arrays.asList(100L, 101L, 102L)), graph.getEvaluationLevels());
+  }
+
+  @Test
+  public void testUnknownRule() {
+    EasyMock.expect(ruleTagCache.get(100L)).andThrow(new CacheElementNotFoundException());
+    replay();
+
+    RuleDependencyGraph graph = new RuleDependencyGraph(ruleTagCache);
+    assertTrue(graph.isEmpty());
+    graph.addDependentRules(createDataTag(1L, 100L));
+
+    assertFalse(graph.isEmpty());
+    assertEquals(Arrays.asList(Arrays.asList(100L)), graph.getEvaluationLevels());
+  }
+
+  private static RuleTagCacheObject createRule(final Long id, final String ruleText, final Long... dependentRuleIds) {
+    RuleTagCacheObject rule = new RuleTagCacheObject(id, "rule " + id, "Integer", (short) 0, ruleText);
+    rule.setRuleIds(Arrays.asList(dependentRuleIds));
+    return rule;
+  }
+
+  private static DataTagCacheObject createDataTag(final Long id, final Long... ruleIds) {
+    DataTagCacheObject tag = new DataTagCacheObject(id);
+    tag.setRuleIds(Arrays.asList(ruleIds));
+    return tag;
+  }
+
+  private void replay(final RuleTagCacheObject... rules) {
+    for (RuleTagCacheObject rule : rules) {
+      EasyMock.expect(ruleTagCache.get(rule.getId())).andReturn(rule).anyTimes();
+    }
+    EasyMock.replay(ruleTagCache);
+  }
+}
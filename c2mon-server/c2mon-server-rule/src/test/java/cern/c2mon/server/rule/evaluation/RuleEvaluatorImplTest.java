@@ -0,0 +1,372 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.cache.ControlTagCache;
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.cache.RuleTagFacade;
+import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.common.component.Lifecycle;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.rule.config.RuleProperties;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the batch evaluation of the {@link RuleEvaluatorImpl} on its
+ * partitions. The mock caches hold the tags of each test and record the end
+ * of each evaluation, when the write lock of the rule is released. The
+ * results reach a mock {@link RuleTagFacade} through the rule update buffer,
+ * the rules keeping their initial value in the caches.
+ */
+public class RuleEvaluatorImplTest {
+
+  private static final int NUM_PARTITIONS = 4;
+
+  /**
+   * The tags of the mock caches, by id.
+   */
+  private final Map<Long, Tag> tags = new ConcurrentHashMap<>();
+
+  /**
+   * The ends of the rule evaluations, in order.
+   */
+  private final List<Evaluation> evaluations = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * The last result of each rule received by the facade.
+   */
+  private final Map<Long, Object> results = new ConcurrentHashMap<>();
+
+  /**
+   * The rule whose evaluation is slowed down, if any.
+   */
+  private volatile Long slowRuleId;
+
+  /**
+   * The rule whose write lock cannot be released, if any.
+   */
+  private volatile Long failingRuleId;
+
+  private RuleUpdateBuffer ruleUpdateBuffer;
+
+  private RuleEvaluatorImpl ruleEvaluator;
+
+  @Before
+  public void setUp() throws Exception {
+    RuleTagCache ruleTagCache = createNiceMock(RuleTagCache.class);
+    expect(ruleTagCache.get(anyLong())).andAnswer(() -> {
+      if (getCurrentArguments()[0].equals(slowRuleId)) {
+        Thread.sleep(200);
+      }
+      return (RuleTag) tags.get(getCurrentArguments()[0]);
+    }).anyTimes();
+    expect(ruleTagCache.hasKey(anyLong())).andAnswer(() -> tags.get(getCurrentArguments()[0]) instanceof RuleTag).anyTimes();
+    ruleTagCache.releaseWriteLockOnKey(anyLong());
+    expectLastCall().andAnswer(() -> {
+      Long ruleId = (Long) getCurrentArguments()[0];
+      evaluations.add(new Evaluation(ruleId));
+      if (ruleId.equals(failingRuleId)) {
+        throw new IllegalStateException("Test exception");
+      }
+      return null;
+    }).anyTimes();
+
+    DataTagCache dataTagCache = createNiceMock(DataTagCache.class);
+    expect(dataTagCache.get(anyLong())).andAnswer(() -> (DataTag) tags.get(getCurrentArguments()[0])).anyTimes();
+    expect(dataTagCache.hasKey(anyLong())).andAnswer(() -> tags.get(getCurrentArguments()[0]) instanceof DataTag).anyTimes();
+
+    TagLocationService tagLocationService = createNiceMock(TagLocationService.class);
+    expect(tagLocationService.get(anyLong())).andAnswer(() -> tags.get(getCurrentArguments()[0])).anyTimes();
+
+    RuleTagFacade ruleTagFacade = createNiceMock(RuleTagFacade.class);
+    ruleTagFacade.updateAndValidate(anyLong(), anyObject(), anyString(), anyObject(Timestamp.class));
+    expectLastCall().andAnswer(() -> {
+      results.put((Long) getCurrentArguments()[0], getCurrentArguments()[1]);
+      return null;
+    }).anyTimes();
+
+    CacheRegistrationService cacheRegistrationService = createNiceMock(CacheRegistrationService.class);
+    Lifecycle listenerContainer = createNiceMock(Lifecycle.class);
+    expect(cacheRegistrationService.registerToAllTags(anyObject())).andReturn(listenerContainer);
+
+    ControlTagCache controlTagCache = createNiceMock(ControlTagCache.class);
+    replay(ruleTagCache, dataTagCache, controlTagCache, tagLocationService, ruleTagFacade, cacheRegistrationService,
+        listenerContainer);
+
+    // the buffer is final and only created by Spring
+    Constructor<RuleUpdateBuffer> constructor = RuleUpdateBuffer.class.getDeclaredConstructor(RuleTagFacade.class);
+    constructor.setAccessible(true);
+    ruleUpdateBuffer = constructor.newInstance(ruleTagFacade);
+
+    RuleProperties properties = new RuleProperties();
+    properties.setNumEvaluationThreads(NUM_PARTITIONS);
+    ruleEvaluator = new RuleEvaluatorImpl(ruleTagCache, dataTagCache, controlTagCache, ruleUpdateBuffer,
+        tagLocationService, cacheRegistrationService, properties);
+    ruleEvaluator.init();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ruleEvaluator.stop();
+    Field timer = RuleUpdateBuffer.class.getDeclaredField("timer");
+    timer.setAccessible(true);
+    ((Timer) timer.get(ruleUpdateBuffer)).cancel();
+  }
+
+  /**
+   * Rule 101 depends on rule 100, which is slow to evaluate: 101 is only
+   * evaluated once 100 is, with the result of 100.
+   */
+  @Test
+  public void testLevelEvaluatedAfterItsInputs() throws InterruptedException {
+    DataTag tag = createDataTag(1L, 1, 100L);
+    createRule(100L, "#1 + 1", 0, 101L);
+    createRule(101L, "#100 * 10", 0);
+    slowRuleId = 100L;
+
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag));
+
+    awaitEvaluations(2);
+    assertEquals(100L, (long) evaluations.get(0).ruleId);
+    assertEquals(101L, (long) evaluations.get(1).ruleId);
+    awaitResults(2);
+    assertEquals(2, results.get(100L));
+    assertEquals(20, results.get(101L));
+  }
+
+  /**
+   * Whatever the batch, a rule is evaluated by the thread of its partition.
+   */
+  @Test
+  public void testRuleAlwaysEvaluatedOnItsPartition() throws InterruptedException {
+    List<DataTag> dataTags = new ArrayList<>();
+    for (long id = 1; id <= 20; id++) {
+      dataTags.add(createDataTag(id, (int) id, 100 + id));
+      createRule(100 + id, "#" + id + " + 1", 0);
+    }
+
+    for (int batch = 0; batch < 10; batch++) {
+      ruleEvaluator.notifyElementsUpdated(dataTags.subList(batch, batch + 11));
+    }
+
+    awaitEvaluations(110);
+    Map<Long, Set<String>> ruleThreads = new ConcurrentHashMap<>();
+    Set<String> allThreads = new HashSet<>();
+    synchronized (evaluations) {
+      for (Evaluation evaluation : evaluations) {
+        ruleThreads.computeIfAbsent(evaluation.ruleId, id -> new HashSet<>()).add(evaluation.thread);
+        allThreads.add(evaluation.thread);
+      }
+    }
+    assertEquals(20, ruleThreads.size());
+    for (Set<String> threads : ruleThreads.values()) {
+      assertEquals(1, threads.size());
+      assertTrue(threads.iterator().next().startsWith("RuleEvaluator-"));
+    }
+    assertTrue(allThreads.size() > 1);
+  }
+
+  /**
+   * An exception escaping the evaluation of rule 100 does not prevent the
+   * next level, nor the next batches, from being evaluated.
+   */
+  @Test
+  public void testExceptionDoesNotStallNextLevels() throws InterruptedException {
+    DataTag tag1 = createDataTag(1L, 1, 100L);
+    DataTag tag2 = createDataTag(2L, 2, 101L);
+    createRule(100L, "#1 + 1", 5, 101L);
+    createRule(101L, "#100 + #2", 0);
+    failingRuleId = 100L;
+
+    ruleEvaluator.notifyElementsUpdated(Arrays.asList(tag1, tag2));
+
+    awaitEvaluations(2);
+    assertEquals(101L, (long) evaluations.get(1).ruleId);
+    awaitResults(2);
+    // the result of 100 was lost with the exception, so 101 used its cache value
+    assertEquals(7, results.get(101L));
+
+    failingRuleId = null;
+    results.clear();
+    ruleEvaluator.notifyElementsUpdated(Arrays.asList(tag1, tag2));
+
+    awaitEvaluations(4);
+    awaitResults(2);
+    assertEquals(4, results.get(101L));
+  }
+
+  /**
+   * Rule 100 evaluates to its current value: rule 101 is not evaluated,
+   * since its other input did not change either.
+   */
+  @Test
+  public void testUnchangedResultNotPropagated() throws InterruptedException {
+    DataTag tag1 = createDataTag(1L, 1, 100L);
+    createDataTag(2L, 2, 101L);
+    createRule(100L, "#1 + 1", 2, 101L);
+    createRule(101L, "#100 + #2", 4);
+
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag1));
+
+    awaitEvaluations(1);
+    assertEquals(100L, (long) evaluations.get(0).ruleId);
+  }
+
+  /**
+   * Rule 100 evaluates to a new value: rule 101 is evaluated with it, and
+   * neither the same result again nor the cache update of rule 100
+   * evaluate rule 101 again.
+   */
+  @Test
+  public void testChangedResultPropagated() throws InterruptedException {
+    DataTag tag1 = createDataTag(1L, 5, 100L);
+    createDataTag(2L, 2, 101L);
+    createRule(100L, "#1 + 1", 2, 101L);
+    createRule(101L, "#100 + #2", 4);
+
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag1));
+
+    awaitEvaluations(2);
+    assertEquals(101L, (long) evaluations.get(1).ruleId);
+    awaitResults(2);
+    assertEquals(8, results.get(101L));
+
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag1));
+    awaitEvaluations(3);
+    assertEquals(100L, (long) evaluations.get(2).ruleId);
+
+    createRule(100L, "#1 + 1", 6, 101L);
+    ruleEvaluator.notifyElementUpdated(tags.get(100L));
+    awaitEvaluations(3);
+  }
+
+  /**
+   * The cache update of rule 100 never arrives: once its propagated result
+   * expired, the results of rule 100 are compared with its cache value
+   * again, and a late cache update evaluates rule 101 again.
+   */
+  @Test
+  public void testPropagatedResultExpires() throws InterruptedException {
+    ruleEvaluator.setPropagatedResultTimeout(100);
+    DataTag tag1 = createDataTag(1L, 5, 100L);
+    createDataTag(2L, 2, 101L);
+    createRule(100L, "#1 + 1", 2, 101L);
+    createRule(101L, "#100 + #2", 4);
+
+    // awaiting the evaluations takes longer than the timeout
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag1));
+    awaitEvaluations(2);
+
+    ruleEvaluator.notifyElementsUpdated(Collections.singletonList(tag1));
+    awaitEvaluations(4);
+    assertEquals(101L, (long) evaluations.get(3).ruleId);
+
+    createRule(100L, "#1 + 1", 6, 101L);
+    ruleEvaluator.notifyElementUpdated(tags.get(100L));
+    awaitEvaluations(5);
+    assertEquals(101L, (long) evaluations.get(4).ruleId);
+  }
+
+  private DataTag createDataTag(final Long id, final Object value, final Long... ruleIds) {
+    DataTagCacheObject tag = new DataTagCacheObject(id);
+    tag.setValue(value);
+    tag.setRuleIds(Arrays.asList(ruleIds));
+    tag.getDataTagQuality().validate();
+    tags.put(id, tag);
+    return tag;
+  }
+
+  private void createRule(final Long id, final String ruleText, final Object value, final Long... dependentRuleIds) {
+    RuleTagCacheObject rule = new RuleTagCacheObject(id, "rule " + id, "Integer", (short) 0, ruleText);
+    rule.setValue(value);
+    rule.setRuleIds(Arrays.asList(dependentRuleIds));
+    rule.getDataTagQuality().validate();
+    tags.put(id, rule);
+  }
+
+  /**
+   * Waits until the given number of evaluations ended, then a bit longer to
+   * catch unexpected evaluations.
+   */
+  private void awaitEvaluations(final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (evaluations.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(300);
+    assertEquals(count, evaluations.size());
+  }
+
+  /**
+   * Waits until the buffer passed the results of the given number of rules
+   * to the facade.
+   */
+  private void awaitResults(final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (results.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, results.size());
+  }
+
+  /**
+   * The end of a rule evaluation, on the evaluation thread.
+   */
+  private static final class Evaluation {
+
+    private final Long ruleId;
+
+    private final String thread = Thread.currentThread().getName();
+
+    private Evaluation(final Long ruleId) {
+      this.ruleId = ruleId;
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package cern.c2mon.shared.common.datatag;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -394,6 +395,28 @@ public final class SourceDataTagValue implements Cloneable {
     }
   }
 
+  /**
+   * Logs a batch of values, e.g. all the values of one DAQ message, with
+   * one log entry per value. The log level is only checked once.
+   *
+   * @param values the values to log
+   */
+  public static void log(final Collection<SourceDataTagValue> values) {
+    if (TAG_LOG.isInfoEnabled()) {
+      for (SourceDataTagValue value : values) {
+        TAG_LOG.info(value.toString());
+      }
+    }
+  }
+
+  /**
+   * @return true if the values passed to {@link #log(Collection)} are
+   * written to the tag log
+   */
+  public static boolean isLogEnabled() {
+    return TAG_LOG.isInfoEnabled();
+  }
+
   @Override
   public boolean equals(final Object pObj) {
     boolean result = pObj != null && pObj instanceof SourceDataTagValue;
@@ -0,0 +1,633 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Compact binary encoding of {@link DataTagValueUpdate} messages.
+ * <p>
+ * A message starts with a version byte, the optional process id and PIK, a
+ * base time and the number of values. Each value is then written as:
+ * <ul>
+ * <li>a byte of flags (booleans and presence of the optional fields);
+ * <li>the tag id as a varint;
+ * <li>the timestamp and DAQ timestamp as varints relative to the base time;
+ * <li>the tag name, value description and quality description as interned
+ * strings: the first occurrence of a string in a message is written in UTF-8
+ * and the next ones as a reference to it;
+ * <li>the value as a type byte followed by the primitive value (varints for
+ * the integers), or by its JSON for the other types, e.g. arrays;
+ * <li>the quality code, priority and time to live as varints.
+ * </ul>
+ * Decoding a value gives the same value as the JSON encoding, except for the
+ * primitive types which are kept (e.g. a Float stays a Float).
+ * <p>
+ * The id and timestamps come first so that a {@link DataTagValueUpdateHandler}
+ * can reject a value before the rest of it is decoded: a rejected value is
+ * skipped without allocating any object.
+ */
+final class DataTagValueUpdateBinaryCodec {
+
+  static final byte VERSION = 1;
+
+  private static final int PROCESS_ID = 1;
+  private static final int PROCESS_PIK = 1 << 1;
+
+  private static final int CONTROL_TAG = 1;
+  private static final int GUARANTEED_DELIVERY = 1 << 1;
+  private static final int SIMULATED = 1 << 2;
+  private static final int ID = 1 << 3;
+  private static final int TIMESTAMP = 1 << 4;
+  private static final int DAQ_TIMESTAMP = 1 << 5;
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_FALSE = 1;
+  private static final byte TYPE_TRUE = 2;
+  private static final byte TYPE_INTEGER = 3;
+  private static final byte TYPE_LONG = 4;
+  private static final byte TYPE_FLOAT = 5;
+  private static final byte TYPE_DOUBLE = 6;
+  private static final byte TYPE_STRING = 7;
+  private static final byte TYPE_SHORT = 8;
+  private static final byte TYPE_BYTE = 9;
+  private static final byte TYPE_JSON = 10;
+
+  private static final int STRING_EMPTY = 0;
+  private static final int STRING_NULL = 1;
+
+  private static final int NO_QUALITY_CODE = -1;
+
+  private static final Map<Integer, SourceDataTagQualityCode> QUALITY_CODES = new HashMap<>();
+
+  static {
+    for (SourceDataTagQualityCode code : SourceDataTagQualityCode.values()) {
+      QUALITY_CODES.put(code.getQualityCode(), code);
+    }
+  }
+
+  private DataTagValueUpdateBinaryCodec() {
+  }
+
+  /**
+   * Encode the update.
+   *
+   * @param update the update to encode
+   * @param mapper the mapper writing the values which are not primitives
+   * @return the bytes of the message
+   * @throws IOException if a value cannot be written in JSON
+   */
+  static byte[] encode(final DataTagValueUpdate update, final ObjectMapper mapper) throws IOException {
+    Collection<SourceDataTagValue> values = update.getValues() != null ? update.getValues() : Collections.<SourceDataTagValue>emptyList();
+    Output out = new Output(32 + values.size() * 48);
+
+    out.writeByte(VERSION);
+    int flags = (update.getProcessId() != null ? PROCESS_ID : 0) | (update.getProcessPIK() != null ? PROCESS_PIK : 0);
+    out.writeByte(flags);
+    if (update.getProcessId() != null) {
+      out.writeVarLong(update.getProcessId());
+    }
+    if (update.getProcessPIK() != null) {
+      out.writeVarLong(update.getProcessPIK());
+    }
+
+    long baseTime = baseTime(values);
+    out.writeVarLong(baseTime);
+    out.writeVarInt(values.size());
+
+    for (SourceDataTagValue value : values) {
+      SourceDataTagQuality quality = value.getQuality();
+      flags = (value.isControlTag() ? CONTROL_TAG : 0)
+          | (value.isGuaranteedDelivery() ? GUARANTEED_DELIVERY : 0)
+          | (value.isSimulated() ? SIMULATED : 0)
+          | (value.getId() != null ? ID : 0)
+          | (value.getTimestamp() != null ? TIMESTAMP : 0)
+          | (value.getDaqTimestamp() != null ? DAQ_TIMESTAMP : 0);
+      out.writeByte(flags);
+
+      if (value.getId() != null) {
+        out.writeVarLong(value.getId());
+      }
+      if (value.getTimestamp() != null) {
+        out.writeVarLong(zigZag(value.getTimestamp().getTime() - baseTime));
+      }
+      if (value.getDaqTimestamp() != null) {
+        out.writeVarLong(zigZag(value.getDaqTimestamp().getTime() - baseTime));
+      }
+      out.writeString(value.getName());
+      writeValue(out, value.getValue(), mapper);
+      out.writeString(value.getValueDescription());
+      out.writeVarLong(zigZag(quality.getQualityCode() != null ? quality.getQualityCode().getQualityCode() : NO_QUALITY_CODE));
+      out.writeString(quality.getDescription());
+      out.writeVarLong(zigZag(value.getPriority()));
+      out.writeVarLong(zigZag(value.getTimeToLive()));
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode an update.
+   *
+   * @param bytes  the bytes of the message
+   * @param mapper the mapper reading the values which are not primitives
+   * @return the decoded update
+   * @throws IOException if the message is not a valid binary update
+   */
+  static DataTagValueUpdate decode(final byte[] bytes, final ObjectMapper mapper) throws IOException {
+    UpdateBuilder builder = new UpdateBuilder();
+    decode(bytes, mapper, builder);
+    return builder.update;
+  }
+
+  /**
+   * Decode an update value by value, passing each of them to the handler.
+   * The values rejected by the handler are skipped without being decoded.
+   *
+   * @param bytes   the bytes of the message
+   * @param mapper  the mapper reading the values which are not primitives
+   * @param handler the handler of the content of the update
+   * @throws IOException if the message is not a valid binary update, in which
+   *                     case the values before the error were already passed
+   *                     to the handler
+   */
+  static void decode(final byte[] bytes, final ObjectMapper mapper, final DataTagValueUpdateHandler handler) throws IOException {
+    Input in = new Input(bytes);
+
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary update version " + version);
+    }
+    int flags = in.readByte();
+    Long processId = (flags & PROCESS_ID) != 0 ? in.readVarLong() : null;
+    Long processPIK = (flags & PROCESS_PIK) != 0 ? in.readVarLong() : null;
+    long baseTime = in.readVarLong();
+
+    int size = in.readVarInt();
+    if (size < 0 || size > bytes.length) {
+      throw new IOException("Invalid number of values: " + size);
+    }
+
+    if (handler.startUpdate(processId, processPIK)) {
+      for (int i = 0; i < size; i++) {
+        flags = in.readByte();
+        boolean hasId = (flags & ID) != 0;
+        long id = hasId ? in.readVarLong() : 0;
+        long timestamp = (flags & TIMESTAMP) != 0 ? baseTime + unZigZag(in.readVarLong()) : DataTagValueUpdateHandler.NO_TIMESTAMP;
+        long daqTimestamp = (flags & DAQ_TIMESTAMP) != 0 ? baseTime + unZigZag(in.readVarLong()) : DataTagValueUpdateHandler.NO_TIMESTAMP;
+
+        if (hasId && !handler.acceptValue(id, (flags & CONTROL_TAG) != 0, timestamp, daqTimestamp)) {
+          skipValue(in);
+          continue;
+        }
+
+        SourceDataTagValue value = new SourceDataTagValue();
+        value.setControlTag((flags & CONTROL_TAG) != 0);
+        value.setGuaranteedDelivery((flags & GUARANTEED_DELIVERY) != 0);
+        value.setSimulated((flags & SIMULATED) != 0);
+        if (hasId) {
+          value.setId(id);
+        }
+        if (timestamp != DataTagValueUpdateHandler.NO_TIMESTAMP) {
+          value.setTimestamp(new Timestamp(timestamp));
+        }
+        if (daqTimestamp != DataTagValueUpdateHandler.NO_TIMESTAMP) {
+          value.setDaqTimestamp(new Timestamp(daqTimestamp));
+        }
+        value.setName(in.readString());
+        value.setValue(readValue(in, mapper));
+        value.setValueDescription(in.readString());
+        int code = (int) unZigZag(in.readVarLong());
+        SourceDataTagQuality quality = new SourceDataTagQuality(code != NO_QUALITY_CODE ? qualityCode(code) : null);
+        quality.setDescription(in.readString());
+        value.setQuality(quality);
+        value.setPriority((int) unZigZag(in.readVarLong()));
+        value.setTimeToLive((int) unZigZag(in.readVarLong()));
+
+        handler.onValue(value);
+      }
+    } else {
+      handler.onIgnoredValues(size);
+    }
+
+    handler.endUpdate();
+  }
+
+  /**
+   * Skip the fields of a value following its timestamps.
+   */
+  private static void skipValue(final Input in) throws IOException {
+    in.skipString();
+    byte type = in.readByte();
+    switch (type) {
+      case TYPE_NULL:
+      case TYPE_FALSE:
+      case TYPE_TRUE:
+        break;
+      case TYPE_INTEGER:
+      case TYPE_LONG:
+      case TYPE_SHORT:
+        in.readVarLong();
+        break;
+      case TYPE_FLOAT:
+        in.skip(4);
+        break;
+      case TYPE_DOUBLE:
+        in.skip(8);
+        break;
+      case TYPE_BYTE:
+        in.skip(1);
+        break;
+      case TYPE_STRING:
+      case TYPE_JSON:
+        in.skip(in.readVarInt());
+        break;
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+    in.skipString();
+    in.readVarLong();
+    in.skipString();
+    in.readVarLong();
+    in.readVarLong();
+  }
+
+  /**
+   * The time from which the timestamps are written, so that they fit in a
+   * few bytes.
+   */
+  private static long baseTime(final Collection<SourceDataTagValue> values) {
+    for (SourceDataTagValue value : values) {
+      if (value.getDaqTimestamp() != null) {
+        return value.getDaqTimestamp().getTime();
+      } else if (value.getTimestamp() != null) {
+        return value.getTimestamp().getTime();
+      }
+    }
+    return 0;
+  }
+
+  private static SourceDataTagQualityCode qualityCode(final int code) throws IOException {
+    SourceDataTagQualityCode qualityCode = QUALITY_CODES.get(code);
+    if (qualityCode == null) {
+      throw new IOException("Unknown quality code " + code);
+    }
+    return qualityCode;
+  }
+
+  private static void writeValue(final Output out, final Object value, final ObjectMapper mapper) throws IOException {
+    if (value == null) {
+      out.writeByte(TYPE_NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+    } else if (value instanceof Integer) {
+      out.writeByte(TYPE_INTEGER);
+      out.writeVarLong(zigZag((Integer) value));
+    } else if (value instanceof Long) {
+      out.writeByte(TYPE_LONG);
+      out.writeVarLong(zigZag((Long) value));
+    } else if (value instanceof Float) {
+      out.writeByte(TYPE_FLOAT);
+      out.writeInt(Float.floatToIntBits((Float) value));
+    } else if (value instanceof Double) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeLong(Double.doubleToLongBits((Double) value));
+    } else if (value instanceof String) {
+      out.writeByte(TYPE_STRING);
+      out.writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+    } else if (value instanceof Short) {
+      out.writeByte(TYPE_SHORT);
+      out.writeVarLong(zigZag((Short) value));
+    } else if (value instanceof Byte) {
+      out.writeByte(TYPE_BYTE);
+      out.writeByte((Byte) value);
+    } else {
+      out.writeByte(TYPE_JSON);
+      out.writeBytes(mapper.writeValueAsBytes(value));
+    }
+  }
+
+  private static Object readValue(final Input in, final ObjectMapper mapper) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case TYPE_NULL:
+        return null;
+      case TYPE_FALSE:
+        return Boolean.FALSE;
+      case TYPE_TRUE:
+        return Boolean.TRUE;
+      case TYPE_INTEGER:
+        return (int) unZigZag(in.readVarLong());
+      case TYPE_LONG:
+        return unZigZag(in.readVarLong());
+      case TYPE_FLOAT:
+        return Float.intBitsToFloat(in.readInt());
+      case TYPE_DOUBLE:
+        return Double.longBitsToDouble(in.readLong());
+      case TYPE_STRING:
+        return new String(in.readBytes(), StandardCharsets.UTF_8);
+      case TYPE_SHORT:
+        return (short) unZigZag(in.readVarLong());
+      case TYPE_BYTE:
+        return in.readByte();
+      case TYPE_JSON:
+        return mapper.readValue(in.readBytes(), Object.class);
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+  }
+
+  private static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Handler building the whole update.
+   */
+  private static final class UpdateBuilder implements DataTagValueUpdateHandler {
+
+    private DataTagValueUpdate update;
+
+    @Override
+    public boolean startUpdate(final Long processId, final Long processPIK) {
+      update = new DataTagValueUpdate(processId, processPIK);
+      return true;
+    }
+
+    @Override
+    public boolean acceptValue(final long tagId, final boolean controlTag, final long timestamp, final long daqTimestamp) {
+      return true;
+    }
+
+    @Override
+    public void onValue(final SourceDataTagValue value) {
+      update.addValue(value);
+    }
+
+    @Override
+    public void endUpdate() {
+    }
+  }
+
+  /**
+   * Growable byte buffer with the interned strings of the message.
+   */
+  private static final class Output {
+
+    private byte[] buffer;
+
+    private int position;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    Output(final int capacity) {
+      this.buffer = new byte[capacity];
+    }
+
+    private void ensureCapacity(final int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+
+    void writeByte(final int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeVarInt(final int value) {
+      writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void writeInt(final int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeLong(final long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeBytes(final byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    /**
+     * Write a string as 0 if empty, 1 if null, an even number for a string
+     * already written in the message (2 * (index + 1)), or an odd number for
+     * a new string (2 * length + 1) followed by its UTF-8 bytes.
+     */
+    void writeString(final String value) {
+      if (value == null) {
+        writeVarInt(STRING_NULL);
+      } else if (value.isEmpty()) {
+        writeVarInt(STRING_EMPTY);
+      } else {
+        Integer index = strings.get(value);
+        if (index != null) {
+          writeVarInt((index + 1) << 1);
+        } else {
+          strings.put(value, strings.size());
+          byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+          writeVarInt((bytes.length << 1) | 1);
+          ensureCapacity(bytes.length);
+          System.arraycopy(bytes, 0, buffer, position, bytes.length);
+          position += bytes.length;
+        }
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+  }
+
+  /**
+   * Reader of the bytes of a message, with the strings read so far.
+   */
+  private static final class Input {
+
+    private final byte[] buffer;
+
+    private int position;
+
+    /**
+     * The positions in the buffer of the UTF-8 bytes of the strings read so
+     * far, followed by their lengths.
+     */
+    private int[] stringBounds = new int[32];
+
+    /**
+     * The strings read so far, created on first use so that skipped strings
+     * are only referenced by their bounds.
+     */
+    private String[] strings = new String[16];
+
+    private int stringCount;
+
+    Input(final byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    private void require(final int length) throws IOException {
+      if (length < 0 || position + length > buffer.length) {
+        throw new IOException("Truncated binary update");
+      }
+    }
+
+    byte readByte() throws IOException {
+      require(1);
+      return buffer[position++];
+    }
+
+    int readVarInt() throws IOException {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    int readInt() throws IOException {
+      require(4);
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    long readLong() throws IOException {
+      require(8);
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    void skip(final int length) throws IOException {
+      require(length);
+      position += length;
+    }
+
+    byte[] readBytes() throws IOException {
+      int length = readVarInt();
+      require(length);
+      byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    String readString() throws IOException {
+      int code = readVarInt();
+      if (code == STRING_NULL) {
+        return null;
+      } else if (code == STRING_EMPTY) {
+        return "";
+      }
+
+      int index = (code & 1) == 0 ? stringIndex(code) : addString(code);
+      String value = strings[index];
+      if (value == null) {
+        value = new String(buffer, stringBounds[index << 1], stringBounds[(index << 1) + 1], StandardCharsets.UTF_8);
+        strings[index] = value;
+      }
+      return value;
+    }
+
+    void skipString() throws IOException {
+      int code = readVarInt();
+      if (code == STRING_NULL || code == STRING_EMPTY) {
+        return;
+      }
+
+      if ((code & 1) == 0) {
+        stringIndex(code);
+      } else {
+        addString(code);
+      }
+    }
+
+    private int stringIndex(final int code) throws IOException {
+      int index = (code >>> 1) - 1;
+      if (index < 0 || index >= stringCount) {
+        throw new IOException("Invalid string reference " + index);
+      }
+      return index;
+    }
+
+    /**
+     * Register the bounds of a new string and move past its bytes.
+     */
+    private int addString(final int code) throws IOException {
+      int length = code >>> 1;
+      require(length);
+      if (stringCount == strings.length) {
+        strings = Arrays.copyOf(strings, stringCount * 2);
+        stringBounds = Arrays.copyOf(stringBounds, stringCount * 4);
+      }
+      stringBounds[stringCount << 1] = position;
+      stringBounds[(stringCount << 1) + 1] = length;
+      position += length;
+      return stringCount++;
+    }
+  }
+}
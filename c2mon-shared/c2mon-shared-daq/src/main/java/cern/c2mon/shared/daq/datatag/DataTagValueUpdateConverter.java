@@ -17,31 +17,60 @@
 package cern.c2mon.shared.daq.datatag;
 
 import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.jms.support.converter.MessageConverter;
 
-import javax.annotation.PostConstruct;
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Converter class used to convert between JSON messages and
  * {@link DataTagValueUpdate} instances.
+ * <p>
+ * The updates can also be sent in a compact binary encoding, as a
+ * {@link BytesMessage} with the {@link #ENCODING_PROPERTY} set to
+ * {@link #BINARY_ENCODING}. The server advertises that it accepts this
+ * encoding with the same property on its reply to the DAQ connection request,
+ * and the DAQ only switches to it in that case. Incoming messages are always
+ * accepted in both encodings.
+ * <p>
+ * The server reads the incoming updates with
+ * {@link #fromMessage(Message, DataTagValueUpdateHandler)}, which passes the
+ * values to a handler as they are decoded instead of building the update.
  *
  * @author Mark Brightwell
  */
 @Slf4j
 public class DataTagValueUpdateConverter implements MessageConverter {
 
+  /**
+   * The message property giving the encoding of an update, or the encoding
+   * accepted by the server on the connection response.
+   */
+  public static final String ENCODING_PROPERTY = "c2monEncoding";
+
+  public static final String BINARY_ENCODING = "binary";
+
   private ObjectMapper mapper;
 
+  /**
+   * Whether the updates are sent in the binary encoding.
+   */
+  private volatile boolean binaryEncoding = false;
+
   public DataTagValueUpdateConverter() {
     this.mapper = new ObjectMapper();
     mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
@@ -62,13 +91,17 @@ public class DataTagValueUpdateConverter implements MessageConverter {
       throw new MessageConversionException("Message must not be null!");
     }
 
+    if (message instanceof BytesMessage && BINARY_ENCODING.equals(message.getStringProperty(ENCODING_PROPERTY))) {
+      return fromBytesMessage((BytesMessage) message);
+    }
+
     if (!(message instanceof TextMessage)) {
       throw new MessageConversionException("Message must be an instance of TextMessage!");
     }
 
     try {
       String json = ((TextMessage) message).getText();
-      log.trace("Update received from DAQ:\n" + json);
+      log.trace("Update received from DAQ:\n{}", json);
 
       return mapper.readValue(json, DataTagValueUpdate.class);
     } catch (IOException | RuntimeException e) {
@@ -77,6 +110,131 @@ public class DataTagValueUpdateConverter implements MessageConverter {
     }
   }
 
+  /**
+   * Decodes an incoming tag update value by value, without building the
+   * {@link DataTagValueUpdate}. The values of a binary update rejected by
+   * {@link DataTagValueUpdateHandler#acceptValue} are skipped without being
+   * decoded; the values of a JSON update are always decoded, but only passed
+   * to the handler if accepted.
+   *
+   * @param message the incoming tag update
+   * @param handler the handler of the content of the update
+   *
+   * @throws JMSException if an error occurs reading the message
+   * @throws MessageConversionException if the message is not a valid update,
+   *                                    in which case the values before the
+   *                                    error were already passed to the handler
+   */
+  public void fromMessage(final Message message, final DataTagValueUpdateHandler handler) throws JMSException {
+
+    if (message == null) {
+      throw new MessageConversionException("Message must not be null!");
+    }
+
+    if (message instanceof BytesMessage && BINARY_ENCODING.equals(message.getStringProperty(ENCODING_PROPERTY))) {
+      byte[] bytes = new byte[(int) ((BytesMessage) message).getBodyLength()];
+      ((BytesMessage) message).readBytes(bytes);
+      try {
+        DataTagValueUpdateBinaryCodec.decode(bytes, mapper, handler);
+      } catch (IOException | RuntimeException e) {
+        log.error("Exception caught while decoding incoming binary update", e);
+        throw new MessageConversionException("Exception caught while decoding incoming binary update of " + bytes.length + " bytes", e);
+      }
+      return;
+    }
+
+    if (!(message instanceof TextMessage)) {
+      throw new MessageConversionException("Message must be an instance of TextMessage!");
+    }
+
+    String json = ((TextMessage) message).getText();
+    log.trace("Update received from DAQ:\n{}", json);
+    try (JsonParser parser = mapper.getFactory().createParser(json)) {
+      parseJson(parser, handler);
+    } catch (IOException | RuntimeException e) {
+      log.error("Exception caught while parsing incoming update", e);
+      throw new MessageConversionException("Exception caught while parsing incoming update: " + json, e);
+    }
+  }
+
+  /**
+   * Read the JSON of a {@link DataTagValueUpdate} field by field. The values
+   * are read one at a time, and passed on as soon as the process fields are
+   * known: they precede the values in the JSON written by this converter,
+   * otherwise the values are kept until the end of the update.
+   */
+  private void parseJson(final JsonParser parser, final DataTagValueUpdateHandler handler) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Update must be a JSON object");
+    }
+
+    Long processId = null;
+    Long processPIK = null;
+    boolean processIdRead = false;
+    boolean processPIKRead = false;
+    Boolean started = null;
+    List<SourceDataTagValue> pendingValues = null;
+    int ignoredValues = 0;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+
+      if ("processId".equals(field)) {
+        processId = token == JsonToken.VALUE_NULL ? null : parser.getLongValue();
+        processIdRead = true;
+      } else if ("processPIK".equals(field)) {
+        processPIK = token == JsonToken.VALUE_NULL ? null : parser.getLongValue();
+        processPIKRead = true;
+      } else if ("values".equals(field) && token == JsonToken.START_ARRAY) {
+        if (started == null && processIdRead && processPIKRead) {
+          started = handler.startUpdate(processId, processPIK);
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (started != null && !started) {
+            parser.skipChildren();
+            ignoredValues++;
+            continue;
+          }
+          SourceDataTagValue value = mapper.readValue(parser, SourceDataTagValue.class);
+          if (started == null) {
+            if (pendingValues == null) {
+              pendingValues = new ArrayList<>();
+            }
+            pendingValues.add(value);
+          } else {
+            handleValue(value, handler);
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    if (started == null) {
+      started = handler.startUpdate(processId, processPIK);
+      if (started && pendingValues != null) {
+        for (SourceDataTagValue value : pendingValues) {
+          handleValue(value, handler);
+        }
+      } else if (!started && pendingValues != null) {
+        ignoredValues = pendingValues.size();
+      }
+    }
+    if (!started) {
+      handler.onIgnoredValues(ignoredValues);
+    }
+    handler.endUpdate();
+  }
+
+  private static void handleValue(final SourceDataTagValue value, final DataTagValueUpdateHandler handler) {
+    if (value.getId() == null || handler.acceptValue(value.getId(), value.isControlTag(),
+        value.getTimestamp() != null ? value.getTimestamp().getTime() : DataTagValueUpdateHandler.NO_TIMESTAMP,
+        value.getDaqTimestamp() != null ? value.getDaqTimestamp().getTime() : DataTagValueUpdateHandler.NO_TIMESTAMP)) {
+      handler.onValue(value);
+    }
+  }
+
   /**
    * Converts a {@link DataTagValueUpdate} to a JMS {@link Message}
    *
@@ -88,6 +246,10 @@ public class DataTagValueUpdateConverter implements MessageConverter {
    */
   @Override
   public Message toMessage(final Object tag, final Session session) throws JMSException {
+    if (binaryEncoding && tag instanceof DataTagValueUpdate) {
+      return toBytesMessage((DataTagValueUpdate) tag, session);
+    }
+
     try {
       String json = mapper.writeValueAsString(tag);
       return session.createTextMessage(json);
@@ -98,5 +260,45 @@ public class DataTagValueUpdateConverter implements MessageConverter {
           + e.getMessage());
     }
   }
-}
 
+  private Object fromBytesMessage(final BytesMessage message) throws JMSException {
+    byte[] bytes = new byte[(int) message.getBodyLength()];
+    message.readBytes(bytes);
+    try {
+      return DataTagValueUpdateBinaryCodec.decode(bytes, mapper);
+    } catch (IOException | RuntimeException e) {
+      log.error("Exception caught while decoding incoming binary update", e);
+      throw new MessageConversionException("Exception caught while decoding incoming binary update of " + bytes.length + " bytes", e);
+    }
+  }
+
+  private Message toBytesMessage(final DataTagValueUpdate update, final Session session) throws JMSException {
+    try {
+      BytesMessage message = session.createBytesMessage();
+      message.writeBytes(DataTagValueUpdateBinaryCodec.encode(update, mapper));
+      message.setStringProperty(ENCODING_PROPERTY, BINARY_ENCODING);
+      return message;
+    } catch (IOException e) {
+      log.error("Exception caught while encoding update", e);
+      throw new MessageConversionException("Exception caught in converting dataTagValueUpdate to binary:" + e.getMessage());
+    }
+  }
+
+  /**
+   * @return true if the updates are sent in the binary encoding
+   */
+  public boolean isBinaryEncoding() {
+    return binaryEncoding;
+  }
+
+  /**
+   * Choose the encoding of the outgoing updates. The binary encoding must
+   * only be used if the server accepts it.
+   *
+   * @param binaryEncoding true to send the updates in the binary encoding,
+   *                       false to send them in JSON
+   */
+  public void setBinaryEncoding(final boolean binaryEncoding) {
+    this.binaryEncoding = binaryEncoding;
+  }
+}
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import javax.jms.Message;
+
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Receives the content of a {@link DataTagValueUpdate} message while it is
+ * decoded by {@link DataTagValueUpdateConverter#fromMessage(Message, DataTagValueUpdateHandler)},
+ * so that the values can be processed one by one without building the update
+ * and the list of its values.
+ * <p>
+ * The methods are called in order: {@link #startUpdate} once, then
+ * {@link #acceptValue} and {@link #onValue} for each value (or
+ * {@link #onIgnoredValues} once if the update is skipped), and
+ * {@link #endUpdate} once all the values are decoded.
+ */
+public interface DataTagValueUpdateHandler {
+
+  /**
+   * The timestamp passed to {@link #acceptValue} when the value has no such
+   * timestamp.
+   */
+  long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  /**
+   * Called before the values of the update.
+   *
+   * @param processId  the id of the process sending the update
+   * @param processPIK the PIK of the process sending the update
+   * @return false to skip all the values of the update, in which case only
+   * {@link #onIgnoredValues(int)} and {@link #endUpdate()} are called
+   */
+  boolean startUpdate(Long processId, Long processPIK);
+
+  /**
+   * Called instead of the values of the update if {@link #startUpdate}
+   * returned false.
+   *
+   * @param valueCount the number of values of the update
+   */
+  default void onIgnoredValues(int valueCount) {
+  }
+
+  /**
+   * Called with the fields of a value on which it may be filtered out, before
+   * the rest of the value is decoded. Not called for the values without id.
+   *
+   * @param tagId        the id of the tag
+   * @param controlTag   true if the tag is a control tag
+   * @param timestamp    the source timestamp of the value, or {@link #NO_TIMESTAMP}
+   * @param daqTimestamp the DAQ timestamp of the value, or {@link #NO_TIMESTAMP}
+   * @return false to skip the value, which is then not decoded
+   */
+  boolean acceptValue(long tagId, boolean controlTag, long timestamp, long daqTimestamp);
+
+  /**
+   * Called with each decoded value which was accepted.
+   *
+   * @param value the value
+   */
+  void onValue(SourceDataTagValue value);
+
+  /**
+   * Called once the whole update was decoded.
+   */
+  void endUpdate();
+}
@@ -0,0 +1,272 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips of {@link DataTagValueUpdate} messages through the
+ * {@link DataTagValueUpdateBinaryCodec}.
+ */
+public class DataTagValueUpdateBinaryCodecTest {
+
+  private ObjectMapper mapper;
+
+  private SourceDataTagValue valueObject;
+
+  private DataTagValueUpdate update;
+
+  @Before
+  public void setUp() {
+    mapper = new ObjectMapper();
+    mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
+
+    SourceDataTagQuality quality = new SourceDataTagQuality(SourceDataTagQualityCode.OUT_OF_BOUNDS, "out of bounds");
+    valueObject = new SourceDataTagValue(11L, "name", true, 1.5f, quality, new Timestamp(System.currentTimeMillis() - 1000), 2,
+        true, "description", 666);
+    valueObject.setSimulated(true);
+    update = new DataTagValueUpdate(5L, 1234567L);
+    update.addValue(valueObject);
+  }
+
+  @Test
+  public void testAllFieldsDecoded() throws IOException {
+    SourceDataTagValue decoded = roundTrip(update).getValues().iterator().next();
+
+    assertEquals(valueObject, decoded);
+    assertEquals(valueObject.getTimestamp(), decoded.getTimestamp());
+    assertEquals(valueObject.getDaqTimestamp(), decoded.getDaqTimestamp());
+    assertEquals(SourceDataTagQualityCode.OUT_OF_BOUNDS, decoded.getQuality().getQualityCode());
+    assertEquals("out of bounds", decoded.getQuality().getDescription());
+  }
+
+  @Test
+  public void testProcessFieldsDecoded() throws IOException {
+    DataTagValueUpdate decoded = roundTrip(update);
+    assertEquals(Long.valueOf(5L), decoded.getProcessId());
+    assertEquals(Long.valueOf(1234567L), decoded.getProcessPIK());
+
+    decoded = roundTrip(new DataTagValueUpdate(5L));
+    assertEquals(Long.valueOf(5L), decoded.getProcessId());
+    assertNull(decoded.getProcessPIK());
+    assertTrue(decoded.getValues().isEmpty());
+  }
+
+  @Test
+  public void testPrimitiveValuesKeepTheirType() throws IOException {
+    Object[] values = {true, false, 42, -42, Long.MAX_VALUE, Long.MIN_VALUE, 1.1f, -2.2, (short) 10, (byte) -3, "text", "",
+        Integer.MIN_VALUE, null};
+    for (Object value : values) {
+      valueObject.setValue(value);
+      assertEquals(value, roundTrip(update).getValues().iterator().next().getValue());
+    }
+  }
+
+  @Test
+  public void testOtherValuesDecodedAsJson() throws IOException {
+    valueObject.setValue(new Integer[] {1, 2, 3});
+    Object decoded = roundTrip(update).getValues().iterator().next().getValue();
+    assertArrayEquals(new Object[] {1, 2, 3}, (Object[]) decoded);
+
+    valueObject.setValue(new String[] {"a", "b"});
+    decoded = roundTrip(update).getValues().iterator().next().getValue();
+    assertArrayEquals(new Object[] {"a", "b"}, (Object[]) decoded);
+  }
+
+  @Test
+  public void testRepeatedStringsInterned() throws IOException {
+    DataTagValueUpdate large = new DataTagValueUpdate(5L);
+    for (long id = 0; id < 100; id++) {
+      large.addValue(new SourceDataTagValue(id, "tag_" + id, false, (int) id, new SourceDataTagQuality(),
+          valueObject.getTimestamp(), 2, false, "the same value description", 3600));
+    }
+
+    byte[] binary = DataTagValueUpdateBinaryCodec.encode(large, mapper);
+    byte[] json = mapper.writeValueAsBytes(large);
+    assertTrue("binary " + binary.length + " bytes, JSON " + json.length + " bytes", binary.length * 5 < json.length);
+
+    DataTagValueUpdate decoded = DataTagValueUpdateBinaryCodec.decode(binary, mapper);
+    Iterator<SourceDataTagValue> expected = large.getValues().iterator();
+    for (SourceDataTagValue value : decoded.getValues()) {
+      assertEquals(expected.next(), value);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedMessageRejected() throws IOException {
+    byte[] bytes = DataTagValueUpdateBinaryCodec.encode(update, mapper);
+    DataTagValueUpdateBinaryCodec.decode(Arrays.copyOf(bytes, bytes.length - 3), mapper);
+  }
+
+  @Test
+  public void testConverterReadsBinaryMessage() throws Exception {
+    ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+    message.writeBytes(DataTagValueUpdateBinaryCodec.encode(update, mapper));
+    message.setStringProperty(DataTagValueUpdateConverter.ENCODING_PROPERTY, DataTagValueUpdateConverter.BINARY_ENCODING);
+    message.reset();
+
+    DataTagValueUpdate decoded = (DataTagValueUpdate) new DataTagValueUpdateConverter().fromMessage(message);
+    assertEquals(valueObject, decoded.getValues().iterator().next());
+  }
+
+  @Test
+  public void testRejectedValuesSkipped() throws IOException {
+    DataTagValueUpdate large = new DataTagValueUpdate(5L, 1234567L);
+    for (long id = 0; id < 10; id++) {
+      large.addValue(new SourceDataTagValue(id, "tag_" + (id % 3), false, id % 2 == 0 ? "text " + id : new int[] {(int) id},
+          new SourceDataTagQuality(), valueObject.getTimestamp(), 2, false, "description " + (id % 4), 3600));
+    }
+
+    CollectingHandler handler = new CollectingHandler(id -> id % 3 != 0);
+    DataTagValueUpdateBinaryCodec.decode(DataTagValueUpdateBinaryCodec.encode(large, mapper), mapper, handler);
+
+    assertEquals(Long.valueOf(1234567L), handler.processPIK);
+    assertEquals(10, handler.acceptCalls);
+    assertEquals(6, handler.values.size());
+    assertTrue(handler.ended);
+    Iterator<SourceDataTagValue> decoded = handler.values.iterator();
+    for (SourceDataTagValue expected : large.getValues()) {
+      if (expected.getId() % 3 != 0) {
+        SourceDataTagValue value = decoded.next();
+        assertEquals(expected.getName(), value.getName());
+        assertEquals(expected.getValueDescription(), value.getValueDescription());
+        assertEquals(expected.getTimestamp(), value.getTimestamp());
+        if (value.getValue() instanceof Object[]) {
+          assertArrayEquals(new Object[] {expected.getId().intValue()}, (Object[]) value.getValue());
+        } else {
+          assertEquals(expected.getValue(), value.getValue());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIgnoredUpdateCounted() throws IOException {
+    update.addValue(new SourceDataTagValue(12L, "other", false, 1, new SourceDataTagQuality(), valueObject.getTimestamp(), 2,
+        false, null, 3600));
+    CollectingHandler handler = new CollectingHandler(id -> true);
+    handler.start = false;
+    DataTagValueUpdateBinaryCodec.decode(DataTagValueUpdateBinaryCodec.encode(update, mapper), mapper, handler);
+
+    assertEquals(0, handler.acceptCalls);
+    assertTrue(handler.values.isEmpty());
+    assertEquals(2, handler.ignoredValues);
+    assertTrue(handler.ended);
+  }
+
+  @Test
+  public void testTimestampsPassedBeforeDecoding() throws IOException {
+    valueObject.setDaqTimestamp(new Timestamp(valueObject.getTimestamp().getTime() + 5));
+    CollectingHandler handler = new CollectingHandler(id -> false);
+    DataTagValueUpdateBinaryCodec.decode(DataTagValueUpdateBinaryCodec.encode(update, mapper), mapper, handler);
+
+    assertEquals(valueObject.getTimestamp().getTime(), handler.lastTimestamp);
+    assertEquals(valueObject.getDaqTimestamp().getTime(), handler.lastDaqTimestamp);
+    assertTrue(handler.values.isEmpty());
+
+    valueObject.setDaqTimestamp(null);
+    DataTagValueUpdateBinaryCodec.decode(DataTagValueUpdateBinaryCodec.encode(update, mapper), mapper, handler);
+    assertEquals(DataTagValueUpdateHandler.NO_TIMESTAMP, handler.lastDaqTimestamp);
+  }
+
+  private DataTagValueUpdate roundTrip(DataTagValueUpdate update) throws IOException {
+    return DataTagValueUpdateBinaryCodec.decode(DataTagValueUpdateBinaryCodec.encode(update, mapper), mapper);
+  }
+
+  /**
+   * Handler keeping the accepted values.
+   */
+  static final class CollectingHandler implements DataTagValueUpdateHandler {
+
+    private final LongPredicate filter;
+
+    Long processId;
+
+    Long processPIK;
+
+    int acceptCalls;
+
+    long lastTimestamp;
+
+    long lastDaqTimestamp;
+
+    final List<SourceDataTagValue> values = new ArrayList<>();
+
+    boolean start = true;
+
+    int ignoredValues = -1;
+
+    boolean ended;
+
+    CollectingHandler(LongPredicate filter) {
+      this.filter = filter;
+    }
+
+    @Override
+    public boolean startUpdate(Long processId, Long processPIK) {
+      this.processId = processId;
+      this.processPIK = processPIK;
+      return start;
+    }
+
+    @Override
+    public void onIgnoredValues(int valueCount) {
+      ignoredValues = valueCount;
+    }
+
+    @Override
+    public boolean acceptValue(long tagId, boolean controlTag, long timestamp, long daqTimestamp) {
+      acceptCalls++;
+      lastTimestamp = timestamp;
+      lastDaqTimestamp = daqTimestamp;
+      return filter.test(tagId);
+    }
+
+    @Override
+    public void onValue(SourceDataTagValue value) {
+      values.add(value);
+    }
+
+    @Override
+    public void endUpdate() {
+      ended = true;
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Builder;
 import lombok.Data;
 import lombok.Singular;
+import org.apache.activemq.command.ActiveMQTextMessage;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -374,6 +375,61 @@ public class DataTagValueUpdateConverterTest {
 
   }
 
+  @Test
+  public void readJsonValueByValue() throws Exception {
+    value = new DataTagValueUpdate(11L, 22L);
+    for (long id = 0; id < 5; id++) {
+      value.addValue(new SourceDataTagValue(id, "tag_" + id, false, (int) id, null, new Timestamp(1000 + id), 1, false, null, 666));
+    }
+
+    ActiveMQTextMessage message = new ActiveMQTextMessage();
+    message.setText(mapper.writeValueAsString(value));
+    DataTagValueUpdateBinaryCodecTest.CollectingHandler handler = new DataTagValueUpdateBinaryCodecTest.CollectingHandler(id -> id != 2);
+    new DataTagValueUpdateConverter().fromMessage(message, handler);
+
+    assertEquals(Long.valueOf(11L), handler.processId);
+    assertEquals(Long.valueOf(22L), handler.processPIK);
+    assertEquals(4, handler.values.size());
+    assertEquals(Long.valueOf(3L), handler.values.get(2).getId());
+    assertEquals(3, handler.values.get(2).getValue());
+    assertEquals(1004L, handler.lastTimestamp);
+    assertTrue(handler.ended);
+  }
+
+  @Test
+  public void readJsonOfIgnoredUpdate() throws Exception {
+    value = new DataTagValueUpdate(11L, 22L);
+    for (long id = 0; id < 5; id++) {
+      value.addValue(new SourceDataTagValue(id, "tag_" + id, false, (int) id, null, new Timestamp(1000 + id), 1, false, null, 666));
+    }
+
+    ActiveMQTextMessage message = new ActiveMQTextMessage();
+    message.setText(mapper.writeValueAsString(value));
+    DataTagValueUpdateBinaryCodecTest.CollectingHandler handler = new DataTagValueUpdateBinaryCodecTest.CollectingHandler(id -> true);
+    handler.start = false;
+    new DataTagValueUpdateConverter().fromMessage(message, handler);
+
+    assertEquals(0, handler.acceptCalls);
+    assertTrue(handler.values.isEmpty());
+    assertEquals(5, handler.ignoredValues);
+    assertTrue(handler.ended);
+  }
+
+  @Test
+  public void readJsonWithValuesBeforeProcess() throws Exception {
+    String json = "{\"values\":" + mapper.writeValueAsString(value.getValues()) + ",\"processPIK\":22,\"processId\":11}";
+
+    ActiveMQTextMessage message = new ActiveMQTextMessage();
+    message.setText(json);
+    DataTagValueUpdateBinaryCodecTest.CollectingHandler handler = new DataTagValueUpdateBinaryCodecTest.CollectingHandler(id -> true);
+    new DataTagValueUpdateConverter().fromMessage(message, handler);
+
+    assertEquals(Long.valueOf(11L), handler.processId);
+    assertEquals(Long.valueOf(22L), handler.processPIK);
+    assertEquals(1, handler.values.size());
+    assertEquals(valueObject, handler.values.get(0));
+  }
+
   private Object[] getToObjectArray(DataTagValueUpdate update) {
     return (Object[]) ((SourceDataTagValue) value.getValues().toArray()[0]).getValue();
   }
@@ -53,6 +53,30 @@ public final class FallbackProperties {
     /** Number of lines that will be read in each go from the fallback file */
     private int numberLinesToReadFromFile = Integer.parseInt(NUMBER_LINES_FROM_FILE);
 
+    /** It indicates the size in bytes above which a new fallback segment file is started*/
+    private static final String SEGMENT_SIZE = "67108864";
+
+    /** It indicates whether the fallback segment files no longer written are read through memory mappings*/
+    private static final String MEMORY_MAPPED_READS = "false";
+
+    /** Size in bytes above which a new fallback segment file is started */
+    private long segmentSize = Long.parseLong(SEGMENT_SIZE);
+
+    /** Whether the fallback segment files no longer written are read through memory mappings */
+    private boolean memoryMappedReads = Boolean.parseBoolean(MEMORY_MAPPED_READS);
+
+    /** It indicates the maximum number of DB writes done in parallel when committing back the fallback data*/
+    private static final String RECOVERY_THREADS = "4";
+
+    /** It indicates the average time in milliseconds of the live DB writes above which the recovery slows down*/
+    private static final String RECOVERY_LIVE_LATENCY = "1000";
+
+    /** Maximum number of DB writes done in parallel when committing back the fallback data */
+    private int recoveryThreads = Integer.parseInt(RECOVERY_THREADS);
+
+    /** Average time in milliseconds of the live DB writes above which the recovery slows down */
+    private int recoveryLiveLatency = Integer.parseInt(RECOVERY_LIVE_LATENCY);
+
     /** It indicates that an error while getting the free space in the system's disc has occurred*/
     public static final int CMD_FREE_SPACE_ERROR = -1;
 
@@ -89,6 +113,10 @@ public final class FallbackProperties {
             this.minimunDiscFreeSpace = Integer.parseInt(fallbackProperties.getProperty("fallback.minimum.freespace", FREE_SPACE_CHECK_FREQUENCY));
             this.freeSpaceCheckFrequency = Integer.parseInt(fallbackProperties.getProperty("fallback.discsize.check", DISC_SIZE_CHECK));
             this.numberLinesToReadFromFile = Integer.parseInt(fallbackProperties.getProperty("fallback.read.lines.per.iteration", NUMBER_LINES_FROM_FILE));
+            this.segmentSize = Long.parseLong(fallbackProperties.getProperty("fallback.segment.size", SEGMENT_SIZE));
+            this.memoryMappedReads = Boolean.parseBoolean(fallbackProperties.getProperty("fallback.read.mapped", MEMORY_MAPPED_READS));
+            this.recoveryThreads = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.threads", RECOVERY_THREADS));
+            this.recoveryLiveLatency = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.live.latency", RECOVERY_LIVE_LATENCY));
           } else {
               LOG.warn(new StringBuffer("init() : Unable to find/read properties file ").append(PROPERTY_FILE_NAME).toString());
               LOG.info("init() : Using default values for the fallback parameters");
@@ -131,4 +159,32 @@ public final class FallbackProperties {
     public int getNumberLinesToReadFromFile() {
         return numberLinesToReadFromFile;
     }
+
+    /**
+     * @return the segmentSize
+     */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return the memoryMappedReads
+     */
+    public boolean isMemoryMappedReads() {
+        return memoryMappedReads;
+    }
+
+    /**
+     * @return the recoveryThreads
+     */
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    /**
+     * @return the recoveryLiveLatency
+     */
+    public int getRecoveryLiveLatency() {
+        return recoveryLiveLatency;
+    }
 }
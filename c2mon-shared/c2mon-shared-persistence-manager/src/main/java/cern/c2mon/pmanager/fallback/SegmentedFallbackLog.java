@@ -0,0 +1,675 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.fallback;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+
+/**
+ * Fallback storage made of append-only segment files of binary records,
+ * read back from a checkpoint. Unlike the text file of the
+ * {@link FallbackFileController}, it does not need to re-read the data
+ * already committed to resume reading.
+ *
+ * <p>Each record holds the string representation of an IFallback object in
+ * UTF-8, preceded by its length and its CRC32. The records are appended to
+ * the last segment, and a new segment is started once it exceeds the
+ * segment size. The segments are named after the fallback file, e.g.
+ * <code>DataTagFallback.log.0000000001.seg</code>.
+ *
+ * <p>The position (segment and byte offset) of the first record not yet
+ * committed to the DB is stored in the checkpoint file, e.g.
+ * <code>DataTagFallback.log.checkpoint</code>. The segments before the
+ * checkpoint are deleted as soon as it moves past them, and all of them
+ * once all the records have been committed.
+ *
+ * <p>The segments that are not written any more can be read through memory
+ * mappings.
+ *
+ * <p>All the methods are synchronized on the instance, on which the callers
+ * synchronize to make several calls atomic.
+ *
+ */
+public class SegmentedFallbackLog {
+
+    /** Log4j Logger for tags that cannot be logged to the database */
+    public static final Logger LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
+
+    /** Suffix of the segment file names, after the segment index */
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** Suffix of the checkpoint file name */
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /** Suffix of the file a new checkpoint is written to before replacing the checkpoint file */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Size of the length and CRC32 preceding each record */
+    private static final int HEADER_SIZE = 8;
+
+    /** Upper bound of the segment size, so that a segment can be memory mapped */
+    private static final long MAX_SEGMENT_SIZE = 1024L * 1024L * 1024L;
+
+    /** The fallback file, whose path prefixes the segment names */
+    private final File dataFile;
+
+    /** The file storing the checkpoint */
+    private final File checkpointFile;
+
+    /** Size in bytes above which a new segment is started */
+    private final long segmentSize;
+
+    /** Whether the segments no longer written are read through memory mappings */
+    private final boolean memoryMapped;
+
+    /** Segment and offset of the first record not yet committed */
+    private long checkpointSegment = 1;
+    private long checkpointOffset = 0;
+
+    /** Segment and offset of the next record to read */
+    private long readSegment;
+    private long readOffset;
+
+    /** End of the segment being read, or -1 if not known yet */
+    private long readEnd = -1;
+
+    /** Number of records read since the checkpoint */
+    private int readSinceCheckpoint = 0;
+
+    /** Segment being written and its size */
+    private long writeSegment;
+    private long writeOffset;
+
+    /** Number of records after the checkpoint */
+    private volatile long numberOfRecords = 0;
+
+    /** Stream file output for the segment being written */
+    private DataOutputStream output;
+
+    /** Stream file input for the segment being read, if not memory mapped */
+    private DataInputStream input;
+
+    /** Mapping of the segment being read, if memory mapped */
+    private MappedByteBuffer mappedInput;
+
+    /**
+     * Constructor for the class. The records written by a previous instance
+     * are read back from the stored checkpoint.
+     *
+     * @param fallbackPath
+     *            path of the fallback file, used as prefix of the segment files
+     * @param segmentSize
+     *            size in bytes above which a new segment file is started
+     * @param memoryMapped
+     *            whether the segments no longer written are read through
+     *            memory mappings
+     */
+    public SegmentedFallbackLog(final String fallbackPath, final long segmentSize, final boolean memoryMapped) {
+        this.dataFile = new File(fallbackPath).getAbsoluteFile();
+        this.checkpointFile = new File(dataFile.getPath() + CHECKPOINT_SUFFIX);
+        this.segmentSize = Math.min(Math.max(segmentSize, HEADER_SIZE), MAX_SEGMENT_SIZE);
+        this.memoryMapped = memoryMapped;
+        try {
+            open();
+            LOG.info("SegmentedFallbackLog() - The fallback segments of " + dataFile.getName() + " hold "
+                    + numberOfRecords + " records to commit");
+        } catch (IOException e) {
+            LOG.error("SegmentedFallbackLog() - Error while opening the fallback segments of " + dataFile.getName(), e);
+        }
+    }
+
+    /**
+     * @return the fallback file, prefix of the segment files
+     */
+    public final File getDataFile() {
+        return dataFile;
+    }
+
+    /**
+     * @return the checkpointFile
+     */
+    public final File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @return the number of records not yet committed
+     */
+    public final long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * @return whether all the records have been committed
+     */
+    public final boolean isEmpty() {
+        return numberOfRecords == 0;
+    }
+
+    /**
+     * @return the number of segment files on disk
+     */
+    public final synchronized int getNumberOfSegments() {
+        return listSegments().size();
+    }
+
+    /**
+     * Appends IFallback objects to the log. They are flushed to the file
+     * once all written.
+     *
+     * @param objects
+     *            The IFallback objects to be written
+     * @throws DataFallbackException
+     *             An exception is thrown if the objects cannot be written
+     */
+    public final synchronized void append(final List<? extends IFallback> objects) throws DataFallbackException {
+        try {
+            for (IFallback object : objects) {
+                writeRecord(object.toString());
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new DataFallbackException("append() : An error has ocurred while trying to write in the "
+                    + segmentFile(writeSegment).getName() + " file " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a record, being the string representation of an IFallback
+     * object, to the log.
+     *
+     * @param record
+     *            The string representation of the object
+     * @throws DataFallbackException
+     *             An exception is thrown if the record cannot be written
+     */
+    public final synchronized void append(final String record) throws DataFallbackException {
+        try {
+            writeRecord(record);
+            output.flush();
+        } catch (IOException e) {
+            throw new DataFallbackException("append() : An error has ocurred while trying to write in the "
+                    + segmentFile(writeSegment).getName() + " file " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the next records. Those that cannot be transformed into IFallback
+     * objects are logged and counted as read.
+     *
+     * @param maxRecords
+     *            The maximum number of records to read
+     * @param fallbackObj
+     *            An IFallback object to which type the records will be
+     *            transformed
+     * @return The read objects and the number of read records
+     * @throws DataFallbackException
+     *             An exception is thrown if the records cannot be read
+     */
+    public final synchronized FallbackObjectContainer read(final int maxRecords, final IFallback fallbackObj)
+            throws DataFallbackException {
+        List<IFallback> objects = new ArrayList<>();
+        int read = 0;
+        try {
+            byte[] payload;
+            while (read < maxRecords && (payload = nextRecord()) != null) {
+                read++;
+                readSinceCheckpoint++;
+                String record = new String(payload, StandardCharsets.UTF_8);
+                try {
+                    objects.add(fallbackObj.getObject(record));
+                } catch (DataFallbackException e) {
+                    LOG.error("read() - " + e.getMessage() + "" + record);
+                }
+            }
+        } catch (IOException e) {
+            throw new DataFallbackException(e.getMessage());
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("read() - " + objects.size() + " records have been read from the fallback segments");
+        }
+        return new FallbackObjectContainer(objects, read);
+    }
+
+    /**
+     * Places the reading position after the given number of records from the
+     * checkpoint, i.e. after the records already committed.
+     *
+     * @param records
+     *            The number of records after the checkpoint to skip
+     * @throws DataFallbackException
+     *             An exception is thrown if the records cannot be read
+     */
+    public final synchronized void rewind(final int records) throws DataFallbackException {
+        closeInput();
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
+        readSinceCheckpoint = 0;
+        try {
+            while (readSinceCheckpoint < records && nextRecord() != null) {
+                readSinceCheckpoint++;
+            }
+        } catch (IOException e) {
+            throw new DataFallbackException(e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the checkpoint after the given number of records, committed to
+     * the DB, and deletes the segments it has left. Normally these are the
+     * records read since the last checkpoint, in which case the checkpoint
+     * simply takes the reading position.
+     *
+     * @param records
+     *            The number of records after the checkpoint committed to the DB
+     * @throws DataFallbackException
+     *             An exception is thrown if the checkpoint cannot be stored
+     */
+    public final synchronized void commit(final int records) throws DataFallbackException {
+        if (records != readSinceCheckpoint) {
+            rewind(records);
+        }
+        numberOfRecords -= readSinceCheckpoint;
+        readSinceCheckpoint = 0;
+        if (numberOfRecords <= 0) {
+            clear();
+            return;
+        }
+
+        if (readSegment < writeSegment && readOffset >= readEnd()) {
+            closeInput();
+            readSegment++;
+            readOffset = 0;
+        }
+        long previousSegment = checkpointSegment;
+        checkpointSegment = readSegment;
+        checkpointOffset = readOffset;
+        writeCheckpoint();
+        for (long index = previousSegment; index < checkpointSegment; index++) {
+            deleteSegment(index);
+        }
+    }
+
+    /**
+     * Deletes all the segments and resets the checkpoint.
+     *
+     * @throws DataFallbackException
+     *             An exception is thrown if the checkpoint cannot be stored
+     */
+    public final synchronized void clear() throws DataFallbackException {
+        closeInput();
+        closeOutput();
+        for (long index = checkpointSegment; index <= writeSegment; index++) {
+            deleteSegment(index);
+        }
+        checkpointSegment = writeSegment;
+        checkpointOffset = 0;
+        readSegment = writeSegment;
+        readOffset = 0;
+        readSinceCheckpoint = 0;
+        writeOffset = 0;
+        numberOfRecords = 0;
+        writeCheckpoint();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("clear() - The fallback segments of " + dataFile.getName() + " have been deleted");
+        }
+    }
+
+    /**
+     * Closes the segment files. They are opened again when needed.
+     */
+    public final synchronized void close() {
+        try {
+            closeInput();
+            closeOutput();
+        } catch (DataFallbackException e) {
+            LOG.error("close() - The fallback segments could not be closed", e);
+        }
+    }
+
+    /**
+     * Reads the checkpoint and counts the records after it. A record partly
+     * written at the end of the last segment (e.g. at a crash) is truncated.
+     */
+    private void open() throws IOException {
+        List<Long> segments = listSegments();
+        if (checkpointFile.exists() && checkpointFile.length() >= 2 * Long.BYTES) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+                checkpointSegment = in.readLong();
+                checkpointOffset = in.readLong();
+            }
+        } else if (!segments.isEmpty()) {
+            checkpointSegment = segments.get(0);
+            checkpointOffset = 0;
+        }
+
+        writeSegment = checkpointSegment;
+        for (Long index : segments) {
+            if (index < checkpointSegment) {
+                // left by a crash after the checkpoint was stored
+                deleteSegment(index);
+            } else {
+                writeSegment = index;
+            }
+        }
+
+        for (long index = checkpointSegment; index <= writeSegment; index++) {
+            File segment = segmentFile(index);
+            long end = 0;
+            if (segment.exists()) {
+                end = scanSegment(segment, index == checkpointSegment ? checkpointOffset : 0);
+                if (end < segment.length()) {
+                    LOG.warn("open() - Ignoring " + (segment.length() - end) + " bytes of invalid records at the end of "
+                            + segment.getName());
+                    if (index == writeSegment) {
+                        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                            file.setLength(end);
+                        }
+                    }
+                }
+            }
+            writeOffset = end;
+        }
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
+    }
+
+    /**
+     * Counts the valid records of a segment from the given offset.
+     *
+     * @return the offset after the last valid record
+     */
+    private long scanSegment(final File segment, final long start) throws IOException {
+        long length = segment.length();
+        long position = start;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            long skipped = 0;
+            while (skipped < start) {
+                long n = in.skip(start - skipped);
+                if (n <= 0) {
+                    return start;
+                }
+                skipped += n;
+            }
+            CRC32 crc = new CRC32();
+            while (position + HEADER_SIZE <= length) {
+                int recordLength = in.readInt();
+                int checksum = in.readInt();
+                if (recordLength < 0 || position + HEADER_SIZE + recordLength > length) {
+                    break;
+                }
+                byte[] payload = new byte[recordLength];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                position += HEADER_SIZE + recordLength;
+                numberOfRecords++;
+            }
+        }
+        return position;
+    }
+
+    private void writeRecord(final String record) throws IOException {
+        byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+        if (writeOffset >= segmentSize) {
+            closeOutputQuietly();
+            writeSegment++;
+            writeOffset = 0;
+        }
+        if (output == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("writeRecord() : Opening the writer for the " + segmentFile(writeSegment).getName() + " file");
+            }
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile(writeSegment), true)));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        output.writeInt(payload.length);
+        output.writeInt((int) crc.getValue());
+        output.write(payload);
+        writeOffset += HEADER_SIZE + payload.length;
+        numberOfRecords++;
+    }
+
+    /**
+     * @return the payload of the next valid record, or null if all the
+     *         written records have been read
+     */
+    private byte[] nextRecord() throws IOException {
+        while (true) {
+            if (input == null && mappedInput == null && segmentFile(readSegment).exists()) {
+                openInput();
+            }
+            long end = readEnd();
+            if (readOffset + HEADER_SIZE <= end) {
+                byte[] payload = readRecord(end);
+                if (payload != null) {
+                    return payload;
+                }
+                LOG.error("nextRecord() - Invalid record at offset " + readOffset + " of "
+                        + segmentFile(readSegment).getName() + ", skipping the rest of the segment");
+                closeInputQuietly();
+                readOffset = end;
+            }
+            if (readSegment >= writeSegment) {
+                return null;
+            }
+            closeInputQuietly();
+            readSegment++;
+            readOffset = 0;
+        }
+    }
+
+    /**
+     * @return the payload of the record at the reading position, or null if
+     *         it is invalid
+     */
+    private byte[] readRecord(final long end) throws IOException {
+        int recordLength;
+        int checksum;
+        if (mappedInput != null) {
+            mappedInput.position((int) readOffset);
+            recordLength = mappedInput.getInt();
+            checksum = mappedInput.getInt();
+        } else {
+            recordLength = input.readInt();
+            checksum = input.readInt();
+        }
+        if (recordLength < 0 || readOffset + HEADER_SIZE + recordLength > end) {
+            return null;
+        }
+        byte[] payload = new byte[recordLength];
+        if (mappedInput != null) {
+            mappedInput.get(payload);
+        } else {
+            input.readFully(payload);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        readOffset += HEADER_SIZE + recordLength;
+        return payload;
+    }
+
+    /**
+     * @return the end of the written records of the segment being read
+     */
+    private long readEnd() {
+        if (readSegment == writeSegment) {
+            return writeOffset;
+        }
+        if (readEnd < 0) {
+            readEnd = segmentFile(readSegment).length();
+        }
+        return readEnd;
+    }
+
+    private void openInput() throws IOException {
+        File segment = segmentFile(readSegment);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("openInput() : Opening the reader for the " + segment.getName() + " file");
+        }
+        if (memoryMapped && readSegment < writeSegment) {
+            // the mapping remains valid once the channel is closed
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+                mappedInput = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            readEnd = mappedInput.limit();
+        } else {
+            FileInputStream in = new FileInputStream(segment);
+            in.getChannel().position(readOffset);
+            input = new DataInputStream(new BufferedInputStream(in));
+        }
+    }
+
+    private void closeInput() throws DataFallbackException {
+        mappedInput = null;
+        readEnd = -1;
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                throw new DataFallbackException(e.getMessage());
+            } finally {
+                input = null;
+            }
+        }
+    }
+
+    private void closeInputQuietly() {
+        try {
+            closeInput();
+        } catch (DataFallbackException e) {
+            LOG.warn("closeInputQuietly() - " + e.getMessage());
+        }
+    }
+
+    private void closeOutput() throws DataFallbackException {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                throw new DataFallbackException(e.getMessage());
+            } finally {
+                output = null;
+            }
+        }
+    }
+
+    private void closeOutputQuietly() {
+        try {
+            closeOutput();
+        } catch (DataFallbackException e) {
+            LOG.warn("closeOutputQuietly() - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the checkpoint, overwriting the previous one.
+     */
+    private void writeCheckpoint() throws DataFallbackException {
+        // written aside and renamed, so that a crash never leaves a torn checkpoint
+        File tempFile = new File(checkpointFile.getPath() + TEMP_SUFFIX);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        buffer.putLong(checkpointSegment).putLong(checkpointOffset).flip();
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DataFallbackException("writeCheckpoint() - The checkpoint could not be stored in "
+                    + checkpointFile.getName() + " " + e.getMessage());
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("writeCheckpoint() - The checkpoint file has been updated with segment " + checkpointSegment
+                    + " and offset " + checkpointOffset);
+        }
+    }
+
+    private void deleteSegment(final long index) {
+        File segment = segmentFile(index);
+        if (segment.exists()) {
+            if (segment.delete()) {
+                LOG.info("deleteSegment() - The " + segment.getAbsolutePath() + " has been deleted");
+            } else {
+                LOG.error("deleteSegment() - The " + segment.getAbsolutePath() + " could not be deleted");
+            }
+        }
+    }
+
+    private File segmentFile(final long index) {
+        return new File(String.format("%s.%010d%s", dataFile.getPath(), index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return the indexes of the segment files on disk, in ascending order
+     */
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        String prefix = dataFile.getName() + ".";
+        File[] files = dataFile.getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("listSegments() - Ignoring the file " + name);
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.fallback.manager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -24,15 +26,16 @@ import org.slf4j.LoggerFactory;
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.fallback.FallbackFileController;
 import cern.c2mon.pmanager.fallback.FallbackProperties;
+import cern.c2mon.pmanager.fallback.SegmentedFallbackLog;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
 import cern.c2mon.pmanager.fallback.exception.SystemDiskSpaceException;
 import cern.c2mon.pmanager.fallback.util.SystemResourcesParameters;
 
 /**
  * This class is a helper that allows to encapsulate the mechanism that is being
- * used as a fallback, in this case a logfile. It works as a facade, making
- * totally independent the application logic from the final log system that is
- * used.
+ * used as a fallback, in this case a {@link SegmentedFallbackLog}. It works as
+ * a facade, making totally independent the application logic from the final
+ * log system that is used.
  *
  * @author mruizgar
  *
@@ -42,17 +45,20 @@ public class FallbackFileManager {
     /** Log4j Logger for tags that cannot be logged to the database (emergency) */
     public static final Logger LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
 
-    /** FallbackFileController instance */
-    private final FallbackFileController fFileController;
+    /** Number of lines imported from a text fallback file between two records of the import progress */
+    private static final int IMPORT_PROGRESS_INTERVAL = 1000;
+
+    /** SegmentedFallbackLog instance */
+    private final SegmentedFallbackLog fallbackLog;
 
     /**
      * Indicates which type of IFallback objects will be handled by this class
-     * and by its FallbackFileController instance
+     * and by its SegmentedFallbackLog instance
      */
     private final IFallback fallbackObj;
 
     /**
-     * It indicates the number of lines in the fallback file for which, when
+     * It indicates the number of records in the fallback log for which, when
      * reached, the free disk space in the system will be checked
      */
     private int nextCheckFallbackData = 0;
@@ -73,7 +79,8 @@ public class FallbackFileManager {
     }
 
     /**
-     * Public constructor
+     * Public constructor. The data of a fallback file written as text by a
+     * previous version is moved to the fallback log.
      *
      * @param fallbackFile
      *            The absolute path for the fallback file
@@ -84,8 +91,74 @@ public class FallbackFileManager {
      *
      */
     public FallbackFileManager(final String fallbackFile, final IFallback fallbackObj) {
-        this.fFileController = new FallbackFileController(fallbackFile);
+        final FallbackProperties fProperties = FallbackProperties.getInstance();
+        this.fallbackLog = new SegmentedFallbackLog(fallbackFile, fProperties.getSegmentSize(),
+                fProperties.isMemoryMappedReads());
         this.fallbackObj = fallbackObj;
+        importTextFile(fallbackFile);
+    }
+
+    /**
+     * Moves the lines of a text fallback file not yet committed to the
+     * fallback log, and deletes the file and its line counter. The number
+     * of lines moved is stored in the line counter as the import goes, so
+     * that an import which fails part-way resumes after these lines at the
+     * next start instead of moving them again.
+     *
+     * @param fallbackFile
+     *            The absolute path for the text fallback file
+     */
+    private void importTextFile(final String fallbackFile) {
+        if (!new File(fallbackFile).exists()) {
+            return;
+        }
+        final FallbackFileController fFileController = new FallbackFileController(fallbackFile);
+        final int previouslyImported = fFileController.getReadBackLines();
+        int imported = 0;
+        try {
+            if (previouslyImported < fFileController.getNumberOfLines()) {
+                String line;
+                while ((line = fFileController.getInput().readLine()) != null) {
+                    fallbackLog.append(line);
+                    imported++;
+                    if (imported % IMPORT_PROGRESS_INTERVAL == 0) {
+                        recordImportProgress(fFileController, previouslyImported + imported);
+                    }
+                }
+                recordImportProgress(fFileController, previouslyImported + imported);
+            }
+            fFileController.finalize();
+            if (!fFileController.getDataFile().delete() || !fFileController.getCounterFile().delete()) {
+                LOG.error("importTextFile() - The files of " + fallbackFile + " could not be deleted");
+            }
+            LOG.info("importTextFile() - " + imported + " lines of " + fallbackFile + " have been moved to the fallback log");
+        } catch (IOException | DataFallbackException e) {
+            LOG.error("importTextFile() - The lines of " + fallbackFile + " could not be moved to the fallback log after "
+                    + imported + " lines, the import resumes after them at the next start", e);
+            try {
+                recordImportProgress(fFileController, previouslyImported + imported);
+            } catch (DataFallbackException ex) {
+                LOG.error("importTextFile() - The import progress of " + fallbackFile + " could not be stored", ex);
+            }
+            fFileController.finalize();
+        }
+    }
+
+    /**
+     * Stores in the line counter of a text fallback file the number of lines
+     * already moved to the fallback log.
+     *
+     * @param fFileController
+     *            The controller of the text fallback file
+     * @param lines
+     *            The number of lines moved so far
+     * @throws DataFallbackException
+     *             An exception is thrown if the counter cannot be written
+     */
+    private static void recordImportProgress(final FallbackFileController fFileController, final int lines)
+            throws DataFallbackException {
+        fFileController.setReadBackLines(lines);
+        fFileController.updateNumberOfProcessedLines();
     }
 
     /**
@@ -97,21 +170,8 @@ public class FallbackFileManager {
      *             An exception is thrown in case something wrongs happens while
      *             writing in the file
      */
-    public final void fallback(final List data) throws DataFallbackException {
-
-        // If the file is empty we close the reading descriptor since it means
-        // that a new file is going to be created
-        if (isFallbackFileEmpty())
-            fFileController.closeFallbackInputStream();
-        // open the fallback log file output stream
-        fFileController.openFallbackOutputStream();
-        final int size = data.size();
-        // Iterate through all the datatags and logged all the info that
-        // contains into the fallback log file
-        for (int i = 0; i != size; i++) {
-            fFileController.writeLine((IFallback) data.get(i));
-        }
-        fFileController.setNumberOfLines(fFileController.getNumberOfLines() + size);
+    public final void fallback(final List<? extends IFallback> data) throws DataFallbackException {
+        fallbackLog.append(data);
     }
 
     /**
@@ -124,25 +184,12 @@ public class FallbackFileManager {
      *             writing the object
      */
     public final void fallback(final IFallback fallbackObj) throws DataFallbackException {
-
-        try {
-            // If the file is empty we close the reading descriptor since it
-            // means that
-            // a new file is going to be created
-            if (isFallbackFileEmpty())
-                fFileController.closeFallbackInputStream();
-            // open the fallback log file output stream
-            fFileController.openFallbackOutputStream();
-            fFileController.writeLine(fallbackObj);
-            fFileController.setNumberOfLines(fFileController.getNumberOfLines() + 1);
-        } catch (DataFallbackException e) {
-            throw new DataFallbackException(e.getMessage());
-        }
+        fallbackLog.append(fallbackObj.toString());
     }
 
     /**
-     * Checks the free disc space every time a determined number of lines are
-     * written to the file
+     * Checks the free disc space every time a determined number of records are
+     * written to the log
      *
      * @param minimumFreeSpace
      *            The minimum disk space that has to be free for continue
@@ -158,12 +205,12 @@ public class FallbackFileManager {
         final FallbackProperties fProperties = FallbackProperties.getInstance();
         boolean checkDone = false;
 
-        if (fFileController.getNumberOfLines() > nextCheckFallbackData) {
+        if (fallbackLog.getNumberOfRecords() > nextCheckFallbackData) {
             checkDone = true;
             if (LOG.isDebugEnabled())
                 LOG
-                        .debug("isDiskSpaceCheckDone() : Doing the check since the number of lines are "
-                                + fFileController.getNumberOfLines()
+                        .debug("isDiskSpaceCheckDone() : Doing the check since the number of records are "
+                                + fallbackLog.getNumberOfRecords()
                                 + " and the current value for nextcheck is "
                                 + nextCheckFallbackData);
             long freeSpace = SystemResourcesParameters.getFreeSpace();
@@ -172,7 +219,7 @@ public class FallbackFileManager {
                 throw new SystemDiskSpaceException("Reached the limit of free space of "
                         + minimumFreeSpace + ", current free space is " + freeSpace);
             } else {
-                nextCheckFallbackData = fFileController.getNumberOfLines()
+                nextCheckFallbackData = (int) fallbackLog.getNumberOfRecords()
                         + fProperties.getFreeSpaceCheckFrequency();
                 if (LOG.isDebugEnabled())
                     LOG.debug("isDiskSpaceCheckDone() : New value of nextCheckDataTags is "
@@ -186,80 +233,50 @@ public class FallbackFileManager {
      * It retrieves an instance of the object in charge of dealing with the
      * fallback mechanism
      *
-     * @return A DataTagFallback object
+     * @return The SegmentedFallbackLog object
      */
-    public final FallbackFileController getFallbackFileController() {
-        return this.fFileController;
+    public final SegmentedFallbackLog getFallbackLog() {
+        return this.fallbackLog;
     }
 
     /**
-     * Reads a number of lines from the fallback mechanism
+     * Reads a number of records from the fallback mechanism
      *
      * @param numberOfLines
-     *            Number of lines to be read
-     * @return Number of lines that have been read
+     *            Number of records to be read
+     * @return The read objects and the number of records that have been read
      * @throws DataFallbackException
      *             An exception is thrown if something wrongs happens while
      *             reading the file
      */
     public final FallbackObjectContainer readDataBack(final int numberOfLines) throws DataFallbackException {
-        // close the outputstream if it was still opened
-        fFileController.closeFallbackOutputStream();
-        fFileController.openFallbackInputStream();
-        // read from the fallback log mechanism the indicated number of lines
-        final FallbackObjectContainer data = fFileController.readLines(numberOfLines, fallbackObj);
-        // dtFallback.closeFallbackInputStream();
-        return data;
+        return fallbackLog.read(numberOfLines, fallbackObj);
     }
 
     /**
      * It calls the remove functionality from the fallback log mechanism. It
-     * updates the counter indicating the number of lines that have been already
-     * processed from the file. When all the datatags contained in the file has
-     * been committed to the DB all the contents of the fallback file are
-     * completely removed
+     * moves the checkpoint after the records that have been already committed
+     * to the DB, deleting the segment files that only contain committed
+     * records.
      *
      * @param numberOfLines
-     *            Number of lines that has been already processed from the log
-     *            file
-     * @return A boolean that indicates whether the lines were successfully
+     *            Number of records that has been already processed from the
+     *            log
+     * @return A boolean that indicates whether the records were successfully
      *         removed or not
      *
      */
     public final boolean removeReadData(final int numberOfLines) {
-
         boolean removed = true;
-
-        // Update the number of already committed datatags
-        fFileController.setReadBackLines(numberOfLines + fFileController.getReadBackLines());
-        // Virtually remove those datatags from the file
-        try {
-            fFileController.updateNumberOfProcessedLines();
-        } catch (DataFallbackException e) {
-            removed = false;
-        }
         try {
-            // Physically remove all the contents from the file once all the
-            // datatags have been committed to the DB
-            if (LOG.isDebugEnabled()) {
-                LOG
-                        .debug("removeReadData : Checking if the file can be removed the number of read lines is: "
-                                + fFileController.getReadBackLines()
-                                + " and the file's lines is "
-                                + fFileController.getNumberOfLines());
-            }
-            if (fFileController.getReadBackLines() == fFileController.getNumberOfLines()) {
-                // Close the reading descriptor
-                fFileController.closeFallbackInputStream();
-                fFileController.clearFileContents();
-                fFileController.setReadBackLines(0);
-                fFileController.setNumberOfLines(0);
+            fallbackLog.commit(numberOfLines);
+            if (fallbackLog.isEmpty()) {
                 // We also set the number for doing the disc file check to zero
                 resetNextDiscSpaceCheck();
             }
         } catch (DataFallbackException e) {
             removed = false;
-            LOG.error("Exception caught while attempting to remove lines from the Fallback file", e);
+            LOG.error("Exception caught while attempting to remove records from the fallback log", e);
         }
         return removed;
     }
@@ -272,19 +289,17 @@ public class FallbackFileManager {
     }
 
     /**
-     * Places the file descriptor in the line indicated as parameter
+     * Places the reading position after the records already processed
      *
      * @param lastCommited
-     *            Number of lines already processed
+     *            Number of records committed since the last removal
      * @throws DataFallbackException
      *             An exception is thrown if something went wrong while reading
-     *             the lines from the file
+     *             the records from the log
      */
     public final void goToLastProcessedLine(final int lastCommited)
             throws DataFallbackException {
-        fFileController.closeFallbackInputStream();
-        int readLines = fFileController.getReadBackLines();
-        fFileController.goToLine(readLines + lastCommited);
+        fallbackLog.rewind(lastCommited);
     }
 
     /**
@@ -293,13 +308,13 @@ public class FallbackFileManager {
      * @return The value indicating the status of the log
      */
     public final boolean isFallbackFileEmpty() {
-        return !((fFileController.getNumberOfLines()) > 0);
+        return fallbackLog.isEmpty();
     }
 
     /**
      * It releases the object memory
      */
     public final void finalize() {
-        this.fFileController.finalize();
+        this.fallbackLog.close();
     }
 }
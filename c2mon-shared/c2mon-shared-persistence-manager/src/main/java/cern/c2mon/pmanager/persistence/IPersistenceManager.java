@@ -48,6 +48,20 @@ public interface IPersistenceManager<T extends IFallback> {
      */
     void storeData(T dataObject);
 
+    /**
+     * Stores a list of IFallback objects straight into the fallback file, from
+     * which they will be committed to the database by the recovery thread. It is
+     * meant for the handlers which write asynchronously, when a write fails after
+     * storeData returned. By default the objects are passed to storeData,
+     * which writes them to the fallback file if the DB is still unavailable
+     *
+     * @param data
+     *            The objects which could not be stored in the DB
+     */
+    default void fallback(List<T> data) {
+        storeData(data);
+    }
+
     /**
      * It releases the memory that may be used by this interface implementations
      */
@@ -16,9 +16,13 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.impl;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,9 +83,37 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    * instance of PersistenceManager will stored a unique instance of that
    * class, that will be executed as an independent thread. This way we will
    * avoid that the same fallback file tries to be treated by different
-   * threads at the same time
+   * threads at the same time. Null once shut down
+   */
+  private volatile DataRecoveryThread dataRecovery;
+
+  /**
+   * Name under which the JMX view of the recovery is registered, null if it
+   * could not be registered
+   */
+  private ObjectName dataRecoveryName;
+
+  /**
+   * Weight of the last write in the average duration of the live writes
+   */
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  /**
+   * Number of milliseconds after which the DB is considered free of live
+   * writes if none happened
+   */
+  private static final long LIVE_WRITE_TIMEOUT = 10000;
+
+  /**
+   * Average duration in milliseconds of the last successful writes of live
+   * data to the DB
+   */
+  private volatile double liveWriteLatency = 0;
+
+  /**
+   * Time of the last successful write of live data to the DB
    */
-  private DataRecoveryThread dataRecovery = new DataRecoveryThread(this);
+  private volatile long lastLiveWrite = 0;
 
   /**
    * Log4j Logger for this class
@@ -135,6 +167,20 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     this.sleepTime = sleepTime;
   }
 
+  /**
+   * Gives the load of the DB for the DataRecoveryThread, which slows down
+   * the recovery of the fallback data when the live writes become slow.
+   *
+   * @return the average duration in milliseconds of the last successful
+   * writes of live data to the DB, or 0 if there was none for a while
+   */
+  public final double getLiveWriteLatency() {
+    if (System.currentTimeMillis() - lastLiveWrite > LIVE_WRITE_TIMEOUT) {
+      return 0;
+    }
+    return liveWriteLatency;
+  }
+
   /**
    * @param minFreeDiscSpace the minFreeDiscSpace to set
    */
@@ -161,6 +207,23 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     this.dbHandler = dbHandler;
     this.alarmSender = aSender;
     fallbackManager = new FallbackFileManager(falbackFile, fallbackObj);
+    dataRecovery = new DataRecoveryThread(this);
+    registerDataRecovery();
+  }
+
+  /**
+   * Registers the JMX view of the progress of the recovery of the fallback
+   * file
+   */
+  private void registerDataRecovery() {
+    String fallbackFile = fallbackManager.getFallbackLog().getDataFile().getAbsolutePath();
+    try {
+      ObjectName name = new ObjectName("cern.c2mon.pmanager:type=DataRecovery,name=" + ObjectName.quote(fallbackFile));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(dataRecovery, name);
+      dataRecoveryName = name;
+    } catch (JMException e) {
+      LOG.warn("Unable to register the JMX view of the recovery of the fallback file " + fallbackFile, e);
+    }
   }
 
   /**
@@ -177,10 +240,7 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
   @Override
   public final void storeData(final List<T> data) {
     if (log(data) && !fallbackManager.isFallbackFileEmpty()) {
-      if (!this.dataRecovery.isRunning()) {
-        dataRecovery.setPersistenceManager(this);
-        new Thread(dataRecovery).start();
-      }
+      startDataRecovery();
     }
   }
 
@@ -196,9 +256,37 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
   @Override
   public final void storeData(final T object) {
     if (log(object) && !fallbackManager.isFallbackFileEmpty()) {
-      if (!this.dataRecovery.isRunning()) {
-        dataRecovery.setPersistenceManager(this);
-        new Thread(dataRecovery).start();
+      startDataRecovery();
+    }
+  }
+
+  /**
+   * Starts the thread committing back the data of the fallback file, unless
+   * it is already running or the PersistenceManager is shut down
+   */
+  private void startDataRecovery() {
+    DataRecoveryThread recovery = dataRecovery;
+    if (recovery != null) {
+      recovery.start(this);
+    }
+  }
+
+  /**
+   * Writes a collection of IFallback objects to the fallback file, without
+   * trying the DB first.
+   *
+   * @param data List of IFallback objects that could not be written to the DB
+   */
+  @Override
+  public final void fallback(final List<T> data) {
+    if (data == null || data.isEmpty()) {
+      return;
+    }
+    synchronized (fallbackManager.getFallbackLog()) {
+      if (!writeToFallback(data)) {
+        for (T fallbackObj : data) {
+          FALLBACK_LOG.info(fallbackObj.toString());
+        }
       }
     }
   }
@@ -244,7 +332,9 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     }
 
     try {
+      long start = System.nanoTime();
       dbHandler.storeData(data);
+      recordLiveWrite(start);
       LOG.info(+size + " tags have been successfully logged into the DB");
       alarmSender.dbUnavailable(DOWN, null, dbHandler.getDBInfo());
     } catch (IDBPersistenceException e) {
@@ -252,7 +342,7 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
       commitedTags = e.getCommited();
       if (size > commitedTags) {
         List<T> temp = data.subList(commitedTags, size);
-        synchronized (fallbackManager.getFallbackFileController()) {
+        synchronized (fallbackManager.getFallbackLog()) {
           if (!writeToFallback(temp)) {
             for (int i = 0; i < temp.size(); i++) {
               fallbackObj = temp.get(i);
@@ -289,11 +379,13 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     }
 
     try {
+      long start = System.nanoTime();
       dbHandler.storeData(object);
+      recordLiveWrite(start);
       alarmSender.dbUnavailable(DOWN, null, dbHandler.getDBInfo());
     } catch (IDBPersistenceException e) {
       dbConnectionUp = false;
-      synchronized (fallbackManager.getFallbackFileController()) {
+      synchronized (fallbackManager.getFallbackLog()) {
         List<T> temp = new ArrayList<>();
         temp.add(object);
         if (!writeToFallback(temp)) {
@@ -307,6 +399,17 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     return dbConnectionUp;
   }
 
+  /**
+   * Adds the duration of a successful live write to the average
+   *
+   * @param start the time in nanoseconds at which the write started
+   */
+  private synchronized void recordLiveWrite(final long start) {
+    double latency = (System.nanoTime() - start) / 1e6;
+    liveWriteLatency = liveWriteLatency == 0 ? latency : liveWriteLatency + LATENCY_SMOOTHING * (latency - liveWriteLatency);
+    lastLiveWrite = System.currentTimeMillis();
+  }
+
   /**
    * Stores a collection of IFallback objects into the fallback file. In case
    * the disk space is close to get full not data will be written to the file
@@ -329,18 +432,18 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
       // There is still free disc space, so we TERMINATE the alarm if it
       // has been sent and reactivate the email sender
       if (checked) {
-        alarmSender.diskFull(DOWN, fallbackManager.getFallbackFileController()
+        alarmSender.diskFull(DOWN, fallbackManager.getFallbackLog()
             .getDataFile().getParentFile().getAbsolutePath());
       }
       // Start writing to the fallback file since there is still free disc
       // space
       try {
         FALLBACK_LOG.info("Writing " + temp.size() + " dataTags to the fallback file "
-            + fallbackManager.getFallbackFileController().getDataFile().getAbsolutePath());
+            + fallbackManager.getFallbackLog().getDataFile().getAbsolutePath());
         fallbackManager.fallback(temp);
         // Check if the writing problem with the fallback file has been
         // fixed
-        alarmSender.fileNotReachable(DOWN, fallbackManager.getFallbackFileController()
+        alarmSender.fileNotReachable(DOWN, fallbackManager.getFallbackLog()
             .getDataFile());
 
       } catch (DataFallbackException ex) {
@@ -354,7 +457,7 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
         // datatags to the DB cannot either being logged into the
         // fallback log file
         alarmSender.fileNotReachable(ACTIVATED, fallbackManager
-            .getFallbackFileController().getDataFile());
+            .getFallbackLog().getDataFile());
         // Since there was a problem with the fallback mechanism (and
         // there is enough disk space),
         // we want to log the dataTags into one of the log4j log files
@@ -363,7 +466,7 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
 
     } catch (SystemDiskSpaceException e) {
       // Minimum free disc space reached
-      alarmSender.diskFull(ACTIVATED, fallbackManager.getFallbackFileController()
+      alarmSender.diskFull(ACTIVATED, fallbackManager.getFallbackLog()
           .getDataFile().getParentFile().getAbsolutePath());
     } catch (Exception e) {
       FALLBACK_LOG.error("RuntimeException: " + e.getMessage(), e);
@@ -372,15 +475,15 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
   }
 
   /**
-   * This method will be called by the client when this last one wants to
-   * liberate its resources before it is destroyed. It takes care of stopping
-   * the thread in charge of reading back from the fallback file and removing
-   * the reference from the thread to this current object, so the garbage
-   * collector identifies it as isolated.
+   * Stops the thread in charge of reading back from the fallback file,
+   * unregisters its JMX view and closes the fallback file. It is the
+   * destroy method inferred by Spring for a PersistenceManager bean, and
+   * may be called several times.
    */
-  @Override
-  public final void finalize() {
-
+  public final synchronized void shutdown() {
+    if (dataRecovery == null) {
+      return;
+    }
     if (LOG.isDebugEnabled()) {
       LOG.debug("Removing the references to the fallbackManager and the dataRecoveryThread");
     }
@@ -388,6 +491,23 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     // so its memory can be released by the garbage collector
     dataRecovery.stop();
     dataRecovery = null;
+    if (dataRecoveryName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(dataRecoveryName);
+      } catch (JMException e) {
+        LOG.warn("Unable to unregister the JMX view of the recovery of the fallback file", e);
+      }
+      dataRecoveryName = null;
+    }
     fallbackManager.finalize();
   }
+
+  /**
+   * This method will be called by the client when this last one wants to
+   * liberate its resources before it is destroyed. Same as {@link #shutdown()}.
+   */
+  @Override
+  public final void finalize() {
+    shutdown();
+  }
 }
@@ -16,31 +16,55 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.util;
 
-import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.alarm.FallbackAlarmsInterface;
 import cern.c2mon.pmanager.fallback.FallbackProperties;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackFileManager;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
 
 /**
  * This class implements the Runnable interface. It runs as a separate thread
  * that takes care of committing back to the DB that data stored in a fallback
- * file
+ * file.
+ * <p>
+ * The data is committed back in rounds: at each round a number of blocks of
+ * records are read from the fallback file and written to the DB in parallel.
+ * The records are then removed from the file up to the first block that could
+ * not be completely written. The records written after that block are
+ * remembered, and skipped when the following rounds read them again, so that
+ * only the records which failed are written again (unless the application is
+ * restarted in between). The number of blocks of a round starts
+ * at one and grows by one after each round, up to the configured maximum,
+ * as long as the live writes of the PersistenceManager stay fast. When they
+ * become slower than the configured limit, the number of blocks is halved and
+ * the thread sleeps between the rounds, leaving the DB to the live data.
  *
  * @author mruizgar
  *
  */
-public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
+public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface, DataRecoveryThreadMBean {
 
     /**
      * It indicates whether a thread of this class has been already started and
      * it is running
      */
-    private boolean stopped = true;
+    private volatile boolean stopped = true;
 
     /** Log4j Logger for this class (debug and error messages) */
     private static final Logger LOG = LoggerFactory.getLogger(DataRecoveryThread.class);
@@ -49,11 +73,17 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     private static final Logger FALLBACK_LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
 
     /**
-     * Number of miliseconds that the thread will sleep after each iteration by
-     * default
+     * Number of miliseconds that the thread will sleep after each round when
+     * the live writes are slow, by default
      */
     private static final int DEFAULT_SLEEP_TIME = 500;
 
+    /** Number of miliseconds between two logs of the recovery progress */
+    private static final long PROGRESS_LOG_INTERVAL = 30000;
+
+    /** Weight of the last round in the average replay rate */
+    private static final double RATE_SMOOTHING = 0.3;
+
     /**
      * Instance to the PersistenceManager object that created this object.
      * This way the thread will be able to access its fields knowing from which
@@ -61,6 +91,41 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      */
     private PersistenceManager persistenceManager = null;
 
+    /**
+     * The fallback manager of the PersistenceManager, kept for the JMX view
+     * once the reference to the PersistenceManager is removed
+     */
+    private final FallbackFileManager fallbackManager;
+
+    /** Maximum number of blocks written to the DB in parallel */
+    private final int maxParallelism = Math.max(1, FallbackProperties.getInstance().getRecoveryThreads());
+
+    /** Number of records read from the fallback file per block */
+    private final int batchSize = FallbackProperties.getInstance().getNumberLinesToReadFromFile();
+
+    /** Average duration in miliseconds of the live writes above which the recovery slows down */
+    private final int liveLatencyLimit = FallbackProperties.getInstance().getRecoveryLiveLatency();
+
+    /** Number of blocks written to the DB in parallel at the next round */
+    private volatile int parallelism = 1;
+
+    /** Number of records committed back to the DB since the creation of this object */
+    private volatile long recordsReplayed = 0;
+
+    /** Average number of records committed back to the DB per second */
+    private volatile double replayRate = 0;
+
+    /** Time in nanoseconds at which the last round ended */
+    private long lastRoundEnd;
+
+    /**
+     * The records following the last committed one, as runs of records
+     * already written to the DB or not, left by a round in which a block
+     * failed while the following ones were written. Only used by the
+     * recovery thread.
+     */
+    private final Deque<RecordRun> pendingRuns = new ArrayDeque<>();
+
     /**
      * @param persistenceManager
      *            the persistenceManager to set
@@ -83,21 +148,78 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
             persistence.setSleepTime(DEFAULT_SLEEP_TIME);
         }
         this.persistenceManager = persistence;
+        this.fallbackManager = persistence.getFallbackManager();
     }
 
     /**
      * @return the stopRunning
      */
+    @Override
     public final boolean isRunning() {
         return !stopped;
     }
 
+    @Override
+    public final long getRecordsRemaining() {
+        return fallbackManager.getFallbackLog().getNumberOfRecords();
+    }
+
+    @Override
+    public final long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    @Override
+    public final double getReplayRate() {
+        return replayRate;
+    }
+
+    @Override
+    public final long getEstimatedTimeRemaining() {
+        double rate = replayRate;
+        if (rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(getRecordsRemaining() / rate);
+    }
+
+    @Override
+    public final int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public final int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    @Override
+    public final int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Starts a new thread committing back the data of the fallback file,
+     * unless one is already running
+     *
+     * @param persistence
+     *            The PersistenceManager whose fallback file is read
+     */
+    public final synchronized void start(final PersistenceManager persistence) {
+        if (isRunning()) {
+            return;
+        }
+        persistenceManager = persistence;
+        stopped = false;
+        new Thread(this, "FallbackRecovery-" + fallbackManager.getFallbackLog().getDataFile().getName()).start();
+    }
+
     /**
      * It stops the thread and removes the reference to the
      * PersistenceManager object so its memory can be released by the garbage
      * collector
      */
-    public final void stop() {
+    public final synchronized void stop() {
         if (!isRunning()) {
             resetPersistenceManager();
         }
@@ -119,39 +241,40 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     public final void run() {
         boolean committed = true;
 
-        stopped = false;
         if (FALLBACK_LOG.isDebugEnabled())
             FALLBACK_LOG.debug("Thread of instance " + this.hashCode() + " beginning");
-        synchronized (persistenceManager.getFallbackManager().getFallbackFileController()) {
-            while (!persistenceManager.getFallbackManager().isFallbackFileEmpty() && committed
-                    && isRunning()) {
-                int numberOfTags;
+        FALLBACK_LOG.info("run() - Committing back " + getRecordsRemaining() + " records of the fallback file "
+                + fallbackManager.getFallbackLog().getDataFile().getAbsolutePath());
+
+        ExecutorService executor = createExecutor();
+        long nextProgressLog = System.currentTimeMillis() + PROGRESS_LOG_INTERVAL;
+        parallelism = 1;
+        lastRoundEnd = System.nanoTime();
+        try {
+            while (!fallbackManager.isFallbackFileEmpty() && committed && isRunning()) {
                 // The data from the log file will be read from the file and
                 // committed in the database in bunches of a defined size
-                numberOfTags = commitFallbackData();
-                if (numberOfTags > 0) {
-                    // Remove the dataTags that have been committed back from
-                    // the fallback file
-                    removeReadData(numberOfTags);
+                committed = commitFallbackData(executor);
+                if (committed) {
+                    adaptParallelism();
                 }
-                if (numberOfTags == 0) {
-                    committed = false;
-                }
-                try {
-                    Thread.sleep(persistenceManager.getSleepTime());
-                } catch (InterruptedException e) {
-                    FALLBACK_LOG.error("An error occurred while trying to make the thread to sleep");
+                if (System.currentTimeMillis() >= nextProgressLog) {
+                    FALLBACK_LOG.info("run() - " + getRecordsRemaining() + " records still to be committed back at "
+                            + Math.round(replayRate) + " records/s, " + getEstimatedTimeRemaining() + " s remaining");
+                    nextProgressLog = System.currentTimeMillis() + PROGRESS_LOG_INTERVAL;
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+        replayRate = 0;
+        FALLBACK_LOG.info("run() - " + getRecordsRemaining() + " records left in the fallback file after "
+                + recordsReplayed + " records committed back");
+
+        synchronized (this) {
+            stopped = true;
+            persistenceManager = null;
         }
-        /*
-         * if (!isRunning()) { // The thread was externally stopped by
-         * persistenceManager who needs to be destroyed and therefore // we need
-         * to remove the reference to it, so the garbage collector can done its
-         * work persistenceManager = null;
-         */
-        stopped = true;
-        persistenceManager = null;
         if (FALLBACK_LOG.isDebugEnabled()) {
             FALLBACK_LOG.debug("Removing the reference to the persistenceManager");
         }
@@ -161,61 +284,242 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     }
 
     /**
-     * Reads back data from a fallback file and commits it to the DB.
-     *
-     * @return An integer value indicating the number of fallback lines that
-     *         were read from the fallback log file and successfully committed
-     *         to the DB
+     * Creates the pool of threads writing the blocks of records to the DB
      *
+     * @return A pool of daemon threads, one per block of a round
      */
-    private int commitFallbackData() {
+    private ExecutorService createExecutor() {
+        final String name = Thread.currentThread().getName() + "-";
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxParallelism, runnable -> {
+            Thread thread = new Thread(runnable, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        FallbackObjectContainer data = null;
-        int committed = 0;
+    /**
+     * Reads back a round of blocks of data from the fallback file, commits them
+     * to the DB in parallel and removes the committed records from the file.
+     * The blocks already written to the DB by a previous round are read but
+     * not written again.
+     *
+     * @param executor
+     *            The pool of threads writing the blocks to the DB
+     * @return A boolean indicating whether all the records read from the
+     *         fallback file were successfully committed to the DB
+     */
+    private boolean commitFallbackData(final ExecutorService executor) {
+        List<FallbackObjectContainer> blocks = new ArrayList<>();
+        List<Boolean> written = new ArrayList<>();
+        int read = 0;
+        boolean complete = true;
 
         if (FALLBACK_LOG.isDebugEnabled())
             FALLBACK_LOG
                     .debug("commitFallbackData() : Committing the tags stored in the logfile back into the database");
         try {
-            // Get all the datatags stored in the log file
-            data = persistenceManager.getFallbackManager().readDataBack(
-                    FallbackProperties.getInstance().getNumberLinesToReadFromFile());
-            // Insert the datatags into the database
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("commitFallBackData() - Inserting " + data.getReadLines()
-                        + " tags from the fallback file into the database");
+            // Get the next blocks of datatags stored in the log file
+            int toWrite = 0;
+            while (toWrite < parallelism) {
+                RecordRun run = pendingRuns.peek();
+                int size = run == null ? batchSize : Math.min(run.length, batchSize);
+                FallbackObjectContainer data = fallbackManager.readDataBack(size);
+                if (data.getReadLines() == 0) {
+                    break;
+                }
+                boolean alreadyWritten = run != null && run.written;
+                if (run != null) {
+                    run.length -= data.getReadLines();
+                    if (run.length <= 0) {
+                        pendingRuns.poll();
+                    }
+                }
+                blocks.add(data);
+                written.add(alreadyWritten);
+                read += data.getReadLines();
+                if (!alreadyWritten) {
+                    toWrite++;
+                }
             }
-
-            persistenceManager.getDbHandler().storeData(data.getObjects());
-            committed = data.getReadLines();
-        } catch (IDBPersistenceException e) {
+        } catch (DataFallbackException ex) {
             FALLBACK_LOG.error(
-                    "CommitFallBackData : Error executing/committing prepared statement.", e);
+                    "commitFallBackData() : Unable to read the data from the log file ", ex);
+            complete = false;
+        }
+        if (read == 0) {
+            complete = false;
+        }
+
+        // Insert the datatags into the database
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("commitFallBackData() - Inserting " + read + " tags from the fallback file into the database in "
+                    + blocks.size() + " blocks");
+        }
+        List<Future<Integer>> results = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            final FallbackObjectContainer block = blocks.get(i);
+            if (written.get(i)) {
+                results.add(null);
+            } else {
+                final IDBPersistenceHandler dbHandler = persistenceManager.getDbHandler();
+                results.add(executor.submit(() -> storeBlock(dbHandler, block)));
+            }
+        }
+
+        // Only the records up to the first block not completely committed can
+        // be removed from the file, the ones written after it are remembered
+        int committed = 0;
+        Deque<RecordRun> runs = new ArrayDeque<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            int readLines = blocks.get(i).getReadLines();
+            int stored = results.get(i) == null ? readLines : waitForBlock(results.get(i));
+            if (complete) {
+                committed += stored;
+            } else {
+                addRun(runs, stored, true);
+            }
+            if (stored < readLines) {
+                complete = false;
+                addRun(runs, readLines - stored, false);
+            }
+        }
+
+        if (!complete) {
+            for (RecordRun run : pendingRuns) {
+                addRun(runs, run.length, run.written);
+            }
+            while (!runs.isEmpty() && !runs.peekLast().written) {
+                runs.pollLast();
+            }
+            pendingRuns.clear();
+            pendingRuns.addAll(runs);
             try {
                 // We reset the file descriptor to the last committed line,
-                // ignoring those last ones
-                // that have been already read, but not committed
-                committed = e.getCommited();
-                persistenceManager.getFallbackManager().goToLastProcessedLine(e.getCommited());
+                // ignoring those last ones that have been already read, but
+                // not committed
+                fallbackManager.goToLastProcessedLine(committed);
             } catch (DataFallbackException fe) {
+                pendingRuns.clear();
                 FALLBACK_LOG
                         .error("CommitFallBackData : The file desciptor could not be placed in the right place,"
                                 + " some tags will be ignored" + fe);
             }
-        } catch (DataFallbackException ex) {
+        }
+        if (committed > 0) {
+            // Remove the dataTags that have been committed back from the
+            // fallback file
+            removeReadData(committed);
+            recordsReplayed += committed;
+        }
+        updateReplayRate(committed);
+        return complete;
+    }
+
+    /**
+     * Appends records to a list of runs, merging them with the last run if it
+     * has the same state
+     *
+     * @param runs
+     *            The runs of records following the last committed one
+     * @param length
+     *            The number of records to append
+     * @param written
+     *            Whether the records were written to the DB
+     */
+    private static void addRun(final Deque<RecordRun> runs, final int length, final boolean written) {
+        if (length <= 0) {
+            return;
+        }
+        RecordRun last = runs.peekLast();
+        if (last != null && last.written == written) {
+            last.length += length;
+        } else {
+            runs.add(new RecordRun(length, written));
+        }
+    }
+
+    /**
+     * Commits a block of data to the DB
+     *
+     * @param dbHandler
+     *            The handler writing to the DB
+     * @param block
+     *            The data read from the fallback file
+     * @return The number of records of the block successfully committed to
+     *         the DB
+     */
+    @SuppressWarnings("unchecked")
+    private int storeBlock(final IDBPersistenceHandler dbHandler, final FallbackObjectContainer block) {
+        try {
+            dbHandler.storeData(block.getObjects());
+            return block.getReadLines();
+        } catch (IDBPersistenceException e) {
             FALLBACK_LOG.error(
-                    "commitFallBackData() : Unable to read the data from the log file ", ex);
+                    "CommitFallBackData : Error executing/committing prepared statement.", e);
+            return e.getCommited();
+        }
+    }
+
+    /**
+     * Waits for the commit of a block of data to the DB
+     *
+     * @param result
+     *            The pending commit
+     * @return The number of records of the block successfully committed to
+     *         the DB
+     */
+    private int waitForBlock(final Future<Integer> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            FALLBACK_LOG.error("waitForBlock() : Interrupted while committing a block of the fallback data");
+            Thread.currentThread().interrupt();
+            stopped = true;
+        } catch (ExecutionException e) {
+            FALLBACK_LOG.error("waitForBlock() : Unexpected error while committing a block of the fallback data",
+                    e.getCause());
+        }
+        return 0;
+    }
+
+    /**
+     * Updates the average replay rate with the records committed since the end
+     * of the previous round
+     *
+     * @param committed
+     *            The number of records committed in this round
+     */
+    private void updateReplayRate(final int committed) {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastRoundEnd, 1) / 1e9;
+        lastRoundEnd = now;
+        double rate = committed / seconds;
+        replayRate = replayRate == 0 ? rate : replayRate + RATE_SMOOTHING * (rate - replayRate);
+    }
+
+    /**
+     * Adapts the number of blocks written in parallel to the duration of the
+     * live writes of the PersistenceManager, sleeping when they are too slow
+     */
+    private void adaptParallelism() {
+        double liveLatency = persistenceManager.getLiveWriteLatency();
+        if (liveLatency > liveLatencyLimit) {
+            parallelism = Math.max(1, parallelism / 2);
+            if (FALLBACK_LOG.isDebugEnabled()) {
+                FALLBACK_LOG.debug("adaptParallelism() : Live writes take " + Math.round(liveLatency)
+                        + " ms, writing " + parallelism + " blocks in parallel");
+            }
             try {
-                // Place the cursor in the last processed line, as if this
-                // called had never been made
-                persistenceManager.getFallbackManager().goToLastProcessedLine(committed);
-            } catch (DataFallbackException fe) {
-                FALLBACK_LOG
-                        .error("CommitFallBackLogs : The file desciptor could not be placed in the right place,"
-                                + " some tags will be ignored" + fe);
+                Thread.sleep(persistenceManager.getSleepTime());
+            } catch (InterruptedException e) {
+                FALLBACK_LOG.error("An error occurred while trying to make the thread to sleep");
+                Thread.currentThread().interrupt();
+                stopped = true;
             }
+        } else if (parallelism < maxParallelism) {
+            parallelism++;
         }
-        return committed;
     }
 
     /**
@@ -227,22 +531,39 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      */
     private void removeReadData(final int size) {
 
-        if (!persistenceManager.getFallbackManager().removeReadData(size)) {
+        if (!fallbackManager.removeReadData(size)) {
             persistenceManager.getAlarmSender().fileNotReachable(
                     ACTIVATED,
-                    persistenceManager.getFallbackManager().getFallbackFileController()
+                    fallbackManager.getFallbackLog()
                             .getDataFile());
             FALLBACK_LOG
                     .error("commitFallbackCommandLogs() - CommandTags cannot be removed from the fallback log file");
         } else {
             persistenceManager.getAlarmSender().fileNotReachable(
                     DOWN,
-                    persistenceManager.getFallbackManager().getFallbackFileController()
+                    fallbackManager.getFallbackLog()
                             .getDataFile());
         }
 
     }
 
+    /**
+     * Consecutive records of the fallback file, all written to the DB or not
+     */
+    private static final class RecordRun {
+
+        /** Number of records */
+        private int length;
+
+        /** Whether the records were written to the DB */
+        private final boolean written;
+
+        private RecordRun(final int length, final boolean written) {
+            this.length = length;
+            this.written = written;
+        }
+    }
+
     /**
      * It sets the persistenceManager to null, so it could be released by the
      * garbage collector if needed
@@ -0,0 +1,71 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.persistence.util;
+
+/**
+ * JMX view of the progress of the recovery of a fallback file, registered by
+ * the PersistenceManager under
+ * <code>cern.c2mon.pmanager:type=DataRecovery,name=&lt;fallback file&gt;</code>
+ */
+public interface DataRecoveryThreadMBean {
+
+    /**
+     * @return Whether the data of the fallback file is being committed back
+     *         to the DB
+     */
+    boolean isRunning();
+
+    /**
+     * @return The number of records still to be committed back to the DB
+     */
+    long getRecordsRemaining();
+
+    /**
+     * @return The number of records committed back to the DB since the
+     *         creation of the PersistenceManager
+     */
+    long getRecordsReplayed();
+
+    /**
+     * @return The number of records committed back to the DB per second,
+     *         averaged over the last rounds of writes
+     */
+    double getReplayRate();
+
+    /**
+     * @return The estimated number of seconds until all the records are
+     *         committed back to the DB, or -1 if no record is being committed
+     */
+    long getEstimatedTimeRemaining();
+
+    /**
+     * @return The number of blocks of records currently written to the DB in
+     *         parallel
+     */
+    int getParallelism();
+
+    /**
+     * @return The maximum number of blocks of records written to the DB in
+     *         parallel
+     */
+    int getMaxParallelism();
+
+    /**
+     * @return The number of records read from the fallback file per block
+     */
+    int getBatchSize();
+}
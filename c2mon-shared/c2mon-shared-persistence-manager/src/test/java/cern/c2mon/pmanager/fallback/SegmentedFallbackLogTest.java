@@ -0,0 +1,195 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.fallback;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackFileManager;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import cern.c2mon.pmanager.mock.FallbackImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit test for the SegmentedFallbackLog class
+ */
+public class SegmentedFallbackLogTest {
+
+  /**
+   * Segments small enough for a few records each
+   */
+  private static final long SEGMENT_SIZE = 100;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Tests that the records are read back in order
+   */
+  @Test
+  public final void testReadBack() throws Exception {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath(), SEGMENT_SIZE, false);
+    log.append(records(0, 10));
+    assertEquals(10, log.getNumberOfRecords());
+    assertTrue(log.getNumberOfSegments() > 1);
+
+    FallbackObjectContainer container = log.read(4, new FallbackImpl());
+    assertEquals(4, container.getReadLines());
+    assertRecords(0, 4, container.getObjects());
+
+    container = log.read(100, new FallbackImpl());
+    assertEquals(6, container.getReadLines());
+    assertRecords(4, 10, container.getObjects());
+    log.close();
+  }
+
+  /**
+   * Tests that a new instance resumes reading at the checkpoint and that the
+   * segments are deleted once committed
+   */
+  @Test
+  public final void testResumeFromCheckpoint() throws Exception {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath(), SEGMENT_SIZE, false);
+    log.append(records(0, 10));
+    int segments = log.getNumberOfSegments();
+    log.read(7, new FallbackImpl());
+    log.commit(7);
+    assertEquals(3, log.getNumberOfRecords());
+    assertTrue(log.getNumberOfSegments() < segments);
+    assertTrue(log.getCheckpointFile().exists());
+    assertFalse(new File(log.getCheckpointFile().getPath() + ".tmp").exists());
+    log.close();
+
+    log = new SegmentedFallbackLog(fallbackPath(), SEGMENT_SIZE, false);
+    assertEquals(3, log.getNumberOfRecords());
+    FallbackObjectContainer container = log.read(100, new FallbackImpl());
+    assertRecords(7, 10, container.getObjects());
+
+    log.commit(3);
+    assertTrue(log.isEmpty());
+    assertEquals(0, log.getNumberOfSegments());
+    log.close();
+  }
+
+  /**
+   * Tests that records not committed are read again after a rewind
+   */
+  @Test
+  public final void testRewind() throws Exception {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath(), SEGMENT_SIZE, false);
+    log.append(records(0, 10));
+    log.read(6, new FallbackImpl());
+    // only 2 of the 6 records were committed
+    log.rewind(2);
+    log.commit(2);
+
+    FallbackObjectContainer container = log.read(100, new FallbackImpl());
+    assertRecords(2, 10, container.getObjects());
+    log.close();
+  }
+
+  /**
+   * Tests that the records written while reading are read
+   */
+  @Test
+  public final void testAppendWhileReading() throws Exception {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath(), SEGMENT_SIZE, true);
+    log.append(records(0, 5));
+    assertRecords(0, 5, log.read(100, new FallbackImpl()).getObjects());
+    log.append(records(5, 10));
+    assertRecords(5, 10, log.read(100, new FallbackImpl()).getObjects());
+    log.commit(10);
+    assertTrue(log.isEmpty());
+    log.close();
+  }
+
+  /**
+   * Tests that a record partly written at the end of the log is ignored
+   */
+  @Test
+  public final void testPartlyWrittenRecord() throws Exception {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath(), 1024 * 1024, false);
+    log.append(records(0, 3));
+    log.close();
+
+    File segment = new File(fallbackPath() + ".0000000001.seg");
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 2);
+    }
+
+    log = new SegmentedFallbackLog(fallbackPath(), 1024 * 1024, false);
+    assertEquals(2, log.getNumberOfRecords());
+    log.append(records(3, 4));
+    List<IFallback> objects = log.read(100, new FallbackImpl()).getObjects();
+    assertEquals(3, objects.size());
+    assertEquals("record 3", objects.get(2).toString());
+    log.close();
+  }
+
+  /**
+   * Tests that the lines of a text fallback file not yet committed are moved
+   * to the fallback log
+   */
+  @Test
+  public final void testImportTextFile() throws IOException, DataFallbackException {
+    try (FileWriter writer = new FileWriter(fallbackPath())) {
+      writer.write("record 0\nrecord 1\nrecord 2\n");
+    }
+    try (FileWriter writer = new FileWriter(new File(folder.getRoot(), ".CounterDataTagFallback.log"))) {
+      writer.write("1\n");
+    }
+
+    FallbackFileManager fFileManager = new FallbackFileManager(fallbackPath(), new FallbackImpl());
+    assertFalse(new File(fallbackPath()).exists());
+    assertRecords(1, 3, fFileManager.readDataBack(100).getObjects());
+    fFileManager.finalize();
+  }
+
+  private String fallbackPath() {
+    return new File(folder.getRoot(), "DataTagFallback.log").getAbsolutePath();
+  }
+
+  private static List<FallbackImpl> records(final int from, final int to) {
+    List<FallbackImpl> records = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      FallbackImpl record = new FallbackImpl();
+      record.setObjectData("record " + i);
+      records.add(record);
+    }
+    return records;
+  }
+
+  private static void assertRecords(final int from, final int to, final List<IFallback> objects) {
+    assertEquals(to - from, objects.size());
+    for (int i = from; i < to; i++) {
+      assertEquals("record " + i, objects.get(i - from).toString());
+    }
+  }
+}
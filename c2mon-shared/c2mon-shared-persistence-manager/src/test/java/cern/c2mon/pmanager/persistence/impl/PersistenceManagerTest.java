@@ -16,19 +16,29 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.impl;
 
+import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.mock.AlarmListenerImpl;
 import cern.c2mon.pmanager.mock.DBHandlerImpl;
 import cern.c2mon.pmanager.mock.FallbackImpl;
+import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * JUnit test for the PersistenceManager class
@@ -57,11 +67,11 @@ public class PersistenceManagerTest {
    */
   @Test
   public final void testStoreObjectData() {
-    int lines = persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines();
+    long lines = persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords();
 
     IFallback fallback = new FallbackImpl();
     persistenceManager.storeData(fallback);
-    assertEquals(lines, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines());
+    assertEquals(lines, persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
   }
 
   /**
@@ -69,13 +79,13 @@ public class PersistenceManagerTest {
    */
   @Test
   public final void testStoreListData() {
-    int lines = persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines();
+    long lines = persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords();
     List<IFallback> data = new ArrayList<>();
     for (int i = 0; i < 4; i++) {
       data.add(new FallbackImpl());
     }
     persistenceManager.storeData(data);
-    assertEquals(lines, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines());
+    assertEquals(lines, persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
   }
 
   /**
@@ -84,11 +94,11 @@ public class PersistenceManagerTest {
   @Test
   public final void testStoreObjectConnectionFails() {
     FallbackImpl fallback = new FallbackImpl();
-    int lines = persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines();
+    long lines = persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords();
 
     fallback.setObjectData(FallbackImpl.ERROR);
     persistenceManager.storeData(fallback);
-    assertEquals(1, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines() - lines);
+    assertEquals(1, persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords() - lines);
   }
 
   /**
@@ -97,7 +107,7 @@ public class PersistenceManagerTest {
   @Test
   public final void testStoreListDataConnectionFails() {
     List<IFallback> data = new ArrayList<>();
-    int lines = persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines();
+    long lines = persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords();
     for (int i = 0; i < 4; i++) {
       data.add(new FallbackImpl());
     }
@@ -105,6 +115,166 @@ public class PersistenceManagerTest {
     fallback.setObjectData(FallbackImpl.ERROR);
     data.add(fallback);
     persistenceManager.storeData(data);
-    assertEquals(5, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines() - lines);
+    assertEquals(5, persistenceManager.getFallbackManager().getFallbackLog().getNumberOfRecords() - lines);
+  }
+
+  /**
+   * Tests the fallback(List) method, which bypasses the DB
+   */
+  @Test
+  public final void testFallback() throws IOException {
+    final File fallbackFile = File.createTempFile("AsyncFallback", ".log");
+    fallbackFile.deleteOnExit();
+    PersistenceManager<IFallback> manager = new PersistenceManager<>(new DBHandlerImpl(), fallbackFile.getAbsolutePath(), new AlarmListenerImpl(), new FallbackImpl());
+
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      data.add(new FallbackImpl());
+    }
+    manager.fallback(data);
+    manager.fallback(Collections.emptyList());
+    assertEquals(3, manager.getFallbackManager().getFallbackLog().getNumberOfRecords());
+    manager.finalize();
+  }
+
+  /**
+   * Tests that the data written to the fallback file while the DB was down is
+   * committed back once it is up again
+   */
+  @Test
+  public final void testRecovery() throws Exception {
+    final File fallbackFile = File.createTempFile("RecoveryFallback", ".log");
+    fallbackFile.deleteOnExit();
+    final List<IFallback> storage = Collections.synchronizedList(new ArrayList<>());
+    final AtomicBoolean available = new AtomicBoolean(false);
+    IDBPersistenceHandler<IFallback> dbHandler = new IDBPersistenceHandler<IFallback>() {
+      @Override
+      public String getDBInfo() {
+        return "timdb@test";
+      }
+
+      @Override
+      public void storeData(final IFallback object) throws IDBPersistenceException {
+        storeData(Collections.singletonList(object));
+      }
+
+      @Override
+      public void storeData(final List<IFallback> data) throws IDBPersistenceException {
+        if (!available.get()) {
+          throw new IDBPersistenceException("Connection to the DB has been lost", 0);
+        }
+        storage.addAll(data);
+      }
+    };
+    PersistenceManager<IFallback> recoveryManager = new PersistenceManager<>(dbHandler, fallbackFile.getAbsolutePath(),
+        new AlarmListenerImpl(), new FallbackImpl());
+
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      data.add(new FallbackImpl());
+    }
+    recoveryManager.storeData(data);
+    assertEquals(10000, recoveryManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
+
+    available.set(true);
+    recoveryManager.storeData(new FallbackImpl());
+    long timeout = System.currentTimeMillis() + 10000;
+    while (!recoveryManager.getFallbackManager().isFallbackFileEmpty() && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    assertEquals(0, recoveryManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
+    assertEquals(10001, storage.size());
+
+    ObjectName name = new ObjectName("cern.c2mon.pmanager:type=DataRecovery,name="
+        + ObjectName.quote(fallbackFile.getAbsolutePath()));
+    assertEquals(10000L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RecordsReplayed"));
+    recoveryManager.finalize();
+  }
+
+  /**
+   * Tests that the blocks written after a block which failed are not written
+   * again when the recovery resumes
+   */
+  @Test
+  public final void testRecoveryAfterFailedBlock() throws Exception {
+    final File fallbackFile = File.createTempFile("FailedBlockFallback", ".log");
+    fallbackFile.deleteOnExit();
+    final List<IFallback> storage = Collections.synchronizedList(new ArrayList<>());
+    final AtomicBoolean available = new AtomicBoolean(false);
+    final AtomicBoolean failBlock = new AtomicBoolean(true);
+    IDBPersistenceHandler<IFallback> dbHandler = new IDBPersistenceHandler<IFallback>() {
+      @Override
+      public String getDBInfo() {
+        return "timdb@test";
+      }
+
+      @Override
+      public void storeData(final IFallback object) throws IDBPersistenceException {
+        storeData(Collections.singletonList(object));
+      }
+
+      @Override
+      public void storeData(final List<IFallback> data) throws IDBPersistenceException {
+        // the first block of the second round, written along with the next one
+        if (!available.get() || ("record 2000".equals(data.get(0).toString()) && failBlock.compareAndSet(true, false))) {
+          throw new IDBPersistenceException("Connection to the DB has been lost", 0);
+        }
+        storage.addAll(data);
+      }
+    };
+    PersistenceManager<IFallback> recoveryManager = new PersistenceManager<>(dbHandler, fallbackFile.getAbsolutePath(),
+        new AlarmListenerImpl(), new FallbackImpl());
+    ObjectName name = new ObjectName("cern.c2mon.pmanager:type=DataRecovery,name="
+        + ObjectName.quote(fallbackFile.getAbsolutePath()));
+
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      FallbackImpl record = new FallbackImpl();
+      record.setObjectData("record " + i);
+      data.add(record);
+    }
+    recoveryManager.storeData(data);
+
+    available.set(true);
+    recoveryManager.storeData(new FallbackImpl());
+    long timeout = System.currentTimeMillis() + 10000;
+    while ((failBlock.get() || (Boolean) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Running"))
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    assertEquals(8000, recoveryManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
+
+    recoveryManager.storeData(new FallbackImpl());
+    while (!recoveryManager.getFallbackManager().isFallbackFileEmpty() && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    assertEquals(0, recoveryManager.getFallbackManager().getFallbackLog().getNumberOfRecords());
+    assertEquals(10002, storage.size());
+    Set<String> records = new HashSet<>();
+    for (IFallback record : storage) {
+      records.add(record.toString());
+    }
+    assertEquals(10001, records.size());
+    recoveryManager.shutdown();
+  }
+
+  /**
+   * Tests that the JMX view of the recovery is unregistered on shutdown
+   */
+  @Test
+  public final void testShutdown() throws Exception {
+    final File fallbackFile = File.createTempFile("ShutdownFallback", ".log");
+    fallbackFile.deleteOnExit();
+    PersistenceManager<IFallback> manager = new PersistenceManager<>(new DBHandlerImpl(), fallbackFile.getAbsolutePath(),
+        new AlarmListenerImpl(), new FallbackImpl());
+    ObjectName name = new ObjectName("cern.c2mon.pmanager:type=DataRecovery,name="
+        + ObjectName.quote(fallbackFile.getAbsolutePath()));
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+    manager.shutdown();
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    // no effect once shut down
+    manager.shutdown();
+    manager.storeData(new FallbackImpl());
   }
 }
@@ -16,13 +16,18 @@
  *****************************************************************************/
 package cern.c2mon.shared.rule;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import cern.c2mon.shared.common.rule.RuleInputValue;
+import cern.c2mon.shared.rule.parser.AbstractParser;
+import cern.c2mon.shared.rule.parser.CompiledExpression;
 import cern.c2mon.shared.rule.parser.InvalidExpressionParser;
 import cern.c2mon.shared.rule.parser.Parser;
 import cern.c2mon.shared.rule.parser.RuleConstant;
@@ -36,9 +41,44 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
      */
     private Object[] tokens = null;
 
+    /**
+     * The input tag tokens of the rule expression, in the order in which they appear.
+     */
+    private transient RuleInputTagId[] inputTokens;
+
+    /**
+     * Evaluation tree of the rule expression, or null if the expression cannot be compiled.
+     */
+    private transient CompiledExpression compiledExpression;
+
     public SimpleRuleExpression(final String pExpression) throws RuleFormatException {
         super(pExpression, RuleType.Simple);
         this.tokens = tokenize(pExpression);
+        compile();
+    }
+
+    /**
+     * Builds the evaluation tree of the rule expression once, so that
+     * evaluations only need to bind the input values.
+     */
+    private void compile() {
+        final List<RuleInputTagId> inputs = new ArrayList<>();
+        final Object[] slotTokens = new Object[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] instanceof RuleInputTagId) {
+                slotTokens[i] = new CompiledExpression.InputSlot(inputs.size());
+                inputs.add((RuleInputTagId) tokens[i]);
+            } else {
+                slotTokens[i] = tokens[i];
+            }
+        }
+        this.inputTokens = inputs.toArray(new RuleInputTagId[inputs.size()]);
+        this.compiledExpression = Parser.getInstance().compile(slotTokens);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        compile();
     }
 
     public Object clone() {
@@ -342,135 +382,125 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
     
     
     /**
-     * Same as {@link #splitToTokens(Map)} but Invalid tags are allowed.
-     * The result can be passed to the {@link InvalidExpressionParser}
-     * so that the expression can be calculated.
-     * 
-     * @return The rule in token format
-     * 
+     * Defines how the values of the input tags are resolved when binding them
+     * to the rule.
+     */
+    private enum InputMode {
+      /** Invalid, null or non-existent tags are not allowed */
+      STRICT,
+      /** Invalid tags are allowed and replaced with {@link RuleConstant#INTERNAL_INVALID} */
+      ALLOW_INVALID
+    }
+
+    /**
+     * @return The value of the given input tag, resolved according to the input mode.
+     *
+     * @param tagInput the input tag token
      * @param pInputParams Map of value objects related to the input tag ids
-     * 
-     * @throws RuleEvaluationException in case the DataTags contained in the Rule
-     * are Null, or non-existent.
+     * @param mode how to treat Invalid, Null, or non-existent tags
+     *
+     * @throws RuleEvaluationException in case the DataTag is not allowed
+     * by the input mode.
      */
-    private Object[] splitToTokensAndAllowInvalidTags(final Map<Long, Object> pInputParams) 
-        throws RuleEvaluationException {
-      
-      Object[] valueTokens = new Object[tokens.length];
-      RuleInputValue tag = null;
-      for (int i = 0; i < tokens.length; i++) {
-          if (tokens[i] instanceof RuleInputTagId) {
-            
-              RuleInputTagId tagInput = (RuleInputTagId) tokens[i];
-              long tagId = tagInput.getId();
-              Object val = pInputParams.get(tagId);
-              if (val != null && val instanceof RuleInputValue) {
-                  tag = (RuleInputValue) val;
-                  if (!tag.isValid()) {
-                    valueTokens[i] = RuleConstant.INTERNAL_INVALID.toString();
-                  }
-                  else if (tag.getValue() == null) {
-                      throw new RuleEvaluationException("Cannot evaluate rule: tag " + ((RuleInputValue) val).getId()
-                              + " is null.");
-                  } else {
-                      valueTokens[i] = ((RuleInputValue) val).getValue();
-                  }
-
-              } else if (val != null) {
-                  valueTokens[i] = val;
-              } else {
-                  throw new RuleEvaluationException("Cannot evaluate rule: input tag missing "
-                          + ((RuleInputTagId) tokens[i]).getId());
-              }
+    private static Object resolveInput(final RuleInputTagId tagInput, final Map<Long, Object> pInputParams,
+                                       final InputMode mode) throws RuleEvaluationException {
+
+      final Object val = pInputParams.get(tagInput.getId());
+      if (val != null && val instanceof RuleInputValue) {
+          final RuleInputValue tag = (RuleInputValue) val;
+          if (mode == InputMode.ALLOW_INVALID && !tag.isValid()) {
+              return RuleConstant.INTERNAL_INVALID.toString();
+          } else if (tag.getValue() == null) {
+              throw new RuleEvaluationException("Cannot evaluate rule: tag " + tag.getId()
+                      + " is null.");
           } else {
-              valueTokens[i] = tokens[i];
+              return tag.getValue();
           }
+      } else if (val != null) {
+          return val;
+      } else {
+          throw new RuleEvaluationException("Cannot evaluate rule: input tag missing "
+                  + tagInput.getId());
       }
-      return valueTokens;
     }
-    
+
     /**
-     * Same as {@link #splitToTokens(Map)} but Invalid tags are replaced with their values
-     * and the Invalid Status is ignored.
-     * 
-     * @return The rule in token format
-     * 
-     * @see RuleExpression#forceEvaluate(Map)
-     * @see http://issues/browse/TIMS-835
-     * 
+     * @return The values of the input tags, in the order in which they
+     * appear in the rule.
+     *
      * @param pInputParams Map of value objects related to the input tag ids
+     * @param mode how to treat Invalid, Null, or non-existent tags
+     *
+     * @throws RuleEvaluationException in case the DataTags contained in the Rule
+     * are not allowed by the input mode.
      */
-    private Object[] splitToTokensAndReplaceInvalidTags(final Map<Long, Object> pInputParams) {
-        
-      Object[] valueTokens = new Object[tokens.length];
-      RuleInputValue tag = null;
+    private Object[] bindInputValues(final Map<Long, Object> pInputParams, final InputMode mode)
+        throws RuleEvaluationException {
+
+      final Object[] inputValues = new Object[inputTokens.length];
+      for (int i = 0; i < inputTokens.length; i++) {
+          inputValues[i] = resolveInput(inputTokens[i], pInputParams, mode);
+      }
+      return inputValues;
+    }
+
+    /**
+     * @return The rule in token format, with the input tags replaced by the given values.
+     *
+     * @param inputValues values of the input tags, as returned by {@link #bindInputValues(Map, InputMode)}
+     */
+    private Object[] toValueTokens(final Object[] inputValues) {
+
+      final Object[] valueTokens = new Object[tokens.length];
+      int input = 0;
       for (int i = 0; i < tokens.length; i++) {
           if (tokens[i] instanceof RuleInputTagId) {
-            
-              RuleInputTagId tagInput = (RuleInputTagId) tokens[i];
-              long tagId = tagInput.getId();
-              Object val = pInputParams.get(tagId);
-              if (val != null && val instanceof RuleInputValue) {
-                  tag = (RuleInputValue) val;
-                  if (tag.getValue() == null) {
-                      valueTokens[i] = RuleConstant.INTERNAL_INVALID.toString();
-                  } else {
-                      valueTokens[i] = ((RuleInputValue) val).getValue();
-                  }
-              } else if (val != null) {
-                  valueTokens[i] = val;
-              } else {
-                valueTokens[i] = RuleConstant.INTERNAL_INVALID.toString();
-              }
+              valueTokens[i] = inputValues[input++];
           } else {
               valueTokens[i] = tokens[i];
           }
       }
       return valueTokens;
     }
-    
+
     /**
      * @return The rule in token format
-     * 
+     *
      * @param pInputParams Map of value objects related to the input tag ids
-     * 
+     *
      * @throws RuleEvaluationException in case the DataTags contained in the Rule
      * are Invalid, Null, or non-existent.
      */
-    private Object[] splitToTokens(final Map<Long, Object> pInputParams) 
+    private Object[] splitToTokens(final Map<Long, Object> pInputParams)
         throws RuleEvaluationException {
-      
-      Object[] valueTokens = new Object[tokens.length];
-      RuleInputValue tag = null;
-      for (int i = 0; i < tokens.length; i++) {
-          if (tokens[i] instanceof RuleInputTagId) {
-            
-              RuleInputTagId tagInput = (RuleInputTagId) tokens[i];
-              long tagId = tagInput.getId();
-              Object val = pInputParams.get(tagId);
-              if (val != null && val instanceof RuleInputValue) {
-                  tag = (RuleInputValue) val;
-                  if (tag.getValue() == null) {
-                      throw new RuleEvaluationException("Cannot evaluate rule: tag " 
-                          + ((RuleInputValue) val).getId()
-                              + " is null.");
-                  } else {
-                      valueTokens[i] = ((RuleInputValue) val).getValue();
-                  }
-
-              } else if (val != null) {
-                  valueTokens[i] = val;
-              } else {
-                  throw new RuleEvaluationException("Cannot evaluate rule: input tag missing "
-                          + ((RuleInputTagId) tokens[i]).getId());
-              }
-          } else {
-              valueTokens[i] = tokens[i];
-          }
+
+      return toValueTokens(bindInputValues(pInputParams, InputMode.STRICT));
+    }
+
+    /**
+     * Evaluates the rule with the given parser. The compiled evaluation tree
+     * is used, unless the rule could not be compiled or one of the input
+     * values would change the structure of the rule, in which case the rule
+     * is evaluated in token format.
+     *
+     * @return The result of the expression
+     *
+     * @param pInputParams Map of value objects related to the input tag ids
+     * @param mode how to treat Invalid, Null, or non-existent tags
+     * @param parser the parser used for the evaluation
+     *
+     * @throws RuleEvaluationException In case the Expression could not be evaluated.
+     */
+    private Object evaluate(final Map<Long, Object> pInputParams, final InputMode mode, final AbstractParser parser)
+        throws RuleEvaluationException {
+
+      final Object[] inputValues = bindInputValues(pInputParams, mode);
+      if (compiledExpression != null && CompiledExpression.canBind(inputValues)) {
+        return compiledExpression.eval(inputValues, parser);
       }
-      return valueTokens;
+      return parser.eval(toValueTokens(inputValues));
     }
-    
+
     /**
      * @return True if the result of the evaluation is INVALID.
      * (As a convention the RuleParser returns 
@@ -515,9 +545,7 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
     private Object handleRuleWithNoInvalidTags(final Map<Long, Object> pInputParams)
         throws RuleEvaluationException {
 
-      final Object[] valueTokens = splitToTokens(pInputParams);
-      final Object result = Parser.getInstance().eval(valueTokens); // => evaluate the expression as normal
-      return result;
+      return evaluate(pInputParams, InputMode.STRICT, Parser.getInstance()); // => evaluate the expression as normal
     }
     
     @Override
@@ -550,10 +578,7 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
     private Object tryToIgnoreInvalidTags(final Map<Long, Object> pInputParams) 
         throws RuleEvaluationException {
       
-      final Object[] valueTokens = splitToTokensAndAllowInvalidTags(pInputParams);
-      final Object result = InvalidExpressionParser.getInstance().eval(valueTokens);
-      
-      return result;
+      return evaluate(pInputParams, InputMode.ALLOW_INVALID, InvalidExpressionParser.getInstance());
     }
     
     @Override
@@ -586,8 +611,7 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
     public RuleValidationReport validate(final Map<Long, Object> pInputParams) {
       
       try {       
-        final Object[] valueTokens = splitToTokensAndAllowInvalidTags(pInputParams);
-        InvalidExpressionParser.getInstance().eval(valueTokens);
+        evaluate(pInputParams, InputMode.ALLOW_INVALID, InvalidExpressionParser.getInstance());
       } 
       catch (Exception e) {
         return new RuleValidationReport(false, e.getMessage());
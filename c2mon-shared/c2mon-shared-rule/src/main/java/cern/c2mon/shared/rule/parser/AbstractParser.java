@@ -295,6 +295,77 @@ public abstract class AbstractParser {
     }
   }
 
+  /**
+   * @return The evaluation tree of the given rule, or null if the rule
+   * cannot be compiled (in which case the rule must be evaluated with
+   * {@link #eval(Object[])}, which reports the error).
+   *
+   * The input tags of the rule must be given as {@link CompiledExpression.InputSlot}
+   * tokens. The tree follows the same recursion as {@link #eval(Object[])},
+   * but is only built once.
+   *
+   * @param token rule in tokens format.
+   */
+  public final CompiledExpression compile(final Object[] token) {
+    try {
+      return new CompiledExpression(compileNode(token));
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return The node of the evaluation tree for the given rule, built
+   * in the same steps as {@link #eval(Object[])}.
+   *
+   * @param token rule in tokens format.
+   */
+  private CompiledExpression.Node compileNode(final Object[] token) throws RuleEvaluationException {
+
+    if (!isParenthesisBalanced(token)) {
+      throw new RuleEvaluationException("Parenthesis not balanced!");
+    }
+
+    if (token.length == 1) {
+      if (token[0] instanceof CompiledExpression.InputSlot) {
+        return new CompiledExpression.InputNode(((CompiledExpression.InputSlot) token[0]).getIndex());
+      }
+      return new CompiledExpression.ConstantNode(token[0]);
+    }
+
+    final Object[] x = extractExpressionFromTheLeft(token);
+
+    if (token[0] instanceof String
+        && token[token.length - 1] instanceof String
+        && (x.length) == (token.length - 2)
+        && token[0].equals("(")
+        && token[token.length - 1].equals(")")) {
+
+      return new CompiledExpression.ParenthesisNode(compileNode(x));
+    }
+
+    if (x.length == token.length) {
+      Object[] x2 = new Object[x.length - 1];
+      for (int i = 1; i < x.length; i++) {
+        x2[i - 1] = x[i];
+      }
+      if (x[0] instanceof String && x[0].equals("!")) {
+        return new CompiledExpression.NotNode(compileNode(x2));
+      } else if (x[0] instanceof String && x[0].equals("-")) {
+        return new CompiledExpression.NegationNode(compileNode(x2));
+      } else {
+        throw new RuleEvaluationException(new StringBuffer("Error in rule: cannot handle unary operator ")
+        .append(x[0]).append(".").toString());
+      }
+    }
+
+    final int operatorIndex = getIndexOfMainOperator(token, x);
+    final String op = (String) token[operatorIndex];
+    final Object[] y = extractExpressionFromTheRight(token, operatorIndex);
+
+    return new CompiledExpression.BinaryNode(compileNode(x), compileNode(y), Operator.fromString(op));
+  }
+
   /**
    * @return Find the main operator in the binary expression x OPERATOR y.
    */
@@ -0,0 +1,252 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.rule.parser;
+
+import cern.c2mon.shared.rule.RuleEvaluationException;
+
+/**
+ * Pre-built evaluation tree of a rule in token format.
+ *
+ * The tree is created once by {@link AbstractParser#compile(Object[])} and
+ * has exactly the shape of the recursion performed by
+ * {@link AbstractParser#eval(Object[])}, so evaluating it gives the same
+ * results and errors as the token based evaluation, without re-splitting
+ * the token array on every call.
+ * <p>
+ * The input tags of the rule are represented by {@link InputSlot} tokens
+ * at compile time. At evaluation time the value of the n-th input slot
+ * is taken from the n-th position of the given input value array.
+ *
+ * @see AbstractParser#compile(Object[])
+ */
+public final class CompiledExpression {
+
+  /** Root node of the evaluation tree */
+  private final Node root;
+
+  CompiledExpression(final Node root) {
+    this.root = root;
+  }
+
+  /**
+   * @return The result of the expression for the given input values.
+   *
+   * @param inputValues the values of the input slots, in slot order.
+   * Must have been accepted by {@link #canBind(Object[])}.
+   * @param parser the parser used to calculate the binary expressions
+   * (e.g. {@link Parser} or {@link InvalidExpressionParser})
+   *
+   * @throws RuleEvaluationException In case of error during the calculations.
+   */
+  public Object eval(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+    return root.eval(inputValues, parser);
+  }
+
+  /**
+   * The token based parser decides the structure of an expression on the
+   * String tokens "(", ")", "!" and "-". An input value that looks like one
+   * of them would change the structure of the rule, in which case the
+   * token based evaluation has to be used instead.
+   *
+   * @return Whether the given input values can be bound to the compiled tree.
+   *
+   * @param inputValues the values of the input slots
+   */
+  public static boolean canBind(final Object[] inputValues) {
+    for (Object value : inputValues) {
+      if (value instanceof String) {
+        final String str = (String) value;
+        if (str.isEmpty()) {
+          return false;
+        }
+        final char first = str.charAt(0);
+        if (first == '(' || first == ')' || str.equals("!") || str.equals("-")) {
+          return false;
+        }
+      } else if (value instanceof Character) {
+        final char ch = ((Character) value).charValue();
+        if (ch == '(' || ch == ')') {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Placeholder token for the n-th input tag of a rule, used to compile
+   * a rule in token format.
+   */
+  public static final class InputSlot {
+
+    /** Position of the input value in the array passed at evaluation time */
+    private final int index;
+
+    public InputSlot(final int index) {
+      this.index = index;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + index + "]";
+    }
+  }
+
+  /**
+   * A node of the evaluation tree.
+   */
+  abstract static class Node {
+
+    abstract Object eval(Object[] inputValues, AbstractParser parser) throws RuleEvaluationException;
+  }
+
+  /**
+   * Single token which is not an input tag (Number, String or Boolean).
+   */
+  static final class ConstantNode extends Node {
+
+    private final Object value;
+
+    ConstantNode(final Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object eval(final Object[] inputValues, final AbstractParser parser) {
+      return value;
+    }
+  }
+
+  /**
+   * Single input tag token.
+   */
+  static final class InputNode extends Node {
+
+    private final int index;
+
+    InputNode(final int index) {
+      this.index = index;
+    }
+
+    @Override
+    Object eval(final Object[] inputValues, final AbstractParser parser) {
+      return inputValues[index];
+    }
+  }
+
+  /**
+   * Base class of the nodes which, like the recursive steps of
+   * {@link AbstractParser#eval(Object[])}, wrap any error other than a
+   * {@link ClassCastException} into a {@link RuntimeException}.
+   */
+  abstract static class RecursiveNode extends Node {
+
+    @Override
+    final Object eval(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      try {
+        return calculate(inputValues, parser);
+      } catch (ClassCastException cce) {
+        throw cce;
+      } catch (Exception e) {
+        throw new RuntimeException("Unexpected error during rule evaluation.", e);
+      }
+    }
+
+    abstract Object calculate(Object[] inputValues, AbstractParser parser) throws RuleEvaluationException;
+  }
+
+  /**
+   * Expression between parenthesis: "(" expression ")".
+   */
+  static final class ParenthesisNode extends RecursiveNode {
+
+    private final Node expression;
+
+    ParenthesisNode(final Node expression) {
+      this.expression = expression;
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      return expression.eval(inputValues, parser);
+    }
+  }
+
+  /**
+   * Unary operator "!".
+   */
+  static final class NotNode extends RecursiveNode {
+
+    private final Node expression;
+
+    NotNode(final Node expression) {
+      this.expression = expression;
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      return expression.eval(inputValues, parser).equals(Boolean.TRUE) ? Boolean.FALSE : Boolean.TRUE;
+    }
+  }
+
+  /**
+   * Unary operator "-".
+   */
+  static final class NegationNode extends RecursiveNode {
+
+    private final Node expression;
+
+    NegationNode(final Node expression) {
+      this.expression = expression;
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      return new Double(-((Number) expression.eval(inputValues, parser)).doubleValue());
+    }
+  }
+
+  /**
+   * Binary expression: x OPERATOR y.
+   */
+  static final class BinaryNode extends RecursiveNode {
+
+    private final Node x;
+
+    private final Node y;
+
+    /** Can be null for unknown operators, as with {@link Operator#fromString(String)} */
+    private final Operator op;
+
+    BinaryNode(final Node x, final Node y, final Operator op) {
+      this.x = x;
+      this.y = y;
+      this.op = op;
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      Object xResult = x.eval(inputValues, parser);
+      Object yResult = y.eval(inputValues, parser);
+      return parser.calculateExpr(xResult, yResult, op);
+    }
+  }
+}
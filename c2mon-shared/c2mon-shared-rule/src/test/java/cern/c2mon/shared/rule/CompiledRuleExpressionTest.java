@@ -0,0 +1,136 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.rule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cern.c2mon.shared.rule.parser.Parser;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Makes sure that the compiled evaluation of {@link SimpleRuleExpression}
+ * gives the same results and errors as the token based evaluation
+ * of the {@link Parser}.
+ */
+public class CompiledRuleExpressionTest {
+
+  private static final String[] EXPRESSIONS = {
+      "#1 + #2",
+      "#1 * #2 + 3",
+      "(#1 + #2) * 3",
+      "-#1 + #2",
+      "-(#1 - #2) ^ 2",
+      "!(#1 > #2)",
+      "!((#1 > #2) & (#2 > 0)) | (#1 = 4)",
+      "(((#1)))",
+      "#1 / #2 >= 1",
+      "#1 && #2",
+      "#1 || #2 != 0",
+      "#1 = \"abc\"",
+      "#1 <= #2 & true",
+      "#1 + true",
+      "(#1 + #2",
+      "#1 + #2)",
+      "#1 #2",
+      "",
+      "()",
+      "5"
+  };
+
+  private static final Object[][] INPUTS = {
+      {4.0d, 2.0d},
+      {3, 7L},
+      {-1.5f, 0},
+      {true, false},
+      {"abc", "abd"},
+      {"(", 1.0d},
+      {")", 1.0d},
+      {"-", 2.0d},
+      {"!", true},
+      {"", 2.0d},
+      {'(', 2.0d},
+      {"(x", 2.0d}
+  };
+
+  @Test
+  public void testCompiledEvaluationMatchesTokenEvaluation() throws Exception {
+    for (String expression : EXPRESSIONS) {
+      SimpleRuleExpression rule = new SimpleRuleExpression(expression);
+      for (Object[] input : INPUTS) {
+        Map<Long, Object> params = new HashMap<>();
+        params.put(1L, input[0]);
+        params.put(2L, input[1]);
+        assertEquals(expression + " with " + params, tokenEvaluation(expression, params), compiledEvaluation(rule, params));
+      }
+    }
+  }
+
+  @Test
+  public void testEvaluationAfterDeserialisation() throws Exception {
+    SimpleRuleExpression rule = new SimpleRuleExpression("(#1 + #2) * 3");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(rule);
+    out.close();
+    SimpleRuleExpression copy = (SimpleRuleExpression) new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+    Map<Long, Object> params = new HashMap<>();
+    params.put(1L, 1.0d);
+    params.put(2L, 2.0d);
+    assertEquals(9.0d, copy.evaluate(params));
+  }
+
+  private static String compiledEvaluation(SimpleRuleExpression rule, Map<Long, Object> params) {
+    try {
+      return String.valueOf(rule.evaluate(params));
+    } catch (Throwable e) {
+      return describe(e);
+    }
+  }
+
+  private static String tokenEvaluation(String expression, Map<Long, Object> params) {
+    try {
+      Object[] tokens = SimpleRuleExpression.tokenize(expression);
+      for (int i = 0; i < tokens.length; i++) {
+        if (tokens[i] instanceof RuleInputTagId) {
+          tokens[i] = params.get(((RuleInputTagId) tokens[i]).getId());
+        }
+      }
+      return String.valueOf(Parser.getInstance().eval(tokens));
+    } catch (Throwable e) {
+      return describe(e);
+    }
+  }
+
+  private static String describe(Throwable e) {
+    StringBuilder str = new StringBuilder();
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      str.append(t.getClass().getName()).append(": ").append(t.getMessage()).append(" / ");
+    }
+    return str.toString();
+  }
+}
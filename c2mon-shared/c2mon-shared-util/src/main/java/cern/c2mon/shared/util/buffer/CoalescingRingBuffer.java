@@ -0,0 +1,532 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.util.buffer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded buffering utility with the same windowing as the
+ * {@link SynchroBuffer}: the pushed objects are delivered to the
+ * {@link SynchroBufferListener} by a single thread, every
+ * <code>minWindowSize + objects/sec x windowGrowthFactor</code> milliseconds
+ * (at most every <code>maxWindowSize</code> milliseconds).
+ * <p>
+ * The objects are kept in a ring of fixed size. Pushing does not take any
+ * lock: each object gets the next sequence number of the ring and is written
+ * to the slot of this sequence. Once the capacity is reached, the oldest
+ * object is overwritten, i.e. evicted in constant time, or, if the buffer is
+ * blocking, the producer waits until the consumer has taken the objects of
+ * the buffer, so that no object is ever lost.
+ * <p>
+ * If a key function is given, the buffer coalesces the objects with the same
+ * key: an object replaces the one with the same key still waiting in the
+ * buffer (last value wins), which keeps the position of the first one. Only
+ * the latest object of each key is thus delivered in a window. The keys are
+ * compared with <code>equals</code>, the objects themselves never are.
+ *
+ * @param <T> the type of the buffered objects
+ */
+public class CoalescingRingBuffer<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingRingBuffer.class);
+
+  /**
+   * The frequency of the warnings if the buffer capacity is reached.
+   */
+  private static final int WARNING_FREQUENCY = 500;
+
+  /**
+   * The content of a slot which was taken by the consumer or evicted.
+   */
+  private static final Object TAKEN = new Object();
+
+  private final long minWindowSize;
+  private final long maxWindowSize;
+  private final int windowGrowthFactor;
+
+  /**
+   * The key of the coalesced objects, or null if the objects are not
+   * coalesced.
+   */
+  private final Function<? super T, ?> keyFunction;
+
+  /**
+   * True if the producers wait for free slots instead of evicting the oldest
+   * objects.
+   */
+  private final boolean blocking;
+
+  /**
+   * The monitor on which the producers wait for free slots (only if
+   * blocking).
+   */
+  private final Object freeSlots = new Object();
+
+  /**
+   * The slots of the ring. The length is a power of two.
+   */
+  private final AtomicReferenceArray<Node> slots;
+
+  private final int mask;
+
+  /**
+   * The objects waiting in the buffer, by key (only with coalescing).
+   */
+  private final ConcurrentMap<Object, Node> pendingNodes;
+
+  /**
+   * The next sequence number to write.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * The next sequence number to read, only written by the consumer.
+   */
+  private volatile long head;
+
+  /**
+   * The number of objects pushed since the last firing, which gives the
+   * incoming rate used to size the window.
+   */
+  private final AtomicLong pushedCount = new AtomicLong();
+
+  private final AtomicLong evictedCount = new AtomicLong();
+
+  private final AtomicLong blockedCount = new AtomicLong();
+
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * The counter for warning if the capacity is reached.
+   */
+  private final AtomicInteger warningCounter = new AtomicInteger();
+
+  private final Thread checkingThread;
+
+  private volatile boolean closed = false;
+  private volatile boolean firing = false;
+  private volatile boolean enabled = false;
+
+  private volatile SynchroBufferListener listener = null;
+
+  /**
+   * Constructor. The oldest object is evicted once the capacity is reached.
+   *
+   * @param name               the name of the firing thread
+   * @param minWindowSize      the buffer window min size (msec)
+   * @param maxWindowSize      the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param capacity           the maximum number of objects in the buffer (rounded up to a power of two); the oldest
+   *                           object is evicted once it is reached
+   * @param keyFunction        the key by which the objects are coalesced, or null to deliver all the pushed objects
+   * @param daemon             set as true if the firing thread should be a daemon thread
+   */
+  public CoalescingRingBuffer(String name, long minWindowSize, long maxWindowSize, int windowGrowthFactor, int capacity,
+                              Function<? super T, ?> keyFunction, boolean daemon) {
+    this(name, minWindowSize, maxWindowSize, windowGrowthFactor, capacity, keyFunction, false, daemon);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name               the name of the firing thread
+   * @param minWindowSize      the buffer window min size (msec)
+   * @param maxWindowSize      the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param capacity           the maximum number of objects in the buffer (rounded up to a power of two)
+   * @param keyFunction        the key by which the objects are coalesced, or null to deliver all the pushed objects
+   * @param blocking           set as true if {@link #push(Object)} should wait for the consumer once the capacity is
+   *                           reached, as false if the oldest object should be evicted
+   * @param daemon             set as true if the firing thread should be a daemon thread
+   */
+  public CoalescingRingBuffer(String name, long minWindowSize, long maxWindowSize, int windowGrowthFactor, int capacity,
+                              Function<? super T, ?> keyFunction, boolean blocking, boolean daemon) {
+    LOGGER.debug("CoalescingRingBuffer[name=" + name + ",minWindowSize=" + minWindowSize + ",maxWindowSize=" + maxWindowSize
+        + ",windowGrowthFactor=" + windowGrowthFactor + ",capacity=" + capacity + ",coalescing=" + (keyFunction != null)
+        + ",blocking=" + blocking + ",daemon thread=" + daemon + "]");
+    if ((minWindowSize <= 0) || (maxWindowSize <= 0) || (windowGrowthFactor <= 0) || (capacity <= 0)) {
+      throw new IllegalArgumentException("arguments must be greater than zero");
+    } else if (maxWindowSize <= minWindowSize) {
+      throw new IllegalArgumentException("maximum window size must be greater than minimum window size");
+    } else if (capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity must not be greater than 2^30");
+    }
+
+    this.minWindowSize = minWindowSize;
+    this.maxWindowSize = maxWindowSize;
+    this.windowGrowthFactor = windowGrowthFactor;
+    this.keyFunction = keyFunction;
+    this.blocking = blocking;
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.pendingNodes = keyFunction != null ? new ConcurrentHashMap<>() : null;
+
+    this.checkingThread = new CheckingThread(name);
+    this.checkingThread.setDaemon(daemon);
+    this.checkingThread.start();
+  }
+
+  /**
+   * Push an object into the buffer. With coalescing, the object replaces the
+   * object with the same key still waiting in the buffer, if any. If the
+   * buffer is blocking and full, waits until the consumer takes the objects
+   * of the buffer (the listener must thus be enabled for this to return).
+   *
+   * @param object the object to push
+   */
+  public void push(T object) {
+    if (closed) {
+      throw new IllegalArgumentException("buffer closed");
+    }
+    pushedCount.incrementAndGet();
+
+    if (keyFunction == null) {
+      insert(new Node(null, object));
+      return;
+    }
+
+    Object key = keyFunction.apply(object);
+    while (true) {
+      Node node = pendingNodes.get(key);
+      if (node == null) {
+        node = new Node(key, object);
+        if (pendingNodes.putIfAbsent(key, node) == null) {
+          insert(node);
+          return;
+        }
+      } else if (node.replace(object)) {
+        coalescedCount.incrementAndGet();
+        return;
+      } else {
+        // Taken by the consumer in the meantime
+        pendingNodes.remove(key, node);
+      }
+    }
+  }
+
+  /**
+   * Push a collection of objects into the buffer.
+   *
+   * @param collection the collection of objects to push
+   */
+  public void push(Collection<? extends T> collection) {
+    if (collection != null) {
+      for (T object : collection) {
+        push(object);
+      }
+    }
+  }
+
+  /**
+   * Write the node to the slot of the next sequence number, evicting the
+   * node written there one turn of the ring before, or waiting until it is
+   * taken if the buffer is blocking.
+   */
+  private void insert(Node node) {
+    long sequence = tail.getAndIncrement();
+    node.sequence = sequence;
+    int index = (int) (sequence & mask);
+    if (blocking && sequence - head >= slots.length()) {
+      awaitFreeSlot(sequence);
+    }
+
+    while (true) {
+      Node current = slots.get(index);
+      if (current != null && current.sequence > sequence) {
+        // The ring made a whole turn before this producer could write
+        evict(node);
+        return;
+      }
+      if (slots.compareAndSet(index, current, node)) {
+        if (current != null) {
+          evict(current);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Wait until the consumer has taken the object written one turn of the
+   * ring before the given sequence number. Interrupting the producer does not
+   * stop the wait, since the sequence number is already reserved and the
+   * consumer waits for it to be written.
+   */
+  private void awaitFreeSlot(long sequence) {
+    if (warningCounter.getAndIncrement() % WARNING_FREQUENCY == 0) {
+      LOGGER.warn("The maximum capacity of the buffer was reached (" + slots.length() + ") - the producers wait for the "
+          + "objects to be taken (" + (blockedCount.get() + 1) + " times so far).");
+    }
+    blockedCount.incrementAndGet();
+    boolean interrupted = false;
+    synchronized (freeSlots) {
+      while (sequence - head >= slots.length()) {
+        try {
+          freeSlots.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void evict(Node node) {
+    if (node.take() != TAKEN) {
+      evictedCount.incrementAndGet();
+      if (warningCounter.getAndIncrement() % WARNING_FREQUENCY == 0) {
+        LOGGER.warn("The maximum capacity of the buffer was reached (" + slots.length() + ") - the oldest objects are evicted ("
+            + evictedCount.get() + " so far).");
+      }
+    }
+    if (node.key != null) {
+      pendingNodes.remove(node.key, node);
+    }
+  }
+
+  /**
+   * Take all the objects from the buffer, in the order of their first push.
+   * Only one thread drains the buffer at a time. If the buffer is blocking,
+   * the objects of the producers waiting for a free slot are left for the
+   * next call.
+   *
+   * @return the objects which were in the buffer
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized List<T> drain() {
+    long last = tail.get();
+    if (blocking) {
+      last = Math.min(last, head + slots.length());
+    }
+    long sequence = Math.max(head, last - slots.length());
+    List<T> drained = new ArrayList<>((int) (last - sequence));
+
+    for (; sequence < last; sequence++) {
+      int index = (int) (sequence & mask);
+      Node node = slots.get(index);
+      while (node == null || node.sequence < sequence) {
+        // The producer of this sequence number is about to write it
+        Thread.yield();
+        node = slots.get(index);
+      }
+      if (node.sequence > sequence || !slots.compareAndSet(index, node, null)) {
+        // Evicted by a producer
+        continue;
+      }
+
+      Object object = node.take();
+      if (node.key != null) {
+        pendingNodes.remove(node.key, node);
+      }
+      if (object != TAKEN) {
+        drained.add((T) object);
+      }
+    }
+
+    head = last;
+    if (blocking) {
+      synchronized (freeSlots) {
+        freeSlots.notifyAll();
+      }
+    }
+    return drained;
+  }
+
+  private long fire() {
+    firing = true;
+    List<T> pulled = drain();
+    long timeBefore = System.currentTimeMillis();
+    if (listener != null && !pulled.isEmpty()) {
+      try {
+        listener.pull(new PullEvent(this, pulled));
+      } catch (Exception ex) {
+        LOGGER.error("Exception caught when calling registered buffer listener", ex);
+      }
+    }
+    long timeElapsed = System.currentTimeMillis() - timeBefore;
+    firing = false;
+
+    return timeElapsed;
+  }
+
+  /**
+   * Set the buffer consumer listener.
+   *
+   * @param listener the listener
+   */
+  public void setSynchroBufferListener(SynchroBufferListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Enable the listener. The listener is disabled by default.
+   */
+  public void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Disable the listener. Pushed object are kept in the buffer and delivered when the listener is enabled.
+   */
+  public void disable() {
+    enabled = false;
+  }
+
+  /**
+   * Return the number of objects in the buffer.
+   *
+   * @return the current size of the buffer
+   */
+  public final int getSize() {
+    return (int) Math.min(tail.get() - head, slots.length());
+  }
+
+  /**
+   * @return the number of objects evicted because the capacity was reached
+   */
+  public final long getEvictedCount() {
+    return evictedCount.get();
+  }
+
+  /**
+   * @return the number of times a producer waited because the capacity was reached
+   */
+  public final long getBlockedCount() {
+    return blockedCount.get();
+  }
+
+  /**
+   * @return the number of objects which replaced an object with the same key
+   */
+  public final long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Empties the buffer of all its current content.
+   */
+  public final void empty() {
+    drain();
+  }
+
+  private boolean isEmpty() {
+    return tail.get() == head;
+  }
+
+  /**
+   * Close the buffer. Waits for the buffer to empty in all cases. Empty the
+   * buffer first if the listener may not be able to treat requests.
+   * <p>
+   * If the thread is a daemon thread, this method does not wait for the
+   * firing thread to finish, as it may be frozen.
+   */
+  public void close() {
+    closed = true;
+    while (!isEmpty() || firing && !checkingThread.isDaemon()) {
+      try {
+        Thread.sleep(minWindowSize);
+      } catch (InterruptedException e) {
+        LOGGER.debug("InterruptedException", e);
+      }
+    }
+  }
+
+  /**
+   * An object in the ring. With coalescing, the object is replaced as long
+   * as the node was not taken.
+   */
+  private static final class Node extends AtomicReference<Object> {
+
+    private final Object key;
+
+    /**
+     * The sequence number of the slot, set before the node is written to the
+     * ring.
+     */
+    private volatile long sequence = -1;
+
+    Node(Object key, Object object) {
+      super(object);
+      this.key = key;
+    }
+
+    boolean replace(Object object) {
+      Object current;
+      while ((current = get()) != TAKEN) {
+        if (compareAndSet(current, object)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    Object take() {
+      return getAndSet(TAKEN);
+    }
+  }
+
+  private final class CheckingThread extends Thread {
+
+    CheckingThread(String name) {
+      super(name);
+    }
+
+    @Override
+    public void run() {
+      long firingTime = 0;
+      long waitTime = minWindowSize;
+      while (!closed || (!isEmpty() && enabled)) {
+        if (enabled) {
+          float objectsPerSec = (1000 * pushedCount.getAndSet(0)) / (waitTime + firingTime);
+          long calculatedWindowSize = minWindowSize + ((long) (windowGrowthFactor * objectsPerSec));
+          waitTime = (calculatedWindowSize < maxWindowSize) ? calculatedWindowSize : maxWindowSize;
+          firingTime = fire();
+          try {
+            Thread.sleep(waitTime);
+          } catch (InterruptedException ie) {
+            LOGGER.debug("InterruptedException", ie);
+          }
+        } else {
+          try {
+            Thread.sleep(maxWindowSize);
+          } catch (InterruptedException ie) {
+            LOGGER.debug("InterruptedException", ie);
+          }
+        }
+      }
+    }
+  }
+}
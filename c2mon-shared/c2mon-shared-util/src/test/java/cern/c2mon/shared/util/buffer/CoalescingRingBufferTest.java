@@ -0,0 +1,185 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.util.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingRingBufferTest {
+
+  private CoalescingRingBuffer<long[]> buffer;
+
+  /**
+   * The objects delivered to the listener.
+   */
+  private final List<long[]> pulled = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void tearDown() {
+    buffer.close();
+  }
+
+  @Test
+  public void testAllObjectsDeliveredInOrder() throws InterruptedException {
+    createBuffer(100, false);
+    for (long i = 0; i < 50; i++) {
+      buffer.push(new long[] {i % 5, i});
+    }
+
+    buffer.enable();
+    Thread.sleep(300);
+
+    assertEquals(50, pulled.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, pulled.get(i)[1]);
+    }
+  }
+
+  @Test
+  public void testLastValueWins() throws InterruptedException {
+    createBuffer(100, true);
+    for (long i = 0; i < 50; i++) {
+      buffer.push(new long[] {i % 5, i});
+    }
+    assertEquals(45, buffer.getCoalescedCount());
+
+    buffer.enable();
+    Thread.sleep(300);
+
+    // One object per key, at the position of the first object of the key
+    assertEquals(5, pulled.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, pulled.get(i)[0]);
+      assertEquals(45 + i, pulled.get(i)[1]);
+    }
+  }
+
+  @Test
+  public void testKeyPushedAgainAfterFiring() throws InterruptedException {
+    createBuffer(100, true);
+    buffer.enable();
+
+    buffer.push(new long[] {1, 1});
+    Thread.sleep(300);
+    buffer.push(new long[] {1, 2});
+    Thread.sleep(300);
+
+    assertEquals(2, pulled.size());
+    assertEquals(2, pulled.get(1)[1]);
+  }
+
+  @Test
+  public void testOldestObjectsEvicted() throws InterruptedException {
+    createBuffer(16, false);
+    buffer.push(Arrays.asList(objects(0, 20)));
+    assertEquals(16, buffer.getSize());
+    assertEquals(4, buffer.getEvictedCount());
+
+    buffer.enable();
+    Thread.sleep(300);
+
+    assertEquals(16, pulled.size());
+    assertEquals(4, pulled.get(0)[1]);
+    assertEquals(19, pulled.get(15)[1]);
+  }
+
+  @Test
+  public void testProducerBlockedUntilObjectsTaken() throws InterruptedException {
+    createBuffer(16, false, true);
+    CountDownLatch done = new CountDownLatch(1);
+    new Thread(() -> {
+      buffer.push(Arrays.asList(objects(0, 20)));
+      done.countDown();
+    }).start();
+
+    Thread.sleep(300);
+    assertEquals(1, done.getCount());
+    assertEquals(16, buffer.getSize());
+    assertEquals(1, buffer.getBlockedCount());
+
+    buffer.enable();
+    done.await();
+    Thread.sleep(500);
+
+    assertEquals(0, buffer.getEvictedCount());
+    assertEquals(20, pulled.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, pulled.get(i)[1]);
+    }
+  }
+
+  @Test
+  public void testConcurrentProducers() throws InterruptedException {
+    createBuffer(1 << 16, true);
+    buffer.enable();
+
+    int producers = 4;
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      final long key = p;
+      new Thread(() -> {
+        for (long i = 0; i < 100000; i++) {
+          buffer.push(new long[] {key, i});
+        }
+        done.countDown();
+      }).start();
+    }
+    done.await();
+    Thread.sleep(1000);
+
+    // Whatever was coalesced, the last value of each key is delivered last
+    long[] lastValues = new long[producers];
+    synchronized (pulled) {
+      for (long[] object : pulled) {
+        assertTrue(object[1] > lastValues[(int) object[0]] || object[1] == 0);
+        lastValues[(int) object[0]] = object[1];
+      }
+    }
+    for (long lastValue : lastValues) {
+      assertEquals(99999, lastValue);
+    }
+    assertEquals(0, buffer.getEvictedCount());
+    assertEquals(0, buffer.getSize());
+  }
+
+  private void createBuffer(int capacity, boolean coalescing) {
+    createBuffer(capacity, coalescing, false);
+  }
+
+  private void createBuffer(int capacity, boolean coalescing, boolean blocking) {
+    buffer = new CoalescingRingBuffer<>("test", 100, 200, 100, capacity, coalescing ? object -> object[0] : null, blocking, true);
+    buffer.setSynchroBufferListener(event -> pulled.addAll((Collection<long[]>) event.getPulled()));
+  }
+
+  private static long[][] objects(long from, long to) {
+    long[][] objects = new long[(int) (to - from)][];
+    for (long i = from; i < to; i++) {
+      objects[(int) (i - from)] = new long[] {i, i};
+    }
+    return objects;
+  }
+}